@@ -44,6 +44,8 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.appwork.remoteapi.annotations.AllowNonStorableObjects;
 import org.appwork.remoteapi.annotations.AllowResponseAccess;
@@ -58,8 +60,10 @@ import org.appwork.remoteapi.annotations.ApiSignatureRequired;
 import org.appwork.storage.InvalidTypeException;
 import org.appwork.storage.JSonStorage;
 import org.appwork.storage.config.annotations.AllowStorage;
+import org.appwork.storage.simplejson.mapper.MethodAccessor;
 import org.appwork.uio.UIOManager;
 import org.appwork.utils.Application;
+import org.appwork.utils.logging2.extmanager.LoggerFactory;
 
 /**
  * @author thomas
@@ -68,6 +72,38 @@ import org.appwork.utils.Application;
 public class InterfaceHandler<T> {
     private static final String REGEX_CLS = "[a-zA-Z0-9\\[\\]_\\.]+(:?<[\\.a-zA-Z0-9\\[\\]_\\?\\,\\s<>]*>)?[\\[\\]]*";
 
+    /**
+     * calls an api method via a generated {@link MethodAccessor} once it has been called {@link MethodAccessor#INFLATION_THRESHOLD} times,
+     * via reflection before
+     */
+    private static class Invoker {
+        private final Method            method;
+        private final Class<?>[]        parameterTypes;
+        private volatile MethodAccessor accessor    = null;
+        private final AtomicInteger     invocations = new AtomicInteger(0);
+
+        private Invoker(final Method method) {
+            this.method = method;
+            this.parameterTypes = method.getParameterTypes();
+        }
+
+        private Object invoke(final Object obj, final Object[] parameters) throws IllegalArgumentException, IllegalAccessException, InvocationTargetException {
+            MethodAccessor accessor = this.accessor;
+            if (accessor == null && this.invocations.incrementAndGet() == MethodAccessor.INFLATION_THRESHOLD) {
+                this.accessor = accessor = MethodAccessor.createInvoker(this.method);
+            }
+            if (accessor != null && this.method.getDeclaringClass().isInstance(obj) && MethodAccessor.isAccessorParameters(this.parameterTypes, parameters)) {
+                try {
+                    return accessor.invokeWithParameters(obj, parameters);
+                } catch (final Throwable e) {
+                    // arguments are checked, so e was thrown by the method itself. same as Method.invoke
+                    throw new InvocationTargetException(e);
+                }
+            }
+            return this.method.invoke(obj, parameters);
+        }
+    }
+
     /**
      * @param c
      * @param x
@@ -93,6 +129,8 @@ public class InterfaceHandler<T> {
     private boolean                        sessionRequired  = false;
     final private String                   namespace;
 
+    private final ConcurrentHashMap<Method, Invoker> invokers = new ConcurrentHashMap<Method, Invoker>();
+
     public String getNamespace() {
         return namespace;
     }
@@ -233,10 +271,18 @@ public class InterfaceHandler<T> {
      * @throws IllegalArgumentException
      */
     public Object invoke(final Method method, final Object[] parameters) throws IllegalArgumentException, IllegalAccessException, InvocationTargetException {
+        Invoker invoker = this.invokers.get(method);
+        if (invoker == null) {
+            final Invoker newInvoker = new Invoker(method);
+            invoker = this.invokers.putIfAbsent(method, newInvoker);
+            if (invoker == null) {
+                invoker = newInvoker;
+            }
+        }
         if (method.getDeclaringClass() == InterfaceHandler.class) {
-            return method.invoke(this, parameters);
+            return invoker.invoke(this, parameters);
         } else {
-            return method.invoke(this.impl, parameters);
+            return invoker.invoke(this.impl, parameters);
         }
     }
 
@@ -269,6 +315,12 @@ public class InterfaceHandler<T> {
                     continue;
                 }
                 srcUpdate |= this.validateMethod(m);
+                try {
+                    /* skip the access check in invoke for every call */
+                    m.setAccessible(true);
+                } catch (final SecurityException e) {
+                    LoggerFactory.getDefaultLogger().log(e);
+                }
                 int paramCounter = 0;
                 for (final Class<?> c : m.getParameterTypes()) {
                     if (c != RemoteAPIRequest.class && c != RemoteAPIResponse.class) {
@@ -33,18 +33,22 @@
  * ==================================================================================================================================================== */
 package org.appwork.remoteapi;
 
+import java.io.BufferedWriter;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
-import java.util.regex.Pattern;
 import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
 import java.util.zip.GZIPOutputStream;
@@ -65,7 +69,6 @@ import org.appwork.remoteapi.responsewrapper.DataObject;
 import org.appwork.storage.JSonStorage;
 import org.appwork.storage.TypeRef;
 import org.appwork.utils.Application;
-import org.appwork.utils.Regex;
 import org.appwork.utils.logging2.extmanager.LoggerFactory;
 import org.appwork.utils.net.ChunkedOutputStream;
 import org.appwork.utils.net.HTTPHeader;
@@ -119,7 +122,28 @@ public class RemoteAPI implements HttpRequestHandler {
         }
     }
 
-    final static Pattern INTF = Pattern.compile("/((.+)/)?(.+)$");
+    /**
+     * splits a requested path into {unimportant, namespace, method}. Same result as matching /((.+)/)?(.+)$ but without regex
+     *
+     * @param path
+     * @return null if path does not contain a method
+     */
+    protected static String[] splitPath(final String path) {
+        if (path == null) {
+            return null;
+        }
+        final int slash = path.indexOf('/');
+        if (slash < 0 || slash == path.length() - 1) {
+            return null;
+        }
+        final String rest = path.substring(slash + 1);
+        /* namespace ends at the last slash that still leaves at least one char for the method */
+        final int index = rest.lastIndexOf('/', rest.length() - 2);
+        if (index < 1) {
+            return new String[] { null, null, rest };
+        }
+        return new String[] { rest.substring(0, index + 1), rest.substring(0, index), rest.substring(index + 1) };
+    }
 
     @SuppressWarnings("unchecked")
     public static <T> T cast(Object v, final Class<T> type) {
@@ -152,6 +176,10 @@ public class RemoteAPI implements HttpRequestHandler {
      * @return
      */
     public static Object convert(String string, final Type type) {
+        final Object direct = RemoteAPI.convertDirect(string, type);
+        if (direct != RemoteAPI.NO_DIRECT_CONVERSION) {
+            return direct;
+        }
         if ((type == String.class || type instanceof Class && ((Class<?>) type).isEnum()) && !string.startsWith("\"")) {
             /* workaround if strings are not escaped, same for enums */
             if ("null".equals(string)) {
@@ -175,6 +203,64 @@ public class RemoteAPI implements HttpRequestHandler {
         }
     }
 
+    /* marker for parameters that need the json based conversion */
+    private static final Object NO_DIRECT_CONVERSION = new Object();
+
+    /**
+     * converts unquoted Strings, booleans and integral numbers without a json round trip. returns {@link #NO_DIRECT_CONVERSION} for
+     * everything else
+     */
+    private static Object convertDirect(final String string, final Type type) {
+        if (string == null || !(type instanceof Class)) {
+            return RemoteAPI.NO_DIRECT_CONVERSION;
+        } else if (type == String.class) {
+            if (string.startsWith("\"")) {
+                /* escaped json string */
+                return RemoteAPI.NO_DIRECT_CONVERSION;
+            } else if ("null".equals(string)) {
+                return null;
+            } else {
+                return string;
+            }
+        } else if (type == boolean.class || type == Boolean.class) {
+            if ("true".equals(string)) {
+                return Boolean.TRUE;
+            } else if ("false".equals(string)) {
+                return Boolean.FALSE;
+            }
+            return RemoteAPI.NO_DIRECT_CONVERSION;
+        } else if (!Clazz.isLong(type) && !Clazz.isInteger(type) && !Clazz.isShort(type) && !Clazz.isByte(type)) {
+            return RemoteAPI.NO_DIRECT_CONVERSION;
+        }
+        /* plain decimal without leading zeros, short enough to never overflow a long */
+        final int length = string.length();
+        final int start = length > 0 && string.charAt(0) == '-' ? 1 : 0;
+        if (length == start || length - start > 18 || string.charAt(start) == '0' && length - start > 1) {
+            return RemoteAPI.NO_DIRECT_CONVERSION;
+        }
+        for (int index = start; index < length; index++) {
+            final char c = string.charAt(index);
+            if (c < '0' || c > '9') {
+                return RemoteAPI.NO_DIRECT_CONVERSION;
+            }
+        }
+        final long value = Long.parseLong(string);
+        if (Clazz.isLong(type)) {
+            return Long.valueOf(value);
+        } else if (Clazz.isInteger(type)) {
+            if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+                return Integer.valueOf((int) value);
+            }
+        } else if (Clazz.isShort(type)) {
+            if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                return Short.valueOf((short) value);
+            }
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            return Byte.valueOf((byte) value);
+        }
+        return RemoteAPI.NO_DIRECT_CONVERSION;
+    }
+
     @Deprecated
     public static OutputStream getOutputStream(final RemoteAPIResponse response, final RemoteAPIRequest request, final boolean gzip, final boolean wrapJQuery) throws IOException {
         response.getResponseHeaders().add(new HTTPHeader(HTTPConstants.HEADER_REQUEST_CACHE_CONTROL, "no-store, no-cache"));
@@ -194,9 +280,10 @@ public class RemoteAPI implements HttpRequestHandler {
             out = null;
             uos = cos;
         }
+        final String[] wrapper = wrapJQuery && request != null ? RemoteAPI.getJQueryWrapper(response, request) : null;
         return new OutputStream() {
-            boolean wrapperHeader = wrapJQuery && request != null && request.getJqueryCallback() != null;
-            boolean wrapperEnd    = wrapJQuery && request != null && request.getJqueryCallback() != null;
+            boolean wrapperHeader = wrapper != null;
+            boolean wrapperEnd    = wrapper != null;
 
             @Override
             public void close() throws IOException {
@@ -215,15 +302,14 @@ public class RemoteAPI implements HttpRequestHandler {
 
             private void wrapperEnd() throws UnsupportedEncodingException, IOException {
                 if (this.wrapperEnd) {
-                    uos.write(")".getBytes("UTF-8"));
+                    uos.write(wrapper[1].getBytes("UTF-8"));
                     this.wrapperEnd = false;
                 }
             }
 
             private void wrapperHeader() throws UnsupportedEncodingException, IOException {
                 if (this.wrapperHeader) {
-                    uos.write(request.getJqueryCallback().getBytes("UTF-8"));
-                    uos.write("(".getBytes("UTF-8"));
+                    uos.write(wrapper[0].getBytes("UTF-8"));
                     this.wrapperHeader = false;
                 }
             }
@@ -242,6 +328,33 @@ public class RemoteAPI implements HttpRequestHandler {
         };
     }
 
+    /**
+     * splits the {@link #jQueryWrap(RemoteAPIRequest, String)} of the responsible RemoteAPI into prefix and suffix, so streamed
+     * responses are wrapped the same way as {@link #sendText(RemoteAPIRequest, RemoteAPIResponse, String)} does
+     *
+     * @return null if the response is not wrapped
+     * @throws IOException
+     */
+    private static String[] getJQueryWrapper(final RemoteAPIResponse response, final RemoteAPIRequest request) throws IOException {
+        final RemoteAPI remoteAPI = response.getRemoteAPI();
+        final String wrapped;
+        if (remoteAPI != null) {
+            wrapped = remoteAPI.jQueryWrap(request, RemoteAPI.JQUERY_WRAP_MARKER);
+        } else if (request.getJqueryCallback() != null) {
+            wrapped = request.getJqueryCallback() + "(" + RemoteAPI.JQUERY_WRAP_MARKER + ")";
+        } else {
+            return null;
+        }
+        final int index = wrapped == null ? -1 : wrapped.indexOf(RemoteAPI.JQUERY_WRAP_MARKER);
+        if (index < 0 || wrapped.indexOf(RemoteAPI.JQUERY_WRAP_MARKER, index + 1) >= 0) {
+            throw new IOException("jQueryWrap cannot be used for streaming");
+        }
+        if (wrapped.length() == RemoteAPI.JQUERY_WRAP_MARKER.length()) {
+            return null;
+        }
+        return new String[] { wrapped.substring(0, index), wrapped.substring(index + RemoteAPI.JQUERY_WRAP_MARKER.length()) };
+    }
+
     public static boolean deflate(final HttpRequest request) {
         final HTTPHeader acceptEncoding = request.getRequestHeaders().get(HTTPConstants.HEADER_REQUEST_ACCEPT_ENCODING);
         if (acceptEncoding != null) {
@@ -272,6 +385,12 @@ public class RemoteAPI implements HttpRequestHandler {
         return gzip(request.getHttpRequest());
     }
 
+    /* collections with at least this many elements are streamed */
+    protected static final int STREAMING_MIN_SIZE = 1000;
+    /* placeholder in the toString envelope that gets replaced by the streamed elements */
+    private static final String STREAMING_DATA = "\"data\":null";
+    /* placeholder used to split the jQueryWrap result into prefix and suffix */
+    private static final String JQUERY_WRAP_MARKER = "\u0000jQueryWrap\u0000";
     /* hashmap that holds all registered interfaces and their paths */
     private HashMap<String, InterfaceHandler<RemoteAPIInterface>> interfaces = new HashMap<String, InterfaceHandler<RemoteAPIInterface>>();
     private DefaultDocsPageFactory                                helpBuilder;
@@ -290,14 +409,16 @@ public class RemoteAPI implements HttpRequestHandler {
                 throw new ApiCommandNotAvailable(request.getRequestedURL());
             }
             this.authenticate(method, request, response);
-            final Object[] parameters = new Object[method.getParameterTypes().length];
+            final Class<?>[] parameterTypes = method.getParameterTypes();
+            final Type[] genericParameterTypes = method.getGenericParameterTypes();
+            final Object[] parameters = new Object[parameterTypes.length];
             boolean methodHasReturnTypeAndAResponseParameter = false;
             boolean methodHasResponseParameter = false;
             int count = 0;
             for (int i = 0; i < parameters.length; i++) {
-                if (RemoteAPIRequest.class.isAssignableFrom(method.getParameterTypes()[i])) {
+                if (RemoteAPIRequest.class.isAssignableFrom(parameterTypes[i])) {
                     parameters[i] = request;
-                } else if (RemoteAPIResponse.class.isAssignableFrom(method.getParameterTypes()[i])) {
+                } else if (RemoteAPIResponse.class.isAssignableFrom(parameterTypes[i])) {
                     methodHasResponseParameter = true;
                     if (method.getAnnotation(AllowResponseAccess.class) != null) {
                         methodHasReturnTypeAndAResponseParameter = true;
@@ -305,7 +426,7 @@ public class RemoteAPI implements HttpRequestHandler {
                     parameters[i] = response;
                 } else {
                     try {
-                        parameters[i] = RemoteAPI.convert(request.getParameters()[count], method.getGenericParameterTypes()[i]);
+                        parameters[i] = RemoteAPI.convert(request.getParameters()[count], genericParameterTypes[i]);
                     } catch (final Throwable e) {
                         throw new BadParameterException(e, request.getParameters()[count]);
                     }
@@ -462,8 +583,8 @@ public class RemoteAPI implements HttpRequestHandler {
 
     public RemoteAPIMethod getRemoteAPIMethod(final HttpRequest request) throws BasicRemoteAPIException {
         final String path = request.getRequestedPath();
-        String[] intf = new Regex(path, RemoteAPI.INTF).getRow(0);
-        if (intf == null || intf.length != 3) {
+        String[] intf = RemoteAPI.splitPath(path);
+        if (intf == null) {
             if ("/".equals(path)) {
                 // special handling. method "" in root
                 intf = new String[] { "", "", "" };
@@ -755,6 +876,8 @@ public class RemoteAPI implements HttpRequestHandler {
             }
             if (method != null && method.getAnnotation(ResponseWrapper.class) != null) {
                 text = ((AbstractResponseWrapper<Object>) method.getAnnotation(ResponseWrapper.class).value().newInstance()).toString(responseData);
+            } else if (this.isStreamingResponse(request, response, responseData) && this.writeStreamingResponse(request, response, responseData)) {
+                return;
             } else {
                 text = this.toString(request, response, responseData);
             }
@@ -767,6 +890,55 @@ public class RemoteAPI implements HttpRequestHandler {
         }
     }
 
+    /**
+     * override this to change which responses are streamed, see {@link #writeStreamingResponse(RemoteAPIRequest, RemoteAPIResponse, Object)}
+     *
+     * @return true for {@link Iterator} results and large {@link Collection} results
+     */
+    protected boolean isStreamingResponse(final RemoteAPIRequest request, final RemoteAPIResponse response, final Object responseData) {
+        if (responseData instanceof Iterator) {
+            return true;
+        }
+        return responseData instanceof Collection && ((Collection<?>) responseData).size() >= RemoteAPI.STREAMING_MIN_SIZE;
+    }
+
+    /**
+     * writes the elements of responseData one by one into the (chunked) response stream, so the whole response never exists as one
+     * String. The envelope is taken from {@link #toString(RemoteAPIRequest, RemoteAPIResponse, Object)} with null data and wrapped by
+     * {@link #jQueryWrap(RemoteAPIRequest, String)}.
+     *
+     * @return false if the envelope does not contain exactly one "data":null, the response has not been touched in that case
+     * @throws IOException
+     */
+    protected boolean writeStreamingResponse(final RemoteAPIRequest request, final RemoteAPIResponse response, final Object responseData) throws IOException {
+        final String text = this.toString(request, response, null);
+        final String envelope = text == null ? null : this.jQueryWrap(request, text);
+        final int index = envelope == null ? -1 : envelope.indexOf(RemoteAPI.STREAMING_DATA);
+        if (index < 0 || envelope.indexOf(RemoteAPI.STREAMING_DATA, index + 1) >= 0) {
+            return false;
+        }
+        final Iterator<?> it = responseData instanceof Iterator ? (Iterator<?>) responseData : ((Iterable<?>) responseData).iterator();
+        response.setResponseCode(ResponseCode.SUCCESS_OK);
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(response.openStreamingOutputStream(request), "UTF-8"), 16384);
+        try {
+            writer.write(envelope, 0, index);
+            writer.write("\"data\":[");
+            boolean first = true;
+            while (it.hasNext()) {
+                if (first == false) {
+                    writer.write(',');
+                }
+                first = false;
+                writer.write(JSonStorage.serializeToJson(it.next()));
+            }
+            writer.write(']');
+            writer.write(envelope, index + RemoteAPI.STREAMING_DATA.length(), envelope.length() - index - RemoteAPI.STREAMING_DATA.length());
+        } finally {
+            writer.close();
+        }
+        return true;
+    }
+
     /**
      * @param request
      * @param response
@@ -33,6 +33,7 @@
  * ==================================================================================================================================================== */
 package org.appwork.remoteapi;
 
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.zip.Deflater;
@@ -155,6 +156,60 @@ public class RemoteAPIResponse implements HttpResponseInterface {
 
     }
 
+    /**
+     * sends the response headers and returns a chunked (and gzip/deflate compressed if supported by the client) stream for a response of
+     * unknown length. close() ends the response but keeps the connection open
+     *
+     * @param request
+     * @return
+     * @throws IOException
+     */
+    public OutputStream openStreamingOutputStream(final RemoteAPIRequest request) throws IOException {
+        /* we dont want this api response to get cached */
+        if (this.getResponseHeaders().get(HTTPConstants.HEADER_REQUEST_CACHE_CONTROL) == null) {
+            this.getResponseHeaders().add(new HTTPHeader(HTTPConstants.HEADER_REQUEST_CACHE_CONTROL, "no-store, no-cache"));
+        }
+        if (this.getResponseHeaders().get(HTTPConstants.HEADER_RESPONSE_CONTENT_TYPE) == null) {
+            this.getResponseHeaders().add(new HTTPHeader(HTTPConstants.HEADER_RESPONSE_CONTENT_TYPE, "application/json"));
+        }
+        final boolean gzip = RemoteAPI.gzip(request);
+        final boolean deflate = !gzip && RemoteAPI.deflate(request) && Application.getJavaVersion() >= Application.JAVA16;
+        if (gzip) {
+            this.getResponseHeaders().add(new HTTPHeader(HTTPConstants.HEADER_RESPONSE_CONTENT_ENCODING, "gzip"));
+        } else if (deflate) {
+            this.getResponseHeaders().add(new HTTPHeader(HTTPConstants.HEADER_RESPONSE_CONTENT_ENCODING, "deflate"));
+        }
+        this.getResponseHeaders().add(new HTTPHeader(HTTPConstants.HEADER_RESPONSE_TRANSFER_ENCODING, HTTPConstants.HEADER_RESPONSE_TRANSFER_ENCODING_CHUNKED));
+        final ChunkedOutputStream cos = new ChunkedOutputStream(this.getOutputStream(true), 16384);
+        final DeflaterOutputStream compressed;
+        if (gzip) {
+            compressed = new GZIPOutputStream(cos);
+        } else if (deflate) {
+            compressed = new DeflaterOutputStream(cos, new Deflater(9, true));
+        } else {
+            compressed = null;
+        }
+        return new FilterOutputStream(compressed != null ? compressed : cos) {
+            private boolean closed = false;
+
+            @Override
+            public void write(final byte[] b, final int off, final int len) throws IOException {
+                this.out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (this.closed == false) {
+                    this.closed = true;
+                    if (compressed != null) {
+                        compressed.finish();
+                    }
+                    cos.sendEOF();
+                }
+            }
+        };
+    }
+
     /**
      * @param responseCode
      *            the responseCode to set
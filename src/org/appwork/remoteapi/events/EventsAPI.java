@@ -38,7 +38,9 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 
 import org.appwork.remoteapi.RemoteAPIRequest;
@@ -73,6 +75,53 @@ public class EventsAPI implements EventsAPIInterface, RemoteAPIEventsSender {
 
     protected final CopyOnWriteArrayList<Subscriber> subscribers = new CopyOnWriteArrayList<Subscriber>();
 
+    /**
+     * subscribers that match an eventID, valid as long as neither the subscribers list nor any subscription changed
+     */
+    private static class FanOut {
+        private final long         subscribersVersion;
+        private final long         modificationCounter;
+        private final Subscriber[] subscribers;
+
+        private FanOut(final long subscribersVersion, final long modificationCounter, final Subscriber[] subscribers) {
+            this.subscribersVersion = subscribersVersion;
+            this.modificationCounter = modificationCounter;
+            this.subscribers = subscribers;
+        }
+    }
+
+    private static final int                        MAX_FANOUT_INDEX   = 4096;
+    private final ConcurrentHashMap<String, FanOut> fanOutIndex        = new ConcurrentHashMap<String, FanOut>();
+    protected final AtomicLong                      subscribersVersion = new AtomicLong(0);
+
+    /**
+     * returns all subscribers whose subscriptions match the given eventID, regardless of their alive state. The result is cached per
+     * eventID until subscribers are added/removed or subscriptions change
+     *
+     * @param eventID
+     * @return
+     */
+    protected Subscriber[] getSubscribers(final String eventID) {
+        final long version = this.subscribersVersion.get();
+        final long modificationCounter = Subscriber.getModificationCounter();
+        final FanOut existing = this.fanOutIndex.get(eventID);
+        if (existing != null && existing.subscribersVersion == version && existing.modificationCounter == modificationCounter) {
+            return existing.subscribers;
+        }
+        final ArrayList<Subscriber> ret = new ArrayList<Subscriber>();
+        for (final Subscriber subscriber : this.subscribers) {
+            if (subscriber.getMatcher().matches(eventID)) {
+                ret.add(subscriber);
+            }
+        }
+        if (this.fanOutIndex.size() >= EventsAPI.MAX_FANOUT_INDEX) {
+            this.fanOutIndex.clear();
+        }
+        final Subscriber[] subscribers = ret.toArray(new Subscriber[ret.size()]);
+        this.fanOutIndex.put(eventID, new FanOut(version, modificationCounter, subscribers));
+        return subscribers;
+    }
+
     public List<Subscriber> getSubscribers() {
         return Collections.unmodifiableList(this.subscribers);
     }
@@ -80,6 +129,60 @@ public class EventsAPI implements EventsAPIInterface, RemoteAPIEventsSender {
     protected final CopyOnWriteArrayList<EventPublisher> publishers             = new CopyOnWriteArrayList<EventPublisher>();
     protected final Object                               subscribersCleanupLock = new Object();
     protected Thread                                     cleanupThread          = null;
+    protected volatile int                               maxQueueSize           = Subscriber.DEFAULT_MAX_QUEUE_SIZE;
+    protected volatile Subscriber.OverflowPolicy         overflowPolicy         = Subscriber.OverflowPolicy.DROP_OLDEST;
+    protected volatile int                               maxBatchSize           = 1000;
+
+    public int getMaxQueueSize() {
+        return this.maxQueueSize;
+    }
+
+    /**
+     * @param maxQueueSize
+     *            queue limit for new subscribers
+     */
+    public void setMaxQueueSize(final int maxQueueSize) {
+        this.maxQueueSize = Math.max(1, maxQueueSize);
+    }
+
+    public Subscriber.OverflowPolicy getOverflowPolicy() {
+        return this.overflowPolicy;
+    }
+
+    /**
+     * @param overflowPolicy
+     *            overflow policy for new subscribers
+     */
+    public void setOverflowPolicy(final Subscriber.OverflowPolicy overflowPolicy) {
+        if (overflowPolicy == null) {
+            throw new IllegalArgumentException("overflowPolicy is null");
+        }
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public int getMaxBatchSize() {
+        return this.maxBatchSize;
+    }
+
+    /**
+     * @param maxBatchSize
+     *            maximum number of events returned by a single listen call
+     */
+    public void setMaxBatchSize(final int maxBatchSize) {
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+    }
+
+    /**
+     * applies queue limit and overflow policy to a subscriber created by this EventsAPI
+     *
+     * @param subscriber
+     * @return
+     */
+    protected Subscriber initSubscriber(final Subscriber subscriber) {
+        subscriber.setMaxQueueSize(this.getMaxQueueSize());
+        subscriber.setOverflowPolicy(this.getOverflowPolicy());
+        return subscriber;
+    }
 
     @Override
     public SubscriptionResponse addsubscription(final long subscriptionid, final String[] subscriptions, final String[] exclusions) {
@@ -187,15 +290,18 @@ public class EventsAPI implements EventsAPIInterface, RemoteAPIEventsSender {
             throw new APIFileNotFoundException();
         }
         final ArrayList<EventObject> events = new ArrayList<EventObject>();
-        final ArrayList<EventObjectStorable> eventStorables = new ArrayList<EventObjectStorable>();
         try {
-            EventObject event;
-            while ((event = subscriber.poll(events.size() == 0 ? subscriber.getPollTimeout() : 0)) != null && getSubscriber(subscriptionid) == subscriber) {
-                events.add(event);
-                eventStorables.add(new EventObjectStorable(event));
-            }
+            subscriber.drain(events, getMaxBatchSize(), subscriber.getPollTimeout());
         } catch (final InterruptedException e) {
         }
+        if (events.size() > 0 && getSubscriber(subscriptionid) != subscriber) {
+            /* subscriber got removed while waiting */
+            events.clear();
+        }
+        final ArrayList<EventObjectStorable> eventStorables = new ArrayList<EventObjectStorable>(events.size());
+        for (final EventObject event : events) {
+            eventStorables.add(new EventObjectStorable(event));
+        }
         try {
             response.getRemoteAPI().writeStringResponse(eventStorables, null, request, response);
         } catch (final Throwable e) {
@@ -217,7 +323,7 @@ public class EventsAPI implements EventsAPIInterface, RemoteAPIEventsSender {
     public boolean hasSubscriptionFor(EventPublisher publisher, String eventID) {
         if (eventID != null && subscribers.size() > 0) {
             final String event = publisher.getPublisherName().concat(".").concat(eventID);
-            for (final Subscriber subscriber : subscribers) {
+            for (final Subscriber subscriber : getSubscribers(event)) {
                 if (subscriber.isAlive() && subscriber.isSubscribed(event)) {
                     return true;
                 }
@@ -239,9 +345,9 @@ public class EventsAPI implements EventsAPIInterface, RemoteAPIEventsSender {
                     }
                 }
             }
-        } else {
+        } else if (eventID != null) {
             /* publish to all subscribers */
-            for (final Subscriber subscriber : subscribers) {
+            for (final Subscriber subscriber : getSubscribers(eventID)) {
                 if (push(subscriber, eventID, event)) {
                     ret.add(subscriber.getSubscriptionID());
                 }
@@ -301,7 +407,7 @@ public class EventsAPI implements EventsAPIInterface, RemoteAPIEventsSender {
     public SubscriptionResponse setsubscription(final long subscriptionid, final String[] subscriptions, final String[] exclusions) {
         Subscriber subscriber = getSubscriber(subscriptionid);
         if (subscriber == null) {
-            subscriber = new Subscriber(subscriptionid, convertToPatternArray(subscriptions), convertToPatternArray(exclusions));
+            subscriber = initSubscriber(new Subscriber(subscriptionid, convertToPatternArray(subscriptions), convertToPatternArray(exclusions)));
             if (addSubscriber(subscriber)) {
                 return new SubscriptionResponse(subscriber);
             } else {
@@ -333,6 +439,7 @@ public class EventsAPI implements EventsAPIInterface, RemoteAPIEventsSender {
         if (subscriber != null && subscriber.isAlive()) {
             final Subscriber existing = getSubscriber(subscriber.getSubscriptionID());
             if (existing == null && subscribers.addIfAbsent(subscriber)) {
+                this.subscribersVersion.incrementAndGet();
                 this.subscribersCleanupThread();
                 try {
                     localEventSender.fireEvent(new LocalEventsAPIEvent(this, LocalEventsAPIEvent.Type.CHANNEL_OPENED, subscriber));
@@ -346,6 +453,7 @@ public class EventsAPI implements EventsAPIInterface, RemoteAPIEventsSender {
 
     public boolean removeSubscriber(Subscriber subscriber) {
         if (subscriber != null && subscribers.remove(subscriber)) {
+            this.subscribersVersion.incrementAndGet();
             subscriber.kill();
             subscriber.notifyListener();
             try {
@@ -359,8 +467,9 @@ public class EventsAPI implements EventsAPIInterface, RemoteAPIEventsSender {
 
     @Override
     public SubscriptionResponse subscribe(final String[] subscriptions, final String[] exclusions) {
-        final Subscriber subscriber = new Subscriber(convertToPatternArray(subscriptions), convertToPatternArray(exclusions));
+        final Subscriber subscriber = initSubscriber(new Subscriber(convertToPatternArray(subscriptions), convertToPatternArray(exclusions)));
         this.subscribers.add(subscriber);
+        this.subscribersVersion.incrementAndGet();
         this.subscribersCleanupThread();
         final SubscriptionResponse ret = new SubscriptionResponse(subscriber);
         try {
@@ -394,6 +503,7 @@ public class EventsAPI implements EventsAPIInterface, RemoteAPIEventsSender {
                                     final Subscriber subscriber = it.next();
                                     if (!subscriber.isAlive() || subscriber.isExpired()) {
                                         if (subscribers.remove(subscriber)) {
+                                            subscribersVersion.incrementAndGet();
                                             subscriber.kill();
                                             subscriber.notifyListener();
                                             try {
@@ -440,6 +550,7 @@ public class EventsAPI implements EventsAPIInterface, RemoteAPIEventsSender {
     public SubscriptionResponse unsubscribe(final long subscriptionid) {
         final Subscriber subscriber = getSubscriber(subscriptionid);
         if (subscriber != null && subscribers.remove(subscriber)) {
+            this.subscribersVersion.incrementAndGet();
             subscriber.kill();
             subscriber.notifyListener();
             try {
@@ -48,7 +48,27 @@ import java.util.regex.Pattern;
  *
  */
 public class Subscriber {
-    protected static final AtomicLong ID = new AtomicLong(System.currentTimeMillis());
+    /**
+     * what to do when the event queue of a subscriber is full
+     */
+    public static enum OverflowPolicy {
+        /**
+         * drop the oldest queued event
+         */
+        DROP_OLDEST,
+        /**
+         * replace the oldest queued event with same eventID, drop the oldest one if there is none
+         */
+        COALESCE,
+        /**
+         * kill the subscriber, its queued events are dropped
+         */
+        DISCONNECT
+    }
+
+    public static final int           DEFAULT_MAX_QUEUE_SIZE = 4096;
+    protected static final AtomicLong ID            = new AtomicLong(System.currentTimeMillis());
+    private static final AtomicLong   MODIFICATIONS = new AtomicLong(0);
 
     private static long createUniqueAlltimeID() {
         long id = -1;
@@ -70,12 +90,17 @@ public class Subscriber {
 
     protected volatile Pattern[]            subscriptions;
     protected volatile Pattern[]            exclusions;
+    private volatile SubscriptionMatcher    matcher             = new SubscriptionMatcher(null, null);
     protected final ArrayDeque<EventObject> events              = new ArrayDeque<EventObject>();
     protected final long                    subscriptionID;
     protected long                          lastPolledTimestamp = System.currentTimeMillis();
     protected long                          pollTimeout         = 25 * 1000l;
     protected long                          maxKeepalive        = 120 * 1000l;
     protected final AtomicBoolean           alive               = new AtomicBoolean(true);
+    protected volatile int                  maxQueueSize        = DEFAULT_MAX_QUEUE_SIZE;
+    protected volatile OverflowPolicy       overflowPolicy      = OverflowPolicy.DROP_OLDEST;
+    protected final AtomicLong              droppedEvents       = new AtomicLong(0);
+    protected final AtomicLong              coalescedEvents     = new AtomicLong(0);
 
     public boolean isAlive() {
         return alive.get();
@@ -141,31 +166,26 @@ public class Subscriber {
     }
 
     public boolean isSubscribed(final String eventID) {
-        if (isAlive() && !isExpired() && this.subscriptions.length > 0) {
-            for (final Pattern subscription : this.subscriptions) {
-                try {
-                    if (subscription.matcher(eventID).find()) {
-                        /* we have a subscription match */
-                        for (final Pattern exclusion : this.exclusions) {
-                            try {
-                                if (exclusion.matcher(eventID).find()) {
-                                    /*
-                                     * there exists an exclusion, no interest in this event
-                                     */
-                                    return false;
-                                }
-                            } catch (final Throwable e) {
-                                e.printStackTrace();
-                            }
-                        }
-                        return true;
-                    }
-                } catch (final Throwable e) {
-                    e.printStackTrace();
-                }
-            }
-        }
-        return false;
+        return isAlive() && !isExpired() && this.matcher.matches(eventID);
+    }
+
+    /**
+     * @return the precompiled subscriptions/exclusions, a new instance is created on every change
+     */
+    public SubscriptionMatcher getMatcher() {
+        return this.matcher;
+    }
+
+    /**
+     * @return counter that changes whenever subscriptions/exclusions of any Subscriber change
+     */
+    public static long getModificationCounter() {
+        return MODIFICATIONS.get();
+    }
+
+    private void updateMatcher() {
+        this.matcher = new SubscriptionMatcher(this.subscriptions, this.exclusions);
+        MODIFICATIONS.incrementAndGet();
     }
 
     protected void keepAlive() {
@@ -182,6 +202,31 @@ public class Subscriber {
         }
     }
 
+    /**
+     * waits up to waitfor ms for the first event and then moves up to maxEvents queued events into the given list
+     *
+     * @param drainTo
+     * @param maxEvents
+     * @param waitfor
+     * @return number of drained events
+     * @throws InterruptedException
+     */
+    protected int drain(final List<EventObject> drainTo, final int maxEvents, final long waitfor) throws InterruptedException {
+        synchronized (this.events) {
+            keepAlive();
+            if (this.events.size() == 0 && waitfor > 0) {
+                this.events.wait(waitfor);
+            }
+            int drained = 0;
+            EventObject event = null;
+            while (drained < maxEvents && (event = this.events.poll()) != null) {
+                drainTo.add(event);
+                drained++;
+            }
+            return drained;
+        }
+    }
+
     protected EventObject poll(final long waitfor) throws InterruptedException {
         synchronized (this.events) {
             keepAlive();
@@ -223,10 +268,57 @@ public class Subscriber {
                     }
                 }
             }
+            if (this.events.size() >= this.maxQueueSize && !this.onOverflow(event)) {
+                return;
+            }
             this.events.offerLast(event);
         }
     }
 
+    /**
+     * makes room for the given event in the full queue, must be called while holding the lock on events
+     *
+     * @param event
+     * @return false if the event must not be queued
+     */
+    protected boolean onOverflow(final EventObject event) {
+        switch (this.overflowPolicy) {
+        case DISCONNECT:
+            this.droppedEvents.addAndGet(this.events.size() + 1);
+            this.events.clear();
+            this.kill();
+            this.events.notifyAll();
+            return false;
+        case COALESCE:
+            if (event.getEventid() != null) {
+                final Iterator<EventObject> it = this.events.iterator();
+                while (it.hasNext()) {
+                    final EventObject next = it.next();
+                    if (next.getPublisher() == event.getPublisher() && event.getEventid().equals(next.getEventid())) {
+                        it.remove();
+                        this.coalescedEvents.incrementAndGet();
+                        return true;
+                    }
+                }
+            }
+            /* nothing to coalesce, fall through to drop oldest */
+        default:
+            while (this.events.size() >= this.maxQueueSize && this.events.pollFirst() != null) {
+                this.droppedEvents.incrementAndGet();
+            }
+            return true;
+        }
+    }
+
+    /**
+     * drops the oldest events until the queue fits into maxQueueSize, must be called while holding the lock on events
+     */
+    private void trimQueue() {
+        while (this.events.size() > this.maxQueueSize && this.events.pollFirst() != null) {
+            this.droppedEvents.incrementAndGet();
+        }
+    }
+
     protected void pushBack(final List<EventObject> pushBackEvents) {
         if (pushBackEvents.size() == 0) {
             return;
@@ -237,6 +329,7 @@ public class Subscriber {
                  * fast, current eventqueue is empty, so we can pushBack all at once
                  */
                 this.events.addAll(pushBackEvents);
+                this.trimQueue();
                 return;
             }
             final ArrayList<EventObject> addFirst = new ArrayList<EventObject>(pushBackEvents.size());
@@ -261,6 +354,7 @@ public class Subscriber {
             this.events.clear();
             this.events.addAll(addFirst);
             this.events.addAll(backup);
+            this.trimQueue();
         }
     }
 
@@ -270,6 +364,7 @@ public class Subscriber {
         } else {
             this.exclusions = this.uniquify(exclusions);
         }
+        this.updateMatcher();
     }
 
     /**
@@ -301,6 +396,47 @@ public class Subscriber {
         } else {
             this.subscriptions = this.uniquify(subscriptions);
         }
+        this.updateMatcher();
+    }
+
+    /**
+     * @return number of events that got dropped because the queue was full
+     */
+    public long getDroppedEvents() {
+        return this.droppedEvents.get();
+    }
+
+    /**
+     * @return number of events that got replaced by a newer event with same eventID because the queue was full
+     */
+    public long getCoalescedEvents() {
+        return this.coalescedEvents.get();
+    }
+
+    public int getMaxQueueSize() {
+        return this.maxQueueSize;
+    }
+
+    /**
+     * @param maxQueueSize
+     *            maximum number of queued events, at least 1
+     */
+    public void setMaxQueueSize(final int maxQueueSize) {
+        this.maxQueueSize = Math.max(1, maxQueueSize);
+        synchronized (this.events) {
+            this.trimQueue();
+        }
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return this.overflowPolicy;
+    }
+
+    public void setOverflowPolicy(final OverflowPolicy overflowPolicy) {
+        if (overflowPolicy == null) {
+            throw new IllegalArgumentException("overflowPolicy is null");
+        }
+        this.overflowPolicy = overflowPolicy;
     }
 
     public int size() {
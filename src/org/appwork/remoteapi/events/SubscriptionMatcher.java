@@ -0,0 +1,231 @@
+/**
+ *
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ *
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header.
+ *
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ *
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.remoteapi.events;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * immutable, precompiled form of the subscriptions and exclusions of a {@link Subscriber}. Patterns that are plain literals (optionally
+ * anchored by ^ and/or $) are matched by hash/trie lookups, only real regular expressions are executed via {@link Pattern}. Decisions
+ * are cached per eventID, a new instance is created whenever the subscriptions change.
+ *
+ * Semantics are identical to {@link Pattern#matcher(CharSequence)}.find(): an event matches if any subscription and no exclusion
+ * finds it.
+ *
+ * @author daniel
+ *
+ */
+public class SubscriptionMatcher {
+
+    private static final int MAX_CACHED_DECISIONS = 4096;
+
+    private static class TrieNode {
+        private final HashMap<Character, TrieNode> children = new HashMap<Character, TrieNode>(4);
+        private boolean                            terminal = false;
+    }
+
+    private static class PatternSet {
+        private final HashSet<String> exact    = new HashSet<String>();
+        private final TrieNode        prefixes = new TrieNode();
+        private boolean               hasPrefixes;
+        private final String[]        suffixes;
+        private final String[]        contains;
+        private final Pattern[]       regex;
+
+        private PatternSet(final Pattern[] patterns) {
+            final List<String> suffixes = new ArrayList<String>();
+            final List<String> contains = new ArrayList<String>();
+            final List<Pattern> regex = new ArrayList<Pattern>();
+            if (patterns != null) {
+                for (final Pattern pattern : patterns) {
+                    if (pattern == null) {
+                        continue;
+                    }
+                    if (!this.addLiteral(pattern, suffixes, contains)) {
+                        regex.add(pattern);
+                    }
+                }
+            }
+            this.suffixes = suffixes.toArray(new String[suffixes.size()]);
+            this.contains = contains.toArray(new String[contains.size()]);
+            this.regex = regex.toArray(new Pattern[regex.size()]);
+        }
+
+        /**
+         * @return false if the pattern is no literal and must be evaluated as regex
+         */
+        private boolean addLiteral(final Pattern pattern, final List<String> suffixes, final List<String> contains) {
+            if (pattern.flags() != 0) {
+                return false;
+            }
+            final String regex = pattern.pattern();
+            int length = regex.length();
+            boolean end = false;
+            if (length >= 2 && regex.endsWith(".*") && !regex.endsWith("\\.*")) {
+                /* trailing .* makes no difference for find */
+                length -= 2;
+            } else if (length >= 1 && regex.charAt(length - 1) == '$' && (length < 2 || regex.charAt(length - 2) != '\\')) {
+                end = true;
+                length -= 1;
+            }
+            int index = 0;
+            boolean start = false;
+            if (length >= 1 && regex.charAt(0) == '^') {
+                start = true;
+                index = 1;
+            }
+            final StringBuilder literal = new StringBuilder(length);
+            while (index < length) {
+                final char c = regex.charAt(index++);
+                if (c == '\\') {
+                    if (index >= length) {
+                        return false;
+                    }
+                    final char escaped = regex.charAt(index++);
+                    if (Character.isLetterOrDigit(escaped)) {
+                        /* \d,\w,\Q..., no literal */
+                        return false;
+                    }
+                    literal.append(escaped);
+                } else if ("[](){}.*+?|^$".indexOf(c) >= 0) {
+                    return false;
+                } else {
+                    literal.append(c);
+                }
+            }
+            final String value = literal.toString();
+            if (start && end) {
+                this.exact.add(value);
+            } else if (start) {
+                TrieNode node = this.prefixes;
+                for (int i = 0; i < value.length(); i++) {
+                    final Character key = Character.valueOf(value.charAt(i));
+                    TrieNode next = node.children.get(key);
+                    if (next == null) {
+                        next = new TrieNode();
+                        node.children.put(key, next);
+                    }
+                    node = next;
+                }
+                node.terminal = true;
+                this.hasPrefixes = true;
+            } else if (end) {
+                suffixes.add(value);
+            } else {
+                contains.add(value);
+            }
+            return true;
+        }
+
+        private boolean isEmpty() {
+            return this.exact.size() == 0 && !this.hasPrefixes && this.suffixes.length == 0 && this.contains.length == 0 && this.regex.length == 0;
+        }
+
+        private boolean find(final String eventID) {
+            if (this.exact.contains(eventID)) {
+                return true;
+            }
+            if (this.hasPrefixes) {
+                TrieNode node = this.prefixes;
+                int index = 0;
+                while (node != null) {
+                    if (node.terminal) {
+                        return true;
+                    }
+                    if (index == eventID.length()) {
+                        break;
+                    }
+                    node = node.children.get(Character.valueOf(eventID.charAt(index++)));
+                }
+            }
+            for (final String suffix : this.suffixes) {
+                if (eventID.endsWith(suffix)) {
+                    return true;
+                }
+            }
+            for (final String contain : this.contains) {
+                if (eventID.contains(contain)) {
+                    return true;
+                }
+            }
+            for (final Pattern pattern : this.regex) {
+                try {
+                    if (pattern.matcher(eventID).find()) {
+                        return true;
+                    }
+                } catch (final Throwable e) {
+                    e.printStackTrace();
+                }
+            }
+            return false;
+        }
+    }
+
+    private final PatternSet                          subscriptions;
+    private final PatternSet                          exclusions;
+    private final ConcurrentHashMap<String, Boolean> decisions = new ConcurrentHashMap<String, Boolean>();
+
+    public SubscriptionMatcher(final Pattern[] subscriptions, final Pattern[] exclusions) {
+        this.subscriptions = new PatternSet(subscriptions);
+        this.exclusions = new PatternSet(exclusions);
+    }
+
+    /**
+     * @return true if there are no subscriptions = no interest in any event
+     */
+    public boolean isEmpty() {
+        return this.subscriptions.isEmpty();
+    }
+
+    public boolean matches(final String eventID) {
+        if (eventID == null || this.isEmpty()) {
+            return false;
+        }
+        final Boolean cached = this.decisions.get(eventID);
+        if (cached != null) {
+            return cached.booleanValue();
+        }
+        final boolean ret = this.subscriptions.find(eventID) && !this.exclusions.find(eventID);
+        if (this.decisions.size() >= SubscriptionMatcher.MAX_CACHED_DECISIONS) {
+            this.decisions.clear();
+        }
+        this.decisions.put(eventID, Boolean.valueOf(ret));
+        return ret;
+    }
+}
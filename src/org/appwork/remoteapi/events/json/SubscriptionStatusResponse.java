@@ -47,6 +47,8 @@ public class SubscriptionStatusResponse implements Storable {
 
     protected int     queueSize      = 0;
 
+    protected long    droppedEvents  = 0;
+
     public SubscriptionStatusResponse(/* Storable */) {
     }
 
@@ -56,6 +58,15 @@ public class SubscriptionStatusResponse implements Storable {
     public SubscriptionStatusResponse(final Subscriber subscriber) {
         this.subscriptionid = subscriber.getSubscriptionID();
         this.queueSize = subscriber.size();
+        this.droppedEvents = subscriber.getDroppedEvents();
+    }
+
+    public long getDroppedEvents() {
+        return this.droppedEvents;
+    }
+
+    public void setDroppedEvents(final long droppedEvents) {
+        this.droppedEvents = droppedEvents;
     }
 
     public int getQueueSize() {
@@ -33,10 +33,15 @@
  * ==================================================================================================================================================== */
 package org.appwork.storage;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.lang.reflect.GenericArrayType;
 import java.lang.reflect.Method;
@@ -55,6 +60,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
 import javax.crypto.CipherInputStream;
+import javax.crypto.CipherOutputStream;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.spec.IvParameterSpec;
@@ -80,6 +86,8 @@ public class JSonStorage {
     /* default key for encrypted json */
     static public byte[]                              KEY         = new byte[] { 0x01, 0x02, 0x11, 0x01, 0x01, 0x54, 0x01, 0x01, 0x01, 0x01, 0x12, 0x01, 0x01, 0x01, 0x22, 0x01 };
     private static final HashMap<File, AtomicInteger> LOCKS       = new HashMap<File, AtomicInteger>();
+    /* filesystem sync of written storage files, see setWriteSync */
+    private static volatile IO.SYNC                   WRITE_SYNC  = IO.SYNC.META_AND_DATA;
 
     static {
         /* shutdown hook to save all open Storages */
@@ -343,13 +351,15 @@ public class JSonStorage {
     public static <E> E restoreFromByteArray(final byte[] jsonByteArray, final boolean plain, final byte[] key, final TypeRef<E> type, final E def) {
         if (jsonByteArray != null) {
             try {
-                final byte[] byteArray;
                 if (!plain) {
-                    byteArray = decryptByteArray(jsonByteArray, key, key);
+                    if (jsonByteArray.length == 0) {
+                        return def;
+                    }
+                    // decrypt while parsing, no extra decrypted byte[] copy
+                    return restoreFromInputStream(createCipherInputStream(new ByteArrayInputStream(jsonByteArray), key, key), type, def);
                 } else {
-                    byteArray = jsonByteArray;
+                    return restoreFromByteArray(jsonByteArray, type, def);
                 }
-                return restoreFromByteArray(byteArray, type, def);
             } catch (final Exception e) {
                 org.appwork.utils.logging2.extmanager.LoggerFactory.getDefaultLogger().log(e);
             }
@@ -357,28 +367,6 @@ public class JSonStorage {
         return def;
     }
 
-    private static byte[] decryptByteArray(final byte[] b, final byte[] key, final byte[] iv) {
-        try {
-            final IvParameterSpec ivSpec = new IvParameterSpec(iv);
-            final SecretKeySpec skeySpec = new SecretKeySpec(key, "AES");
-            final Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
-            cipher.init(Cipher.DECRYPT_MODE, skeySpec, ivSpec);
-            return cipher.doFinal(b);
-        } catch (final Exception e) {
-            org.appwork.utils.logging2.extmanager.LoggerFactory.getDefaultLogger().log(e);
-            final IvParameterSpec ivSpec = new IvParameterSpec(iv);
-            final SecretKeySpec skeySpec = new SecretKeySpec(key, "AES");
-            try {
-                final Cipher cipher = Cipher.getInstance("AES/CBC/nopadding");
-                cipher.init(Cipher.DECRYPT_MODE, skeySpec, ivSpec);
-                cipher.doFinal(b);
-            } catch (final Exception e1) {
-                org.appwork.utils.logging2.extmanager.LoggerFactory.getDefaultLogger().log(e1);
-            }
-        }
-        return null;
-    }
-
     public static CipherInputStream createCipherInputStream(final InputStream inputStream, final byte[] key, final byte[] iv) throws NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException, InvalidAlgorithmParameterException {
         final IvParameterSpec ivSpec = new IvParameterSpec(iv);
         final SecretKeySpec skeySpec = new SecretKeySpec(key, "AES");
@@ -387,6 +375,14 @@ public class JSonStorage {
         return new CipherInputStream(inputStream, cipher);
     }
 
+    public static CipherOutputStream createCipherOutputStream(final OutputStream outputStream, final byte[] key, final byte[] iv) throws NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException, InvalidAlgorithmParameterException {
+        final IvParameterSpec ivSpec = new IvParameterSpec(iv);
+        final SecretKeySpec skeySpec = new SecretKeySpec(key, "AES");
+        final Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+        cipher.init(Cipher.ENCRYPT_MODE, skeySpec, ivSpec);
+        return new CipherOutputStream(outputStream, cipher);
+    }
+
     public static byte[] encryptByteArray(final byte[] data, final byte[] key, final byte[] iv) throws NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException, InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException {
         final Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
         final IvParameterSpec ivSpec = new IvParameterSpec(iv);
@@ -494,23 +490,52 @@ public class JSonStorage {
         synchronized (lock) {
             final File tmp = new File(file.getAbsolutePath() + ".tmp");
             try {
-                tmp.getParentFile().mkdirs();
-                tmp.delete();
-                if (plain) {
-                    /* uncrypted */
-                    IO.writeToFile(tmp, data);
-                } else {
-                    /* encrypted */
-                    IO.writeToFile(tmp, encryptByteArray(data, key, key));
-                }
-                if (file.exists()) {
-                    if (!file.delete()) {
-                        throw new StorageException("Could not overwrite file: " + file.getAbsolutePath());
+                JSonStorage.writeAndReplace(file, tmp, plain, key, new StreamWriter() {
+
+                    @Override
+                    protected void write(final OutputStream os) throws IOException {
+                        try {
+                            os.write(data);
+                        } finally {
+                            os.close();
+                        }
                     }
-                }
-                if (!tmp.renameTo(file)) {
-                    throw new StorageException("Could not rename file: " + tmp + " to " + file);
-                }
+                });
+            } catch (final StorageException e) {
+                throw e;
+            } catch (final Exception e) {
+                throw new StorageException("Can not write to " + tmp.getAbsolutePath(), e);
+            } finally {
+                JSonStorage.unLock(file);
+            }
+        }
+    }
+
+    /**
+     * serializes object directly into the file, encrypted storages through a {@link CipherOutputStream}. Neither the json nor the
+     * encrypted json is kept in memory as byte[]
+     *
+     * @param file
+     * @param plain
+     * @param key
+     * @param object
+     * @throws StorageException
+     */
+    public static void storeTo(final File file, final boolean plain, final byte[] key, final Object object) throws StorageException {
+        final Object lock = JSonStorage.requestLock(file);
+        synchronized (lock) {
+            final File tmp = new File(file.getAbsolutePath() + ".tmp");
+            try {
+                JSonStorage.writeAndReplace(file, tmp, plain, key, new StreamWriter() {
+
+                    @Override
+                    protected void write(final OutputStream os) throws Exception {
+                        // closes os
+                        JSonStorage.JSON_MAPPER.writeObject(os, object);
+                    }
+                });
+            } catch (final StorageException e) {
+                throw e;
             } catch (final Exception e) {
                 throw new StorageException("Can not write to " + tmp.getAbsolutePath(), e);
             } finally {
@@ -519,13 +544,81 @@ public class JSonStorage {
         }
     }
 
+    private static abstract class StreamWriter {
+        /**
+         * must close os
+         */
+        protected abstract void write(OutputStream os) throws Exception;
+    }
+
+    /**
+     * writes into tmp (synced to disk on close, see {@link #setWriteSync(IO.SYNC)}) and replaces file with it
+     */
+    private static void writeAndReplace(final File file, final File tmp, final boolean plain, final byte[] key, final StreamWriter writer) throws Exception {
+        tmp.getParentFile().mkdirs();
+        tmp.delete();
+        final FileOutputStream fos = new FileOutputStream(tmp);
+        boolean deleteTmp = true;
+        try {
+            final OutputStream syncOnClose = new FilterOutputStream(fos) {
+                private boolean closed = false;
+
+                @Override
+                public void write(final byte[] b, final int off, final int len) throws IOException {
+                    this.out.write(b, off, len);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    if (!this.closed) {
+                        this.closed = true;
+                        switch (JSonStorage.WRITE_SYNC) {
+                        case DATA:
+                            fos.getChannel().force(false);
+                            break;
+                        case META_AND_DATA:
+                            fos.getChannel().force(true);
+                            break;
+                        default:
+                            break;
+                        }
+                        fos.close();
+                    }
+                }
+            };
+            final OutputStream os;
+            if (plain) {
+                /* uncrypted */
+                os = new BufferedOutputStream(syncOnClose, 32 * 1024);
+            } else {
+                /* encrypted */
+                os = new BufferedOutputStream(createCipherOutputStream(syncOnClose, key, key), 32 * 1024);
+            }
+            writer.write(os);
+            deleteTmp = false;
+        } finally {
+            fos.close();
+            if (deleteTmp) {
+                tmp.delete();
+            }
+        }
+        if (file.exists()) {
+            if (!file.delete()) {
+                throw new StorageException("Could not overwrite file: " + file.getAbsolutePath());
+            }
+        }
+        if (!tmp.renameTo(file)) {
+            throw new StorageException("Could not rename file: " + tmp + " to " + file);
+        }
+    }
+
     /**
      * @param file
      * @param packageData
      */
     public static void saveTo(final File file, final Object packageData) {
         final boolean plain = file.getName().toLowerCase().endsWith(".json");
-        JSonStorage.saveTo(file, plain, JSonStorage.KEY, JSonStorage.serializeToJsonByteArray(packageData));
+        JSonStorage.storeTo(file, plain, JSonStorage.KEY, packageData);
     }
 
     /**
@@ -551,33 +644,7 @@ public class JSonStorage {
 
     public static void saveTo(final String pathname, final byte[] jsonBytes, final byte[] key) {
         final File file = Application.getResource(pathname);
-        final Object lock = JSonStorage.requestLock(file);
-        synchronized (lock) {
-            try {
-                final File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
-                tmp.getParentFile().mkdirs();
-                tmp.delete();
-                if (new Regex(pathname, ".+\\.json").matches()) {
-                    /* uncrypted */
-                    IO.writeToFile(tmp, jsonBytes);
-                } else {
-                    /* encrypted */
-                    IO.writeToFile(tmp, encryptByteArray(jsonBytes, key, key));
-                }
-                if (file.exists()) {
-                    if (!file.delete()) {
-                        throw new StorageException("Could not overwrite file: " + file);
-                    }
-                }
-                if (!tmp.renameTo(file)) {
-                    throw new StorageException("Could not rename file: " + tmp + " to " + file);
-                }
-            } catch (final Exception e) {
-                throw new StorageException(e);
-            } finally {
-                JSonStorage.unLock(file);
-            }
-        }
+        JSonStorage.saveTo(file, new Regex(pathname, ".+\\.json").matches(), key, jsonBytes);
     }
 
     /**
@@ -607,13 +674,28 @@ public class JSonStorage {
         JSonStorage.JSON_MAPPER = mapper;
     }
 
+    public static IO.SYNC getWriteSync() {
+        return JSonStorage.WRITE_SYNC;
+    }
+
+    /**
+     * @param sync
+     *            sync written storage files to the filesystem before they replace the old file, default is {@link IO.SYNC#META_AND_DATA}. Use
+     *            {@link IO.SYNC#NONE} to skip the fsync per save if losing recent saves on a power loss is acceptable
+     */
+    public static void setWriteSync(final IO.SYNC sync) {
+        JSonStorage.WRITE_SYNC = sync == null ? IO.SYNC.META_AND_DATA : sync;
+    }
+
     /**
      * @param string
      * @param list
      */
     public static void storeTo(final String string, final Object list) {
         try {
-            JSonStorage.saveTo(string, JSonStorage.serializeToJsonByteArray(list));
+            JSonStorage.storeTo(Application.getResource(string), new Regex(string, ".+\\.json").matches(), JSonStorage.KEY, list);
+        } catch (final StorageException e) {
+            throw e;
         } catch (final Exception e) {
             throw new StorageException(e);
         }
@@ -0,0 +1,275 @@
+/**
+ *
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ *
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header.
+ *
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ *
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.storage;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.appwork.utils.IO;
+
+/**
+ * append only journal for {@link JsonKeyValueStorage}. Each record contains the changes of one save batch and is framed as
+ *
+ * [int length][int crc32][payload]
+ *
+ * payload is the (encrypted) json of a map with "c" (cleared), "p" (put values) and "r" (removed keys). A torn record at the end of the
+ * file (crash during append) fails the length/crc check, replay stops there and the tail is cut off.
+ *
+ * The first record of a journal only contains "b", the crc32 of the storage file the journal is based on. Once the storage file got
+ * rewritten (compaction, crash before {@link #reset()}) the journal no longer matches and is discarded instead of being replayed over the
+ * newer storage file.
+ *
+ * @author daniel
+ *
+ */
+class JsonKeyValueJournal {
+    protected static final String CLEARED = "c";
+    protected static final String PUT     = "p";
+    protected static final String REMOVED = "r";
+    protected static final String BASE    = "b";
+
+    public static File getJournalFile(final File storageFile) {
+        return new File(storageFile.getAbsolutePath() + ".journal");
+    }
+
+    private final File    file;
+    private final File    storageFile;
+    private final boolean plain;
+    private final byte[]  key;
+    private long          length = -1;
+
+    protected JsonKeyValueJournal(final File storageFile, final boolean plain, final byte[] key) {
+        this.file = JsonKeyValueJournal.getJournalFile(storageFile);
+        this.storageFile = storageFile;
+        this.plain = plain;
+        this.key = key;
+    }
+
+    public File getFile() {
+        return this.file;
+    }
+
+    /**
+     * @return current size of the journal file
+     */
+    public synchronized long length() {
+        if (this.length < 0) {
+            this.length = this.file.length();
+        }
+        return this.length;
+    }
+
+    /**
+     * @return crc32 of the current storage file or -1 if it does not exist
+     * @throws IOException
+     */
+    private long getStorageChecksum() throws IOException {
+        if (!this.storageFile.isFile()) {
+            return -1;
+        }
+        final CRC32 crc = new CRC32();
+        crc.update(IO.readFile(this.storageFile));
+        return crc.getValue();
+    }
+
+    /**
+     * replays all valid records into map, a journal that is not based on the current storage file is discarded
+     *
+     * @param map
+     * @return number of replayed records
+     * @throws IOException
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized int replay(final Map<String, Object> map) throws IOException {
+        if (!this.file.isFile()) {
+            this.length = 0;
+            return 0;
+        }
+        final byte[] data = IO.readFile(this.file);
+        final CRC32 crc = new CRC32();
+        int position = 0;
+        int records = 0;
+        boolean base = false;
+        while (data.length - position >= 8) {
+            final int length = readInt(data, position);
+            final int checksum = readInt(data, position + 4);
+            if (length < 0 || length > data.length - position - 8) {
+                break;
+            }
+            crc.reset();
+            crc.update(data, position + 8, length);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            final byte[] payload = new byte[length];
+            System.arraycopy(data, position + 8, payload, 0, length);
+            final HashMap<String, Object> record = JSonStorage.restoreFromByteArray(payload, this.plain, this.key, TypeRef.HASHMAP, null);
+            if (record == null) {
+                break;
+            }
+            if (!base) {
+                final Object storageChecksum = record.get(BASE);
+                if (!(storageChecksum instanceof Number) || ((Number) storageChecksum).longValue() != this.getStorageChecksum()) {
+                    // storage file got written after this journal, its records are already part of it
+                    org.appwork.utils.logging2.extmanager.LoggerFactory.getDefaultLogger().info("Discard stale journal " + this.file);
+                    this.reset();
+                    return 0;
+                }
+                base = true;
+                position += 8 + length;
+                continue;
+            }
+            if (Boolean.TRUE.equals(record.get(CLEARED))) {
+                map.clear();
+            }
+            final Object removed = record.get(REMOVED);
+            if (removed instanceof List) {
+                for (final Object key : (List<Object>) removed) {
+                    map.remove(key);
+                }
+            }
+            final Object put = record.get(PUT);
+            if (put instanceof Map) {
+                map.putAll((Map<String, Object>) put);
+            }
+            position += 8 + length;
+            records++;
+        }
+        if (position < data.length) {
+            // cut off torn/corrupt tail, following appends must not end up behind it
+            org.appwork.utils.logging2.extmanager.LoggerFactory.getDefaultLogger().info("Truncate journal " + this.file + " from " + data.length + " to " + position);
+            final RandomAccessFile raf = new RandomAccessFile(this.file, "rw");
+            try {
+                raf.setLength(position);
+            } finally {
+                raf.close();
+            }
+        }
+        this.length = position;
+        return records;
+    }
+
+    /**
+     * appends the record and forces it to disk, an empty journal starts with the base record of the current storage file
+     *
+     * @param json
+     * @throws IOException
+     */
+    public synchronized void append(final byte[] json) throws IOException {
+        final long length = this.length();
+        byte[] record = this.createRecord(json);
+        if (length == 0) {
+            final HashMap<String, Object> baseRecord = new HashMap<String, Object>();
+            baseRecord.put(BASE, this.getStorageChecksum());
+            final byte[] base = this.createRecord(JSonStorage.getMapper().objectToByteArray(baseRecord));
+            final byte[] both = new byte[base.length + record.length];
+            System.arraycopy(base, 0, both, 0, base.length);
+            System.arraycopy(record, 0, both, base.length, record.length);
+            record = both;
+        }
+        this.file.getParentFile().mkdirs();
+        final FileOutputStream fos = new FileOutputStream(this.file, true);
+        boolean okay = false;
+        try {
+            fos.write(record);
+            fos.getChannel().force(false);
+            okay = true;
+        } finally {
+            fos.close();
+            if (okay) {
+                this.length = length + record.length;
+            } else {
+                this.length = -1;
+            }
+        }
+    }
+
+    /**
+     * @param json
+     * @return framed and (encrypted) record
+     * @throws IOException
+     */
+    private byte[] createRecord(final byte[] json) throws IOException {
+        final byte[] payload;
+        if (this.plain) {
+            payload = json;
+        } else {
+            try {
+                payload = JSonStorage.encryptByteArray(json, this.key, this.key);
+            } catch (final Exception e) {
+                throw new IOException(e.getMessage());
+            }
+        }
+        final CRC32 crc = new CRC32();
+        crc.update(payload);
+        final byte[] record = new byte[8 + payload.length];
+        writeInt(record, 0, payload.length);
+        writeInt(record, 4, (int) crc.getValue());
+        System.arraycopy(payload, 0, record, 8, payload.length);
+        return record;
+    }
+
+    /**
+     * removes the journal, call after its records have been written to the storage file. Not required for correctness, a journal that
+     * survives a crash before reset no longer matches the new storage file and is discarded on replay
+     */
+    public synchronized void reset() throws IOException {
+        if (this.file.exists() && !this.file.delete()) {
+            final RandomAccessFile raf = new RandomAccessFile(this.file, "rw");
+            try {
+                raf.setLength(0);
+            } finally {
+                raf.close();
+            }
+        }
+        this.length = 0;
+    }
+
+    private static int readInt(final byte[] b, final int offset) {
+        return (b[offset] & 0xff) << 24 | (b[offset + 1] & 0xff) << 16 | (b[offset + 2] & 0xff) << 8 | b[offset + 3] & 0xff;
+    }
+
+    private static void writeInt(final byte[] b, final int offset, final int value) {
+        b[offset] = (byte) (value >>> 24);
+        b[offset + 1] = (byte) (value >>> 16);
+        b[offset + 2] = (byte) (value >>> 8);
+        b[offset + 3] = (byte) value;
+    }
+}
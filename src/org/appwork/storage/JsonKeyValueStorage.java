@@ -38,6 +38,7 @@ import java.io.IOException;
 import java.lang.reflect.Array;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -45,6 +46,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.appwork.exceptions.WTFException;
@@ -62,12 +65,19 @@ public class JsonKeyValueStorage extends Storage {
     private final File                file;
     private final boolean             plain;
     private final byte[]              key;
-    private boolean                   autoPutValues = true;
-    private volatile boolean          closed        = false;
-    private final AtomicLong          setMark       = new AtomicLong(0);
-    private final AtomicLong          writeMark     = new AtomicLong(0);
+    private boolean                   autoPutValues             = true;
+    private volatile boolean          closed                    = false;
+    private final AtomicLong          setMark                   = new AtomicLong(0);
+    private final AtomicLong          writeMark                 = new AtomicLong(0);
+    private final AtomicLong          modifications             = new AtomicLong(0);
     private boolean                   enumCacheEnabled;
-    private final ModifyLock          modifyLock    = new ModifyLock();
+    private final ModifyLock          modifyLock                = new ModifyLock();
+    private final JsonKeyValueJournal journal;
+    private volatile boolean          journalEnabled            = false;
+    private volatile boolean          journalCompactionRequired = false;
+    private volatile long             journalCompactionSize     = 64 * 1024;
+    private final Set<String>         journalDirtyKeys          = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final AtomicBoolean       journalCleared            = new AtomicBoolean(false);
 
     private final Map<String, Object> getMap() {
         return internalMap;
@@ -110,6 +120,7 @@ public class JsonKeyValueStorage extends Storage {
         this.file = file;
         this.name = file.getName();
         this.key = key;
+        this.journal = new JsonKeyValueJournal(file, plain, key);
         if (resource != null) {
             getDefaultLogger().info("Load JSon Storage from Classpath url: " + resource);
             try {
@@ -124,6 +135,27 @@ public class JsonKeyValueStorage extends Storage {
             final HashMap<String, Object> load = JSonStorage.restoreFrom(file, plain, key, TypeRef.HASHMAP, new HashMap<String, Object>());
             this.putAll(load);
         }
+        this.replayJournal();
+    }
+
+    /**
+     * applies the records of an existing journal (see {@link #setJournalEnabled(boolean)}) on top of the loaded storage file
+     */
+    private void replayJournal() {
+        if (this.journal.getFile().isFile()) {
+            getLock().writeLock();
+            try {
+                final int records = this.journal.replay(getMap());
+                getDefaultLogger().info("Replayed " + records + " record(s) from journal: " + this.journal.getFile());
+            } catch (final IOException e) {
+                getDefaultLogger().log(e);
+            } finally {
+                this.modifications.incrementAndGet();
+                getLock().writeUnlock();
+            }
+            // write the replayed records into the storage file with next save
+            this.requestSave();
+        }
     }
 
     /**
@@ -148,8 +180,39 @@ public class JsonKeyValueStorage extends Storage {
         this.file = Application.getResource("cfg/" + name + (plain ? ".json" : ".ejs"));
         getDefaultLogger().finer("Read Config: " + this.file.getAbsolutePath());
         this.key = key;
+        this.journal = new JsonKeyValueJournal(this.file, plain, key);
         final HashMap<String, Object> load = JSonStorage.restoreFrom(this.file, plain, key, TypeRef.HASHMAP, new HashMap<String, Object>());
         this.putAll(load);
+        this.replayJournal();
+    }
+
+    public boolean isJournalEnabled() {
+        return this.journalEnabled;
+    }
+
+    /**
+     * in journal mode, save appends the changed keys as a record to an append only journal (storage file + .journal) instead of
+     * rewriting the whole storage file. The journal gets compacted into the storage file once it grows larger than
+     * {@link #getJournalCompactionSize()} or the storage file. An existing journal is always replayed on load.
+     *
+     * @param enabled
+     */
+    public void setJournalEnabled(final boolean enabled) {
+        if (enabled && !this.journalEnabled) {
+            this.journalDirtyKeys.clear();
+            this.journalCleared.set(false);
+            // changes before are not tracked, so first write must be a full one
+            this.journalCompactionRequired = this.setMark.get() != this.writeMark.get();
+        }
+        this.journalEnabled = enabled;
+    }
+
+    public long getJournalCompactionSize() {
+        return this.journalCompactionSize;
+    }
+
+    public void setJournalCompactionSize(final long journalCompactionSize) {
+        this.journalCompactionSize = Math.max(0, journalCompactionSize);
     }
 
     @Override
@@ -157,7 +220,9 @@ public class JsonKeyValueStorage extends Storage {
         getLock().writeLock();
         try {
             getMap().clear();
+            this.journalCleared.set(true);
         } finally {
+            this.modifications.incrementAndGet();
             getLock().writeUnlock();
             this.requestSave();
         }
@@ -307,6 +372,8 @@ public class JsonKeyValueStorage extends Storage {
         } finally {
             getLock().readUnlock(readL);
             if (requestSave) {
+                this.modifications.incrementAndGet();
+                this.markJournalDirty(key);
                 this.requestSave();
             }
         }
@@ -489,6 +556,7 @@ public class JsonKeyValueStorage extends Storage {
                     }
                 }
             } finally {
+                this.modifications.incrementAndGet();
                 getLock().writeUnlock();
             }
         }
@@ -504,6 +572,8 @@ public class JsonKeyValueStorage extends Storage {
             try {
                 return getMap().remove(key);
             } finally {
+                this.modifications.incrementAndGet();
+                this.markJournalDirty(key);
                 getLock().writeUnlock();
                 this.requestSave();
             }
@@ -511,6 +581,17 @@ public class JsonKeyValueStorage extends Storage {
         return null;
     }
 
+    private void markJournalDirty(final String key) {
+        if (this.journalEnabled) {
+            this.journalDirtyKeys.add(key);
+        }
+    }
+
+    @Override
+    public long getModificationCounter() {
+        return this.modifications.get();
+    }
+
     public void requestSave() {
         final long mark = this.setMark.incrementAndGet();
         if (false) {
@@ -525,6 +606,18 @@ public class JsonKeyValueStorage extends Storage {
         }
         final long lastSetMark = this.setMark.get();
         if (this.writeMark.getAndSet(lastSetMark) != lastSetMark) {
+            if (this.isJournalEnabled()) {
+                final Runnable run = new Runnable() {
+
+                    @Override
+                    public void run() {
+                        JsonKeyValueStorage.this.writeJournal();
+                    }
+
+                };
+                StorageHandler.enqueueWrite(run, file.getAbsolutePath(), true);
+                return;
+            }
             final boolean readL = getLock().readLock();
             final byte[] jsonBytes;
             try {
@@ -537,7 +630,15 @@ public class JsonKeyValueStorage extends Storage {
 
                 @Override
                 public void run() {
-                    JSonStorage.saveTo(file, plain, key, jsonBytes);
+                    synchronized (journal) {
+                        // an old journal no longer matches the new storage file, so a crash before reset cannot replay it
+                        JSonStorage.saveTo(file, plain, key, jsonBytes);
+                        try {
+                            journal.reset();
+                        } catch (final IOException e) {
+                            throw new StorageException(e);
+                        }
+                    }
                 }
 
             };
@@ -545,6 +646,90 @@ public class JsonKeyValueStorage extends Storage {
         }
     }
 
+    /**
+     * appends one record with all changes since last record, compacts the journal into the storage file if required
+     */
+    private void writeJournal() {
+        synchronized (this.journal) {
+            try {
+                if (this.journalCompactionRequired) {
+                    this.compactJournal();
+                    return;
+                }
+                final byte[] record = this.createJournalRecord();
+                if (record != null) {
+                    this.journal.append(record);
+                }
+                if (this.journal.length() > Math.max(this.getJournalCompactionSize(), this.file.length())) {
+                    this.compactJournal();
+                }
+            } catch (final IOException e) {
+                // unknown state of the journal, write everything next time
+                this.journalCompactionRequired = true;
+                throw new StorageException(e);
+            }
+        }
+    }
+
+    private byte[] createJournalRecord() {
+        final HashMap<String, Object> put = new HashMap<String, Object>();
+        final ArrayList<String> removed = new ArrayList<String>();
+        final boolean readL = getLock().readLock();
+        try {
+            // clear() sets the flag with the write lock held, so flag and map are read in the same state
+            final boolean cleared = this.journalCleared.getAndSet(false);
+            final Iterator<String> it = this.journalDirtyKeys.iterator();
+            while (it.hasNext()) {
+                // remove before reading the value, a concurrent put marks the key dirty again
+                final String key = it.next();
+                it.remove();
+                if (getMap().containsKey(key)) {
+                    put.put(key, getMap().get(key));
+                } else {
+                    removed.add(key);
+                }
+            }
+            if (!cleared && put.size() == 0 && removed.size() == 0) {
+                return null;
+            }
+            final HashMap<String, Object> record = new HashMap<String, Object>();
+            if (cleared) {
+                record.put(JsonKeyValueJournal.CLEARED, Boolean.TRUE);
+            }
+            if (put.size() > 0) {
+                record.put(JsonKeyValueJournal.PUT, put);
+            }
+            if (removed.size() > 0) {
+                record.put(JsonKeyValueJournal.REMOVED, removed);
+            }
+            return JSonStorage.getMapper().objectToByteArray(record);
+        } finally {
+            getLock().readUnlock(readL);
+        }
+    }
+
+    /**
+     * writes the complete storage file and removes the journal. The journal is bound to the crc32 of the storage file it is based on,
+     * after a crash before reset it no longer matches the new storage file and gets discarded instead of replayed. The storage file is
+     * synced before the journal is removed unless {@link JSonStorage#setWriteSync(org.appwork.utils.IO.SYNC)} disabled it
+     *
+     * @throws IOException
+     */
+    private void compactJournal() throws IOException {
+        final byte[] jsonBytes;
+        getLock().writeLock();
+        try {
+            jsonBytes = JSonStorage.getMapper().objectToByteArray(getMap());
+            this.journalDirtyKeys.clear();
+            this.journalCleared.set(false);
+        } finally {
+            getLock().writeUnlock();
+        }
+        JSonStorage.saveTo(this.file, this.plain, this.key, jsonBytes);
+        this.journal.reset();
+        this.journalCompactionRequired = false;
+    }
+
     /**
      * @param autoPutValues
      *            the autoPutValues to set
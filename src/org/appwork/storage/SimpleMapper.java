@@ -33,19 +33,23 @@
  * ==================================================================================================================================================== */
 package org.appwork.storage;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.lang.reflect.Type;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 
-import org.appwork.storage.simplejson.JSonFactory;
 import org.appwork.storage.simplejson.JSonNode;
+import org.appwork.storage.simplejson.JSonTokenizer;
+import org.appwork.storage.simplejson.JSonUtils;
 import org.appwork.storage.simplejson.ParserException;
 import org.appwork.storage.simplejson.mapper.JSonMapper;
 import org.appwork.storage.simplejson.mapper.MapperException;
-import org.appwork.utils.IO;
 
 /**
  * @author thomas
@@ -112,11 +116,18 @@ public class SimpleMapper implements JSONMapper {
         }
     }
 
+    /**
+     * binds the json document directly from the tokenizer without building a JSonNode tree
+     *
+     * @param tokenizer
+     * @param type
+     * @return
+     * @throws JSonMapperException
+     */
     @SuppressWarnings("unchecked")
-    @Override
-    public <T> T stringToObject(final String jsonString, final Class<T> clazz) throws JSonMapperException {
+    protected <T> T tokensToObject(final JSonTokenizer tokenizer, final Type type) throws JSonMapperException {
         try {
-            return (T) mapper.jsonToObject(new JSonFactory(jsonString).parse(), clazz);
+            return (T) mapper.jsonToObject(tokenizer, type);
         } catch (final ParserException e) {
             throw new JSonMapperException(e);
         } catch (final MapperException e) {
@@ -124,15 +135,14 @@ public class SimpleMapper implements JSONMapper {
         }
     }
 
+    @Override
+    public <T> T stringToObject(final String jsonString, final Class<T> clazz) throws JSonMapperException {
+        return this.<T> tokensToObject(new JSonTokenizer(jsonString), clazz);
+    }
+
     @Override
     public <T> T stringToObject(final String jsonString, final TypeRef<T> type) throws JSonMapperException {
-        try {
-            return mapper.jsonToObject(new JSonFactory(jsonString).parse(), type);
-        } catch (final ParserException e) {
-            throw new JSonMapperException(e);
-        } catch (final MapperException e) {
-            throw new JSonMapperException(e);
-        }
+        return this.<T> tokensToObject(new JSonTokenizer(jsonString), type.getType());
     }
 
     @Override
@@ -166,7 +176,10 @@ public class SimpleMapper implements JSONMapper {
     public void writeObject(OutputStream outputStream, Object value) throws JSonMapperException {
         try {
             try {
-                outputStream.write(objectToByteArray(value));
+                // no String or byte[] copy of the whole document
+                final Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, "UTF-8"), 16384);
+                JSonUtils.write(mapper.create(value), writer);
+                writer.flush();
             } finally {
                 if (outputStream != null) {
                     outputStream.close();
@@ -174,6 +187,8 @@ public class SimpleMapper implements JSONMapper {
             }
         } catch (IOException e) {
             throw new JSonMapperException(e);
+        } catch (final MapperException e) {
+            throw new JSonMapperException(e);
         }
     }
 
@@ -189,7 +204,7 @@ public class SimpleMapper implements JSONMapper {
     public <T> T inputStreamToObject(InputStream inputStream, TypeRef<T> type) throws JSonMapperException {
         try {
             try {
-                return byteArrayToObject(IO.readStream(-1, inputStream), type);
+                return this.<T> tokensToObject(new JSonTokenizer(inputStream), type.getType());
             } finally {
                 if (inputStream != null) {
                     inputStream.close();
@@ -202,20 +217,12 @@ public class SimpleMapper implements JSONMapper {
 
     @Override
     public <T> T byteArrayToObject(byte[] byteArray, TypeRef<T> type) throws JSonMapperException {
-        try {
-            return stringToObject(new String(byteArray, "UTF-8"), type);
-        } catch (UnsupportedEncodingException e) {
-            throw new JSonMapperException(e);
-        }
+        return this.<T> tokensToObject(new JSonTokenizer(byteArray), type.getType());
     }
 
     @Override
     public <T> T byteArrayToObject(byte[] byteArray, Class<T> clazz) throws JSonMapperException {
-        try {
-            return stringToObject(new String(byteArray, "UTF-8"), clazz);
-        } catch (UnsupportedEncodingException e) {
-            throw new JSonMapperException(e);
-        }
+        return this.<T> tokensToObject(new JSonTokenizer(byteArray), clazz);
     }
 
     /**
@@ -230,7 +237,7 @@ public class SimpleMapper implements JSONMapper {
     public <T> T inputStreamToObject(InputStream inputStream, Class<T> clazz) throws JSonMapperException {
         try {
             try {
-                return byteArrayToObject(IO.readStream(-1, inputStream), clazz);
+                return this.<T> tokensToObject(new JSonTokenizer(inputStream), clazz);
             } finally {
                 if (inputStream != null) {
                     inputStream.close();
@@ -94,4 +94,14 @@ public abstract class Storage {
 
     abstract public int size();
 
+    /**
+     * counter that changes on every modification of the stored values. Used by readers that cache values (e.g. KeyHandler) to detect
+     * changes without locking.
+     *
+     * @return modification counter or -1 if this storage does not track modifications
+     */
+    public long getModificationCounter() {
+        return -1;
+    }
+
 }
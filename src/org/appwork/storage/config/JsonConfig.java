@@ -41,8 +41,10 @@ import java.util.concurrent.atomic.AtomicInteger;
 import org.appwork.exceptions.WTFException;
 import org.appwork.storage.config.annotations.CustomStorageName;
 import org.appwork.storage.config.annotations.StorageHandlerFactoryAnnotation;
+import org.appwork.storage.config.handler.ConfigInterfaceGenerator;
 import org.appwork.storage.config.handler.StorageHandler;
 import org.appwork.utils.Application;
+import org.appwork.utils.logging2.extmanager.LoggerFactory;
 import org.appwork.utils.swing.dialog.Dialog;
 
 /**
@@ -84,6 +86,37 @@ public class JsonConfig {
 
     private static final HashMap<String, LockObject>      LOCKS = new HashMap<String, LockObject>();
 
+    private static volatile boolean                       GENERATED_IMPLEMENTATIONS_ENABLED = false;
+
+    public static boolean isGeneratedImplementationsEnabled() {
+        return JsonConfig.GENERATED_IMPLEMENTATIONS_ENABLED;
+    }
+
+    /**
+     * if enabled, new ConfigInterface instances are generated classes (see {@link ConfigInterfaceGenerator}) instead of
+     * {@link Proxy} instances. Falls back to {@link Proxy} if the interface is not supported.
+     *
+     * @param enabled
+     */
+    public static void setGeneratedImplementationsEnabled(final boolean enabled) {
+        JsonConfig.GENERATED_IMPLEMENTATIONS_ENABLED = enabled;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends ConfigInterface> T createInstance(final ClassLoader cl, final Class<T> configInterface, final StorageHandler<T> storageHandler) {
+        if (JsonConfig.isGeneratedImplementationsEnabled()) {
+            try {
+                final T ret = ConfigInterfaceGenerator.create(storageHandler);
+                if (ret != null) {
+                    return ret;
+                }
+            } catch (final Throwable e) {
+                LoggerFactory.getDefaultLogger().log(e);
+            }
+        }
+        return (T) Proxy.newProxyInstance(cl, new Class<?>[] { configInterface }, storageHandler);
+    }
+
     public static <T extends ConfigInterface> String getStorageName(Class<T> configInterface) {
         String id = configInterface.getName();
         CustomStorageName anno = configInterface.getAnnotation(CustomStorageName.class);
@@ -130,7 +163,7 @@ public class JsonConfig {
                     }
 
                 }
-                final T ret = (T) Proxy.newProxyInstance(cl, new Class<?>[] { configInterface }, lock.getStorageHandler());
+                final T ret = JsonConfig.createInstance(cl, configInterface, (StorageHandler<T>) lock.getStorageHandler());
                 synchronized (JsonConfig.CACHE) {
                     if (lock.getLock().get() == 1) {
                         JsonConfig.CACHE.put(path, ret);
@@ -186,7 +219,7 @@ public class JsonConfig {
                         lock.setStorageHandler(new StorageHandler<T>(path, configInterface));
                     }
                 }
-                final T ret = (T) Proxy.newProxyInstance(cl, new Class<?>[] { configInterface }, lock.getStorageHandler());
+                final T ret = JsonConfig.createInstance(cl, configInterface, (StorageHandler<T>) lock.getStorageHandler());
                 synchronized (JsonConfig.CACHE) {
                     if (lock.getLock().get() == 1) {
                         JsonConfig.CACHE.put(id, ret);
@@ -240,7 +273,7 @@ public class JsonConfig {
                         lock.setStorageHandler(new StorageHandler<T>(urlPath, configInterface));
                     }
                 }
-                final T ret = (T) Proxy.newProxyInstance(cl, new Class<?>[] { configInterface }, lock.getStorageHandler());
+                final T ret = JsonConfig.createInstance(cl, configInterface, (StorageHandler<T>) lock.getStorageHandler());
                 synchronized (JsonConfig.CACHE) {
                     if (lock.getLock().get() == 1) {
                         JsonConfig.CACHE.put(id, ret);
@@ -42,6 +42,14 @@ import org.appwork.storage.config.annotations.DefaultBooleanValue;
  *
  */
 public class BooleanKeyHandler extends KeyHandler<Boolean> {
+    private static class BooleanValueSnapshot extends ValueSnapshot<Boolean> {
+        private final boolean booleanValue;
+
+        private BooleanValueSnapshot(final long modificationCounter, final Boolean value) {
+            super(modificationCounter, value);
+            this.booleanValue = value != null && value.booleanValue();
+        }
+    }
 
     /**
      * @param storageHandler
@@ -74,7 +82,16 @@ public class BooleanKeyHandler extends KeyHandler<Boolean> {
 
     }
 
+    @Override
+    protected ValueSnapshot<Boolean> createValueSnapshot(final long modificationCounter, final Boolean value) {
+        return new BooleanValueSnapshot(modificationCounter, value);
+    }
+
     public boolean isEnabled() {
+        final ValueSnapshot<Boolean> snapshot = this.getValueSnapshot();
+        if (snapshot != null) {
+            return ((BooleanValueSnapshot) snapshot).booleanValue;
+        }
         final Boolean value = this.getValue();
         if (value == null || value == false) {
             return false;
@@ -0,0 +1,337 @@
+/**
+ *
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ *
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header.
+ *
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ *
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.storage.config.handler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.appwork.storage.config.ConfigInterface;
+import org.appwork.utils.reflection.ClassFileWriter;
+
+/**
+ * generates a concrete class for a {@link ConfigInterface} at runtime. Getters and setters directly call the {@link KeyHandler} stored in
+ * a final field of the generated class, so there is no Proxy dispatch, no Method lookup and no Object[] allocation per call.
+ *
+ * Generated methods have no branches, so no StackMapTable is required.
+ *
+ * @author daniel
+ *
+ */
+public class ConfigInterfaceGenerator {
+    private static class Generated {
+        private final String         layout;
+        private final Constructor<?> constructor;
+
+        private Generated(final String layout, final Constructor<?> constructor) {
+            this.layout = layout;
+            this.constructor = constructor;
+        }
+    }
+
+    private static enum Kind {
+        STORAGEHANDLER,
+        TOSTRING,
+        GET,
+        GET_INT,
+        GET_LONG,
+        GET_BOOLEAN,
+        SET
+    }
+
+    private static class Entry {
+        private final Method method;
+        private final Kind   kind;
+        private final int    handlerIndex;
+
+        private Entry(final Method method, final Kind kind, final int handlerIndex) {
+            this.method = method;
+            this.kind = kind;
+            this.handlerIndex = handlerIndex;
+        }
+    }
+
+    private static final HashMap<Class<?>, Generated> CACHE          = new HashMap<Class<?>, Generated>();
+    private static final AtomicInteger                COUNTER        = new AtomicInteger(0);
+    private static final String                       OBJECT         = "java/lang/Object";
+    private static final String                       STORAGEHANDLER = ClassFileWriter.getInternalName(StorageHandler.class);
+    private static final String                       KEYHANDLER     = ClassFileWriter.getInternalName(KeyHandler.class);
+    private static final String                       CONSTRUCTOR    = "(" + ClassFileWriter.getDescriptor(StorageHandler.class) + "[" + ClassFileWriter.getDescriptor(KeyHandler.class) + ")V";
+
+    /**
+     * @param storageHandler
+     * @return generated implementation or null if the interface is not supported (eg non public types or methods without
+     *         {@link KeyHandler})
+     * @throws Exception
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends ConfigInterface> T create(final StorageHandler<T> storageHandler) throws Exception {
+        final Class<T> configInterface = storageHandler.getConfigInterface();
+        if (!Modifier.isPublic(configInterface.getModifiers()) || StorageHandler.PROFILER_MAP != null || StorageHandler.PROFILER_CALLNUM_MAP != null) {
+            return null;
+        }
+        if (storageHandler.getClass().getMethod("invoke", Object.class, Method.class, Object[].class).getDeclaringClass() != StorageHandler.class) {
+            // custom invoke logic
+            return null;
+        }
+        final Method[] methods = configInterface.getMethods();
+        // getMethods has no specified order
+        Arrays.sort(methods, new Comparator<Method>() {
+            @Override
+            public int compare(final Method o1, final Method o2) {
+                return getId(o1).compareTo(getId(o2));
+            }
+        });
+        final IdentityHashMap<KeyHandler<?>, Integer> handlerIndices = new IdentityHashMap<KeyHandler<?>, Integer>();
+        final List<KeyHandler<?>> handlers = new ArrayList<KeyHandler<?>>();
+        final List<Entry> entries = new ArrayList<Entry>();
+        final StringBuilder layout = new StringBuilder();
+        String lastId = null;
+        for (final Method method : methods) {
+            final String id = getId(method);
+            if (id.equals(lastId)) {
+                // same method declared in several interfaces
+                continue;
+            }
+            lastId = id;
+            final Kind kind;
+            KeyHandler<?> handler = null;
+            if ("_getStorageHandler".equals(method.getName()) && method.getParameterTypes().length == 0) {
+                kind = Kind.STORAGEHANDLER;
+            } else if ("toString".equals(method.getName()) && method.getParameterTypes().length == 0) {
+                kind = Kind.TOSTRING;
+            } else if (isObjectMethod(method)) {
+                continue;
+            } else {
+                handler = storageHandler.getKeyHandler(method);
+                if (handler == null) {
+                    return null;
+                }
+                final Class<?> returnType = method.getReturnType();
+                if (handler.isGetter(method)) {
+                    if (method.getParameterTypes().length != 0 || !ClassFileWriter.isAccessible(returnType)) {
+                        return null;
+                    } else if (returnType == int.class && handler instanceof IntegerKeyHandler) {
+                        kind = Kind.GET_INT;
+                    } else if (returnType == long.class && handler instanceof LongKeyHandler) {
+                        kind = Kind.GET_LONG;
+                    } else if (returnType == boolean.class && handler instanceof BooleanKeyHandler) {
+                        kind = Kind.GET_BOOLEAN;
+                    } else {
+                        kind = Kind.GET;
+                    }
+                } else if (method.getParameterTypes().length == 1 && returnType == void.class && ClassFileWriter.isAccessible(method.getParameterTypes()[0])) {
+                    kind = Kind.SET;
+                } else {
+                    return null;
+                }
+            }
+            int handlerIndex = -1;
+            if (handler != null) {
+                final Integer existing = handlerIndices.get(handler);
+                if (existing == null) {
+                    handlerIndex = handlers.size();
+                    handlerIndices.put(handler, handlerIndex);
+                    handlers.add(handler);
+                } else {
+                    handlerIndex = existing.intValue();
+                }
+            }
+            entries.add(new Entry(method, kind, handlerIndex));
+            layout.append(id).append(':').append(kind).append(':').append(handlerIndex).append(';');
+        }
+        Generated generated;
+        synchronized (CACHE) {
+            generated = CACHE.get(configInterface);
+            if (generated == null || !generated.layout.equals(layout.toString())) {
+                final String className = configInterface.getName() + "$$Generated" + COUNTER.incrementAndGet();
+                ClassLoader parent = configInterface.getClassLoader();
+                if (parent == null) {
+                    parent = ConfigInterfaceGenerator.class.getClassLoader();
+                }
+                final Class<?> clazz = ClassFileWriter.define(parent, className, generate(className, configInterface, entries, handlers));
+                generated = new Generated(layout.toString(), clazz.getConstructor(StorageHandler.class, KeyHandler[].class));
+                CACHE.put(configInterface, generated);
+            }
+        }
+        return (T) generated.constructor.newInstance(storageHandler, handlers.toArray(new KeyHandler<?>[handlers.size()]));
+    }
+
+    private static String getId(final Method method) {
+        return method.getName() + ClassFileWriter.getMethodDescriptor(method);
+    }
+
+    private static boolean isObjectMethod(final Method method) {
+        try {
+            return Modifier.isPublic(Object.class.getMethod(method.getName(), method.getParameterTypes()).getModifiers());
+        } catch (final NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    private static Class<?> getFieldType(final Kind kind) {
+        switch (kind) {
+        case GET_INT:
+            return IntegerKeyHandler.class;
+        case GET_LONG:
+            return LongKeyHandler.class;
+        case GET_BOOLEAN:
+            return BooleanKeyHandler.class;
+        default:
+            return KeyHandler.class;
+        }
+    }
+
+    private static byte[] generate(final String className, final Class<?> configInterface, final List<Entry> entries, final List<KeyHandler<?>> handlers) throws IOException {
+        final ClassFileWriter.ConstantPool pool = new ClassFileWriter.ConstantPool();
+        final String thisClass = className.replace('.', '/');
+        // field type per handler, specialized handlers are used with their own type
+        final Class<?>[] fieldTypes = new Class<?>[handlers.size()];
+        for (final Entry entry : entries) {
+            if (entry.handlerIndex >= 0) {
+                final Class<?> fieldType = getFieldType(entry.kind);
+                if (fieldTypes[entry.handlerIndex] == null || fieldTypes[entry.handlerIndex] == KeyHandler.class) {
+                    fieldTypes[entry.handlerIndex] = fieldType;
+                }
+            }
+        }
+        final ByteArrayOutputStream methodBytes = new ByteArrayOutputStream();
+        final DataOutputStream methods = new DataOutputStream(methodBytes);
+        int methodCount = 0;
+        final int shField = pool.field(thisClass, "sh", ClassFileWriter.getDescriptor(StorageHandler.class));
+        final int[] handlerFields = new int[handlers.size()];
+        for (int index = 0; index < handlers.size(); index++) {
+            handlerFields[index] = pool.field(thisClass, "h" + index, ClassFileWriter.getDescriptor(fieldTypes[index]));
+        }
+        // constructor
+        {
+            final ClassFileWriter.Code code = new ClassFileWriter.Code();
+            code.op(0x2a).op(0xb7).u2(pool.method(OBJECT, "<init>", "()V"));
+            code.op(0x2a).op(0x2b).op(0xb5).u2(shField);
+            for (int index = 0; index < handlers.size(); index++) {
+                code.op(0x2a).op(0x2c).pushInt(pool, index).op(0x32);
+                if (fieldTypes[index] != KeyHandler.class) {
+                    code.op(0xc0).u2(pool.clazz(ClassFileWriter.getInternalName(fieldTypes[index])));
+                }
+                code.op(0xb5).u2(handlerFields[index]);
+            }
+            code.op(0xb1);
+            ClassFileWriter.writeMethod(methods, pool, "<init>", CONSTRUCTOR, code, 3, 3);
+            methodCount++;
+        }
+        for (final Entry entry : entries) {
+            final Method method = entry.method;
+            final Class<?> returnType = method.getReturnType();
+            final ClassFileWriter.Code code = new ClassFileWriter.Code();
+            int maxStack = 2;
+            int maxLocals = 1;
+            switch (entry.kind) {
+            case STORAGEHANDLER:
+                code.op(0x2a).op(0xb4).u2(shField);
+                if (returnType != StorageHandler.class) {
+                    code.op(0xc0).u2(pool.clazz(ClassFileWriter.getInternalName(returnType)));
+                }
+                code.op(0xb0);
+                break;
+            case TOSTRING:
+                code.op(0x2a).op(0xb4).u2(shField).op(0xb6).u2(pool.method(OBJECT, "toString", "()Ljava/lang/String;")).op(0xb0);
+                break;
+            case GET_INT:
+                code.op(0x2a).op(0xb4).u2(handlerFields[entry.handlerIndex]).op(0xb6).u2(pool.method(ClassFileWriter.getInternalName(IntegerKeyHandler.class), "getIntValue", "()I")).op(0xac);
+                break;
+            case GET_LONG:
+                code.op(0x2a).op(0xb4).u2(handlerFields[entry.handlerIndex]).op(0xb6).u2(pool.method(ClassFileWriter.getInternalName(LongKeyHandler.class), "getLongValue", "()J")).op(0xad);
+                break;
+            case GET_BOOLEAN:
+                code.op(0x2a).op(0xb4).u2(handlerFields[entry.handlerIndex]).op(0xb6).u2(pool.method(ClassFileWriter.getInternalName(BooleanKeyHandler.class), "isEnabled", "()Z")).op(0xac);
+                break;
+            case GET:
+                code.op(0x2a).op(0xb4).u2(shField);
+                code.op(0x2a).op(0xb4).u2(handlerFields[entry.handlerIndex]);
+                code.op(0xb6).u2(pool.method(STORAGEHANDLER, "getValue", "(L" + KEYHANDLER + ";)Ljava/lang/Object;"));
+                if (returnType.isPrimitive()) {
+                    final Class<?> wrapper = ClassFileWriter.getWrapper(returnType);
+                    final String owner = Number.class.isAssignableFrom(wrapper) ? "java/lang/Number" : ClassFileWriter.getInternalName(wrapper);
+                    code.op(0xc0).u2(pool.clazz(owner));
+                    code.op(0xb6).u2(pool.method(owner, returnType.getName() + "Value", "()" + ClassFileWriter.getDescriptor(returnType)));
+                } else if (returnType != Object.class) {
+                    code.op(0xc0).u2(pool.clazz(ClassFileWriter.getInternalName(returnType)));
+                }
+                code.op(ClassFileWriter.getReturnOpcode(returnType));
+                break;
+            case SET:
+                final Class<?> parameterType = method.getParameterTypes()[0];
+                code.op(0x2a).op(0xb4).u2(shField);
+                code.op(0x2a).op(0xb4).u2(handlerFields[entry.handlerIndex]);
+                code.op(ClassFileWriter.getLoadOpcode(parameterType));
+                if (parameterType.isPrimitive()) {
+                    final String wrapper = ClassFileWriter.getInternalName(ClassFileWriter.getWrapper(parameterType));
+                    code.op(0xb8).u2(pool.method(wrapper, "valueOf", "(" + ClassFileWriter.getDescriptor(parameterType) + ")L" + wrapper + ";"));
+                }
+                code.op(0xb6).u2(pool.method(STORAGEHANDLER, "setValue", "(L" + KEYHANDLER + ";Ljava/lang/Object;)V"));
+                code.op(0xb1);
+                maxStack = 4;
+                maxLocals = 1 + ClassFileWriter.getSize(parameterType);
+                break;
+            }
+            ClassFileWriter.writeMethod(methods, pool, method.getName(), ClassFileWriter.getMethodDescriptor(method), code, maxStack, maxLocals);
+            methodCount++;
+        }
+        final ByteArrayOutputStream fieldBytes = new ByteArrayOutputStream();
+        final DataOutputStream fields = new DataOutputStream(fieldBytes);
+        fields.writeShort(0x12);
+        fields.writeShort(pool.utf8("sh"));
+        fields.writeShort(pool.utf8(ClassFileWriter.getDescriptor(StorageHandler.class)));
+        fields.writeShort(0);
+        for (int index = 0; index < handlers.size(); index++) {
+            fields.writeShort(0x12);
+            fields.writeShort(pool.utf8("h" + index));
+            fields.writeShort(pool.utf8(ClassFileWriter.getDescriptor(fieldTypes[index])));
+            fields.writeShort(0);
+        }
+        fields.flush();
+        methods.flush();
+        return ClassFileWriter.toClassFile(pool, thisClass, OBJECT, new String[] { ClassFileWriter.getInternalName(configInterface) }, 1 + handlers.size(), fieldBytes.toByteArray(), methodCount, methodBytes.toByteArray());
+    }
+}
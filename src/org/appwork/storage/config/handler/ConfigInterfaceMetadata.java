@@ -0,0 +1,284 @@
+/**
+ *
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ *
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header.
+ *
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ *
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.storage.config.handler;
+
+import java.lang.ref.SoftReference;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.WeakHashMap;
+
+import org.appwork.storage.InvalidTypeException;
+import org.appwork.storage.JSonStorage;
+import org.appwork.storage.config.ConfigInterface;
+import org.appwork.storage.config.InterfaceParseException;
+import org.appwork.storage.config.annotations.AllowStorage;
+import org.appwork.utils.logging2.extmanager.LoggerFactory;
+
+/**
+ * keys, types and getter/setter methods of a {@link ConfigInterface}. The interface is scanned and validated only once per class, every
+ * further {@link StorageHandler} for the same interface looks up its keys in this index and creates the {@link KeyHandler} of a key on
+ * first access.
+ *
+ * @author daniel
+ *
+ */
+public class ConfigInterfaceMetadata {
+    public static class Entry {
+        private final String key;
+        private final Type   type;
+        private Method       getMethod = null;
+        private Method       setMethod = null;
+
+        private Entry(final String key, final Type type) {
+            this.key = key;
+            this.type = type;
+        }
+
+        public String getKey() {
+            return this.key;
+        }
+
+        /**
+         * @return the type the {@link KeyHandler} gets created for
+         */
+        public Type getType() {
+            return this.type;
+        }
+
+        public Method getGetMethod() {
+            return this.getMethod;
+        }
+
+        public Method getSetMethod() {
+            return this.setMethod;
+        }
+    }
+
+    /* weak keys do not pin the interface classes (and their classloaders), StorageHandlers hold their metadata strongly */
+    private static final WeakHashMap<Class<?>, SoftReference<ConfigInterfaceMetadata>> CACHE = new WeakHashMap<Class<?>, SoftReference<ConfigInterfaceMetadata>>();
+
+    /**
+     * returns the (cached) metadata for the given interface
+     *
+     * @param configInterface
+     * @return
+     */
+    public static ConfigInterfaceMetadata get(final Class<? extends ConfigInterface> configInterface) {
+        synchronized (CACHE) {
+            final SoftReference<ConfigInterfaceMetadata> ref = CACHE.get(configInterface);
+            ConfigInterfaceMetadata ret = ref == null ? null : ref.get();
+            if (ret == null) {
+                ret = new ConfigInterfaceMetadata(configInterface);
+                CACHE.put(configInterface, new SoftReference<ConfigInterfaceMetadata>(ret));
+            }
+            return ret;
+        }
+    }
+
+    private final Class<? extends ConfigInterface> configInterface;
+    private final List<Entry>                      entries;
+    private final HashMap<String, Entry>           keyMap;
+    private final HashMap<Method, Entry>           methodMap;
+    private final List<InterfaceParseException>    errors;
+
+    private ConfigInterfaceMetadata(final Class<? extends ConfigInterface> configInterface) {
+        this.configInterface = configInterface;
+        final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>();
+        final ArrayList<InterfaceParseException> errors = new ArrayList<InterfaceParseException>();
+        this.parse(entries, errors);
+        this.entries = Collections.unmodifiableList(new ArrayList<Entry>(entries.values()));
+        this.keyMap = new HashMap<String, Entry>(entries);
+        this.methodMap = new HashMap<Method, Entry>();
+        for (final Entry entry : this.entries) {
+            if (entry.getMethod != null) {
+                this.methodMap.put(entry.getMethod, entry);
+            }
+            if (entry.setMethod != null) {
+                this.methodMap.put(entry.setMethod, entry);
+            }
+        }
+        this.errors = Collections.unmodifiableList(errors);
+    }
+
+    public Class<? extends ConfigInterface> getConfigInterface() {
+        return this.configInterface;
+    }
+
+    public List<Entry> getEntries() {
+        return this.entries;
+    }
+
+    /**
+     * @param key
+     *            lower case key
+     * @return entry of the key or null
+     */
+    public Entry getEntry(final String key) {
+        return this.keyMap.get(key);
+    }
+
+    /**
+     * @param method
+     * @return entry the getter/setter method belongs to or null
+     */
+    public Entry getEntry(final Method method) {
+        return this.methodMap.get(method);
+    }
+
+    /**
+     * @return all problems found while parsing the interface. Broken methods are not part of {@link #getEntries()}
+     */
+    public List<InterfaceParseException> getErrors() {
+        return this.errors;
+    }
+
+    private int getParameterCount(final Method method) {
+        if (method != null) {
+            return method.getParameterTypes().length;
+        }
+        return 0;
+    }
+
+    private boolean isAllowed(final Method method, final Type type) {
+        final AllowStorage allow = method.getAnnotation(AllowStorage.class);
+        if (allow != null) {
+            for (final Class<?> c : allow.value()) {
+                if (type == c) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private Entry getEntry(final LinkedHashMap<String, Entry> entries, final String key, final Type type) {
+        Entry ret = entries.get(key);
+        if (ret == null) {
+            ret = new Entry(key, type);
+            entries.put(key, ret);
+        }
+        return ret;
+    }
+
+    private void parse(final LinkedHashMap<String, Entry> entries, final List<InterfaceParseException> errors) {
+        final HashMap<String, Method> keyGetterMap = new HashMap<String, Method>();
+        final HashMap<String, Method> keySetterMap = new HashMap<String, Method>();
+        String key;
+        Class<?> clazz = this.configInterface;
+        while (clazz != null && clazz != ConfigInterface.class) {
+            for (final Method m : clazz.getDeclaredMethods()) {
+                final String methodName = m.getName().toLowerCase(Locale.ENGLISH);
+                if (methodName.startsWith("get") || methodName.startsWith("is")) {
+                    key = methodName.substring(methodName.startsWith("get") ? 3 : 2);
+                    // we do not allow to setters/getters with the same name but
+                    // different cases. this only confuses the user when editing
+                    // the later config file
+                    if (keyGetterMap.containsKey(key)) {
+                        if (m.getName().equals(keyGetterMap.get(key).getName()) && this.getParameterCount(m) == this.getParameterCount(keyGetterMap.get(key))) {
+                            // overridden method. that's ok
+                            LoggerFactory.getDefaultLogger().info("Overridden Config Key found " + keyGetterMap.get(key) + "<-->" + m);
+                            continue;
+                        }
+                        errors.add(new InterfaceParseException("Key " + key + " Dupe found! " + keyGetterMap.get(key) + "<-->" + m));
+                        continue;
+                    }
+                    keyGetterMap.put(key, m);
+                    if (this.getParameterCount(m) > 0) {
+                        errors.add(new InterfaceParseException("Getter " + m + " has parameters."));
+                        keyGetterMap.remove(key);
+                        continue;
+                    }
+                    final boolean getter = methodName.startsWith("get");
+                    try {
+                        // check the type first, reading the annotations is expensive and only required for unstorable types
+                        JSonStorage.canStore(m.getGenericReturnType(), false);
+                    } catch (final InvalidTypeException e) {
+                        // only get-methods may whitelist their return type
+                        if (!getter || !this.isAllowed(m, m.getReturnType()) && !this.isAllowed(m, e.getType())) {
+                            errors.add(new InterfaceParseException(e));
+                            keyGetterMap.remove(key);
+                            continue;
+                        }
+                    }
+                    this.getEntry(entries, key, m.getGenericReturnType()).getMethod = m;
+                } else if (methodName.startsWith("set")) {
+                    key = methodName.substring(3);
+                    if (keySetterMap.containsKey(key)) {
+                        if (m.getName().equals(keyGetterMap.get(key).getName()) && this.getParameterCount(m) == this.getParameterCount(keyGetterMap.get(key))) {
+                            // overridden method. that's ok
+                            LoggerFactory.getDefaultLogger().info("Overridden Config Key found " + keyGetterMap.get(key) + "<-->" + m);
+                            continue;
+                        }
+                        errors.add(new InterfaceParseException("Key " + key + " Dupe found! " + keySetterMap.get(key) + "<-->" + m));
+                        continue;
+                    }
+                    keySetterMap.put(key, m);
+                    if (this.getParameterCount(m) != 1) {
+                        errors.add(new InterfaceParseException("Setter " + m + " has !=1 parameters."));
+                        keySetterMap.remove(key);
+                        continue;
+                    }
+                    if (m.getReturnType() != void.class) {
+                        errors.add(new InterfaceParseException("Setter " + m + " has a returntype != void"));
+                        keySetterMap.remove(key);
+                        continue;
+                    }
+                    try {
+                        JSonStorage.canStore(m.getGenericParameterTypes()[0], false);
+                    } catch (final InvalidTypeException e) {
+                        if (!this.isAllowed(m, e.getType())) {
+                            errors.add(new InterfaceParseException(e));
+                            keySetterMap.remove(key);
+                            continue;
+                        }
+                    }
+                    this.getEntry(entries, key, m.getGenericParameterTypes()[0]).setMethod = m;
+                } else {
+                    errors.add(new InterfaceParseException("Only getter and setter allowed:" + m));
+                    continue;
+                }
+            }
+            // run down the calss hirarchy to find all methods. getMethods does
+            // not work, because it only finds public methods
+            final Class<?>[] interfaces = clazz.getInterfaces();
+            clazz = interfaces[0];
+        }
+    }
+}
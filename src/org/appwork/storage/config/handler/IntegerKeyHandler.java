@@ -45,6 +45,15 @@ import org.appwork.storage.config.annotations.SpinnerValidator;
  *
  */
 public class IntegerKeyHandler extends KeyHandler<Integer> {
+    private static class IntegerValueSnapshot extends ValueSnapshot<Integer> {
+        private final int intValue;
+
+        private IntegerValueSnapshot(final long modificationCounter, final Integer value) {
+            super(modificationCounter, value);
+            this.intValue = value == null ? 0 : value.intValue();
+        }
+    }
+
     private SpinnerValidator validator;
     private int              min;
     private int              max;
@@ -87,6 +96,25 @@ public class IntegerKeyHandler extends KeyHandler<Integer> {
         }
     }
 
+    @Override
+    protected ValueSnapshot<Integer> createValueSnapshot(final long modificationCounter, final Integer value) {
+        return new IntegerValueSnapshot(modificationCounter, value);
+    }
+
+    /**
+     * lock free and without boxing if the value is available as snapshot
+     *
+     * @return
+     */
+    public int getIntValue() {
+        final ValueSnapshot<Integer> snapshot = this.getValueSnapshot();
+        if (snapshot != null) {
+            return ((IntegerValueSnapshot) snapshot).intValue;
+        }
+        final Integer value = this.getValue();
+        return value == null ? 0 : value.intValue();
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -70,6 +70,7 @@ import org.appwork.storage.config.annotations.ValidatorFactory;
 import org.appwork.storage.config.events.ConfigEvent;
 import org.appwork.storage.config.events.ConfigEvent.Types;
 import org.appwork.storage.config.events.ConfigEventSender;
+import org.appwork.utils.ReflectionUtils;
 import org.appwork.utils.reflection.Clazz;
 
 /**
@@ -77,6 +78,30 @@ import org.appwork.utils.reflection.Clazz;
  *
  */
 public abstract class KeyHandler<RawClass> {
+    /**
+     * immutable, already typed value of a KeyHandler. valid as long as the modification counter of the primitive storage did not change
+     *
+     * @author daniel
+     *
+     */
+    protected static class ValueSnapshot<T> {
+        private final long modificationCounter;
+        private final T    value;
+
+        protected ValueSnapshot(final long modificationCounter, final T value) {
+            this.modificationCounter = modificationCounter;
+            this.value = value;
+        }
+
+        public long getModificationCounter() {
+            return this.modificationCounter;
+        }
+
+        public T getValue() {
+            return this.value;
+        }
+    }
+
     private static final String                   ANNOTATION_PACKAGE_NAME = CryptedStorage.class.getPackage().getName();
     private static final String                   PACKAGE_NAME            = PlainStorage.class.getPackage().getName();
     private final String                          key;
@@ -90,6 +115,8 @@ public abstract class KeyHandler<RawClass> {
     protected AbstractCustomValueGetter<RawClass> customValueGetter;
     protected String[]                            backwardsCompatibilityLookupKeys;
     private boolean                               defaultOnNull           = false;
+    private boolean                               valueSnapshotAllowed    = false;
+    private volatile ValueSnapshot<RawClass>      valueSnapshot           = null;
 
     /**
      * @param storageHandler
@@ -473,6 +500,10 @@ public abstract class KeyHandler<RawClass> {
     }
 
     public RawClass getValue() {
+        final ValueSnapshot<RawClass> snapshot = this.getValueSnapshot();
+        if (snapshot != null) {
+            return snapshot.getValue();
+        }
         synchronized (this) {
             RawClass value = this.getValueStorage();
             if (this.customValueGetter != null) {
@@ -485,6 +516,55 @@ public abstract class KeyHandler<RawClass> {
         }
     }
 
+    /**
+     * lock free read path. returns the current snapshot or null if this handler does not support snapshots or the value cannot be
+     * cached (no stored value yet).
+     *
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    protected ValueSnapshot<RawClass> getValueSnapshot() {
+        if (!this.valueSnapshotAllowed) {
+            return null;
+        }
+        final Storage storage = this.getStorageHandler().getPrimitiveStorage();
+        final long modificationCounter = storage.getModificationCounter();
+        final ValueSnapshot<RawClass> snapshot = this.valueSnapshot;
+        if (snapshot != null && snapshot.getModificationCounter() == modificationCounter) {
+            return snapshot;
+        } else if (modificationCounter < 0) {
+            return null;
+        }
+        synchronized (this) {
+            // read counter before value, so a concurrent modification invalidates this snapshot on next access
+            final long counter = storage.getModificationCounter();
+            if (!storage.hasProperty(this.getKey())) {
+                // default value may be dynamic
+                return null;
+            }
+            RawClass value = this.getValueStorage();
+            if (value == null && this.isDefaultOnNull()) {
+                return null;
+            } else if (value instanceof Number) {
+                value = (RawClass) ReflectionUtils.castNumber((Number) value, this.getRawClass());
+            }
+            final ValueSnapshot<RawClass> ret = this.createValueSnapshot(counter, value);
+            this.valueSnapshot = ret;
+            return ret;
+        }
+    }
+
+    protected ValueSnapshot<RawClass> createValueSnapshot(final long modificationCounter, final RawClass value) {
+        return new ValueSnapshot<RawClass>(modificationCounter, value);
+    }
+
+    /**
+     * @return true if values are immutable and can be read via {@link #getValueSnapshot()}
+     */
+    protected boolean isValueSnapshotAllowed() {
+        return this.isPrimitive() && this.customValueGetter == null;
+    }
+
     public RawClass getValueStorage() {
         final Storage storage = this.getStorageHandler().getPrimitiveStorage();
         if (storage.hasProperty(this.getKey())) {
@@ -589,6 +669,7 @@ public abstract class KeyHandler<RawClass> {
         this.checkBadAnnotations(this.getAllowedAnnotations());
         this.initDefaults();
         this.initHandler();
+        this.valueSnapshotAllowed = this.isValueSnapshotAllowed();
         final String kk = "CFG:" + this.storageHandler.getConfigInterface().getName() + "." + this.key;
         final String sys = System.getProperty(kk);
         if (sys != null) {
@@ -646,6 +727,7 @@ public abstract class KeyHandler<RawClass> {
 
     public void setDefaultValue(final RawClass c) {
         this.defaultValue = c;
+        this.valueSnapshot = null;
     }
 
     /**
@@ -687,6 +769,7 @@ public abstract class KeyHandler<RawClass> {
                     }
                     this.validateValue(newValue);
                     this.putValue(newValue);
+                    this.valueSnapshot = null;
                     getStorageHandler().requestSave();
                 }
             }
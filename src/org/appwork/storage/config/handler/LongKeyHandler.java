@@ -45,6 +45,15 @@ import org.appwork.storage.config.annotations.SpinnerValidator;
  *
  */
 public class LongKeyHandler extends KeyHandler<Long> {
+    private static class LongValueSnapshot extends ValueSnapshot<Long> {
+        private final long longValue;
+
+        private LongValueSnapshot(final long modificationCounter, final Long value) {
+            super(modificationCounter, value);
+            this.longValue = value == null ? 0l : value.longValue();
+        }
+    }
+
     private SpinnerValidator validator;
     private long             min;
     private long             max;
@@ -88,6 +97,25 @@ public class LongKeyHandler extends KeyHandler<Long> {
         }
     }
 
+    @Override
+    protected ValueSnapshot<Long> createValueSnapshot(final long modificationCounter, final Long value) {
+        return new LongValueSnapshot(modificationCounter, value);
+    }
+
+    /**
+     * lock free and without boxing if the value is available as snapshot
+     *
+     * @return
+     */
+    public long getLongValue() {
+        final ValueSnapshot<Long> snapshot = this.getValueSnapshot();
+        if (snapshot != null) {
+            return ((LongValueSnapshot) snapshot).longValue;
+        }
+        final Long value = this.getValue();
+        return value == null ? 0l : value.longValue();
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -41,12 +41,16 @@ import java.lang.reflect.Type;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.appwork.exceptions.WTFException;
@@ -54,14 +58,12 @@ import org.appwork.scheduler.DelayedRunnable;
 import org.appwork.shutdown.ShutdownController;
 import org.appwork.shutdown.ShutdownEvent;
 import org.appwork.shutdown.ShutdownRequest;
-import org.appwork.storage.InvalidTypeException;
 import org.appwork.storage.JSonStorage;
 import org.appwork.storage.JsonKeyValueStorage;
 import org.appwork.storage.Storage;
 import org.appwork.storage.StorageException;
 import org.appwork.storage.config.ConfigInterface;
 import org.appwork.storage.config.InterfaceParseException;
-import org.appwork.storage.config.annotations.AllowStorage;
 import org.appwork.storage.config.annotations.CryptedStorage;
 import org.appwork.storage.config.annotations.DefaultBooleanArrayValue;
 import org.appwork.storage.config.annotations.DefaultByteArrayValue;
@@ -69,6 +71,7 @@ import org.appwork.storage.config.annotations.DefaultDoubleArrayValue;
 import org.appwork.storage.config.annotations.DefaultFloatArrayValue;
 import org.appwork.storage.config.annotations.DefaultIntArrayValue;
 import org.appwork.storage.config.annotations.DefaultLongArrayValue;
+import org.appwork.storage.config.annotations.JournaledStorage;
 import org.appwork.storage.config.events.ConfigEvent;
 import org.appwork.storage.config.events.ConfigEventSender;
 import org.appwork.utils.Application;
@@ -171,6 +174,9 @@ public class StorageHandler<T extends ConfigInterface> implements InvocationHand
             }
             ret = new JsonKeyValueStorage(new File(filePath.getAbsolutePath() + ".json"), urlClassPath, true, null);
         }
+        if (configInterface.getAnnotation(JournaledStorage.class) != null) {
+            ret.setJournalEnabled(true);
+        }
         return ret;
     }
 
@@ -264,8 +270,12 @@ public class StorageHandler<T extends ConfigInterface> implements InvocationHand
     }
 
     private final Class<T>                         configInterface;
-    protected final HashMap<Method, KeyHandler<?>> method2KeyHandlerMap      = new HashMap<Method, KeyHandler<?>>();
-    protected final HashMap<String, KeyHandler<?>> key2KeyHandlerMap         = new HashMap<String, KeyHandler<?>>();
+    /* KeyHandlers are created on first access, see getKeyHandler(ConfigInterfaceMetadata.Entry) */
+    protected final Map<Method, KeyHandler<?>>     method2KeyHandlerMap      = new ConcurrentHashMap<Method, KeyHandler<?>>();
+    protected final Map<String, KeyHandler<?>>     key2KeyHandlerMap         = new ConcurrentHashMap<String, KeyHandler<?>>();
+    /* keys whose KeyHandler failed to init */
+    private final Set<String>                      brokenKeys                = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private volatile ConfigInterfaceMetadata       metadata                  = null;
     protected final Storage                        primitiveStorage;
     private final File                             path;
     private ConfigEventSender<Object>              eventSender               = null;
@@ -633,13 +643,74 @@ public class StorageHandler<T extends ConfigInterface> implements InvocationHand
     @SuppressWarnings("unchecked")
     public <E extends KeyHandler<?>> E getKeyHandler(final String key, final Class<E> class1) {
         final String keyHandlerKey = key.toLowerCase(Locale.ENGLISH);
-        final KeyHandler<?> ret = key2KeyHandlerMap.get(keyHandlerKey);
+        KeyHandler<?> ret = key2KeyHandlerMap.get(keyHandlerKey);
+        if (ret == null) {
+            final ConfigInterfaceMetadata metadata = this.metadata;
+            final ConfigInterfaceMetadata.Entry entry = metadata == null ? null : metadata.getEntry(keyHandlerKey);
+            if (entry != null) {
+                ret = this.getKeyHandler(entry);
+            }
+        }
         if (ret != null) {
             return (E) ret;
         }
         throw new NullPointerException("No KeyHandler: " + key + " in " + getConfigInterface());
     }
 
+    /**
+     * @param method
+     *            getter or setter of the interface
+     * @return KeyHandler of the method or null
+     */
+    protected KeyHandler<?> getKeyHandler(final Method method) {
+        final KeyHandler<?> ret = this.method2KeyHandlerMap.get(method);
+        if (ret != null) {
+            return ret;
+        }
+        final ConfigInterfaceMetadata metadata = this.metadata;
+        final ConfigInterfaceMetadata.Entry entry = metadata == null ? null : metadata.getEntry(method);
+        if (entry != null) {
+            return this.getKeyHandler(entry);
+        }
+        return null;
+    }
+
+    /**
+     * creates and inits the KeyHandler of entry on first access
+     *
+     * @param entry
+     * @return the KeyHandler or null if it failed to init
+     */
+    protected KeyHandler<?> getKeyHandler(final ConfigInterfaceMetadata.Entry entry) {
+        KeyHandler<?> ret = this.key2KeyHandlerMap.get(entry.getKey());
+        if (ret != null || this.brokenKeys.contains(entry.getKey())) {
+            return ret;
+        }
+        synchronized (this.key2KeyHandlerMap) {
+            ret = this.key2KeyHandlerMap.get(entry.getKey());
+            if (ret != null || this.brokenKeys.contains(entry.getKey())) {
+                return ret;
+            }
+            final KeyHandler<?> kh = this.createKeyHandler(entry.getKey(), entry.getType());
+            if (entry.getGetMethod() != null) {
+                kh.setGetMethod(entry.getGetMethod());
+            }
+            if (entry.getSetMethod() != null) {
+                kh.setSetMethod(entry.getSetMethod());
+            }
+            try {
+                kh.init();
+            } catch (final Throwable e) {
+                this.brokenKeys.add(entry.getKey());
+                this.error(e);
+                return null;
+            }
+            // publish only initialized KeyHandlers
+            this.addKeyHandler(kh);
+            return kh;
+        }
+    }
+
     /**
      * @return
      */
@@ -756,6 +827,41 @@ public class StorageHandler<T extends ConfigInterface> implements InvocationHand
         return this.getKeyHandler(key).getValue();
     }
 
+    /**
+     * getter of {@link #invoke(Object, Method, Object[])}, also used by generated ConfigInterface implementations
+     *
+     * @param handler
+     * @return value, numbers are already casted to the return type of the getter
+     */
+    public Object getValue(final KeyHandler<?> handler) {
+        final KeyHandler.ValueSnapshot<?> snapshot = handler.getValueSnapshot();
+        if (snapshot != null) {
+            // already typed
+            return snapshot.getValue();
+        }
+        final Object ret = handler.getValue();
+        if (ret instanceof Number) {
+            return ReflectionUtils.castNumber((Number) ret, handler.getRawClass());
+        } else {
+            return ret;
+        }
+    }
+
+    /**
+     * setter of {@link #invoke(Object, Method, Object[])}, also used by generated ConfigInterface implementations
+     *
+     * @param handler
+     * @param value
+     */
+    @SuppressWarnings("unchecked")
+    public void setValue(final KeyHandler<?> handler, final Object value) {
+        ((KeyHandler<Object>) handler).setValue(value);
+        final WriteStrategy writeStrategy = this.writeStrategy;
+        if (writeStrategy != null) {
+            writeStrategy.write(this, handler);
+        }
+    }
+
     public WriteStrategy getWriteStrategy() {
         return this.writeStrategy;
     }
@@ -769,20 +875,12 @@ public class StorageHandler<T extends ConfigInterface> implements InvocationHand
         if (m != null) {
             final long t = StorageHandler.PROFILER_MAP == null ? 0 : System.nanoTime();
             try {
-                final KeyHandler<?> handler = this.method2KeyHandlerMap.get(m);
+                final KeyHandler<?> handler = this.getKeyHandler(m);
                 if (handler != null) {
                     if (handler.isGetter(m)) {
-                        final Object ret = handler.getValue();
-                        if (ret instanceof Number) {
-                            return ReflectionUtils.castNumber((Number) ret, handler.getRawClass());
-                        } else {
-                            return ret;
-                        }
+                        return this.getValue(handler);
                     } else {
-                        ((KeyHandler<Object>) handler).setValue(parameter[0]);
-                        if (this.writeStrategy != null) {
-                            this.writeStrategy.write(this, handler);
-                        }
+                        this.setValue(handler, parameter[0]);
                         return null;
                     }
                 } else if (m.getName().equals("toString")) {
@@ -844,198 +942,35 @@ public class StorageHandler<T extends ConfigInterface> implements InvocationHand
     }
 
     /**
+     * looks up the (cached) metadata of the interface. KeyHandlers are not created here but on first access of their key, so problems of
+     * a single KeyHandler (eg bad annotations) are reported when the key is used first
+     *
      * @throws Throwable
      *
      */
     protected void parseInterface() throws Throwable {
-        final HashMap<String, Method> keyGetterMap = new HashMap<String, Method>();
-        final HashMap<String, Method> keySetterMap = new HashMap<String, Method>();
-        String key;
-        final HashMap<String, KeyHandler<?>> parseMap = new HashMap<String, KeyHandler<?>>();
-        Class<?> clazz = getConfigInterface();
-        while (clazz != null && clazz != ConfigInterface.class) {
-            for (final Method m : clazz.getDeclaredMethods()) {
-                final String methodName = m.getName().toLowerCase(Locale.ENGLISH);
-                if (methodName.startsWith("get")) {
-                    key = methodName.substring(3);
-                    // we do not allow to setters/getters with the same name but
-                    // different cases. this only confuses the user when editing
-                    // the
-                    // later config file
-                    if (keyGetterMap.containsKey(key)) {
-                        if (m.getName().equals(keyGetterMap.get(key).getName()) && getParameterCount(m) == getParameterCount(keyGetterMap.get(key))) {
-                            // overridden method. that's ok
-                            LoggerFactory.getDefaultLogger().info("Overridden Config Key found " + keyGetterMap.get(key) + "<-->" + m);
-                            continue;
-                        }
-                        this.error(new InterfaceParseException("Key " + key + " Dupe found! " + keyGetterMap.get(key) + "<-->" + m));
-                        continue;
-                    }
-                    keyGetterMap.put(key, m);
-                    if (getParameterCount(m) > 0) {
-                        this.error(new InterfaceParseException("Getter " + m + " has parameters."));
-                        keyGetterMap.remove(key);
-                        continue;
-                    }
-                    try {
-                        final AllowStorage allow = m.getAnnotation(AllowStorage.class);
-                        boolean found = false;
-                        if (allow != null) {
-                            for (final Class<?> c : allow.value()) {
-                                if (m.getReturnType() == c) {
-                                    found = true;
-                                    break;
-                                }
-                            }
-                        }
-                        if (!found) {
-                            JSonStorage.canStore(m.getGenericReturnType(), false);
-                        }
-                    } catch (final InvalidTypeException e) {
-                        final AllowStorage allow = m.getAnnotation(AllowStorage.class);
-                        boolean found = false;
-                        if (allow != null) {
-                            for (final Class<?> c : allow.value()) {
-                                if (e.getType() == c) {
-                                    found = true;
-                                    break;
-                                }
-                            }
-                        }
-                        if (!found) {
-                            this.error(new InterfaceParseException(e));
-                            keyGetterMap.remove(key);
-                            continue;
-                        }
-                    }
-                    KeyHandler<?> kh = parseMap.get(key);
-                    if (kh == null) {
-                        kh = this.createKeyHandler(key, m.getGenericReturnType());
-                        parseMap.put(key, kh);
-                    }
-                    kh.setGetMethod(m);
-                    addKeyHandler(kh);
-                } else if (methodName.startsWith("is")) {
-                    key = methodName.substring(2);
-                    // we do not allow to setters/getters with the same name but
-                    // different cases. this only confuses the user when editing
-                    // the
-                    // later config file
-                    if (keyGetterMap.containsKey(key)) {
-                        if (m.getName().equals(keyGetterMap.get(key).getName()) && getParameterCount(m) == getParameterCount(keyGetterMap.get(key))) {
-                            // overridden method. that's ok
-                            LoggerFactory.getDefaultLogger().info("Overridden Config Key found " + keyGetterMap.get(key) + "<-->" + m);
-                            continue;
-                        }
-                        this.error(new InterfaceParseException("Key " + key + " Dupe found! " + keyGetterMap.get(key) + "<-->" + m));
-                        continue;
-                    }
-                    keyGetterMap.put(key, m);
-                    if (getParameterCount(m) > 0) {
-                        this.error(new InterfaceParseException("Getter " + m + " has parameters."));
-                        keyGetterMap.remove(key);
-                        continue;
-                    }
-                    try {
-                        JSonStorage.canStore(m.getGenericReturnType(), false);
-                    } catch (final InvalidTypeException e) {
-                        this.error(new InterfaceParseException(e));
-                        keyGetterMap.remove(key);
-                        continue;
-                    }
-                    KeyHandler<?> kh = parseMap.get(key);
-                    if (kh == null) {
-                        kh = this.createKeyHandler(key, m.getGenericReturnType());
-                        parseMap.put(key, kh);
-                    }
-                    kh.setGetMethod(m);
-                    addKeyHandler(kh);
-                } else if (methodName.startsWith("set")) {
-                    key = methodName.substring(3);
-                    if (keySetterMap.containsKey(key)) {
-                        if (m.getName().equals(keyGetterMap.get(key).getName()) && getParameterCount(m) == getParameterCount(keyGetterMap.get(key))) {
-                            // overridden method. that's ok
-                            LoggerFactory.getDefaultLogger().info("Overridden Config Key found " + keyGetterMap.get(key) + "<-->" + m);
-                            continue;
-                        }
-                        this.error(new InterfaceParseException("Key " + key + " Dupe found! " + keySetterMap.get(key) + "<-->" + m));
-                        continue;
-                    }
-                    keySetterMap.put(key, m);
-                    if (getParameterCount(m) != 1) {
-                        this.error(new InterfaceParseException("Setter " + m + " has !=1 parameters."));
-                        keySetterMap.remove(key);
-                        continue;
-                    }
-                    if (m.getReturnType() != void.class) {
-                        this.error(new InterfaceParseException("Setter " + m + " has a returntype != void"));
-                        keySetterMap.remove(key);
-                        continue;
-                    }
-                    try {
-                        JSonStorage.canStore(m.getGenericParameterTypes()[0], false);
-                    } catch (final InvalidTypeException e) {
-                        final AllowStorage allow = m.getAnnotation(AllowStorage.class);
-                        boolean found = false;
-                        if (allow != null) {
-                            for (final Class<?> c : allow.value()) {
-                                if (e.getType() == c) {
-                                    found = true;
-                                    break;
-                                }
-                            }
-                        }
-                        if (!found) {
-                            this.error(new InterfaceParseException(e));
-                            keySetterMap.remove(key);
-                            continue;
-                        }
-                    }
-                    KeyHandler<?> kh = parseMap.get(key);
-                    if (kh == null) {
-                        kh = this.createKeyHandler(key, m.getGenericParameterTypes()[0]);
-                        parseMap.put(key, kh);
-                    }
-                    kh.setSetMethod(m);
-                    addKeyHandler(kh);
-                } else {
-                    this.error(new InterfaceParseException("Only getter and setter allowed:" + m));
-                    continue;
-                }
-            }
-            // run down the calss hirarchy to find all methods. getMethods does
-            // not work, because it only finds public methods
-            final Class<?>[] interfaces = clazz.getInterfaces();
-            clazz = interfaces[0];
-        }
-        final ArrayList<KeyHandler<?>> keyHandlerToRemove = new ArrayList<KeyHandler<?>>();
-        for (final KeyHandler<?> kh : key2KeyHandlerMap.values()) {
-            try {
-                kh.init();
-            } catch (final Throwable e) {
-                this.error(e);
-                keyHandlerToRemove.add(kh);
-            }
-        }
-        for (final KeyHandler<?> kh : keyHandlerToRemove) {
-            removeKeyHandler(kh);
+        final ConfigInterfaceMetadata metadata = ConfigInterfaceMetadata.get(getConfigInterface());
+        for (final InterfaceParseException e : metadata.getErrors()) {
+            this.error(e);
         }
+        this.metadata = metadata;
     }
 
+    /**
+     * @return all KeyHandlers, creates the ones that were not accessed yet
+     */
     public List<KeyHandler<?>> getKeyHandler() {
-        return new ArrayList<KeyHandler<?>>(key2KeyHandlerMap.values());
-    }
-
-    private void removeKeyHandler(KeyHandler<?> keyHandler) {
-        final Method getMethod = keyHandler.getGetMethod();
-        if (getMethod != null) {
-            this.method2KeyHandlerMap.remove(getMethod);
-        }
-        final Method setMethod = keyHandler.getSetMethod();
-        if (setMethod != null) {
-            this.method2KeyHandlerMap.remove(setMethod);
+        final ConfigInterfaceMetadata metadata = this.metadata;
+        final ArrayList<KeyHandler<?>> ret = new ArrayList<KeyHandler<?>>();
+        if (metadata != null) {
+            for (final ConfigInterfaceMetadata.Entry entry : metadata.getEntries()) {
+                final KeyHandler<?> kh = this.getKeyHandler(entry);
+                if (kh != null) {
+                    ret.add(kh);
+                }
+            }
         }
-        this.key2KeyHandlerMap.remove(keyHandler.getKey());
+        return ret;
     }
 
     private void addKeyHandler(KeyHandler<?> keyHandler) {
@@ -1065,7 +1000,7 @@ public class StorageHandler<T extends ConfigInterface> implements InvocationHand
     @Override
     public String toString() {
         final HashMap<String, Object> ret = new HashMap<String, Object>();
-        for (final KeyHandler<?> h : key2KeyHandlerMap.values()) {
+        for (final KeyHandler<?> h : this.getKeyHandler()) {
             try {
                 ret.put(h.getKey(), this.invoke(null, h.getGetMethod(), new Object[] {}));
             } catch (final Throwable e) {
@@ -33,8 +33,11 @@
  * ==================================================================================================================================================== */
 package org.appwork.storage.simplejson;
 
+import java.io.IOException;
 import java.util.ArrayList;
 
+import org.appwork.exceptions.WTFException;
+
 /**
  * @author thomas
  * 
@@ -58,16 +61,12 @@ public class JSonArray extends ArrayList<JSonNode> implements JSonNode {
     @Override
     public String toString() {
         final StringBuilder sb = new StringBuilder();
-
-        sb.append("[");
-        for (final JSonNode n : this) {
-            if (sb.length() > 1) {
-                sb.append(",");
-            }
-            sb.append(n.toString());
+        try {
+            JSonUtils.write(this, sb);
+        } catch (final IOException e) {
+            // StringBuilder does not throw IOExceptions
+            throw new WTFException(e);
         }
-        sb.append("]");
         return sb.toString();
-
     }
 }
@@ -216,10 +216,10 @@ public class JSonFactory {
             while (global + 1 < str.length()) {
                 global++;
                 c = getChar();
-                if (Character.isDigit(c) || !pointFound && c == '.' || pointFound && c == 'e' || pointFound && c == 'E' || potFound && c == '+' || potFound && c == '-') {
+                if (Character.isDigit(c) || !pointFound && !potFound && c == '.' || !potFound && c == 'e' || !potFound && c == 'E' || potFound && c == '+' || potFound && c == '-') {
                     if (c == '.') {
                         pointFound = true;
-                    } else if (pointFound && (c == 'e' || c == 'E')) {
+                    } else if (c == 'e' || c == 'E') {
                         potFound = true;
                     }
                     sb.append(c);
@@ -231,6 +231,13 @@ public class JSonFactory {
             global++;
             if (pointFound) {
                 return new JSonValue(Double.parseDouble(sb.toString()));
+            } else if (potFound) {
+                // 1e5
+                final Number number = JSonTokenizer.parseExponentNumber(sb.toString());
+                if (number instanceof Long) {
+                    return new JSonValue(number.longValue());
+                }
+                return new JSonValue(number.doubleValue());
             } else {
                 return new JSonValue(Long.parseLong(sb.toString()));
             }
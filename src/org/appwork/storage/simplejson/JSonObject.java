@@ -33,9 +33,10 @@
  * ==================================================================================================================================================== */
 package org.appwork.storage.simplejson;
 
+import java.io.IOException;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map.Entry;
+
+import org.appwork.exceptions.WTFException;
 
 /**
  * @author thomas
@@ -64,24 +65,14 @@ public class JSonObject extends HashMap<String, JSonNode> implements JSonNode {
 
     @Override
     public String toString() {
-
         final StringBuilder sb = new StringBuilder();
-        sb.append("{");
-        Entry<String, JSonNode> next;
-        for (final Iterator<Entry<String, JSonNode>> it = this.entrySet().iterator(); it.hasNext();) {
-            if (sb.length() > 1) {
-                sb.append(",");
-            }
-            next = it.next();
-            sb.append("\"");
-            sb.append(JSonUtils.escape(next.getKey()));
-            sb.append("\"");
-            sb.append(":");
-            sb.append(next.getValue().toString());
+        try {
+            JSonUtils.write(this, sb);
+        } catch (final IOException e) {
+            // StringBuilder does not throw IOExceptions
+            throw new WTFException(e);
         }
-        sb.append("}");
         return sb.toString();
-
     }
 
 }
@@ -0,0 +1,615 @@
+/**
+ *
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ *
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header.
+ *
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ *
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.storage.simplejson;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+
+/**
+ * Pull parser for json documents. Other than {@link JSonFactory}, the tokenizer does not need the whole document as String and does not
+ * build a {@link JSonNode} tree. The source is read through one fixed size char buffer, each {@link #next()} call returns the next
+ * {@link JSonToken}. Values of the current token can be fetched with {@link #getString()}, {@link #getLong()}, {@link #getDouble()} and
+ * {@link #getBoolean()}.
+ *
+ * @author thomas
+ *
+ */
+public class JSonTokenizer {
+    public static final int      DEFAULT_BUFFER_SIZE = 8192;
+    private static final Charset UTF8                = Charset.forName("UTF-8");
+
+    private static final int     EMPTY_DOCUMENT      = 0;
+    private static final int     NONEMPTY_DOCUMENT   = 1;
+    private static final int     EMPTY_ARRAY         = 2;
+    private static final int     NONEMPTY_ARRAY      = 3;
+    private static final int     EMPTY_OBJECT        = 4;
+    private static final int     DANGLING_KEY        = 5;
+    private static final int     NONEMPTY_OBJECT     = 6;
+
+    private Reader               reader;
+    private final char[]         buffer;
+    private int                  pos;
+    private int                  limit;
+    /* number of chars that have been consumed before buffer[0] */
+    private long                 offset;
+    private final StringBuilder  sb;
+    private int[]                stack;
+    private int                  depth;
+
+    private JSonToken            token;
+    private String               string;
+    private long                 longValue;
+    private double               doubleValue;
+    private boolean              booleanValue;
+
+    public JSonTokenizer(final Reader reader) {
+        this(reader, new char[JSonTokenizer.DEFAULT_BUFFER_SIZE]);
+    }
+
+    /**
+     * @param reader
+     * @param buffer
+     *            char buffer to use. may be reused for another tokenizer as soon as this one is done
+     */
+    public JSonTokenizer(final Reader reader, final char[] buffer) {
+        if (buffer == null || buffer.length == 0) {
+            throw new IllegalArgumentException("buffer must not be empty");
+        }
+        this.buffer = buffer;
+        this.sb = new StringBuilder();
+        this.stack = new int[32];
+        this.reset(reader);
+    }
+
+    /**
+     * reads utf-8 encoded json from the stream
+     *
+     * @param is
+     */
+    public JSonTokenizer(final InputStream is) {
+        this(new InputStreamReader(is, JSonTokenizer.UTF8));
+    }
+
+    /**
+     * reads utf-8 encoded json from the array
+     *
+     * @param json
+     */
+    public JSonTokenizer(final byte[] json) {
+        this(new ByteArrayInputStream(json));
+    }
+
+    public JSonTokenizer(final String json) {
+        this(new StringReader(json), new char[Math.max(16, Math.min(json.length(), JSonTokenizer.DEFAULT_BUFFER_SIZE))]);
+    }
+
+    /**
+     * resets the tokenizer to read a new document from reader. The char buffer is reused
+     *
+     * @param reader
+     */
+    public void reset(final Reader reader) {
+        this.reader = reader;
+        this.pos = 0;
+        this.limit = 0;
+        this.offset = 0;
+        this.depth = 1;
+        this.stack[0] = JSonTokenizer.EMPTY_DOCUMENT;
+        this.token = null;
+        this.string = null;
+    }
+
+    public void close() throws IOException {
+        if (this.reader != null) {
+            this.reader.close();
+        }
+    }
+
+    /**
+     * @return nesting level. 1 on document level, increased by each {@link JSonToken#BEGIN_OBJECT} and {@link JSonToken#BEGIN_ARRAY}
+     */
+    public int getDepth() {
+        return this.depth;
+    }
+
+    /**
+     * @return the current token
+     */
+    public JSonToken getToken() {
+        return this.token;
+    }
+
+    /**
+     * @return the value of a {@link JSonToken#STRING} or the name of a {@link JSonToken#KEY}
+     */
+    public String getString() {
+        return this.string;
+    }
+
+    public long getLong() {
+        return this.longValue;
+    }
+
+    public double getDouble() {
+        return this.doubleValue;
+    }
+
+    public boolean getBoolean() {
+        return this.booleanValue;
+    }
+
+    /**
+     * @return the boxed value of the current primitive token. String, Long, Double, Boolean or null
+     */
+    public Object getValue() {
+        switch (this.token) {
+        case STRING:
+        case KEY:
+            return this.string;
+        case LONG:
+            return this.longValue;
+        case DOUBLE:
+            return this.doubleValue;
+        case BOOLEAN:
+            return this.booleanValue;
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * @return the next token
+     * @throws ParserException
+     */
+    public JSonToken next() throws ParserException {
+        try {
+            return this.token = this.nextToken();
+        } catch (final IOException e) {
+            throw new ParserException(e);
+        }
+    }
+
+    /**
+     * skips the value that starts with the current token. If the current token is {@link JSonToken#BEGIN_OBJECT} or
+     * {@link JSonToken#BEGIN_ARRAY}, everything up to the matching end token is skipped.
+     *
+     * @throws ParserException
+     */
+    public void skipValue() throws ParserException {
+        if (this.token == JSonToken.BEGIN_OBJECT || this.token == JSonToken.BEGIN_ARRAY) {
+            int level = 1;
+            while (level > 0) {
+                switch (this.next()) {
+                case BEGIN_ARRAY:
+                case BEGIN_OBJECT:
+                    level++;
+                    break;
+                case END_ARRAY:
+                case END_OBJECT:
+                    level--;
+                    break;
+                case END_DOCUMENT:
+                    throw this.bam("Ended unexpected");
+                default:
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds a {@link JSonNode} for the value that starts with the current token. Use this only for small sub trees that require a node.
+     *
+     * @return
+     * @throws ParserException
+     */
+    public JSonNode readNode() throws ParserException {
+        switch (this.token) {
+        case BEGIN_OBJECT:
+            final JSonObject object = new JSonObject();
+            while (this.next() == JSonToken.KEY) {
+                final String key = this.string;
+                this.next();
+                object.put(key, this.readNode());
+            }
+            return object;
+        case BEGIN_ARRAY:
+            final JSonArray array = new JSonArray();
+            while (this.next() != JSonToken.END_ARRAY) {
+                array.add(this.readNode());
+            }
+            return array;
+        case STRING:
+            return new JSonValue(this.string);
+        case LONG:
+            return new JSonValue(this.longValue);
+        case DOUBLE:
+            return new JSonValue(this.doubleValue);
+        case BOOLEAN:
+            return new JSonValue(this.booleanValue);
+        case NULL:
+            return new JSonValue((String) null);
+        default:
+            throw this.bam("Value expected");
+        }
+    }
+
+    /**
+     * parses the whole document into a {@link JSonNode} tree. Same result as {@link JSonFactory#parse()}
+     *
+     * @return
+     * @throws ParserException
+     */
+    public JSonNode parse() throws ParserException {
+        this.next();
+        final JSonNode ret = this.readNode();
+        this.next();
+        return ret;
+    }
+
+    private JSonToken nextToken() throws IOException, ParserException {
+        int c;
+        switch (this.stack[this.depth - 1]) {
+        case EMPTY_DOCUMENT:
+            this.stack[this.depth - 1] = JSonTokenizer.NONEMPTY_DOCUMENT;
+            c = this.nextNonWhitespace();
+            if (c == '\uFEFF') {
+                /* utf-8 bom */
+                c = this.nextNonWhitespace();
+            }
+            return this.readValue(c);
+        case NONEMPTY_DOCUMENT:
+            if (this.nextNonWhitespace() != -1) {
+                throw this.bam("Unexpected End of JSonString");
+            }
+            return JSonToken.END_DOCUMENT;
+        case EMPTY_ARRAY:
+            c = this.nextNonWhitespace();
+            if (c == ']') {
+                this.depth--;
+                return JSonToken.END_ARRAY;
+            } else if (c == ',') {
+                throw this.bam("Value missing");
+            }
+            this.stack[this.depth - 1] = JSonTokenizer.NONEMPTY_ARRAY;
+            return this.readValue(c);
+        case NONEMPTY_ARRAY:
+            c = this.nextNonWhitespace();
+            if (c == ']') {
+                this.depth--;
+                return JSonToken.END_ARRAY;
+            } else if (c != ',') {
+                throw this.bam("']' or ',' expected");
+            }
+            return this.readValue(this.nextNonWhitespace());
+        case EMPTY_OBJECT:
+            c = this.nextNonWhitespace();
+            if (c == '}') {
+                this.depth--;
+                return JSonToken.END_OBJECT;
+            }
+            return this.readKey(c);
+        case NONEMPTY_OBJECT:
+            c = this.nextNonWhitespace();
+            if (c == '}') {
+                this.depth--;
+                return JSonToken.END_OBJECT;
+            } else if (c != ',') {
+                throw this.bam(", or }' expected");
+            }
+            return this.readKey(this.nextNonWhitespace());
+        case DANGLING_KEY:
+            if (this.nextNonWhitespace() != ':') {
+                throw this.bam("':' expected");
+            }
+            this.stack[this.depth - 1] = JSonTokenizer.NONEMPTY_OBJECT;
+            return this.readValue(this.nextNonWhitespace());
+        default:
+            throw this.bam("Illegal state");
+        }
+    }
+
+    private JSonToken readKey(final int c) throws IOException, ParserException {
+        if (c != '"') {
+            throw this.bam("\" expected");
+        }
+        this.string = this.readString();
+        this.stack[this.depth - 1] = JSonTokenizer.DANGLING_KEY;
+        return JSonToken.KEY;
+    }
+
+    private JSonToken readValue(final int c) throws IOException, ParserException {
+        switch (c) {
+        case '{':
+            this.push(JSonTokenizer.EMPTY_OBJECT);
+            return JSonToken.BEGIN_OBJECT;
+        case '[':
+            this.push(JSonTokenizer.EMPTY_ARRAY);
+            return JSonToken.BEGIN_ARRAY;
+        case '"':
+            this.string = this.readString();
+            return JSonToken.STRING;
+        case 't':
+            this.readLiteral("rue");
+            this.booleanValue = true;
+            return JSonToken.BOOLEAN;
+        case 'f':
+            this.readLiteral("alse");
+            this.booleanValue = false;
+            return JSonToken.BOOLEAN;
+        case 'n':
+            this.readLiteral("ull");
+            return JSonToken.NULL;
+        case -1:
+            throw this.bam("Ended unexpected");
+        default:
+            if (c == '-' || c == '+' || c >= '0' && c <= '9') {
+                return this.readNumber((char) c);
+            }
+            throw this.bam("Illegal Char");
+        }
+    }
+
+    private void push(final int state) {
+        if (this.depth == this.stack.length) {
+            final int[] newStack = new int[this.stack.length * 2];
+            System.arraycopy(this.stack, 0, newStack, 0, this.depth);
+            this.stack = newStack;
+        }
+        this.stack[this.depth++] = state;
+    }
+
+    private void readLiteral(final String rest) throws IOException, ParserException {
+        for (int i = 0; i < rest.length(); i++) {
+            if (this.read() != rest.charAt(i)) {
+                throw this.bam("Illegal Char");
+            }
+        }
+    }
+
+    private JSonToken readNumber(final char first) throws IOException, ParserException {
+        final StringBuilder sb = this.sb;
+        sb.setLength(0);
+        sb.append(first);
+        final boolean negative = first == '-';
+        boolean fraction = false;
+        boolean exponent = false;
+        long value = 0;
+        int digits = 0;
+        if (first >= '0' && first <= '9') {
+            value = first - '0';
+            digits++;
+        }
+        char last = first;
+        while (this.pos < this.limit || this.fill()) {
+            final char c = this.buffer[this.pos];
+            if (c >= '0' && c <= '9') {
+                if (!fraction && !exponent) {
+                    value = value * 10 + (c - '0');
+                    digits++;
+                }
+            } else if (c == '.') {
+                fraction = true;
+            } else if (c == 'e' || c == 'E') {
+                exponent = true;
+            } else if ((c == '+' || c == '-') && (last == 'e' || last == 'E')) {
+                // exponent sign
+            } else {
+                break;
+            }
+            sb.append(c);
+            last = c;
+            this.pos++;
+        }
+        try {
+            if (fraction) {
+                this.doubleValue = Double.parseDouble(sb.toString());
+                return JSonToken.DOUBLE;
+            } else if (exponent) {
+                final Number number = JSonTokenizer.parseExponentNumber(sb.toString());
+                if (number instanceof Long) {
+                    this.longValue = number.longValue();
+                    return JSonToken.LONG;
+                }
+                this.doubleValue = number.doubleValue();
+                return JSonToken.DOUBLE;
+            }
+            if (digits == 0) {
+                throw this.bam("Illegal Char");
+            } else if (digits <= 18) {
+                /* fits into a long without overflow */
+                this.longValue = negative ? -value : value;
+            } else {
+                this.longValue = Long.parseLong(first == '+' ? sb.substring(1) : sb.toString());
+            }
+            return JSonToken.LONG;
+        } catch (final NumberFormatException e) {
+            throw this.bam("Illegal Number " + sb);
+        }
+    }
+
+    /**
+     * used by JSonTokenizer and JSonFactory, so both return the same type for numbers like 1e5
+     *
+     * @param number
+     *            number with exponent but without fraction
+     * @return Long if the value is integral and fits into a long, else Double
+     */
+    static Number parseExponentNumber(final String number) throws NumberFormatException {
+        try {
+            return Long.valueOf(new BigDecimal(number).longValueExact());
+        } catch (final ArithmeticException e) {
+            return Double.valueOf(Double.parseDouble(number));
+        }
+    }
+
+    private String readString() throws IOException, ParserException {
+        final StringBuilder sb = this.sb;
+        sb.setLength(0);
+        boolean useBuilder = false;
+        int start = this.pos;
+        while (true) {
+            if (this.pos >= this.limit) {
+                sb.append(this.buffer, start, this.pos - start);
+                useBuilder = true;
+                if (!this.fill()) {
+                    throw this.bam("Unexpected End of String \"" + sb);
+                }
+                start = this.pos;
+            }
+            final char c = this.buffer[this.pos++];
+            if (c == '"') {
+                if (!useBuilder) {
+                    /* fast path: no escapes, not split over buffer boundaries */
+                    return new String(this.buffer, start, this.pos - start - 1);
+                }
+                sb.append(this.buffer, start, this.pos - start - 1);
+                return sb.toString();
+            } else if (c == '\\') {
+                sb.append(this.buffer, start, this.pos - start - 1);
+                useBuilder = true;
+                this.readEscape(sb);
+                start = this.pos;
+            }
+        }
+    }
+
+    private void readEscape(final StringBuilder sb) throws IOException, ParserException {
+        final int c = this.read();
+        switch (c) {
+        case '"':
+        case '\\':
+        case '/':
+            sb.append((char) c);
+            return;
+        case 'r':
+            sb.append('\r');
+            return;
+        case 'n':
+            sb.append('\n');
+            return;
+        case 't':
+            sb.append('\t');
+            return;
+        case 'f':
+            sb.append('\f');
+            return;
+        case 'b':
+            sb.append('\b');
+            return;
+        case 'u':
+            int unicode = 0;
+            for (int i = 0; i < 4; i++) {
+                final int digit = Character.digit(this.read(), 16);
+                if (digit < 0) {
+                    throw this.bam("illegal unicode escape");
+                }
+                unicode = unicode << 4 | digit;
+            }
+            sb.append((char) unicode);
+            return;
+        case -1:
+            throw this.bam("Unexpected End of String \"" + sb);
+        default:
+            throw this.bam("illegal escape char");
+        }
+    }
+
+    private int read() throws IOException {
+        if (this.pos >= this.limit && !this.fill()) {
+            return -1;
+        }
+        return this.buffer[this.pos++];
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        while (this.pos < this.limit || this.fill()) {
+            final char c = this.buffer[this.pos++];
+            switch (c) {
+            case ' ':
+            case '\r':
+            case '\n':
+            case '\t':
+                continue;
+            default:
+                if (c > ' ' && c < 128 || !Character.isWhitespace(c)) {
+                    return c;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * refills the buffer. Must only be called if the buffer has been consumed completely
+     *
+     * @return false if the end of the stream has been reached
+     * @throws IOException
+     */
+    private boolean fill() throws IOException {
+        this.offset += this.limit;
+        this.pos = 0;
+        this.limit = 0;
+        int read;
+        while ((read = this.reader.read(this.buffer, 0, this.buffer.length)) == 0) {
+            // reader did not block, try again
+        }
+        if (read > 0) {
+            this.limit = read;
+            return true;
+        }
+        return false;
+    }
+
+    private ParserException bam(final String expected) {
+        final int from = Math.max(0, this.pos - 20);
+        final int to = Math.min(this.limit, this.pos + 20);
+        final StringBuilder sb = new StringBuilder();
+        sb.append(expected);
+        sb.append(" at position ");
+        sb.append(this.offset + this.pos);
+        sb.append("\r\n\t");
+        if (to > from) {
+            sb.append(new String(this.buffer, from, to - from).replace("\r", "\\r").replace("\n", "\\n"));
+        }
+        return new ParserException(sb.toString());
+    }
+
+}
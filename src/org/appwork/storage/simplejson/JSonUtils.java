@@ -33,7 +33,10 @@
  * ==================================================================================================================================================== */
 package org.appwork.storage.simplejson;
 
+import java.io.IOException;
+import java.util.Iterator;
 import java.util.Locale;
+import java.util.Map.Entry;
 
 import org.appwork.utils.formatter.HexFormatter;
 
@@ -43,6 +46,43 @@ import org.appwork.utils.formatter.HexFormatter;
  */
 public class JSonUtils {
 
+    /**
+     * writes the json document of node to out. Nested objects and arrays are written directly, no String is created per level
+     *
+     * @param node
+     * @param out
+     * @throws IOException
+     */
+    public static void write(final JSonNode node, final Appendable out) throws IOException {
+        if (node instanceof JSonObject) {
+            out.append('{');
+            Entry<String, JSonNode> next;
+            for (final Iterator<Entry<String, JSonNode>> it = ((JSonObject) node).entrySet().iterator(); it.hasNext();) {
+                next = it.next();
+                out.append('"');
+                out.append(JSonUtils.escape(next.getKey()));
+                out.append("\":");
+                JSonUtils.write(next.getValue(), out);
+                if (it.hasNext()) {
+                    out.append(',');
+                }
+            }
+            out.append('}');
+        } else if (node instanceof JSonArray) {
+            out.append('[');
+            final JSonArray array = (JSonArray) node;
+            for (int index = 0; index < array.size(); index++) {
+                if (index > 0) {
+                    out.append(',');
+                }
+                JSonUtils.write(array.get(index), out);
+            }
+            out.append(']');
+        } else {
+            out.append(String.valueOf(node));
+        }
+    }
+
     public static String escape(final String s) {
         final StringBuilder sb = new StringBuilder();
         char ch;
@@ -39,6 +39,7 @@ import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.appwork.storage.simplejson.Ignore;
 import org.appwork.storage.simplejson.Ignores;
@@ -48,9 +49,10 @@ import org.appwork.storage.simplejson.Ignores;
  *
  */
 public class ClassCache {
-    private static final HashMap<Class<?>, ClassCache> CACHE        = new HashMap<Class<?>, ClassCache>();
-    private static final Object[]                      EMPTY_OBJECT = new Object[] {};
-    private static final Class<?>[]                    EMPTY_TYPES  = new Class[] {};
+    /* lookups are lock free. Concurrent creation of the same cache is rare and harmless, the first one wins */
+    private static final ConcurrentHashMap<Class<?>, ClassCache> CACHE        = new ConcurrentHashMap<Class<?>, ClassCache>();
+    private static final Object[]                                EMPTY_OBJECT = new Object[] {};
+    private static final Class<?>[]                              EMPTY_TYPES  = new Class[] {};
 
     /**
      * @param clazz
@@ -97,6 +99,8 @@ public class ClassCache {
 
             }
         } while ((cls = cls.getSuperclass()) != null && cls != Object.class);
+        cc.getterArray = cc.getter.toArray(new Getter[cc.getter.size()]);
+        cc.setterArray = cc.setter.toArray(new Setter[cc.setter.size()]);
         // we do not want to serialize object's getter
         for (final Constructor<?> c : clazz.getDeclaredConstructors()) {
             if (c.getParameterTypes().length == 0) {
@@ -157,7 +161,10 @@ public class ClassCache {
         ClassCache cc = ClassCache.CACHE.get(clazz);
         if (cc == null) {
             cc = ClassCache.create(clazz);
-            ClassCache.CACHE.put(clazz, cc);
+            final ClassCache existing = ClassCache.CACHE.putIfAbsent(clazz, cc);
+            if (existing != null) {
+                return existing;
+            }
         }
         return cc;
     }
@@ -169,6 +176,8 @@ public class ClassCache {
     protected final java.util.List<Setter>  setter;
     protected final HashMap<String, Getter> getterMap;
     protected final HashMap<String, Setter> setterMap;
+    protected Getter[]                      getterArray = new Getter[0];
+    protected Setter[]                      setterArray = new Setter[0];
 
     /**
      * @param clazz
@@ -185,6 +194,13 @@ public class ClassCache {
         return getter;
     }
 
+    /**
+     * @return all getters as array. Iterating the array does not allocate an Iterator for each serialized object
+     */
+    public Getter[] getGetterArray() {
+        return getterArray;
+    }
+
     public Getter getGetter(final String key) {
         return getterMap.get(key);
     }
@@ -205,6 +221,10 @@ public class ClassCache {
         return setter;
     }
 
+    public Setter[] getSetterArray() {
+        return setterArray;
+    }
+
     public Setter getSetter(final String key) {
         return setterMap.get(key);
     }
@@ -214,6 +234,8 @@ public class ClassCache {
      * @param stackTraceElementClassCache
      */
     public static void put(final Class<?> class1, final ClassCache stackTraceElementClassCache) {
+        stackTraceElementClassCache.getterArray = stackTraceElementClassCache.getter.toArray(new Getter[stackTraceElementClassCache.getter.size()]);
+        stackTraceElementClassCache.setterArray = stackTraceElementClassCache.setter.toArray(new Setter[stackTraceElementClassCache.setter.size()]);
         CACHE.put(class1, stackTraceElementClassCache);
 
     }
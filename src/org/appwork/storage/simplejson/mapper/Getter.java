@@ -35,6 +35,7 @@ package org.appwork.storage.simplejson.mapper;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.appwork.storage.config.annotations.JSonFieldName;
 
@@ -43,9 +44,12 @@ import org.appwork.storage.config.annotations.JSonFieldName;
  * 
  */
 public class Getter {
-
-    private final String key;
-    private final Method method;
+    private static final Object[]   EMPTY       = new Object[0];
+    private final String            key;
+    private final Method            method;
+    /* generated accessor, created after MethodAccessor.INFLATION_THRESHOLD calls */
+    private volatile MethodAccessor accessor    = null;
+    private final AtomicInteger     invocations = new AtomicInteger(0);
 
     /**
      * @param substring
@@ -78,8 +82,20 @@ public class Getter {
      * @throws IllegalArgumentException
      */
     public Object getValue(final Object obj) throws IllegalArgumentException, IllegalAccessException, InvocationTargetException {
-
-        return this.method.invoke(obj);
+        MethodAccessor accessor = this.accessor;
+        if (accessor == null && this.invocations.incrementAndGet() == MethodAccessor.INFLATION_THRESHOLD) {
+            this.accessor = accessor = MethodAccessor.create(this.method);
+        }
+        if (accessor != null && this.method.getDeclaringClass().isInstance(obj)) {
+            try {
+                return accessor.invoke(obj, null);
+            } catch (final Throwable e) {
+                // arguments are checked, so e was thrown by the method itself. same as Method.invoke
+                throw new InvocationTargetException(e);
+            }
+        }
+        // pass a shared empty array. the varargs call would allocate a new one for each invocation
+        return this.method.invoke(obj, Getter.EMPTY);
     }
 
 }
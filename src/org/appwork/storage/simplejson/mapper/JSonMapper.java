@@ -55,7 +55,10 @@ import org.appwork.storage.TypeRef;
 import org.appwork.storage.simplejson.JSonArray;
 import org.appwork.storage.simplejson.JSonNode;
 import org.appwork.storage.simplejson.JSonObject;
+import org.appwork.storage.simplejson.JSonToken;
+import org.appwork.storage.simplejson.JSonTokenizer;
 import org.appwork.storage.simplejson.JSonValue;
+import org.appwork.storage.simplejson.ParserException;
 import org.appwork.utils.StringUtils;
 import org.appwork.utils.reflection.Clazz;
 
@@ -230,8 +233,7 @@ public class JSonMapper {
             } else/* if (obj instanceof Storable) */{
                 final ClassCache cc = ClassCache.getClassCache(clazz);
                 final JSonObject ret = new JSonObject();
-                for (final Getter g : cc.getGetter()) {
-
+                for (final Getter g : cc.getGetterArray()) {
                     ret.put(g.getKey(), create(g.getValue(obj)));
                 }
                 return ret;
@@ -361,14 +363,14 @@ public class JSonMapper {
                 final ParameterizedType pType = (ParameterizedType) type;
                 Type raw = pType.getRawType();
                 if (raw instanceof Class && Collection.class.isAssignableFrom((Class) raw)) {
-                    final Collection<Object> inst = (Collection<Object>) mapClasses((Class) raw).newInstance();
+                    final Collection<Object> inst = (Collection<Object>) this.newInstance((Class<?>) raw);
                     final JSonArray obj = (JSonArray) json;
                     for (final JSonNode n : obj) {
                         inst.add(this.jsonToObject(n, pType.getActualTypeArguments()[0]));
                     }
                     return inst;
                 } else if (raw instanceof Class && Map.class.isAssignableFrom((Class) raw)) {
-                    final Map<String, Object> inst = (Map<String, Object>) mapClasses((Class) raw).newInstance();
+                    final Map<String, Object> inst = (Map<String, Object>) this.newInstance((Class<?>) raw);
                     final JSonObject obj = (JSonObject) json;
                     Entry<String, JSonNode> next;
                     for (final Iterator<Entry<String, JSonNode>> it = obj.entrySet().iterator(); it.hasNext();) {
@@ -390,7 +392,7 @@ public class JSonMapper {
                 }
 
                 if (Collection.class.isAssignableFrom(clazz)) {
-                    final Collection<Object> inst = (Collection<Object>) mapClasses(clazz).newInstance();
+                    final Collection<Object> inst = (Collection<Object>) this.newInstance(clazz);
                     final JSonArray obj = (JSonArray) json;
                     final Type gs = clazz.getGenericSuperclass();
                     final Type gType;
@@ -404,7 +406,7 @@ public class JSonMapper {
                     }
                     return inst;
                 } else if (Map.class.isAssignableFrom(clazz)) {
-                    final Map<String, Object> inst = (Map<String, Object>) mapClasses(clazz).newInstance();
+                    final Map<String, Object> inst = (Map<String, Object>) this.newInstance(clazz);
                     final JSonObject obj = (JSonObject) json;
                     final Type gs = clazz.getGenericSuperclass();
                     final Type gType;
@@ -466,7 +468,7 @@ public class JSonMapper {
                         final Object inst = cc.getInstance();
                         JSonNode value;
                         Object v;
-                        for (final Setter s : cc.getSetter()) {
+                        for (final Setter s : cc.getSetterArray()) {
 
                             value = obj.get(s.getKey());
                             if (value == null) {
@@ -535,6 +537,234 @@ public class JSonMapper {
         return (T) this.jsonToObject(json, type.getType());
     }
 
+    /**
+     * Binds the document of the tokenizer directly to the target type. Other than {@link #jsonToObject(JSonNode, Type)}, no
+     * {@link JSonNode} tree is created. Only values handled by a {@link TypeMapper} are materialized as (small) sub trees.
+     *
+     * @param tokenizer
+     * @param type
+     * @return
+     * @throws MapperException
+     * @throws ParserException
+     */
+    public Object jsonToObject(final JSonTokenizer tokenizer, final Type type) throws MapperException, ParserException {
+        final Object ret = this.tokensToObject(tokenizer, tokenizer.next(), type);
+        if (tokenizer.next() != JSonToken.END_DOCUMENT) {
+            throw new ParserException("Unexpected End of JSonString");
+        }
+        return ret;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T jsonToObject(final JSonTokenizer tokenizer, final TypeRef<T> type) throws MapperException, ParserException {
+        return (T) this.jsonToObject(tokenizer, type.getType());
+    }
+
+    /**
+     * streaming counterpart of {@link #jsonToObject(JSonNode, Type)}. token is the first token of the value, after return the tokenizer
+     * is positioned on the last token of the value
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    protected Object tokensToObject(final JSonTokenizer tokenizer, final JSonToken token, Type type) throws MapperException, ParserException {
+        final int depth = tokenizer.getDepth();
+        try {
+            Class<?> clazz = null;
+            if (type instanceof ParameterizedType) {
+                final Type typ = ((ParameterizedType) type).getRawType();
+                if (typ instanceof Class) {
+                    clazz = (Class<?>) typ;
+                }
+            } else if (type instanceof Class) {
+                clazz = (Class) type;
+            } else if (type instanceof GenericArrayType) {
+                type = clazz = Array.newInstance((Class<?>) ((GenericArrayType) type).getGenericComponentType(), 0).getClass();
+            }
+            if (clazz == null || clazz == Object.class) {
+                switch (token) {
+                case BEGIN_ARRAY:
+                    type = clazz = LinkedList.class;
+                    break;
+                case BEGIN_OBJECT:
+                    type = clazz = HashMap.class;
+                    break;
+                case BOOLEAN:
+                    type = clazz = boolean.class;
+                    break;
+                case DOUBLE:
+                    type = clazz = double.class;
+                    break;
+                case LONG:
+                    type = clazz = long.class;
+                    break;
+                default:
+                    type = clazz = String.class;
+                }
+            }
+            final TypeMapper<?> tm = typeMapper.get(clazz);
+            if (tm != null) {
+                return tm.reverseMap(tokenizer.readNode());
+            }
+            switch (token) {
+            case BOOLEAN:
+            case DOUBLE:
+            case LONG:
+            case STRING:
+                final Object value = tokenizer.getValue();
+                if (!Clazz.isPrimitive(type) && !Clazz.isString(type) && type != Object.class && !Clazz.isEnum(type)) {
+                    throw new MapperException(tokenizer.readNode() + " cannot be mapped to " + type);
+                }
+                if (token == JSonToken.STRING) {
+                    if (type instanceof Class && ((Class<?>) type).isEnum()) {
+                        try {
+                            return Enum.valueOf((Class<Enum>) type, value + "");
+                        } catch (final IllegalArgumentException e) {
+                            if (isIgnoreIllegalArgumentMappings() || isIgnoreIllegalEnumMappings()) {
+                                return null;
+                            }
+                            throw e;
+                        }
+                    }
+                    return value;
+                } else if (type instanceof Class) {
+                    return JSonMapper.cast(value, (Class) type);
+                } else {
+                    return value;
+                }
+            case NULL:
+                return null;
+            case BEGIN_ARRAY:
+            case BEGIN_OBJECT:
+                break;
+            default:
+                throw new ParserException("Value expected: " + token);
+            }
+            final boolean isArray = token == JSonToken.BEGIN_ARRAY;
+            if (type instanceof ParameterizedType) {
+                final ParameterizedType pType = (ParameterizedType) type;
+                if (Collection.class.isAssignableFrom(clazz)) {
+                    this.expect(isArray, clazz);
+                    final Collection<Object> inst = (Collection<Object>) this.newInstance(clazz);
+                    this.readArray(tokenizer, inst, pType.getActualTypeArguments()[0]);
+                    return inst;
+                } else if (Map.class.isAssignableFrom(clazz)) {
+                    this.expect(!isArray, clazz);
+                    final Map<String, Object> inst = (Map<String, Object>) this.newInstance(clazz);
+                    this.readMap(tokenizer, inst, pType.getActualTypeArguments()[1]);
+                    return inst;
+                }
+            }
+            if (Collection.class.isAssignableFrom(clazz)) {
+                this.expect(isArray, clazz);
+                final Collection<Object> inst = (Collection<Object>) this.newInstance(clazz);
+                final Type gs = clazz.getGenericSuperclass();
+                this.readArray(tokenizer, inst, gs instanceof ParameterizedType ? ((ParameterizedType) gs).getActualTypeArguments()[0] : void.class);
+                return inst;
+            } else if (Map.class.isAssignableFrom(clazz)) {
+                this.expect(!isArray, clazz);
+                final Map<String, Object> inst = (Map<String, Object>) this.newInstance(clazz);
+                final Type gs = clazz.getGenericSuperclass();
+                this.readMap(tokenizer, inst, gs instanceof ParameterizedType ? ((ParameterizedType) gs).getActualTypeArguments()[1] : void.class);
+                return inst;
+            } else if (clazz.isArray()) {
+                this.expect(isArray, clazz);
+                final ArrayList<Object> list = new ArrayList<Object>();
+                this.readArray(tokenizer, list, clazz.getComponentType());
+                final Object arr = Array.newInstance(mapClasses(clazz.getComponentType()), list.size());
+                for (int i = 0; i < list.size(); i++) {
+                    Array.set(arr, i, list.get(i));
+                }
+                return arr;
+            } else if (isArray) {
+                final java.util.List<Object> inst = new ArrayList<Object>();
+                final Type gs = clazz.getGenericSuperclass();
+                this.readArray(tokenizer, inst, gs instanceof ParameterizedType ? ((ParameterizedType) gs).getActualTypeArguments()[0] : Object.class);
+                return inst;
+            }
+            if (Clazz.isPrimitive(clazz)) {
+                if (isIgnoreIllegalArgumentMappings()) {
+                    tokenizer.skipValue();
+                    return null;
+                } else {
+                    throw new IllegalArgumentException("Cannot Map " + tokenizer.readNode() + " to " + clazz);
+                }
+            }
+            final ClassCache cc = ClassCache.getClassCache(clazz);
+            final Object inst = cc.getInstance();
+            Setter s;
+            Object v;
+            while (tokenizer.next() == JSonToken.KEY) {
+                s = cc.getSetter(tokenizer.getString());
+                final JSonToken valueToken = tokenizer.next();
+                if (s == null) {
+                    tokenizer.skipValue();
+                    continue;
+                }
+                Type fieldType = s.getType();
+                // special handling for generic fields
+                if (fieldType instanceof TypeVariable) {
+                    final Type[] actualTypes = ((ParameterizedType) type).getActualTypeArguments();
+                    final TypeVariable<?>[] genericTypes = clazz.getTypeParameters();
+                    for (int i = 0; i < genericTypes.length; i++) {
+                        if (StringUtils.equals(((TypeVariable) fieldType).getName(), genericTypes[i].getName())) {
+                            fieldType = actualTypes[i];
+                            break;
+                        }
+                    }
+                }
+                v = this.tokensToObject(tokenizer, valueToken, fieldType);
+                try {
+                    s.setValue(inst, v);
+                } catch (final IllegalArgumentException e) {
+                    if (isIgnoreIllegalArgumentMappings()) {
+                        continue;
+                    } else if (v == null && isIgnorePrimitiveNullMapping()) {
+                        continue;
+                    }
+                    throw e;
+                }
+            }
+            return inst;
+        } catch (final SecurityException e) {
+            e.printStackTrace();
+        } catch (final NoSuchMethodException e) {
+            e.printStackTrace();
+        } catch (final IllegalArgumentException e) {
+            e.printStackTrace();
+        } catch (final InstantiationException e) {
+            e.printStackTrace();
+        } catch (final IllegalAccessException e) {
+            e.printStackTrace();
+        } catch (final InvocationTargetException e) {
+            e.printStackTrace();
+        }
+        if (token == JSonToken.BEGIN_OBJECT || token == JSonToken.BEGIN_ARRAY) {
+            /* skip the rest of the failed value to keep the tokenizer in sync */
+            while (tokenizer.getDepth() >= depth && tokenizer.next() != JSonToken.END_DOCUMENT) {
+            }
+        }
+        return null;
+    }
+
+    private void expect(final boolean matches, final Class<?> clazz) throws MapperException {
+        if (!matches) {
+            throw new MapperException("Cannot map json to " + clazz);
+        }
+    }
+
+    private void readArray(final JSonTokenizer tokenizer, final Collection<Object> inst, final Type componentType) throws MapperException, ParserException {
+        JSonToken next;
+        while ((next = tokenizer.next()) != JSonToken.END_ARRAY) {
+            inst.add(this.tokensToObject(tokenizer, next, componentType));
+        }
+    }
+
+    private void readMap(final JSonTokenizer tokenizer, final Map<String, Object> inst, final Type valueType) throws MapperException, ParserException {
+        while (tokenizer.next() == JSonToken.KEY) {
+            final String key = tokenizer.getString();
+            inst.put(key, this.tokensToObject(tokenizer, tokenizer.next(), valueType));
+        }
+    }
+
     /**
      * @param class1
      * @return
@@ -554,6 +784,13 @@ public class JSonMapper {
         return class1;
     }
 
+    /**
+     * creates the Collection or Map instance, interfaces are replaced by {@link #mapClasses(Class)}
+     */
+    private Object newInstance(final Class<?> clazz) throws MapperException, InstantiationException, IllegalAccessException, InvocationTargetException, NoSuchMethodException {
+        return this.mapClasses(clazz).getDeclaredConstructor().newInstance();
+    }
+
     public void setIgnoreIllegalArgumentMappings(final boolean ignoreIllegalArgumentMappings) {
         this.ignoreIllegalArgumentMappings = ignoreIllegalArgumentMappings;
     }
@@ -0,0 +1,216 @@
+/**
+ *
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ *
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header.
+ *
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ *
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.storage.simplejson.mapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.appwork.utils.reflection.ClassFileWriter;
+
+/**
+ * generated accessor for a {@link Getter} or {@link Setter} method. The generated class calls the method directly, so there is no
+ * Method.invoke, no argument array and no access check per call.
+ *
+ * Generating a class per property is not free, so {@link Getter} and {@link Setter} use reflection for the first
+ * {@link #INFLATION_THRESHOLD} calls and only generate an accessor for properties that are actually used often.
+ *
+ * {@link #createInvoker(Method)} generates an accessor for methods with any number of parameters, called via
+ * {@link #invokeWithParameters(Object, Object[])}.
+ *
+ * @author daniel
+ *
+ */
+public abstract class MethodAccessor {
+    public static final int            INFLATION_THRESHOLD = 16;
+    private static final AtomicInteger COUNTER             = new AtomicInteger(0);
+    private static final String        SUPERCLASS          = ClassFileWriter.getInternalName(MethodAccessor.class);
+
+    protected MethodAccessor() {
+    }
+
+    /**
+     * obj must be an instance of the declaring class and parameter must match the parameter type (exact wrapper for primitives), else
+     * the generated code fails with a ClassCastException or NullPointerException. Everything else is thrown by the method itself
+     *
+     * @param obj
+     * @param parameter
+     *            parameter for setters, ignored by getters
+     * @return return value of the method, null for void methods
+     */
+    public Object invoke(final Object obj, final Object parameter) {
+        throw new UnsupportedOperationException("use MethodAccessor.create");
+    }
+
+    /**
+     * same contract as {@link #invoke(Object, Object)}, for each parameter
+     *
+     * @param obj
+     * @param parameters
+     *            exactly one entry per parameter of the method
+     * @return return value of the method, null for void methods
+     */
+    public Object invokeWithParameters(final Object obj, final Object[] parameters) {
+        throw new UnsupportedOperationException("use MethodAccessor.createInvoker");
+    }
+
+    /**
+     * @param method
+     *            getter or setter
+     * @return generated accessor or null if the method cannot be called from generated code (non public, static, bootstrap classes...)
+     */
+    public static MethodAccessor create(final Method method) {
+        if (method.getDeclaringClass().isInterface() || method.getParameterTypes().length > 1) {
+            return null;
+        }
+        return create(method, false);
+    }
+
+    /**
+     * @param method
+     * @return generated accessor for {@link #invokeWithParameters(Object, Object[])} or null if the method cannot be called from generated code
+     */
+    public static MethodAccessor createInvoker(final Method method) {
+        return create(method, true);
+    }
+
+    private static MethodAccessor create(final Method method, final boolean invoker) {
+        final Class<?> declaringClass = method.getDeclaringClass();
+        if (!Modifier.isPublic(method.getModifiers()) || Modifier.isStatic(method.getModifiers()) || !Modifier.isPublic(declaringClass.getModifiers())) {
+            return null;
+        } else if (declaringClass.getClassLoader() == null) {
+            // bootstrap classes may be in packages that are not accessible for generated code
+            return null;
+        }
+        for (final Class<?> parameterType : method.getParameterTypes()) {
+            if (!ClassFileWriter.isAccessible(parameterType)) {
+                return null;
+            }
+        }
+        try {
+            final String className = MethodAccessor.class.getName() + "$$Generated" + COUNTER.incrementAndGet();
+            final Class<?> clazz = ClassFileWriter.define(declaringClass.getClassLoader(), className, generate(className.replace('.', '/'), method, invoker));
+            return (MethodAccessor) clazz.getDeclaredConstructor().newInstance();
+        } catch (final Throwable e) {
+            // eg the ClassLoader of the declaring class cannot see MethodAccessor
+            org.appwork.utils.logging2.extmanager.LoggerFactory.getDefaultLogger().log(e);
+            return null;
+        }
+    }
+
+    /**
+     * @param parameterTypes
+     * @param parameters
+     * @return true if the parameters can be passed to an accessor of a method with these parameterTypes. Only exact wrapper types are
+     *         passed to primitive parameters, everything else is left to Method.invoke
+     */
+    public static boolean isAccessorParameters(final Class<?>[] parameterTypes, final Object[] parameters) {
+        if (parameters == null ? parameterTypes.length != 0 : parameters.length != parameterTypes.length) {
+            return false;
+        }
+        for (int index = 0; index < parameterTypes.length; index++) {
+            final Class<?> parameterType = parameterTypes[index];
+            final Object parameter = parameters[index];
+            if (parameter == null) {
+                if (parameterType.isPrimitive()) {
+                    return false;
+                }
+            } else if (parameterType.isPrimitive()) {
+                if (parameter.getClass() != ClassFileWriter.getWrapper(parameterType)) {
+                    return false;
+                }
+            } else if (!parameterType.isInstance(parameter)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] generate(final String thisClass, final Method method, final boolean invoker) throws Exception {
+        final ClassFileWriter.ConstantPool pool = new ClassFileWriter.ConstantPool();
+        final ByteArrayOutputStream methodBytes = new ByteArrayOutputStream();
+        final DataOutputStream methods = new DataOutputStream(methodBytes);
+        // constructor
+        final ClassFileWriter.Code init = new ClassFileWriter.Code();
+        init.op(0x2a).op(0xb7).u2(pool.method(SUPERCLASS, "<init>", "()V")).op(0xb1);
+        ClassFileWriter.writeMethod(methods, pool, "<init>", "()V", init, 1, 1);
+        // invoke(Object obj, Object parameter) or invokeWithParameters(Object obj, Object[] parameters)
+        final ClassFileWriter.Code code = new ClassFileWriter.Code();
+        final String owner = ClassFileWriter.getInternalName(method.getDeclaringClass());
+        final Class<?> returnType = method.getReturnType();
+        code.op(0x2b).op(0xc0).u2(pool.clazz(owner));
+        // stack slots used by the target and the arguments loaded so far
+        int slots = 1;
+        int maxStack = 1;
+        final Class<?>[] parameterTypes = method.getParameterTypes();
+        for (int index = 0; index < parameterTypes.length; index++) {
+            final Class<?> parameterType = parameterTypes[index];
+            code.op(0x2c);
+            if (invoker) {
+                // aaload needs array and index on the stack
+                code.pushInt(pool, index).op(0x32);
+                maxStack = Math.max(maxStack, slots + 2);
+            }
+            if (parameterType.isPrimitive()) {
+                // the caller makes sure that parameter is exactly the wrapper type
+                final String wrapper = ClassFileWriter.getInternalName(ClassFileWriter.getWrapper(parameterType));
+                code.op(0xc0).u2(pool.clazz(wrapper));
+                code.op(0xb6).u2(pool.method(wrapper, parameterType.getName() + "Value", "()" + ClassFileWriter.getDescriptor(parameterType)));
+            } else if (parameterType != Object.class) {
+                code.op(0xc0).u2(pool.clazz(ClassFileWriter.getInternalName(parameterType)));
+            }
+            slots += ClassFileWriter.getSize(parameterType);
+            maxStack = Math.max(maxStack, slots);
+        }
+        if (method.getDeclaringClass().isInterface()) {
+            // invokeinterface needs the argument slots including the target
+            code.op(0xb9).u2(pool.interfaceMethod(owner, method.getName(), ClassFileWriter.getMethodDescriptor(method))).op(slots).op(0);
+        } else {
+            code.op(0xb6).u2(pool.method(owner, method.getName(), ClassFileWriter.getMethodDescriptor(method)));
+        }
+        if (returnType == void.class) {
+            code.op(0x01);
+        } else if (returnType.isPrimitive()) {
+            final String wrapper = ClassFileWriter.getInternalName(ClassFileWriter.getWrapper(returnType));
+            code.op(0xb8).u2(pool.method(wrapper, "valueOf", "(" + ClassFileWriter.getDescriptor(returnType) + ")L" + wrapper + ";"));
+        }
+        maxStack = Math.max(maxStack, returnType == void.class ? 1 : ClassFileWriter.getSize(returnType));
+        code.op(0xb0);
+        ClassFileWriter.writeMethod(methods, pool, invoker ? "invokeWithParameters" : "invoke", invoker ? "(Ljava/lang/Object;[Ljava/lang/Object;)Ljava/lang/Object;" : "(Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;", code, maxStack, 3);
+        methods.flush();
+        return ClassFileWriter.toClassFile(pool, thisClass, SUPERCLASS, new String[0], 0, new byte[0], 2, methodBytes.toByteArray());
+    }
+}
@@ -36,25 +36,37 @@ package org.appwork.storage.simplejson.mapper;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Type;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.appwork.exceptions.WTFException;
 import org.appwork.storage.config.annotations.ConvertValueFrom;
 import org.appwork.storage.config.annotations.JSonFieldName;
+import org.appwork.utils.reflection.ClassFileWriter;
 
 /**
  * @author thomas
  *
  */
 public class Setter {
-    private final String key;
-    private final Method method;
-    private final Type   type;
-    private Class<?>     convertFromClass;
+    private final String      key;
+    private final Method      method;
+    private final Type        type;
+    private Class<?>          convertFromClass;
+    /* enum type of the parameter or null. resolved once instead of for every call */
+    @SuppressWarnings("rawtypes")
+    private final Class<Enum>       enumType;
+    /* generated accessor, created after MethodAccessor.INFLATION_THRESHOLD calls */
+    private volatile MethodAccessor accessor    = null;
+    private final AtomicInteger     invocations = new AtomicInteger(0);
+    /* parameter type of the method, wrapper type for primitives */
+    private final Class<?>          accessorType;
+    private final boolean           primitive;
 
     /**
      * @param substring
      * @param m
      */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
     public Setter(final String name, final Method m) {
         final JSonFieldName jsFieldName = m.getAnnotation(JSonFieldName.class);
         if (jsFieldName != null) {
@@ -69,6 +81,25 @@ public class Setter {
         this.method = m;
         m.setAccessible(true);
         this.type = m.getGenericParameterTypes()[0];
+        this.enumType = this.type instanceof Class && ((Class<?>) this.type).isEnum() ? (Class<Enum>) this.type : null;
+        final Class<?> parameterType = m.getParameterTypes()[0];
+        this.primitive = parameterType.isPrimitive();
+        this.accessorType = this.primitive ? ClassFileWriter.getWrapper(parameterType) : parameterType;
+    }
+
+    /**
+     * @param parameter
+     * @return true if the generated accessor can be called without conversion. Only exact wrapper types are passed to primitive
+     *         parameters, everything else is left to Method.invoke
+     */
+    private boolean isAccessorParameter(final Object parameter) {
+        if (parameter == null) {
+            return !this.primitive;
+        } else if (this.primitive) {
+            return parameter.getClass() == this.accessorType;
+        } else {
+            return this.accessorType.isInstance(parameter);
+        }
     }
 
     public String getKey() {
@@ -85,8 +116,8 @@ public class Setter {
 
     @SuppressWarnings("unchecked")
     public void setValue(final Object inst, Object parameter) throws IllegalArgumentException, IllegalAccessException, InvocationTargetException {
-        if (this.type instanceof Class && ((Class<?>) this.type).isEnum() && parameter != null) {
-            parameter = Enum.valueOf((Class<Enum>) this.type, parameter + "");
+        if (this.enumType != null && parameter != null) {
+            parameter = Enum.valueOf(this.enumType, parameter + "");
         }
         if (this.convertFromClass != null && parameter != null && parameter.getClass().isAssignableFrom(this.convertFromClass)) {
             if (this.convertFromClass == String.class) {
@@ -112,6 +143,20 @@ public class Setter {
             }
         }
         // System.out.println(this.key + " = " + parameter + " " + this.type);
+        MethodAccessor accessor = this.accessor;
+        if (accessor == null && this.invocations.incrementAndGet() == MethodAccessor.INFLATION_THRESHOLD) {
+            this.accessor = accessor = MethodAccessor.create(this.method);
+        }
+        if (accessor != null && this.method.getDeclaringClass().isInstance(inst) && this.isAccessorParameter(parameter)) {
+            try {
+                accessor.invoke(inst, parameter);
+                return;
+            } catch (final Throwable e) {
+                // arguments are checked, so e was thrown by the method itself. same as Method.invoke
+                throw new InvocationTargetException(e);
+            }
+        }
+        // reflection does the conversions (eg widening of primitives), argument checks and their exceptions
         try {
             this.method.invoke(inst, parameter);
         } catch (final IllegalArgumentException e) {
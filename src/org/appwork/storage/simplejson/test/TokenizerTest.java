@@ -0,0 +1,101 @@
+/**
+ *
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ *
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header.
+ *
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ *
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.storage.simplejson.test;
+
+import java.io.StringReader;
+
+import org.apache.commons.lang.builder.EqualsBuilder;
+import org.appwork.storage.JSonStorage;
+import org.appwork.storage.simplejson.JSonFactory;
+import org.appwork.storage.simplejson.JSonNode;
+import org.appwork.storage.simplejson.JSonTokenizer;
+import org.appwork.storage.simplejson.ParserException;
+import org.appwork.storage.simplejson.mapper.JSonMapper;
+import org.appwork.storage.simplejson.mapper.test.TestClass;
+
+/**
+ * compares the streaming {@link JSonTokenizer} with {@link JSonFactory}. Uses a tiny buffer to hit the buffer boundaries.
+ *
+ * @author thomas
+ *
+ */
+public class TokenizerTest {
+
+    public static void main(final String[] args) throws Exception {
+        TokenizerTest.parseValid("[1,2,\"23\",4,5,[true,false]]");
+        TokenizerTest.parseValid("\"Unicode pattern testblabla\\u003ebl\\r\\na\"");
+        TokenizerTest.parseValid("23.432e-4");
+        TokenizerTest.parseValid("[23.432e-4, -9223372036854775808, 9223372036854775807, null]");
+        TokenizerTest.parseValid("{\"defaultdownloadfolder\":\"C:\\\\Users\\\\thomas\\\\down\\rloads\"}");
+        TokenizerTest.parseValid("[\"Z:\\\\\"]");
+        TokenizerTest.parseValid("{}");
+        TokenizerTest.parseValid("  {  }  ");
+        TokenizerTest.parseValid("{\"a\" : {\"b\" : [ {}, [], \"a very long string that does not fit into the buffer\" ] } }");
+
+        TokenizerTest.parseInvalid("{\"bla\":true,}");
+        TokenizerTest.parseInvalid("[1,]");
+        TokenizerTest.parseInvalid("[1 2]");
+        TokenizerTest.parseInvalid("{\"a\" 1}");
+        TokenizerTest.parseInvalid("\"unfinished");
+        TokenizerTest.parseInvalid("{} {}");
+
+        final JSonMapper mapper = new JSonMapper();
+        final TestClass obj = TestClass.createObject();
+        final String json = mapper.create(obj).toString();
+        final TestClass re = (TestClass) mapper.jsonToObject(new JSonTokenizer(new StringReader(json), new char[7]), TestClass.class);
+        if (!JSonStorage.serializeToJson(obj).equals(JSonStorage.serializeToJson(re)) || !EqualsBuilder.reflectionEquals(obj, re)) {
+            throw new Exception("Mapping mismatch");
+        }
+        System.out.println("TEST OK");
+    }
+
+    private static void parseValid(final String string) throws Exception {
+        final JSonNode expected = new JSonFactory(string).parse();
+        final JSonNode json = new JSonTokenizer(new StringReader(string), new char[3]).parse();
+        if (!expected.toString().equals(json.toString())) {
+            throw new Exception("Tokenizer mismatch: " + expected + " != " + json);
+        }
+        System.out.println("SUCCESS " + json);
+    }
+
+    private static void parseInvalid(final String string) throws Exception {
+        try {
+            new JSonTokenizer(new StringReader(string), new char[3]).parse();
+        } catch (final ParserException e) {
+            System.out.println("SUCCESS " + e.getMessage());
+            return;
+        }
+        throw new Exception(string + " is invalid and should throw an exception");
+    }
+}
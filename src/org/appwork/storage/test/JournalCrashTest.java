@@ -0,0 +1,137 @@
+/**
+ *
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ *
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header.
+ *
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ *
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.storage.test;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.appwork.storage.JsonKeyValueStorage;
+import org.appwork.utils.Files;
+import org.appwork.utils.IO;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * simulates crashes between writing the storage file and removing the journal
+ *
+ * @author daniel
+ */
+public class JournalCrashTest {
+
+    private static File createStorageFile() throws IOException {
+        final File dir = File.createTempFile("journal", "test");
+        dir.delete();
+        dir.mkdirs();
+        return new File(dir, "storage.json");
+    }
+
+    private static File getJournalFile(final File storageFile) {
+        return new File(storageFile.getAbsolutePath() + ".journal");
+    }
+
+    @Test
+    public void replayTest() throws IOException {
+        final File file = JournalCrashTest.createStorageFile();
+        try {
+            final JsonKeyValueStorage storage = new JsonKeyValueStorage(file, true);
+            storage.setJournalEnabled(true);
+            storage.setJournalCompactionSize(1024 * 1024);
+            storage.put("a", "1");
+            storage.save();
+            storage.put("b", "2");
+            storage.save();
+            Assert.assertTrue("journal missing", JournalCrashTest.getJournalFile(file).isFile());
+            // crash without compaction, the journal must be replayed
+            final JsonKeyValueStorage restored = new JsonKeyValueStorage(file, true);
+            Assert.assertEquals("1", restored.get("a", (String) null));
+            Assert.assertEquals("2", restored.get("b", (String) null));
+        } finally {
+            Files.deleteRecursiv(file.getParentFile());
+        }
+    }
+
+    @Test
+    public void compactionCrashTest() throws IOException {
+        final File file = JournalCrashTest.createStorageFile();
+        try {
+            final JsonKeyValueStorage storage = new JsonKeyValueStorage(file, true);
+            storage.setJournalEnabled(true);
+            storage.setJournalCompactionSize(1024 * 1024);
+            storage.put("a", "1");
+            storage.save();
+            storage.clear();
+            storage.put("b", "2");
+            storage.save();
+            final byte[] oldJournal = IO.readFile(JournalCrashTest.getJournalFile(file));
+            // x is added after the clear record, compaction writes the storage file and removes the journal
+            storage.put("x", "3");
+            storage.setJournalCompactionSize(0);
+            storage.save();
+            Assert.assertTrue("storage file missing", file.isFile());
+            Assert.assertFalse("journal not removed", JournalCrashTest.getJournalFile(file).exists());
+            // crash before the journal got removed
+            IO.writeToFile(JournalCrashTest.getJournalFile(file), oldJournal);
+            final JsonKeyValueStorage restored = new JsonKeyValueStorage(file, true);
+            Assert.assertNull(restored.get("a", (String) null));
+            Assert.assertEquals("2", restored.get("b", (String) null));
+            Assert.assertEquals("3", restored.get("x", (String) null));
+            Assert.assertFalse("stale journal not discarded", JournalCrashTest.getJournalFile(file).exists());
+        } finally {
+            Files.deleteRecursiv(file.getParentFile());
+        }
+    }
+
+    @Test
+    public void saveCrashTest() throws IOException {
+        final File file = JournalCrashTest.createStorageFile();
+        try {
+            final JsonKeyValueStorage storage = new JsonKeyValueStorage(file, true);
+            storage.setJournalEnabled(true);
+            storage.setJournalCompactionSize(1024 * 1024);
+            storage.put("a", "1");
+            storage.save();
+            final byte[] oldJournal = IO.readFile(JournalCrashTest.getJournalFile(file));
+            // a full save without journal writes the storage file and removes the journal
+            storage.setJournalEnabled(false);
+            storage.put("a", "2");
+            storage.save();
+            // crash before the journal got removed
+            IO.writeToFile(JournalCrashTest.getJournalFile(file), oldJournal);
+            final JsonKeyValueStorage restored = new JsonKeyValueStorage(file, true);
+            Assert.assertEquals("2", restored.get("a", (String) null));
+        } finally {
+            Files.deleteRecursiv(file.getParentFile());
+        }
+    }
+}
@@ -56,6 +56,26 @@ public class ExtDefaultRowSorter<E> implements Comparator<E> {
         }
     }
 
+    /**
+     * Comparable sort key of the given row. Rows are sorted by compareSortKeys on their keys instead of compare, so expensive values are
+     * only calculated once per row and sort run.
+     * 
+     * @param o
+     * @return null to sort with {@link #compare(Object, Object)}
+     */
+    public Comparable<?> getSortKey(final E o) {
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public int compareSortKeys(final Comparable<?> k1, final Comparable<?> k2) {
+        if (ExtColumn.SORT_ASC.equals(this.getSortOrderIdentifier())) {
+            return ((Comparable<Object>) k1).compareTo(k2);
+        } else {
+            return ((Comparable<Object>) k2).compareTo(k1);
+        }
+    }
+
     public String getSortOrderIdentifier() {
         return this.sortOrderIdentifier;
     }
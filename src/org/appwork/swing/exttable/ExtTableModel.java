@@ -43,11 +43,15 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Pattern;
 
+import javax.swing.DefaultListSelectionModel;
 import javax.swing.Icon;
 import javax.swing.ListSelectionModel;
 import javax.swing.SwingUtilities;
@@ -60,6 +64,7 @@ import org.appwork.exceptions.WTFException;
 import org.appwork.resources.AWIcon;
 import org.appwork.storage.JSonStorage;
 import org.appwork.storage.Storage;
+import org.appwork.utils.Lists;
 import org.appwork.utils.swing.EDTHelper;
 import org.appwork.utils.swing.EDTRunner;
 
@@ -117,6 +122,19 @@ public abstract class ExtTableModel<E> extends AbstractTableModel {
     private AtomicBoolean                                          tableSelectionClearing = new AtomicBoolean(false);
     private ExtTableModelEventSender                               eventSender;
     private boolean                                                autoWidthEnabled       = false;
+    private boolean                                                incrementalUpdates     = false;
+    /**
+     * identity based object->row index, only used in incremental mode. built lazily and dropped whenever tableData is replaced
+     */
+    private volatile IdentityHashMap<E, Integer>                   rowIndex               = null;
+    /**
+     * more row insert/delete events than this in a single update fall back to fireTableStructureChanged
+     */
+    protected static final int                                     MAX_INCREMENTAL_EVENTS = 64;
+    private final Object                                           pipelineLock           = new Object();
+    private Callable<List<E>>                                      pipelineSource         = null;
+    private boolean                                                pipelineRefreshSort    = false;
+    private Thread                                                 pipelineThread         = null;
 
     /**
      * Create a new ExtTableModel.
@@ -235,6 +253,107 @@ public abstract class ExtTableModel<E> extends AbstractTableModel {
         this._replaceTableData(tableData, true);
     }
 
+    /**
+     * like {@link #_fireTableStructureChanged(List, boolean)}, but filtering (see {@link #isFiltered(Object)}) and sorting run on a
+     * background thread of this model, so it can be called from the EDT. The result is a new list that is swapped in at once. Requests that
+     * arrive while the worker is busy are coalesced, only the latest one gets published.
+     *
+     * @param newtableData
+     *            must not be modified until it got published
+     * @param refreshSort
+     */
+    public void _fireTableStructureChangedInBackground(final List<E> newtableData, final boolean refreshSort) {
+        this.scheduleTableData(new Callable<List<E>>() {
+
+            @Override
+            public List<E> call() throws Exception {
+                return newtableData;
+            }
+        }, refreshSort);
+    }
+
+    /**
+     * schedules source for the background pipeline: source is called on the worker, then the result gets filtered, sorted and published
+     *
+     * @param source
+     * @param refreshSort
+     */
+    protected void scheduleTableData(final Callable<List<E>> source, final boolean refreshSort) {
+        synchronized (this.pipelineLock) {
+            this.pipelineSource = source;
+            this.pipelineRefreshSort = refreshSort;
+            if (this.pipelineThread != null) {
+                /* running worker will pick it up */
+                return;
+            }
+            this.pipelineThread = new Thread("ExtTableModel:" + this.getModelID()) {
+                @Override
+                public void run() {
+                    ExtTableModel.this.runPipeline();
+                }
+            };
+            this.pipelineThread.setDaemon(true);
+            this.pipelineThread.start();
+        }
+    }
+
+    private void runPipeline() {
+        while (true) {
+            final Callable<List<E>> source;
+            final boolean refreshSort;
+            synchronized (this.pipelineLock) {
+                source = this.pipelineSource;
+                refreshSort = this.pipelineRefreshSort;
+                this.pipelineSource = null;
+                if (source == null) {
+                    this.pipelineThread = null;
+                    return;
+                }
+            }
+            try {
+                final List<E> data = source.call();
+                if (data == null) {
+                    continue;
+                }
+                final List<E> snapshot = this.filterTableData(data);
+                synchronized (this.pipelineLock) {
+                    if (this.pipelineSource != null) {
+                        /* already outdated, skip sorting */
+                        continue;
+                    }
+                }
+                this._fireTableStructureChanged(snapshot, refreshSort);
+            } catch (final Throwable e) {
+                org.appwork.utils.logging2.extmanager.LoggerFactory.getDefaultLogger().log(e);
+            }
+        }
+    }
+
+    /**
+     * @param e
+     * @return true if e should not be shown. only used by the background pipeline, see
+     *         {@link #_fireTableStructureChangedInBackground(List, boolean)}
+     */
+    protected boolean isFiltered(final E e) {
+        return false;
+    }
+
+    /**
+     * called by the background pipeline
+     *
+     * @param data
+     * @return new list with all rows of data that are not filtered by {@link #isFiltered(Object)}
+     */
+    protected List<E> filterTableData(final List<E> data) {
+        final ArrayList<E> ret = new ArrayList<E>(data.size());
+        for (final E e : data) {
+            if (!this.isFiltered(e)) {
+                ret.add(e);
+            }
+        }
+        return ret;
+    }
+
     /**
      * this replaces the tables Data and Selection
      *
@@ -271,6 +390,9 @@ public abstract class ExtTableModel<E> extends AbstractTableModel {
                                 ExtTableModel.this.delayedNewTableData = null;
                                 ltable.removePropertyChangeListener(ExtTableModel.this.replaceDelayer);
                             }
+                            if (ExtTableModel.this.isIncrementalUpdates() && ExtTableModel.this.replaceTableDataIncremental(ltable, newTableData)) {
+                                return;
+                            }
                             /* replace TableData and set Selection */
                             final ListSelectionModel s = ltable.getSelectionModel();
                             final boolean adjusting = s.getValueIsAdjusting();
@@ -418,6 +540,189 @@ public abstract class ExtTableModel<E> extends AbstractTableModel {
         return null;
     }
 
+    /**
+     * replaces the tableData by firing row deleted/inserted/updated events instead of fireTableStructureChanged. Rows are matched by
+     * identity, so the SelectionModel keeps track of the selection and scroll position stays as it is.
+     *
+     * must be called inside EDT
+     *
+     * @param ltable
+     * @param newTableData
+     * @return false if the difference is too big (or tableData contains duplicates) and the caller has to replace the whole structure
+     */
+    protected boolean replaceTableDataIncremental(final ExtTable<E> ltable, final List<E> newTableData) {
+        final List<E> oldTableData = this.getTableData();
+        final int oldSize = oldTableData.size();
+        final int newSize = newTableData.size();
+        /* only the window between unchanged head and tail has to be compared */
+        final int minSize = Math.min(oldSize, newSize);
+        int head = 0;
+        while (head < minSize && oldTableData.get(head) == newTableData.get(head)) {
+            head++;
+        }
+        int tail = 0;
+        while (tail < minSize - head && oldTableData.get(oldSize - 1 - tail) == newTableData.get(newSize - 1 - tail)) {
+            tail++;
+        }
+        final int oldEnd = oldSize - tail;
+        final int newEnd = newSize - tail;
+        final IdentityHashMap<E, Integer> newRows = ExtTableModel.buildRowIndex(newTableData, head, newEnd);
+        final IdentityHashMap<E, Integer> oldRows = ExtTableModel.buildRowIndex(oldTableData, head, oldEnd);
+        if (newRows == null || oldRows == null) {
+            return false;
+        }
+        /* count the row ranges that have to be removed and inserted */
+        int events = 0;
+        boolean removed = false;
+        for (int index = head; index < oldEnd; index++) {
+            final boolean remove = !newRows.containsKey(oldTableData.get(index));
+            if (remove && !removed) {
+                events++;
+            }
+            removed = remove;
+        }
+        boolean inserted = false;
+        for (int index = head; index < newEnd; index++) {
+            final boolean insert = !oldRows.containsKey(newTableData.get(index));
+            if (insert && !inserted) {
+                events++;
+            }
+            inserted = insert;
+        }
+        if (events > ExtTableModel.MAX_INCREMENTAL_EVENTS) {
+            return false;
+        }
+        final ListSelectionModel s = ltable.getSelectionModel();
+        final boolean adjusting = s.getValueIsAdjusting();
+        final int leadIndex = s.getLeadSelectionIndex();
+        final int anchorIndex = s.getAnchorSelectionIndex();
+        final E leadObject = leadIndex >= 0 && leadIndex < oldSize ? oldTableData.get(leadIndex) : null;
+        final E anchorObject = anchorIndex >= 0 && anchorIndex < oldSize ? oldTableData.get(anchorIndex) : null;
+        s.setValueIsAdjusting(true);
+        this.tableStructureChanging.set(true);
+        try {
+            final ArrayList<E> working = new ArrayList<E>(oldTableData);
+            this.setTableData(working);
+            /* remove rows, last range first so the indices of the remaining ranges stay valid */
+            int index = oldEnd - 1;
+            while (index >= head) {
+                if (newRows.containsKey(working.get(index))) {
+                    index--;
+                    continue;
+                }
+                final int to = index;
+                while (index > head && !newRows.containsKey(working.get(index - 1))) {
+                    index--;
+                }
+                working.subList(index, to + 1).clear();
+                this.fireTableRowsDeleted(index, to);
+                index--;
+            }
+            /* insert rows, first range first. the survivors keep their old order */
+            index = head;
+            while (index < newEnd) {
+                if (oldRows.containsKey(newTableData.get(index))) {
+                    index++;
+                    continue;
+                }
+                final int from = index;
+                while (index + 1 < newEnd && !oldRows.containsKey(newTableData.get(index + 1))) {
+                    index++;
+                }
+                working.addAll(from, newTableData.subList(from, index + 1));
+                this.fireTableRowsInserted(from, index);
+                /* JTable selects rows inserted into a selected range */
+                s.removeSelectionInterval(from, index);
+                index++;
+            }
+            /* rows that moved: SelectionModel must follow the objects */
+            int firstMoved = -1;
+            int lastMoved = -1;
+            for (index = head; index < newEnd; index++) {
+                if (working.get(index) != newTableData.get(index)) {
+                    if (firstMoved < 0) {
+                        firstMoved = index;
+                    }
+                    lastMoved = index;
+                }
+            }
+            if (firstMoved >= 0) {
+                final BitSet selected = new BitSet();
+                for (index = firstMoved; index <= lastMoved; index++) {
+                    if (s.isSelectedIndex(index)) {
+                        selected.set(newRows.get(working.get(index)));
+                    }
+                }
+                this.setTableData(newTableData);
+                s.removeSelectionInterval(firstMoved, lastMoved);
+                for (int from = selected.nextSetBit(0); from >= 0; from = selected.nextSetBit(index)) {
+                    index = selected.nextClearBit(from);
+                    s.addSelectionInterval(from, index - 1);
+                }
+            } else {
+                this.setTableData(newTableData);
+            }
+            /* add/removeSelectionInterval moved lead and anchor, let them follow their objects */
+            if (s instanceof DefaultListSelectionModel) {
+                final int anchorRow = ExtTableModel.rowAfterUpdate(anchorObject, anchorIndex, head, oldEnd, newEnd, newRows);
+                final int leadRow = ExtTableModel.rowAfterUpdate(leadObject, leadIndex, head, oldEnd, newEnd, newRows);
+                if (anchorRow >= 0) {
+                    s.setAnchorSelectionIndex(anchorRow);
+                }
+                if (leadRow >= 0) {
+                    ((DefaultListSelectionModel) s).moveLeadSelectionIndex(leadRow);
+                }
+            }
+            if (newSize > 0) {
+                /* identity does not tell whether the content of a row changed, so repaint all of them */
+                this.fireTableRowsUpdated(0, newSize - 1);
+            }
+            this.postSetTableData(newTableData);
+        } finally {
+            this.tableStructureChanging.set(false);
+            s.setValueIsAdjusting(adjusting);
+        }
+        return true;
+    }
+
+    private static <T> int rowAfterUpdate(final T object, final int oldRow, final int head, final int oldEnd, final int newEnd, final IdentityHashMap<T, Integer> newRows) {
+        if (object == null) {
+            return -1;
+        } else if (oldRow < head) {
+            return oldRow;
+        } else if (oldRow >= oldEnd) {
+            return oldRow - oldEnd + newEnd;
+        }
+        final Integer ret = newRows.get(object);
+        return ret != null ? ret : -1;
+    }
+
+    /**
+     * @param data
+     * @return identity based object->row index of data or null if data contains an object more than once
+     */
+    private IdentityHashMap<E, Integer> getRowIndex(final List<E> data) {
+        IdentityHashMap<E, Integer> ret = this.rowIndex;
+        if (ret != null && ret.size() == data.size()) {
+            return ret;
+        }
+        ret = ExtTableModel.buildRowIndex(data, 0, data.size());
+        if (ret != null && data == this.getTableData()) {
+            this.rowIndex = ret;
+        }
+        return ret;
+    }
+
+    private static <T> IdentityHashMap<T, Integer> buildRowIndex(final List<T> data, final int from, final int to) {
+        final IdentityHashMap<T, Integer> ret = new IdentityHashMap<T, Integer>(to - from);
+        for (int index = from; index < to; index++) {
+            if (ret.put(data.get(index), index) != null) {
+                return null;
+            }
+        }
+        return ret;
+    }
+
     public void addAllElements(final Collection<E> entries) {
         final java.util.List<E> newdata = new ArrayList<E>(this.getTableData());
         for (final E n : entries) {
@@ -720,7 +1025,22 @@ public abstract class ExtTableModel<E> extends AbstractTableModel {
      * @return
      */
     public int getRowforObject(final E o) {
-        return this.getTableData().indexOf(o);
+        final List<E> ltableData = this.getTableData();
+        if (this.isIncrementalUpdates()) {
+            final IdentityHashMap<E, Integer> lrowIndex = this.getRowIndex(ltableData);
+            if (lrowIndex != null) {
+                final Integer row = lrowIndex.get(o);
+                if (row == null) {
+                    return -1;
+                }
+                if (row < ltableData.size() && ltableData.get(row) == o) {
+                    return row;
+                }
+                /* tableData got modified in place */
+                this.rowIndex = null;
+            }
+        }
+        return ltableData.indexOf(o);
     }
 
     /**
@@ -921,6 +1241,23 @@ public abstract class ExtTableModel<E> extends AbstractTableModel {
         this.autoWidthEnabled = autoWidthEnabled;
     }
 
+    public boolean isIncrementalUpdates() {
+        return this.incrementalUpdates;
+    }
+
+    /**
+     * if enabled, new tableData is applied with fine grained row events (see {@link #replaceTableDataIncremental(ExtTable, List)}) instead
+     * of fireTableStructureChanged and rows are looked up by identity
+     *
+     * @param incrementalUpdates
+     */
+    public void setIncrementalUpdates(final boolean incrementalUpdates) {
+        this.incrementalUpdates = incrementalUpdates;
+        if (!incrementalUpdates) {
+            this.rowIndex = null;
+        }
+    }
+
     /**
      * @return if the cell is editable. This information is stored in the ExtColumn instance.
      * @see ExtColumn#isCellEditable(int, int)
@@ -1196,7 +1533,19 @@ public abstract class ExtTableModel<E> extends AbstractTableModel {
                     final ArrayList<E> unoptimizedSelection = new ArrayList<E>();
                     final int[] maxUnoptimizedIndices = new int[selectionSize];
                     int unoptimizedIndex = 0;
+                    final IdentityHashMap<E, Integer> lrowIndex = ExtTableModel.this.isIncrementalUpdates() ? ExtTableModel.this.getRowIndex(ltableData) : null;
                     optmizedLoop: for (E obj : selections) {
+                        if (lrowIndex != null) {
+                            final Integer row = lrowIndex.get(obj);
+                            if (row != null && row < tableDataSize && ltableData.get(row) == obj) {
+                                selectedRows[selectedRowsCounter++] = row;
+                                continue optmizedLoop;
+                            } else if (row == null) {
+                                continue optmizedLoop;
+                            }
+                            /* tableData got modified in place, search it */
+                            lastOptimizedIndex = tableDataSize;
+                        }
                         for (int tableIndex = lastOptimizedIndex; tableIndex < tableDataSize; tableIndex++) {
                             if (obj == ltableData.get(tableIndex)) {
                                 lastOptimizedIndex = tableIndex;
@@ -1336,6 +1685,7 @@ public abstract class ExtTableModel<E> extends AbstractTableModel {
 
     protected void setTableData(final List<E> data) {
         this.tableData = data;
+        this.rowIndex = null;
     }
 
     // TODO docu
@@ -1359,7 +1709,7 @@ public abstract class ExtTableModel<E> extends AbstractTableModel {
                 org.appwork.utils.logging2.extmanager.LoggerFactory.getDefaultLogger().log(e);
             }
             try {
-                Collections.sort(data, column.getRowSorter());
+                this.sortRows(data, column.getRowSorter());
             } catch (final Throwable e) {
                 org.appwork.utils.logging2.extmanager.LoggerFactory.getDefaultLogger().log(e);
             }
@@ -1374,6 +1724,61 @@ public abstract class ExtTableModel<E> extends AbstractTableModel {
         return data;
     }
 
+    /**
+     * sorts data in place. if the sorter provides sort keys, they are calculated once per row and large lists get sorted in parallel.
+     * Keys are not kept between sort runs, rows change their values without model events and a new sort run is how those changes get
+     * applied
+     *
+     * @param data
+     * @param sorter
+     */
+    protected void sortRows(final List<E> data, final ExtDefaultRowSorter<E> sorter) {
+        final int size = data.size();
+        if (size < 2) {
+            return;
+        }
+        final Comparable<?> firstKey = sorter.getSortKey(data.get(0));
+        if (firstKey == null) {
+            /* row sorters may keep state in compare (e.g. ExtDateColumn), so no parallel sort here */
+            Collections.sort(data, sorter);
+            return;
+        }
+        /* calculate each key once instead of in every compare */
+        final ArrayList<SortKeyEntry<E>> entries = new ArrayList<SortKeyEntry<E>>(size);
+        entries.add(new SortKeyEntry<E>(firstKey, data.get(0)));
+        for (int index = 1; index < size; index++) {
+            final E row = data.get(index);
+            final Comparable<?> key = sorter.getSortKey(row);
+            if (key == null) {
+                Collections.sort(data, sorter);
+                return;
+            }
+            entries.add(new SortKeyEntry<E>(key, row));
+        }
+        Lists.sort(entries, new Comparator<SortKeyEntry<E>>() {
+
+            @Override
+            public int compare(final SortKeyEntry<E> o1, final SortKeyEntry<E> o2) {
+                return sorter.compareSortKeys(o1.key, o2.key);
+            }
+        }, 0);
+        final ListIterator<E> it = data.listIterator();
+        for (final SortKeyEntry<E> entry : entries) {
+            it.next();
+            it.set(entry.row);
+        }
+    }
+
+    private static class SortKeyEntry<E> {
+        private final Comparable<?> key;
+        private final E             row;
+
+        private SortKeyEntry(final Comparable<?> key, final E row) {
+            this.key = key;
+            this.row = row;
+        }
+    }
+
     protected int findFirstSelectedRow(final ListSelectionModel s) {
         int min;
         min = s.getMinSelectionIndex();
@@ -207,6 +207,29 @@ public abstract class ExtTextColumn<E> extends ExtColumn<E> implements ActionLis
                     return o2s.compareToIgnoreCase(o1s);
                 }
             }
+
+            @Override
+            public Comparable<?> getSortKey(final E o) {
+                final String s = ExtTextColumn.this.getStringValue(o);
+                if (s == null) {
+                    return "";
+                }
+                /* same folding as String.CASE_INSENSITIVE_ORDER, so comparing keys equals compareToIgnoreCase */
+                final char[] chars = s.toCharArray();
+                for (int index = 0; index < chars.length; index++) {
+                    chars[index] = Character.toLowerCase(Character.toUpperCase(chars[index]));
+                }
+                return new String(chars);
+            }
+
+            @Override
+            public int compareSortKeys(final Comparable<?> k1, final Comparable<?> k2) {
+                if (this.getSortOrderIdentifier() == ExtColumn.SORT_ASC) {
+                    return ((String) k1).compareTo((String) k2);
+                } else {
+                    return ((String) k2).compareTo((String) k1);
+                }
+            }
         });
     }
 
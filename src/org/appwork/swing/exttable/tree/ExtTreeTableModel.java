@@ -38,6 +38,7 @@ import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import org.appwork.exceptions.WTFException;
 import org.appwork.swing.exttable.ExtColumn;
@@ -49,7 +50,20 @@ import org.appwork.swing.exttable.ExtTableModel;
  */
 public abstract class ExtTreeTableModel<T extends TreeNodeInterface> extends ExtTableModel<T> {
 
-    private List<T> tree;
+    /**
+     * flattened rows of a tree. The list is published as tableData, so the tree gets assigned on the EDT together with its rows
+     */
+    private static class TreeTableData<T> extends ArrayList<T> {
+        private static final long serialVersionUID = 1L;
+        private final List<T>     tree;
+
+        private TreeTableData(final List<T> tree, final int initialCapacity) {
+            super(initialCapacity);
+            this.tree = tree;
+        }
+    }
+
+    private volatile List<T> tree;
 
     public List<T> getTree() {
         return tree;
@@ -64,14 +78,53 @@ public abstract class ExtTreeTableModel<T extends TreeNodeInterface> extends Ext
     }
 
     public void setTreeData(final ArrayList<T> newtableData, final boolean refreshSOrt) {
-        final ArrayList<T> list = new ArrayList<T>();
+        final ArrayList<T> list = new TreeTableData<T>(newtableData, 10);
         for (final T node : newtableData) {
             unpack(list, node);
         }
-        this.tree = newtableData;
         _fireTableStructureChanged(list, refreshSOrt);
     }
 
+    /**
+     * like {@link #setTreeData(ArrayList, boolean)}, but the tree gets flattened, filtered and sorted on the background pipeline of the
+     * model. newtableData must not be modified until it got published
+     */
+    public void setTreeDataInBackground(final ArrayList<T> newtableData, final boolean refreshSOrt) {
+        scheduleTableData(new Callable<List<T>>() {
+
+            @Override
+            public List<T> call() throws Exception {
+                final ArrayList<T> list = new TreeTableData<T>(newtableData, 10);
+                for (final T node : newtableData) {
+                    unpack(list, node);
+                }
+                return list;
+            }
+        }, refreshSOrt);
+    }
+
+    @Override
+    protected List<T> filterTableData(final List<T> data) {
+        if (data instanceof TreeTableData) {
+            final TreeTableData<T> ret = new TreeTableData<T>(((TreeTableData<T>) data).tree, data.size());
+            for (final T e : data) {
+                if (!this.isFiltered(e)) {
+                    ret.add(e);
+                }
+            }
+            return ret;
+        }
+        return super.filterTableData(data);
+    }
+
+    @Override
+    protected void setTableData(final List<T> data) {
+        super.setTableData(data);
+        if (data instanceof TreeTableData) {
+            this.tree = ((TreeTableData<T>) data).tree;
+        }
+    }
+
     @Override
     public void addAllElements(final Collection<T> entries) {
         throw new WTFException("Not Implemented");
@@ -34,11 +34,143 @@
 package org.appwork.utils;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
+import java.util.List;
+import java.util.ListIterator;
 
 public class Lists {
 
+    /**
+     * lists smaller than this are sorted by Collections.sort in {@link #sort(List, Comparator, int)}
+     */
+    public static final int PARALLEL_SORT_MIN_SIZE = 8192;
+
+    /**
+     * stable sort like {@link Collections#sort(List, Comparator)}, but large lists are split into one chunk per thread. The chunks get
+     * sorted and pairwise merged in parallel. The comparator must be threadsafe.
+     * 
+     * @param list
+     * @param comparator
+     * @param threads
+     *            <=0 uses one thread per available processor
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> void sort(final List<T> list, final Comparator<? super T> comparator, final int threads) {
+        final int size = list.size();
+        final int chunkCount = Math.min(threads <= 0 ? Runtime.getRuntime().availableProcessors() : threads, size / (Lists.PARALLEL_SORT_MIN_SIZE / 2));
+        if (chunkCount < 2 || size < Lists.PARALLEL_SORT_MIN_SIZE) {
+            Collections.sort(list, comparator);
+            return;
+        }
+        final Comparator<Object> c = (Comparator<Object>) comparator;
+        Object[] src = list.toArray();
+        Object[] dst = new Object[size];
+        final int[] bounds = new int[chunkCount + 1];
+        for (int index = 0; index <= chunkCount; index++) {
+            bounds[index] = (int) ((long) size * index / chunkCount);
+        }
+        final Object[] chunks = src;
+        Lists.runParallel(chunkCount, new Lists.Task() {
+
+            @Override
+            public void run(final int index) {
+                Arrays.sort(chunks, bounds[index], bounds[index + 1], c);
+            }
+        });
+        for (int width = 1; width < chunkCount; width *= 2) {
+            final Object[] from = src;
+            final Object[] to = dst;
+            final int step = width;
+            final int merges = (chunkCount + 2 * width - 1) / (2 * width);
+            Lists.runParallel(merges, new Lists.Task() {
+
+                @Override
+                public void run(final int index) {
+                    final int lo = bounds[index * 2 * step];
+                    final int mid = bounds[Math.min(chunkCount, index * 2 * step + step)];
+                    final int hi = bounds[Math.min(chunkCount, index * 2 * step + 2 * step)];
+                    int left = lo;
+                    int right = mid;
+                    int pos = lo;
+                    while (left < mid && right < hi) {
+                        if (c.compare(from[left], from[right]) <= 0) {
+                            to[pos++] = from[left++];
+                        } else {
+                            to[pos++] = from[right++];
+                        }
+                    }
+                    System.arraycopy(from, left, to, pos, mid - left);
+                    System.arraycopy(from, right, to, pos + mid - left, hi - right);
+                }
+            });
+            dst = src;
+            src = to;
+        }
+        final ListIterator<T> it = list.listIterator();
+        for (final Object element : src) {
+            it.next();
+            it.set((T) element);
+        }
+    }
+
+    private static interface Task {
+        public void run(int index);
+    }
+
+    /**
+     * runs task 0..count-1, each on its own thread (the last one on the calling thread) and rethrows the first error
+     */
+    private static void runParallel(final int count, final Task task) {
+        final NullsafeAtomicReference<Throwable> error = new NullsafeAtomicReference<Throwable>(null);
+        final Thread[] threads = new Thread[count - 1];
+        for (int index = 0; index < threads.length; index++) {
+            final int taskIndex = index;
+            threads[index] = new Thread("Lists.sort:" + index) {
+                @Override
+                public void run() {
+                    try {
+                        task.run(taskIndex);
+                    } catch (final Throwable e) {
+                        error.compareAndSet(null, e);
+                    }
+                }
+            };
+            threads[index].setDaemon(true);
+            threads[index].start();
+        }
+        try {
+            task.run(count - 1);
+        } catch (final Throwable e) {
+            error.compareAndSet(null, e);
+        }
+        boolean interrupted = false;
+        for (final Thread thread : threads) {
+            while (true) {
+                try {
+                    thread.join();
+                    break;
+                } catch (final InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        final Throwable e = error.get();
+        if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        } else if (e instanceof Error) {
+            throw (Error) e;
+        } else if (e != null) {
+            throw new RuntimeException(e);
+        }
+    }
+
     /**
      * returns a list which has only unique values This is "order-safe"
      * 
@@ -37,6 +37,8 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.security.MessageDigest;
 import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import org.appwork.utils.net.CountingOutputStream;
 
@@ -46,6 +48,121 @@ import org.appwork.utils.net.CountingOutputStream;
  */
 public class AWFCOutputStream extends OutputStream {
 
+    /**
+     * updates a MessageDigest on its own thread, so hashing runs in parallel to whatever produces and writes the payload. The thread does
+     * not reference the AWFCOutputStream, so an unclosed stream can still be finalized and stop it
+     */
+    private static class DigestPipe extends Thread {
+        private static final Object               RESET        = new Object();
+        private static final Object               DIGEST       = new Object();
+
+        private final MessageDigest               md;
+        private final ArrayBlockingQueue<Object>  queue        = new ArrayBlockingQueue<Object>(64);
+        private final ArrayBlockingQueue<byte[]>  digests      = new ArrayBlockingQueue<byte[]>(1);
+        /* single bytes are collected here instead of queuing a byte[1] for each of them */
+        private final byte[]                      single       = new byte[512];
+        private int                               singleLength = 0;
+        private volatile boolean                  stopped      = false;
+
+        private DigestPipe(final MessageDigest md) {
+            super("AWFCOutputStream:DigestPipe");
+            this.md = md;
+            this.setDaemon(true);
+        }
+
+        private byte[] digest() throws IOException {
+            this.put(DigestPipe.DIGEST);
+            try {
+                while (true) {
+                    final byte[] ret = this.digests.poll(1000, TimeUnit.MILLISECONDS);
+                    if (ret != null) {
+                        return ret;
+                    }
+                    this.checkAlive();
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted");
+            }
+        }
+
+        private void checkAlive() throws IOException {
+            if (this.stopped || !this.isAlive()) {
+                throw new IOException("DigestPipe is stopped");
+            }
+        }
+
+        private void flushSingle() throws IOException {
+            if (this.singleLength > 0) {
+                final byte[] item = Arrays.copyOf(this.single, this.singleLength);
+                this.singleLength = 0;
+                this.offer(item);
+            }
+        }
+
+        private void offer(final Object item) throws IOException {
+            try {
+                while (!this.queue.offer(item, 1000, TimeUnit.MILLISECONDS)) {
+                    this.checkAlive();
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted");
+            }
+        }
+
+        private void put(final Object item) throws IOException {
+            this.checkAlive();
+            this.flushSingle();
+            this.offer(item);
+        }
+
+        private void reset() throws IOException {
+            this.put(DigestPipe.RESET);
+        }
+
+        /**
+         * stops the thread and releases the queued buffers, can be called from any thread
+         */
+        private void stopPipe() {
+            this.stopped = true;
+            this.interrupt();
+            this.queue.clear();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!this.stopped) {
+                    final Object item = this.queue.take();
+                    if (item == DigestPipe.RESET) {
+                        this.md.reset();
+                    } else if (item == DigestPipe.DIGEST) {
+                        this.digests.put(this.md.digest());
+                    } else {
+                        this.md.update((byte[]) item);
+                    }
+                }
+            } catch (final InterruptedException e) {
+            }
+        }
+
+        private void update(final byte[] b, final int off, final int len) throws IOException {
+            if (len > 0) {
+                /* copy, the caller may reuse its buffer as soon as write returns */
+                this.put(Arrays.copyOfRange(b, off, off + len));
+            }
+        }
+
+        private void update(final int b) throws IOException {
+            if (this.singleLength == this.single.length) {
+                this.checkAlive();
+                this.flushSingle();
+            }
+            this.single[this.singleLength++] = (byte) b;
+        }
+    }
+
     /**
      * Appwork FileContainer *
      */
@@ -56,10 +173,25 @@ public class AWFCOutputStream extends OutputStream {
     protected boolean            headerWritten               = false;
     protected final AWFCUtils    utils;
     private boolean              closing                     = false;
+    private final DigestPipe     digestPipe;
 
     public AWFCOutputStream(final OutputStream os, final MessageDigest md) {
+        this(os, md, false);
+    }
+
+    /**
+     * @param pipelinedHashing
+     *            update the MessageDigest on a separate thread instead of the writing one
+     */
+    public AWFCOutputStream(final OutputStream os, final MessageDigest md, final boolean pipelinedHashing) {
         this.os = os;
         this.md = md;
+        if (md != null && pipelinedHashing) {
+            this.digestPipe = new DigestPipe(md);
+            this.digestPipe.start();
+        } else {
+            this.digestPipe = null;
+        }
         this.utils = new AWFCUtils() {
 
             @Override
@@ -73,10 +205,30 @@ public class AWFCOutputStream extends OutputStream {
     @Override
     public synchronized void close() throws IOException {
         this.closing = true;
-        if (this.headerWritten == false) {
-            this.writeAWFCHeader();
+        try {
+            if (this.headerWritten == false) {
+                this.writeAWFCHeader();
+            }
+            this.getCurrentOutputStream().close();
+        } finally {
+            this.stopDigestPipe();
+        }
+    }
+
+    @Override
+    protected void finalize() throws Throwable {
+        try {
+            /* stream was never closed */
+            this.stopDigestPipe();
+        } finally {
+            super.finalize();
+        }
+    }
+
+    private void stopDigestPipe() {
+        if (this.digestPipe != null) {
+            this.digestPipe.stopPipe();
         }
-        this.getCurrentOutputStream().close();
     }
 
     private synchronized void closeLastEntry() throws IOException {
@@ -86,7 +238,7 @@ public class AWFCOutputStream extends OutputStream {
             final AWFCEntry entry = this.currentEntry.getEntry();
             if (this.currentEntry.hasPayLoad()) {
                 if (entry.getSize() != bytesWritten) { throw new IOException("Wrong size for Entry: " + entry + " != " + bytesWritten); }
-                if (entry.isFile() && this.md != null && !Arrays.equals(entry.getHash(), this.md.digest())) { throw new IOException("Wrong hash for Entry: " + entry); }
+                if (entry.isFile() && this.md != null && !Arrays.equals(entry.getHash(), this.digest())) { throw new IOException("Wrong hash for Entry: " + entry); }
             } else {
                 if (bytesWritten > 0) { throw new IOException("Entry must not have payLoad: " + entry + " != " + bytesWritten); }
             }
@@ -98,6 +250,13 @@ public class AWFCOutputStream extends OutputStream {
         }
     }
 
+    private byte[] digest() throws IOException {
+        if (this.digestPipe != null) {
+            return this.digestPipe.digest();
+        }
+        return this.md.digest();
+    }
+
     @Override
     public synchronized void flush() throws IOException {
         this.getCurrentOutputStream().flush();
@@ -129,7 +288,9 @@ public class AWFCOutputStream extends OutputStream {
         }
         /* write AWFCHeader */
         this.writeAWFCEntry(this.currentEntry);
-        if (this.md != null) {
+        if (this.digestPipe != null) {
+            this.digestPipe.reset();
+        } else if (this.md != null) {
             this.md.reset();
         }
         this.currentCountingOutputStream = new CountingOutputStream(this.os) {
@@ -145,24 +306,32 @@ public class AWFCOutputStream extends OutputStream {
 
             @Override
             public void write(final byte[] b) throws IOException {
-                super.write(b);
-                if (AWFCOutputStream.this.md != null) {
-                    AWFCOutputStream.this.md.update(b);
-                }
+                this.write(b, 0, b.length);
             }
 
             @Override
             public void write(final byte[] b, final int off, final int len) throws IOException {
-                super.write(b, off, len);
-                if (AWFCOutputStream.this.md != null) {
-                    AWFCOutputStream.this.md.update(b, off, len);
+                try {
+                    super.write(b, off, len);
+                } catch (final IOException e) {
+                    /* the stream is broken, hashing would never finish */
+                    AWFCOutputStream.this.stopDigestPipe();
+                    throw e;
                 }
+                AWFCOutputStream.this.updateDigest(b, off, len);
             }
 
             @Override
             public void write(final int b) throws IOException {
-                super.write(b);
-                if (AWFCOutputStream.this.md != null) {
+                try {
+                    super.write(b);
+                } catch (final IOException e) {
+                    AWFCOutputStream.this.stopDigestPipe();
+                    throw e;
+                }
+                if (AWFCOutputStream.this.digestPipe != null) {
+                    AWFCOutputStream.this.digestPipe.update(b);
+                } else if (AWFCOutputStream.this.md != null) {
                     AWFCOutputStream.this.md.update((byte) b);
                 }
             }
@@ -171,6 +340,14 @@ public class AWFCOutputStream extends OutputStream {
 
     }
 
+    private void updateDigest(final byte[] b, final int off, final int len) throws IOException {
+        if (this.digestPipe != null) {
+            this.digestPipe.update(b, off, len);
+        } else if (this.md != null) {
+            this.md.update(b, off, len);
+        }
+    }
+
     @Override
     public synchronized void write(final byte b[]) throws IOException {
         this.getCurrentOutputStream().write(b);
@@ -466,6 +466,84 @@ public class Base64 {
         return dArr;
     }
 
+    /**
+     * Encodes <code>len</code> bytes of <code>sArr</code> into <code>dArr</code> without any line separators. Meant for streaming, where
+     * the caller passes multiples of 3 bytes and only the last block may be shorter (and will be padded).
+     *
+     * @param sArr
+     *            The source array.
+     * @param sOff
+     *            The offset in the source array.
+     * @param len
+     *            The number of bytes to encode.
+     * @param dArr
+     *            The destination array, must have room for <code>((len + 2) / 3) * 4</code> bytes.
+     * @param dOff
+     *            The offset in the destination array.
+     * @return The number of BASE64 characters written to <code>dArr</code>.
+     */
+    public final static int encodeBlock(byte[] sArr, int sOff, int len, byte[] dArr, int dOff) {
+        int s = sOff, d = dOff;
+        int eEnd = sOff + (len / 3) * 3;
+        // Encode even 24-bits
+        while (s < eEnd) {
+            int i = (sArr[s++] & 0xff) << 16 | (sArr[s++] & 0xff) << 8 | (sArr[s++] & 0xff);
+            dArr[d++] = (byte) CA[(i >>> 18) & 0x3f];
+            dArr[d++] = (byte) CA[(i >>> 12) & 0x3f];
+            dArr[d++] = (byte) CA[(i >>> 6) & 0x3f];
+            dArr[d++] = (byte) CA[i & 0x3f];
+        }
+        // Pad and encode last bits if source isn't an even 24 bits.
+        int left = sOff + len - eEnd; // 0 - 2.
+        if (left > 0) {
+            int i = ((sArr[eEnd] & 0xff) << 10) | (left == 2 ? ((sArr[eEnd + 1] & 0xff) << 2) : 0);
+            dArr[d++] = (byte) CA[i >> 12];
+            dArr[d++] = (byte) CA[(i >>> 6) & 0x3f];
+            dArr[d++] = left == 2 ? (byte) CA[i & 0x3f] : (byte) '=';
+            dArr[d++] = '=';
+        }
+        return d - dOff;
+    }
+
+    /**
+     * Decodes <code>len</code> BASE64 characters of <code>sArr</code> into <code>dArr</code>. Meant for streaming, where the caller has
+     * already removed line separators. <code>len</code> must be a multiple of 4, padding is allowed at the end of every 4 character group
+     * so concatenated BASE64 data can be decoded too.
+     *
+     * @param sArr
+     *            The source array.
+     * @param sOff
+     *            The offset in the source array.
+     * @param len
+     *            The number of characters to decode, a multiple of 4.
+     * @param dArr
+     *            The destination array, must have room for <code>(len / 4) * 3</code> bytes.
+     * @param dOff
+     *            The offset in the destination array.
+     * @return The number of decoded bytes or -1 if an illegal character was found.
+     */
+    public final static int decodeBlock(byte[] sArr, int sOff, int len, byte[] dArr, int dOff) {
+        int s = sOff, d = dOff;
+        int sEnd = sOff + len;
+        while (s < sEnd) {
+            byte c2 = sArr[s + 2], c3 = sArr[s + 3];
+            // Any illegal character (-1) makes the int negative
+            int i = IA[sArr[s] & 0xff] << 18 | IA[sArr[s + 1] & 0xff] << 12 | IA[c2 & 0xff] << 6 | IA[c3 & 0xff];
+            if (i < 0) {
+                return -1;
+            }
+            s += 4;
+            dArr[d++] = (byte) (i >> 16);
+            if (c2 != '=') {
+                dArr[d++] = (byte) (i >> 8);
+                if (c3 != '=') {
+                    dArr[d++] = (byte) i;
+                }
+            }
+        }
+        return d - dOff;
+    }
+
     // ****************************************************************************************
     // * String version
     // ****************************************************************************************
@@ -37,6 +37,7 @@ import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
 import java.lang.ref.WeakReference;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
@@ -322,6 +323,30 @@ public abstract class Streaming {
         }
     }
 
+    protected long transferChunkData(final StreamingInputStream streamingInputStream, final WritableByteChannel target, final long count) throws IOException {
+        if (this.isClosed()) { return -1; }
+        StreamingChunk currentChunk = streamingInputStream.getCurrentChunk();
+        try {
+            while (true) {
+                final long ret = currentChunk.transferTo(streamingInputStream.getCurrentPosition(), count, target);
+                if (ret > 0) { return ret; }
+                if (ret == -1) {
+                    /*
+                     * this chunk is finished, try to find next one and
+                     * transfer from it
+                     */
+                    currentChunk = this.getNextStreamingChunk(streamingInputStream.getCurrentPosition(), streamingInputStream.getEndPosition());
+                    if (currentChunk == null) { return -1; }
+                    streamingInputStream.setCurrentChunk(currentChunk);
+                    continue;
+                }
+                throw new WTFException("How could this happen?!");
+            }
+        } catch (final InterruptedException e) {
+            throw new IOException(e);
+        }
+    }
+
     protected StreamingInputStream streamingInputStreamFactory(final long startPosition, final long endPosition) {
         return new StreamingInputStream(this, startPosition, endPosition);
     }
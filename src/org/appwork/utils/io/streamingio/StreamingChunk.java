@@ -43,27 +43,42 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.concurrent.atomic.AtomicLong;
 
 public class StreamingChunk {
 
-    protected RandomAccessFile chunkFile        = null;
-    protected volatile boolean canGrow          = false;
-    protected AtomicLong       writes           = new AtomicLong(0);
-    protected AtomicLong       currentChunkSize = new AtomicLong(0);
-    protected final long       chunkStartPosition;
+    /* max milliseconds transferTo sleeps while the target accepts no bytes */
+    private static final long   MAX_TRANSFER_BACKOFF = 50;
+
+    protected RandomAccessFile  chunkFile        = null;
+    protected final FileChannel chunkChannel;
+    protected volatile boolean  canGrow          = false;
+    protected AtomicLong        writes           = new AtomicLong(0);
+    protected AtomicLong        currentChunkSize = new AtomicLong(0);
+    protected final long        chunkStartPosition;
+    /* readers wait on this lock until a writer extends the chunk or canGrow changes */
+    protected final Object      dataAvailable    = new Object();
+    protected final Object      writeLock        = new Object();
+    protected volatile boolean  closed           = false;
 
     public StreamingChunk(final File file, final long chunkStartPosition) throws FileNotFoundException {
         this.chunkFile = new RandomAccessFile(file, "rw");
+        this.chunkChannel = this.chunkFile.getChannel();
         this.currentChunkSize.set(file.length());
         this.chunkStartPosition = chunkStartPosition;
     }
 
-    private synchronized int _read(final byte b[], final int off, final int len, long position) throws IOException {
+    /**
+     * positional read, does not modify the file pointer so multiple readers can read concurrently
+     */
+    private int _read(final byte b[], final int off, final int len, long position) throws IOException {
         position = position - this.chunkStartPosition;
-        if (position < this.currentChunkSize.get()) {
-            this.chunkFile.seek(position);
-            return this.chunkFile.read(b, off, (int) Math.min(len, this.currentChunkSize.get() - position));
+        final long available = this.currentChunkSize.get();
+        if (position < available) {
+            return this.chunkChannel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, available - position)), position);
         } else if (this.canGrow == false) {
             return -1;
         } else {
@@ -71,6 +86,36 @@ public class StreamingChunk {
         }
     }
 
+    /**
+     * waits until the chunk contains data at given position or cannot grow anymore
+     *
+     * @param position
+     *            absolute position
+     * @return number of bytes available at position or -1 if the chunk is finished
+     * @throws InterruptedException
+     */
+    protected long waitForData(final long position) throws InterruptedException {
+        final long chunkPosition = position - this.chunkStartPosition;
+        synchronized (this.dataAvailable) {
+            while (true) {
+                final long available = this.currentChunkSize.get() - chunkPosition;
+                if (available > 0) {
+                    return available;
+                }
+                if (this.canGrow == false || this.closed) {
+                    return -1;
+                }
+                this.dataAvailable.wait(5000);
+            }
+        }
+    }
+
+    private void signalDataAvailable() {
+        synchronized (this.dataAvailable) {
+            this.dataAvailable.notifyAll();
+        }
+    }
+
     /**
      * can this StreamingChunk grow, that means is there someone writing to it
      * 
@@ -84,9 +129,12 @@ public class StreamingChunk {
      * close this StreamingChunk (its RandomAccessFile)
      */
     public void close() {
+        this.closed = true;
         try {
             this.chunkFile.close();
         } catch (final Throwable e) {
+        } finally {
+            this.signalDataAvailable();
         }
     }
 
@@ -121,25 +169,38 @@ public class StreamingChunk {
      */
     public int read(final byte b[], final int off, final int len, final long position) throws IOException, InterruptedException {
         if (position < 0) { throw new IOException("invalid position " + position); }
-        final long lastWrites = this.writes.get();
-        int ret = this._read(b, off, len, position);
-        if (ret > 0 || ret == -1) {
-
-            //
-            return ret;
-
-        }
         while (true) {
-            Thread.sleep(50);
+            final int ret = this._read(b, off, len, position);
+            if (ret > 0 || ret == -1) { return ret; }
+            if (this.waitForData(position) == -1) { return -1; }
+        }
+    }
 
-            if (lastWrites != this.writes.get()) {
-                ret = this._read(b, off, len, position);
-                if (ret > 0 || ret == -1) { return ret; }
-            }
-            if (this.canGrow == false) {
-                //
-                return -1;
-            }
+    /**
+     * transfers bytes from this chunk at given position directly to the target channel (eg a socket) without copying them through the
+     * java heap, waits for a writer if the chunk can still grow
+     *
+     * @param position
+     * @param count
+     * @param target
+     * @return number of transferred bytes or -1 if this chunk is finished
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public long transferTo(final long position, final long count, final WritableByteChannel target) throws IOException, InterruptedException {
+        if (position < 0) { throw new IOException("invalid position " + position); }
+        long backOff = 0;
+        while (true) {
+            final long available = this.waitForData(position);
+            if (available == -1) { return -1; }
+            final long ret = this.chunkChannel.transferTo(position - this.chunkStartPosition, Math.min(count, available), target);
+            if (ret > 0) { return ret; }
+            /*
+             * target did not accept anything (eg non-blocking socket with full
+             * send buffer), back off instead of spinning
+             */
+            backOff = Math.min(Math.max(1, backOff * 2), StreamingChunk.MAX_TRANSFER_BACKOFF);
+            Thread.sleep(backOff);
         }
     }
 
@@ -150,15 +211,18 @@ public class StreamingChunk {
      */
     public void setCanGrow(final boolean b) {
         this.canGrow = b;
+        this.signalDataAvailable();
     }
 
     /**
      * flush the buffer to disk!
      */
-    public synchronized void sync() {
-        try {
-            this.chunkFile.getFD().sync();
-        } catch (final Throwable e) {
+    public void sync() {
+        synchronized (this.writeLock) {
+            try {
+                this.chunkFile.getFD().sync();
+            } catch (final Throwable e) {
+            }
         }
     }
 
@@ -170,13 +234,17 @@ public class StreamingChunk {
      * @param len
      * @throws IOException
      */
-    public synchronized void write(final byte b[], final int off, final int len) throws IOException {
-        if (this.chunkFile.getFilePointer() != this.chunkFile.length()) {
-            this.chunkFile.seek(this.chunkFile.length());
+    public void write(final byte b[], final int off, final int len) throws IOException {
+        synchronized (this.writeLock) {
+            final ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+            long position = this.chunkChannel.size();
+            while (buffer.hasRemaining()) {
+                position += this.chunkChannel.write(buffer, position);
+            }
+            this.currentChunkSize.addAndGet(len);
+            this.writes.incrementAndGet();
         }
-        this.chunkFile.write(b, off, len);
-        this.currentChunkSize.addAndGet(len);
-        this.writes.incrementAndGet();
+        this.signalDataAvailable();
     }
 
     /**
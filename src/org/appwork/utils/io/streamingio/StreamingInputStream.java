@@ -35,6 +35,7 @@ package org.appwork.utils.io.streamingio;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.WritableByteChannel;
 
 /**
  * @author daniel
@@ -125,6 +126,31 @@ public class StreamingInputStream extends InputStream {
         return ret;
     }
 
+    /**
+     * transfers up to count bytes directly from the chunk files to the target channel (eg SocketChannel), the data is not copied through
+     * the java heap
+     *
+     * @param target
+     * @param count
+     * @return number of transferred bytes or -1 on EOF
+     * @throws IOException
+     */
+    public long transferTo(final WritableByteChannel target, final long count) throws IOException {
+        if (this.currentChunk == null) {
+            //
+            throw new IOException(DOWNLOAD_STREAM_IS_CLOSED);
+        }
+        long len = count;
+        if (this.endPosition >= 0) {
+            len = Math.min(len, this.endPosition - this.currentPosition);
+            if (len <= 0) { return -1; }
+        }
+        final long ret = this.streaming.transferChunkData(this, target, len);
+        if (ret == -1) { return -1; }
+        this.currentPosition += ret;
+        return ret;
+    }
+
     @Override
     public void reset() throws IOException {
         throw new IOException("mark/reset not supported");
@@ -0,0 +1,117 @@
+/**
+ *
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ *
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header.
+ *
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ *
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.utils.logging2;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * the single writer thread of all asynchronous {@link LogSinkFileHandler}s
+ *
+ * @author daniel
+ *
+ */
+class AsyncLogWriter extends Thread {
+
+    private static final int                                       BATCH_SIZE = 1024;
+    private static final CopyOnWriteArrayList<LogSinkFileHandler> HANDLERS   = new CopyOnWriteArrayList<LogSinkFileHandler>();
+    private static final AtomicBoolean                             SLEEPING   = new AtomicBoolean(false);
+    private static volatile AsyncLogWriter                         WRITER     = null;
+
+    protected static synchronized void register(final LogSinkFileHandler handler) {
+        HANDLERS.addIfAbsent(handler);
+        if (WRITER == null || !WRITER.isAlive()) {
+            WRITER = new AsyncLogWriter();
+            WRITER.start();
+        }
+    }
+
+    protected static void unregister(final LogSinkFileHandler handler) {
+        HANDLERS.remove(handler);
+    }
+
+    protected static boolean isWriterThread() {
+        return Thread.currentThread() == WRITER;
+    }
+
+    /**
+     * wakes up the writer thread in case it is sleeping, cheap if it is already awake
+     */
+    protected static void wakeup() {
+        if (SLEEPING.get() && SLEEPING.compareAndSet(true, false)) {
+            final AsyncLogWriter writer = WRITER;
+            if (writer != null) {
+                LockSupport.unpark(writer);
+            }
+        }
+    }
+
+    private AsyncLogWriter() {
+        super("AsyncLogWriter");
+        this.setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            try {
+                boolean written = false;
+                for (final LogSinkFileHandler handler : HANDLERS) {
+                    if (handler.writeQueuedRecords(BATCH_SIZE) > 0) {
+                        written = true;
+                    }
+                }
+                if (!written) {
+                    SLEEPING.set(true);
+                    if (!this.hasQueuedRecords()) {
+                        LockSupport.parkNanos(this, 1000 * 1000000l);
+                    }
+                    SLEEPING.set(false);
+                }
+            } catch (final Throwable e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private boolean hasQueuedRecords() {
+        for (final LogSinkFileHandler handler : HANDLERS) {
+            if (handler.hasQueuedRecords()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
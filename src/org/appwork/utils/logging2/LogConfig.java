@@ -75,12 +75,21 @@ public interface LogConfig extends ConfigInterface {
     @RequiresRestart("A JDownloader Restart is Required")
     int getMaxLogFileSize();
 
+    @AboutConfig
+    @DefaultIntValue(0)
+    @SpinnerValidator(min = 0, max = 1024 * 1024)
+    @DescriptionForConfigEntry("Queue size(records) of the asynchronous logfile writer. 0 will write logfiles synchronously")
+    @RequiresRestart("A JDownloader Restart is Required")
+    int getAsyncLogQueueSize();
+
     @AboutConfig
     @DefaultBooleanValue(false)
     @DescriptionForConfigEntry("Enable debug mode, nearly everything will be logged!")
     @RequiresRestart("A JDownloader Restart is Required")
     boolean isDebugModeEnabled();
 
+    void setAsyncLogQueueSize(int s);
+
     void setCleanupLogsOlderThanXDays(int x);
 
     void setDebugModeEnabled(boolean b);
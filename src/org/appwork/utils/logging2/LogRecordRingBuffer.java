@@ -0,0 +1,137 @@
+/**
+ *
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ *
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header.
+ *
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ *
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.utils.logging2;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.LogRecord;
+
+/**
+ * bounded, lock free ring buffer for {@link LogRecord}s. Any number of threads may {@link #offer(LogRecord)}, only one thread may
+ * {@link #poll()}.
+ *
+ * Every slot carries a sequence number, a producer claims a slot by CAS on the tail and publishes the record by advancing the slot
+ * sequence, the consumer frees the slot by advancing the sequence by capacity.
+ *
+ * @author daniel
+ *
+ */
+public class LogRecordRingBuffer {
+
+    private final AtomicReferenceArray<LogRecord> records;
+    private final AtomicLongArray                 sequences;
+    private final int                             mask;
+    private final AtomicLong                      tail = new AtomicLong(0);
+    private final AtomicLong                      head = new AtomicLong(0);
+
+    /**
+     * @param capacity
+     *            rounded up to the next power of two
+     */
+    public LogRecordRingBuffer(final int capacity) {
+        int size = 2;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.records = new AtomicReferenceArray<LogRecord>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int index = 0; index < size; index++) {
+            this.sequences.set(index, index);
+        }
+        this.mask = size - 1;
+    }
+
+    public int getCapacity() {
+        return this.mask + 1;
+    }
+
+    /**
+     * @param record
+     * @return false if the buffer is full
+     */
+    public boolean offer(final LogRecord record) {
+        while (true) {
+            final long position = this.tail.get();
+            final int index = (int) position & this.mask;
+            final long difference = this.sequences.get(index) - position;
+            if (difference == 0) {
+                if (this.tail.compareAndSet(position, position + 1)) {
+                    this.records.set(index, record);
+                    this.sequences.set(index, position + 1);
+                    return true;
+                }
+            } else if (difference < 0) {
+                /* slot still occupied by a record one round behind */
+                return false;
+            }
+        }
+    }
+
+    /**
+     * single consumer only
+     *
+     * @return next record or null if the buffer is empty
+     */
+    public LogRecord poll() {
+        final long position = this.head.get();
+        final int index = (int) position & this.mask;
+        if (this.sequences.get(index) != position + 1) {
+            return null;
+        }
+        final LogRecord ret = this.records.get(index);
+        this.records.set(index, null);
+        this.sequences.set(index, position + this.mask + 1);
+        this.head.set(position + 1);
+        return ret;
+    }
+
+    /**
+     * @return number of claimed slots, includes records that are still being published
+     */
+    public long getProduced() {
+        return this.tail.get();
+    }
+
+    /**
+     * @return number of polled records
+     */
+    public long getConsumed() {
+        return this.head.get();
+    }
+
+    public boolean isEmpty() {
+        return this.getConsumed() >= this.getProduced();
+    }
+}
@@ -34,7 +34,15 @@
 package org.appwork.utils.logging2;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.FileHandler;
 import java.util.logging.Formatter;
 import java.util.logging.Handler;
@@ -48,7 +56,23 @@ import java.util.logging.LogRecord;
  */
 public class LogSinkFileHandler extends Handler {
 
-    private final File file;
+    /**
+     * what to do with new records when the queue of an asynchronous handler is full
+     */
+    public static enum OverflowPolicy {
+        /**
+         * logging thread waits until the writer has made room
+         */
+        BLOCK,
+        /**
+         * record is dropped and counted, the writer logs the number of dropped records
+         */
+        DROP
+    }
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File           file;
 
     public File getFile() {
         return file;
@@ -67,22 +91,103 @@ public class LogSinkFileHandler extends Handler {
     }
 
     public boolean isOpen() {
+        if (this.isAsync()) {
+            return this.channel != null && !closed;
+        }
         return fileHandler != null && !closed;
     }
 
-    private final int            maxSize;
-    private final int            maxLogs;
-    private volatile FileHandler fileHandler = null;
-    private volatile boolean     closed      = false;
+    /**
+     * @return true if records are queued and written by the AsyncLogWriter thread
+     */
+    public boolean isAsync() {
+        return this.queue != null;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        if (overflowPolicy == null) {
+            throw new IllegalArgumentException("overflowPolicy is null");
+        }
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * @return number of records dropped because of {@link OverflowPolicy#DROP}
+     */
+    public long getDroppedRecords() {
+        return droppedRecords.get();
+    }
+
+    private final int                     maxSize;
+    private final int                     maxLogs;
+    private volatile FileHandler          fileHandler        = null;
+    private volatile boolean              closed             = false;
+    private final LogRecordRingBuffer     queue;
+    private volatile OverflowPolicy       overflowPolicy     = OverflowPolicy.BLOCK;
+    private final AtomicLong              droppedRecords     = new AtomicLong(0);
+    private final Object                  flushLock          = new Object();
+    /* only accessed by the AsyncLogWriter thread (and close) */
+    private volatile FileChannel          channel            = null;
+    private long                          written            = 0;
+    private long                          reportedDropped    = 0;
+    private volatile long                 processedRecords   = 0;
+    private final StringBuilder           batch              = new StringBuilder();
 
     public LogSinkFileHandler(File file, int maxSize, int maxLogs) {
+        this(file, maxSize, maxLogs, -1);
+    }
+
+    /**
+     * @param file
+     * @param maxSize
+     * @param maxLogs
+     * @param asyncQueueSize
+     *            >0 = asynchronous mode, records are queued in a ring buffer of this size and written in batches by a single writer thread
+     */
+    public LogSinkFileHandler(File file, int maxSize, int maxLogs, int asyncQueueSize) {
         this.file = file;
         this.maxSize = maxSize;
         this.maxLogs = maxLogs;
+        if (asyncQueueSize > 0) {
+            this.queue = new LogRecordRingBuffer(asyncQueueSize);
+            AsyncLogWriter.register(this);
+        } else {
+            this.queue = null;
+        }
     }
 
     @Override
-    public synchronized void publish(LogRecord record) {
+    public void publish(LogRecord record) {
+        if (this.isAsync()) {
+            this.enqueue(record);
+        } else {
+            this.publishSync(record);
+        }
+    }
+
+    private void enqueue(final LogRecord record) {
+        if (closed || record == null) {
+            return;
+        }
+        while (!this.queue.offer(record)) {
+            if (closed) {
+                return;
+            }
+            if (overflowPolicy == OverflowPolicy.DROP || AsyncLogWriter.isWriterThread()) {
+                droppedRecords.incrementAndGet();
+                return;
+            }
+            AsyncLogWriter.wakeup();
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+        }
+        AsyncLogWriter.wakeup();
+    }
+
+    private synchronized void publishSync(LogRecord record) {
         if (!closed) {
             if (this.fileHandler == null) {
                 try {
@@ -106,21 +211,177 @@ public class LogSinkFileHandler extends Handler {
         }
     };
 
+    protected boolean hasQueuedRecords() {
+        return this.queue != null && !this.queue.isEmpty();
+    }
+
+    /**
+     * called by the AsyncLogWriter thread, formats up to maxRecords queued records and writes them with a single write
+     *
+     * @param maxRecords
+     * @return number of written records
+     */
+    protected int writeQueuedRecords(final int maxRecords) {
+        if (closed && !this.hasQueuedRecords()) {
+            AsyncLogWriter.unregister(this);
+            return 0;
+        }
+        int count = 0;
+        final StringBuilder sb = this.batch;
+        sb.setLength(0);
+        final Formatter formatter = this.getFormatter();
+        try {
+            if (formatter instanceof LogSourceFormatter) {
+                final LogSourceFormatter logSourceFormatter = (LogSourceFormatter) formatter;
+                synchronized (logSourceFormatter) {
+                    final StringBuilder before = logSourceFormatter.getFormatterStringBuilder();
+                    logSourceFormatter.setFormatterStringBuilder(sb);
+                    try {
+                        LogRecord record = null;
+                        while (count < maxRecords && (record = this.queue.poll()) != null) {
+                            logSourceFormatter.format(record);
+                            count++;
+                        }
+                    } finally {
+                        logSourceFormatter.setFormatterStringBuilder(before);
+                    }
+                }
+            } else {
+                LogRecord record = null;
+                while (count < maxRecords && (record = this.queue.poll()) != null) {
+                    sb.append(formatter != null ? formatter.format(record) : String.valueOf(record.getMessage()) + "\r\n");
+                    count++;
+                }
+            }
+            final long dropped = droppedRecords.get();
+            if (dropped != this.reportedDropped) {
+                sb.append("--AsyncLogWriter: dropped " + (dropped - this.reportedDropped) + " log records, queue was full\r\n");
+                this.reportedDropped = dropped;
+            }
+            if (sb.length() > 0 && !closed) {
+                this.write(UTF8.encode(CharBuffer.wrap(sb)));
+            }
+        } catch (final Throwable e) {
+            e.printStackTrace();
+            close();
+        } finally {
+            if (sb.capacity() > 1024 * 1024) {
+                sb.setLength(0);
+                sb.trimToSize();
+            }
+            if (count > 0) {
+                this.processedRecords += count;
+                synchronized (this.flushLock) {
+                    this.flushLock.notifyAll();
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * generates the same filenames as {@link FileHandler} does for pattern=file
+     */
+    private File getLogFile(final int generation) {
+        if (this.maxLogs > 1) {
+            return new File(this.file.getAbsolutePath() + "." + generation);
+        }
+        return this.file;
+    }
+
+    private void write(final ByteBuffer buffer) throws IOException {
+        if (this.channel == null) {
+            final File logFile = this.getLogFile(0);
+            this.written = logFile.length();
+            this.channel = new FileOutputStream(logFile, true).getChannel();
+        }
+        while (buffer.hasRemaining()) {
+            this.written += this.channel.write(buffer);
+        }
+        if (this.maxSize > 0 && this.written >= this.maxSize) {
+            this.rotate();
+        }
+    }
+
+    private void rotate() throws IOException {
+        final FileChannel channel = this.channel;
+        this.channel = null;
+        if (channel != null) {
+            channel.close();
+        }
+        for (int generation = this.maxLogs - 2; generation >= 0; generation--) {
+            final File from = this.getLogFile(generation);
+            final File to = this.getLogFile(generation + 1);
+            if (from.exists()) {
+                if (to.exists()) {
+                    to.delete();
+                }
+                from.renameTo(to);
+            }
+        }
+        if (this.maxLogs <= 1) {
+            this.file.delete();
+        }
+        this.written = 0;
+    }
+
     @Override
     public synchronized void close() throws SecurityException {
+        if (this.isAsync() && !closed) {
+            this.flush();
+        }
         final FileHandler fileHandler = this.fileHandler;
         this.fileHandler = null;
         this.closed = true;
         if (fileHandler != null) {
             fileHandler.close();
         }
+        if (this.isAsync()) {
+            AsyncLogWriter.unregister(this);
+            final FileChannel channel = this.channel;
+            this.channel = null;
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (final IOException e) {
+                }
+            }
+        }
     }
 
     @Override
-    public synchronized void flush() {
-        final FileHandler fileHandler = this.fileHandler;
-        if (!closed && fileHandler != null) {
-            fileHandler.flush();
+    public void flush() {
+        if (this.isAsync()) {
+            this.flushAsync();
+            return;
+        }
+        synchronized (this) {
+            final FileHandler fileHandler = this.fileHandler;
+            if (!closed && fileHandler != null) {
+                fileHandler.flush();
+            }
+        }
+    }
+
+    /**
+     * waits (max 10 secs) until the writer has written all records that were queued before this call
+     */
+    private void flushAsync() {
+        if (closed || AsyncLogWriter.isWriterThread()) {
+            return;
+        }
+        final long target = this.queue.getProduced();
+        final long waitUntil = System.currentTimeMillis() + 10 * 1000l;
+        synchronized (this.flushLock) {
+            while (!closed && this.processedRecords < target && System.currentTimeMillis() < waitUntil) {
+                AsyncLogWriter.wakeup();
+                try {
+                    this.flushLock.wait(50);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
         }
     }
 }
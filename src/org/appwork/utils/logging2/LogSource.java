@@ -187,6 +187,13 @@ public class LogSource extends Logger implements LogInterface, ClearableLogInter
                              */
                             continue;
                         }
+                        if (handler instanceof LogSinkFileHandler && ((LogSinkFileHandler) handler).isAsync()) {
+                            /* asynchronous handler only queues the records, no need to block other sources */
+                            for (final LogRecord record : this.records) {
+                                handler.publish(record);
+                            }
+                            continue;
+                        }
                         synchronized (handler) {
                             for (final LogRecord record : this.records) {
                                 handler.publish(record);
@@ -260,7 +267,9 @@ public class LogSource extends Logger implements LogInterface, ClearableLogInter
             final Logger parent = this.getParent();
             if (parent != null) {
                 for (final Handler handler : parent.getHandlers()) {
-                    if (handler != null) {
+                    if (handler instanceof LogSinkFileHandler && ((LogSinkFileHandler) handler).isAsync()) {
+                        handler.publish(record);
+                    } else if (handler != null) {
                         synchronized (handler) {
                             handler.publish(record);
                         }
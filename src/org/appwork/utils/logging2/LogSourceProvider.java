@@ -69,6 +69,7 @@ public abstract class LogSourceProvider {
     protected final HashMap<String, LogSink> logSinks      = new HashMap<String, LogSink>();
     private final int                        maxSize;
     private final int                        maxLogs;
+    private final int                        asyncLogQueueSize;
     // Do not set final!
     protected long                           logTimeout;
 
@@ -134,6 +135,7 @@ public abstract class LogSourceProvider {
             this.maxSize = config.getMaxLogFileSize();
             this.writeLogs = maxSize > 100 * 1024 && !"true".equalsIgnoreCase(System.getProperty(LOG_NO_FILE));
             this.maxLogs = config.getMaxLogFiles();
+            this.asyncLogQueueSize = config.getAsyncLogQueueSize();
             this.logTimeout = config.getLogFlushTimeout() * 1000l;
             debugMode = config.isDebugModeEnabled();
             instantFlushDefault = debugMode;
@@ -342,7 +344,7 @@ public abstract class LogSourceProvider {
                 }
                 try {
                     if (isWriteLogs()) {
-                        final LogSinkFileHandler fileHandler = new LogSinkFileHandler(new File(this.logFolder, name), this.maxSize, this.maxLogs);
+                        final LogSinkFileHandler fileHandler = new LogSinkFileHandler(new File(this.logFolder, name), this.maxSize, this.maxLogs, this.asyncLogQueueSize);
                         fileHandler.setFormatter(new LogSourceFormatter());
                         sink.addHandler(fileHandler);
                     }
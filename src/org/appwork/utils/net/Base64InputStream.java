@@ -37,6 +37,8 @@ import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
+import org.appwork.utils.encoding.Base64;
+
 /**
  * @author daniel
  * 
@@ -44,27 +46,15 @@ import java.io.InputStream;
  */
 public class Base64InputStream extends FilterInputStream {
 
-    private static final char[] BASE64           = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
-    private static final byte[] BASE64MAP;
-
-    static {
-        /* build Base64 mapping */
-        BASE64MAP = new byte[256];
-        for (int i = 0; i < 255; i++) {
-            Base64InputStream.BASE64MAP[i] = -1;
-        }
-        for (int i = 0; i < Base64InputStream.BASE64.length; i++) {
-            Base64InputStream.BASE64MAP[Base64InputStream.BASE64[i]] = (byte) i;
-        }
-    }
-
-    private final byte[]        base64Encoded    = new byte[4];
-    private final byte[]        base64Decoded    = new byte[3];
-    private int                 decodedAvailable = 0;
+    private static final int  LF               = 10;
+    private static final int  CR               = 13;
 
-    private static final int    LF               = 10;
-    private static final int    CR               = 13;
-    private static final byte   PADDING          = (byte) '=';
+    /* multiple of 4, so only the last group of a read can be incomplete */
+    private final byte[]      base64Encoded    = new byte[8192];
+    private final byte[]      base64Decoded    = new byte[base64Encoded.length / 4 * 3];
+    private int               encodedAvailable = 0;
+    private int               decodedIndex     = 0;
+    private int               decodedAvailable = 0;
 
     /**
      * @param in
@@ -75,38 +65,41 @@ public class Base64InputStream extends FilterInputStream {
 
     @Override
     public int available() throws IOException {
-        return this.in.available() * 3 / 4 + this.decodedAvailable;
+        return this.in.available() * 3 / 4 + this.decodedAvailable - this.decodedIndex;
     }
 
-    private void decodeBase64() throws IOException {
-        int next = -1;
-        int encodedPosition = 0;
+    /**
+     * reads and decodes the next block of base64 data, CR and LF are ignored
+     *
+     * @return false on EOF
+     * @throws IOException
+     */
+    private boolean decodeBase64() throws IOException {
+        this.decodedIndex = 0;
         this.decodedAvailable = 0;
-        while (encodedPosition < 4 && (next = this.in.read()) >= 0) {
-            /* fill base64Encoded buffer */
-            if (next == Base64InputStream.LF || next == Base64InputStream.CR) {
-                /* ignore CR and LF */
-                continue;
+        while (true) {
+            final int read = this.in.read(this.base64Encoded, this.encodedAvailable, this.base64Encoded.length - this.encodedAvailable);
+            if (read == -1) {
+                if (this.encodedAvailable != 0) { throw new IOException("Base64 encoding error"); }
+                return false;
             }
-            this.base64Encoded[encodedPosition++] = (byte) next;
-        }
-        if (next == -1 && encodedPosition != 0) { throw new IOException("Base64 encoding error"); }
-        if (next == -1 && encodedPosition == 0) { return; }
-        byte byte_part_1 = Base64InputStream.BASE64MAP[this.base64Encoded[0] & 0xff];
-        byte byte_part_2 = Base64InputStream.BASE64MAP[this.base64Encoded[1] & 0xff];
-        /* reconstruct first decoded byte */
-        this.base64Decoded[this.decodedAvailable++] = (byte) (byte_part_1 << 2 & 0xfc | byte_part_2 >>> 4 & 0x3);
-        if (this.base64Encoded[2] != Base64InputStream.PADDING) {
-            /* still more base64 data available */
-            byte_part_1 = byte_part_2;
-            byte_part_2 = Base64InputStream.BASE64MAP[this.base64Encoded[2] & 0xff];
-            /* reconstruct next decoded byte */
-            this.base64Decoded[this.decodedAvailable++] = (byte) (byte_part_1 << 4 & 0xf0 | byte_part_2 >>> 2 & 0xf);
-            if (this.base64Encoded[3] != Base64InputStream.PADDING) {
-                /* still more base64 data available */
-                byte_part_1 = byte_part_2;
-                byte_part_2 = Base64InputStream.BASE64MAP[this.base64Encoded[3] & 0xff];
-                this.base64Decoded[this.decodedAvailable++] = (byte) (byte_part_1 << 6 & 0xc0 | byte_part_2 & 0x3f);
+            /* remove CR and LF */
+            int encodedLength = this.encodedAvailable;
+            for (int index = this.encodedAvailable; index < this.encodedAvailable + read; index++) {
+                final byte next = this.base64Encoded[index];
+                if (next != Base64InputStream.LF && next != Base64InputStream.CR) {
+                    this.base64Encoded[encodedLength++] = next;
+                }
+            }
+            final int decodeLength = encodedLength & ~3;
+            final int decoded = Base64.decodeBlock(this.base64Encoded, 0, decodeLength, this.base64Decoded, 0);
+            if (decoded < 0) { throw new IOException("Base64 encoding error"); }
+            /* keep incomplete group for next read */
+            this.encodedAvailable = encodedLength - decodeLength;
+            System.arraycopy(this.base64Encoded, decodeLength, this.base64Encoded, 0, this.encodedAvailable);
+            if (decoded > 0) {
+                this.decodedAvailable = decoded;
+                return true;
             }
         }
     }
@@ -122,15 +115,11 @@ public class Base64InputStream extends FilterInputStream {
 
     @Override
     public int read() throws IOException {
-        final int next = this.returnDecodedBase64();       
-        if (next >= 0) {
-            /* we still have decoded data left to return */
-            return next;
+        if (this.decodedIndex < this.decodedAvailable || this.decodeBase64()) {
+            /* need to mask the byte */
+            return this.base64Decoded[this.decodedIndex++] & 0xff;
         }
-        /* we have to decode some more data again */
-        this.decodeBase64();
-        /* return what is possible to return or EOF */
-        return this.returnDecodedBase64();
+        return -1;
     }
 
     @Override
@@ -141,19 +130,11 @@ public class Base64InputStream extends FilterInputStream {
         } else if (off < 0 || len < 0 || len > b.length - off) {
             throw new IndexOutOfBoundsException();
         } else if (len == 0) { return 0; }
-
-        int c = this.read();
-        if (c == -1) { return -1; }
-        int index = 0;
-        b[off + index++] = (byte) c;
-        for (; index < len; index++) {
-            c = this.read();
-            if (c == -1) {
-                break;
-            }
-            b[off + index] = (byte) c;
-        }
-        return index;
+        if (this.decodedIndex >= this.decodedAvailable && !this.decodeBase64()) { return -1; }
+        final int ret = Math.min(len, this.decodedAvailable - this.decodedIndex);
+        System.arraycopy(this.base64Decoded, this.decodedIndex, b, off, ret);
+        this.decodedIndex += ret;
+        return ret;
     }
 
     @Override
@@ -161,16 +142,4 @@ public class Base64InputStream extends FilterInputStream {
         throw new IOException("mark/reset not supported");
     }
 
-    private int returnDecodedBase64() {
-        int next = -1;
-        if (this.decodedAvailable > 0) {
-            this.decodedAvailable--;
-            /*need to mask the byte*/
-            next = (int) ((byte) this.base64Decoded[0] & 0xff);
-            this.base64Decoded[0] = this.base64Decoded[1];
-            this.base64Decoded[1] = this.base64Decoded[2];
-        }
-        return next;
-    }
-
 }
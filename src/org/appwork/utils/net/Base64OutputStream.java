@@ -37,6 +37,8 @@ import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 
+import org.appwork.utils.encoding.Base64;
+
 /**
  * @author daniel
  * 
@@ -48,6 +50,7 @@ public class Base64OutputStream extends FilterOutputStream {
     private int                 index          = 0;
     private static final byte   PADDING        = (byte) '=';
     private boolean             endFlush       = false;
+    private byte                blockBuffer[]  = null;
 
     /**
      * @param out
@@ -120,4 +123,30 @@ public class Base64OutputStream extends FilterOutputStream {
             this.out.write(this.writebuffer);
         }
     }
+
+    @Override
+    public void write(final byte[] b, int off, int len) throws IOException {
+        if ((off | len | b.length - (len + off) | off + len) < 0) { throw new IndexOutOfBoundsException(); }
+        /* complete a pending group first */
+        while (this.index != 0 && len > 0) {
+            this.write(b[off++]);
+            len--;
+        }
+        if (len >= 3) {
+            if (this.blockBuffer == null) {
+                this.blockBuffer = new byte[8192];
+            }
+            final int maxBlock = this.blockBuffer.length / 4 * 3;
+            while (len >= 3) {
+                final int block = Math.min(len / 3 * 3, maxBlock);
+                this.out.write(this.blockBuffer, 0, Base64.encodeBlock(b, off, block, this.blockBuffer, 0));
+                off += block;
+                len -= block;
+            }
+        }
+        while (len > 0) {
+            this.write(b[off++]);
+            len--;
+        }
+    }
 }
@@ -52,20 +52,16 @@ import java.net.URL;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Enumeration;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.WeakHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.zip.GZIPInputStream;
 
 import org.appwork.net.protocol.http.HTTPConstants;
-import org.appwork.scheduler.DelayedRunnable;
 import org.appwork.utils.Application;
 import org.appwork.utils.Regex;
 import org.appwork.utils.StringUtils;
@@ -179,49 +175,40 @@ public class HTTPConnectionImpl implements HTTPConnection {
     /**
      * Keep-Alive stuff
      */
-    protected static final HashMap<String, LinkedList<HTTPKeepAliveSocket>>        KEEPALIVEPOOL         = new HashMap<String, LinkedList<HTTPKeepAliveSocket>>();
-    protected static final WeakHashMap<SocketStreamInterface, HTTPKeepAliveSocket> KEEPALIVESOCKETS      = new WeakHashMap<SocketStreamInterface, HTTPKeepAliveSocket>();
-    protected static final Object                                                  LOCK                  = new Object();
-    protected static final DelayedRunnable                                         KEEPALIVECLEANUPTIMER = new DelayedRunnable(10000, 30000) {
-                                                                                                             @Override
-                                                                                                             public void delayedrun() {
-                                                                                                                 cleanupKeepAlivePools();
-                                                                                                             }
-                                                                                                         };
-
-    private static final void cleanupKeepAlivePools() {
-        synchronized (HTTPConnectionImpl.LOCK) {
-            try {
-                HTTPConnectionImpl.KEEPALIVESOCKETS.isEmpty();
-                final Iterator<Entry<String, LinkedList<HTTPKeepAliveSocket>>> hostIterator = HTTPConnectionImpl.KEEPALIVEPOOL.entrySet().iterator();
-                while (hostIterator.hasNext()) {
-                    final Entry<String, LinkedList<HTTPKeepAliveSocket>> next = hostIterator.next();
-                    final LinkedList<HTTPKeepAliveSocket> keepAliveSockets = next.getValue();
-                    if (keepAliveSockets != null) {
-                        final Iterator<HTTPKeepAliveSocket> keepAliveIterator = keepAliveSockets.iterator();
-                        while (keepAliveIterator.hasNext()) {
-                            final HTTPKeepAliveSocket keepAliveSocket = keepAliveIterator.next();
-                            final SocketStreamInterface socketStream = keepAliveSocket.getSocketStream();
-                            final Socket socket = socketStream.getSocket();
-                            if (socket.isClosed() || keepAliveSocket.getKeepAliveTimestamp() <= System.currentTimeMillis()) {
-                                try {
-                                    socket.close();
-                                } catch (final Throwable ignore) {
-                                }
-                                keepAliveIterator.remove();
-                            }
-                        }
-                    }
-                    if (keepAliveSockets == null || keepAliveSockets.size() == 0) {
-                        hostIterator.remove();
-                    }
-                }
-            } finally {
-                if (HTTPConnectionImpl.KEEPALIVEPOOL.size() > 0) {
-                    HTTPConnectionImpl.KEEPALIVECLEANUPTIMER.resetAndStart();
-                }
-            }
+    protected static final HTTPKeepAlivePool KEEPALIVEPOOL = new HTTPKeepAlivePool();
+
+    public static HTTPKeepAlivePool getKeepAlivePool() {
+        return HTTPConnectionImpl.KEEPALIVEPOOL;
+    }
+
+    /* keep-alive socket this connection checked out of the KEEPALIVEPOOL */
+    protected volatile HTTPKeepAliveSocket leasedKeepAliveSocket = null;
+
+    /**
+     * @param socketStream
+     * @return the keep-alive socket if socketStream got checked out of the KEEPALIVEPOOL by this connection and is still leased
+     */
+    protected HTTPKeepAliveSocket getLeasedKeepAliveSocket(final SocketStreamInterface socketStream) {
+        final HTTPKeepAliveSocket keepAliveSocket = this.leasedKeepAliveSocket;
+        if (socketStream != null && keepAliveSocket != null && keepAliveSocket.getSocketStream() == socketStream && HTTPConnectionImpl.KEEPALIVEPOOL.isLeased(keepAliveSocket)) {
+            return keepAliveSocket;
         }
+        return null;
+    }
+
+    /**
+     * forget the lease of socketStream, eg because it failed
+     *
+     * @param socketStream
+     * @return the keep-alive socket or null if socketStream was not leased
+     */
+    protected HTTPKeepAliveSocket releaseKeepAliveSocket(final SocketStreamInterface socketStream) {
+        final HTTPKeepAliveSocket keepAliveSocket = this.getLeasedKeepAliveSocket(socketStream);
+        if (keepAliveSocket != null && HTTPConnectionImpl.KEEPALIVEPOOL.release(keepAliveSocket)) {
+            this.leasedKeepAliveSocket = null;
+            return keepAliveSocket;
+        }
+        return null;
     }
 
     public HTTPConnectionImpl(final URL url) {
@@ -302,64 +289,39 @@ public class HTTPConnectionImpl implements HTTPConnection {
                 if (this.inputStream != null && this.inputStream instanceof StreamValidEOF && ((StreamValidEOF) this.inputStream).isValidEOF()) {
                     if (!this.isRequiresOutputStream() || ((CountingOutputStream) this.outputStream).transferedBytes() == this.postTodoLength) {
                         socket.setKeepAlive(true);
-                        synchronized (HTTPConnectionImpl.LOCK) {
-                            HTTPKeepAliveSocket keepAliveSocket = HTTPConnectionImpl.KEEPALIVESOCKETS.remove(socket);
-                            if (keepAliveSocket == null) {
-                                final String connectionResponse = this.getHeaderField("Keep-Alive");
-                                final String maxKeepAliveTimeoutString = new Regex(connectionResponse, "timeout\\s*?=\\s*?(\\d+)").getMatch(0);
-                                final String maxKeepAliveRequestsString = new Regex(connectionResponse, "max\\s*?=\\s*?(\\d+)").getMatch(0);
-                                final long maxKeepAliveTimeout;
-                                if (maxKeepAliveTimeoutString != null) {
-                                    maxKeepAliveTimeout = Long.parseLong(maxKeepAliveTimeoutString) * 1000l;
-                                } else {
-                                    maxKeepAliveTimeout = this.getDefaultKeepAliveTimeout();
-                                }
-                                final long maxKeepAliveRequests;
-                                if (maxKeepAliveRequestsString != null) {
-                                    maxKeepAliveRequests = Long.parseLong(maxKeepAliveRequestsString);
-                                } else {
-                                    maxKeepAliveRequests = this.getDefaultKeepAliveMaxRequests();
-                                }
-                                final InetAddress localIP;
-                                if (this.proxy != null && this.proxy.isDirect()) {
-                                    localIP = socket.getLocalAddress();
-                                } else {
-                                    localIP = null;
-                                }
-                                final boolean ssl = StringUtils.equalsIgnoreCase("https", this.httpURL.getProtocol());
-                                keepAliveSocket = new HTTPKeepAliveSocket(getHostname(), ssl, socketStream, maxKeepAliveTimeout, maxKeepAliveRequests, localIP, this.remoteIPs);
+                        HTTPKeepAliveSocket keepAliveSocket = this.releaseKeepAliveSocket(socketStream);
+                        final InetAddress localIP;
+                        if (keepAliveSocket != null) {
+                            localIP = keepAliveSocket.getLocalIP();
+                        } else if (this.proxy != null && this.proxy.isDirect()) {
+                            localIP = socket.getLocalAddress();
+                        } else {
+                            localIP = null;
+                        }
+                        final boolean ssl = StringUtils.equalsIgnoreCase("https", this.httpURL.getProtocol());
+                        if (keepAliveSocket == null) {
+                            final String connectionResponse = this.getHeaderField("Keep-Alive");
+                            final String maxKeepAliveTimeoutString = new Regex(connectionResponse, "timeout\\s*?=\\s*?(\\d+)").getMatch(0);
+                            final String maxKeepAliveRequestsString = new Regex(connectionResponse, "max\\s*?=\\s*?(\\d+)").getMatch(0);
+                            final long maxKeepAliveTimeout;
+                            if (maxKeepAliveTimeoutString != null) {
+                                maxKeepAliveTimeout = Long.parseLong(maxKeepAliveTimeoutString) * 1000l;
+                            } else {
+                                maxKeepAliveTimeout = this.getDefaultKeepAliveTimeout();
                             }
-                            keepAliveSocket.increaseRequests();
-                            if (keepAliveSocket.getRequestsLeft() > 0) {
-                                String domain = null;
-                                if (HTTPConnectionImpl.PSL != null) {
-                                    domain = HTTPConnectionImpl.PSL.getDomain(keepAliveSocket.getHost());
-                                }
-                                if (StringUtils.isEmpty(domain)) {
-                                    domain = "FALLBACK";
-                                }
-                                LinkedList<HTTPKeepAliveSocket> keepAlivePool = HTTPConnectionImpl.KEEPALIVEPOOL.get(domain);
-                                if (keepAlivePool == null) {
-                                    keepAlivePool = new LinkedList<HTTPKeepAliveSocket>();
-                                    HTTPConnectionImpl.KEEPALIVEPOOL.put(domain, keepAlivePool);
-                                }
-                                keepAlivePool.add(keepAliveSocket);
-                                keepAliveSocket.keepAlive();
-                                final long maxKeepAlive = this.getMaxKeepAliveSockets();
-                                if (keepAlivePool.size() > maxKeepAlive) {
-                                    final Iterator<HTTPKeepAliveSocket> it = keepAlivePool.iterator();
-                                    while (it.hasNext() && keepAlivePool.size() > maxKeepAlive) {
-                                        final HTTPKeepAliveSocket next = it.next();
-                                        try {
-                                            next.getSocketStream().close();
-                                        } catch (final Throwable ignore) {
-                                        }
-                                        it.remove();
-                                    }
-                                }
-                                HTTPConnectionImpl.KEEPALIVECLEANUPTIMER.resetAndStart();
-                                return true;
+                            final long maxKeepAliveRequests;
+                            if (maxKeepAliveRequestsString != null) {
+                                maxKeepAliveRequests = Long.parseLong(maxKeepAliveRequestsString);
+                            } else {
+                                maxKeepAliveRequests = this.getDefaultKeepAliveMaxRequests();
                             }
+                            keepAliveSocket = new HTTPKeepAliveSocket(getHostname(), ssl, socketStream, maxKeepAliveTimeout, maxKeepAliveRequests, localIP, this.remoteIPs);
+                        }
+                        keepAliveSocket.increaseRequests();
+                        if (keepAliveSocket.getRequestsLeft() > 0) {
+                            final HTTPKeepAlivePool.Route route = this.getKeepAliveRoute(keepAliveSocket.getHost(), socket.getPort(), ssl, localIP);
+                            HTTPConnectionImpl.KEEPALIVEPOOL.checkin(route, keepAliveSocket, this.getMaxKeepAliveSockets());
+                            return true;
                         }
                     }
                 }
@@ -378,57 +340,51 @@ public class HTTPConnectionImpl implements HTTPConnection {
         }
         final String host = getHostname();
         final boolean ssl = StringUtils.equalsIgnoreCase("https", this.httpURL.getProtocol());
-        String domain = null;
-        if (HTTPConnectionImpl.PSL != null) {
-            domain = HTTPConnectionImpl.PSL.getDomain(host);
-        }
-        if (StringUtils.isEmpty(domain)) {
-            domain = "FALLBACK";
-        }
-        synchronized (HTTPConnectionImpl.LOCK) {
-            final LinkedList<HTTPKeepAliveSocket> socketPool = HTTPConnectionImpl.KEEPALIVEPOOL.get(domain);
-            if (socketPool != null) {
-                final Iterator<HTTPKeepAliveSocket> socketPoolIterator = socketPool.descendingIterator();
-                while (socketPoolIterator.hasNext()) {
-                    final HTTPKeepAliveSocket next = socketPoolIterator.next();
-                    final SocketStreamInterface socketStream = next.getSocketStream();
-                    final Socket socket = socketStream.getSocket();
-                    if (socket.isClosed() || next.getKeepAliveTimestamp() <= System.currentTimeMillis()) {
-                        try {
-                            socket.close();
-                        } catch (final Throwable ignore) {
-                        }
-                        socketPoolIterator.remove();
-                    } else if (socket.getPort() != port || !next.sameLocalIP(localIP)) {
-                        continue;
-                    } else if (next.isSsl() && ssl) {
-                        /**
-                         * ssl needs to have same hostname to avoid (SNI)
-                         *
-                         * <p>
-                         * Your browser sent a request that this server could not understand.<br />
-                         * Host name provided via SNI and via HTTP are different
-                         * </p>
-                         */
-                        if (next.sameHost(host)) {
-                            socketPoolIterator.remove();
-                            HTTPConnectionImpl.KEEPALIVESOCKETS.put(socketStream, next);
-                            return socketStream;
-                        }
-                    } else if (next.isSsl() == false && ssl == false && next.sameRemoteIPs(this.remoteIPs)) {
-                        socketPoolIterator.remove();
-                        HTTPConnectionImpl.KEEPALIVESOCKETS.put(socketStream, next);
-                        return socketStream;
-                    }
-                }
-                if (socketPool.isEmpty()) {
-                    HTTPConnectionImpl.KEEPALIVEPOOL.remove(domain);
+        final HTTPKeepAliveSocket keepAliveSocket = HTTPConnectionImpl.KEEPALIVEPOOL.checkout(this.getKeepAliveRoute(host, port, ssl, localIP), new HTTPKeepAlivePool.Matcher() {
+
+            @Override
+            public boolean matches(final HTTPKeepAliveSocket socket) {
+                if (ssl) {
+                    /**
+                     * ssl needs to have same hostname to avoid (SNI)
+                     *
+                     * <p>
+                     * Your browser sent a request that this server could not understand.<br />
+                     * Host name provided via SNI and via HTTP are different
+                     * </p>
+                     */
+                    return socket.isSsl() && socket.sameHost(host);
+                } else {
+                    return socket.isSsl() == false && socket.sameRemoteIPs(HTTPConnectionImpl.this.remoteIPs);
                 }
             }
+        });
+        this.leasedKeepAliveSocket = keepAliveSocket;
+        if (keepAliveSocket != null) {
+            return keepAliveSocket.getSocketStream();
         }
         return null;
     }
 
+    /**
+     * plain http sockets are pooled per domain and may be reused for other hosts of the same domain with same remote ip, ssl sockets
+     * are pooled per host
+     */
+    protected HTTPKeepAlivePool.Route getKeepAliveRoute(final String host, final int port, final boolean ssl, final InetAddress localIP) {
+        String routeHost = host;
+        if (!ssl) {
+            String domain = null;
+            if (HTTPConnectionImpl.PSL != null) {
+                domain = HTTPConnectionImpl.PSL.getDomain(host);
+            }
+            if (StringUtils.isEmpty(domain)) {
+                domain = "FALLBACK";
+            }
+            routeHost = domain;
+        }
+        return new HTTPKeepAlivePool.Route(routeHost, port, ssl, this.getProxy(), localIP);
+    }
+
     /* this will add Host header at the beginning */
     protected void addHostHeader() {
         final int defaultPort = this.httpURL.getDefaultPort();
@@ -812,10 +768,7 @@ public class HTTPConnectionImpl implements HTTPConnection {
 
     protected synchronized void connectInputStream() throws IOException {
         final SocketStreamInterface connectionSocket = this.getConnectionSocket();
-        final boolean isKeepAliveSocket;
-        synchronized (HTTPConnectionImpl.LOCK) {
-            isKeepAliveSocket = connectionSocket != null && HTTPConnectionImpl.KEEPALIVESOCKETS.containsKey(connectionSocket);
-        }
+        final boolean isKeepAliveSocket = this.getLeasedKeepAliveSocket(connectionSocket) != null;
         try {
             if (this.isRequiresOutputStream() && this.postTodoLength >= 0) {
                 final long done = ((CountingOutputStream) this.outputStream).transferedBytes();
@@ -965,12 +918,8 @@ public class HTTPConnectionImpl implements HTTPConnection {
             throw e;
         } catch (final IOException e) {
             this.disconnect();
-            if (connectionSocket != null) {
-                synchronized (HTTPConnectionImpl.LOCK) {
-                    if (HTTPConnectionImpl.KEEPALIVESOCKETS.remove(connectionSocket) != null) {
-                        throw new HTTPKeepAliveSocketException(e, connectionSocket.getSocket());
-                    }
-                }
+            if (connectionSocket != null && this.releaseKeepAliveSocket(connectionSocket) != null) {
+                throw new HTTPKeepAliveSocketException(e, connectionSocket.getSocket());
             }
             throw e;
         }
@@ -1402,10 +1351,7 @@ public class HTTPConnectionImpl implements HTTPConnection {
     protected void sendRequest() throws UnsupportedEncodingException, IOException {
         /* now send Request */
         final SocketStreamInterface connectionSocket = getConnectionSocket();
-        final boolean isKeepAliveSocket;
-        synchronized (HTTPConnectionImpl.LOCK) {
-            isKeepAliveSocket = connectionSocket != null && HTTPConnectionImpl.KEEPALIVESOCKETS.containsKey(connectionSocket);
-        }
+        final boolean isKeepAliveSocket = this.getLeasedKeepAliveSocket(connectionSocket) != null;
         final StringBuilder sb = new StringBuilder();
         sb.append(this.httpMethod.name()).append(' ').append(this.httpPath).append(" HTTP/1.1\r\n");
         boolean hostSet = false;
@@ -1450,9 +1396,7 @@ public class HTTPConnectionImpl implements HTTPConnection {
 
                     private final void throwIOException(final IOException e) throws IOException {
                         if (isKeepAliveSocket) {
-                            synchronized (HTTPConnectionImpl.LOCK) {
-                                HTTPConnectionImpl.KEEPALIVESOCKETS.remove(connectionSocket);
-                            }
+                            HTTPConnectionImpl.this.releaseKeepAliveSocket(connectionSocket);
                             throw new HTTPKeepAliveSocketException(e, socket);
                         } else {
                             throw e;
@@ -1503,12 +1447,8 @@ public class HTTPConnectionImpl implements HTTPConnection {
             throw e;
         } catch (final IOException e) {
             this.disconnect();
-            if (connectionSocket != null) {
-                synchronized (HTTPConnectionImpl.LOCK) {
-                    if (HTTPConnectionImpl.KEEPALIVESOCKETS.remove(connectionSocket) != null) {
-                        throw new HTTPKeepAliveSocketException(e, connectionSocket.getSocket());
-                    }
-                }
+            if (connectionSocket != null && this.releaseKeepAliveSocket(connectionSocket) != null) {
+                throw new HTTPKeepAliveSocketException(e, connectionSocket.getSocket());
             }
             throw e;
         }
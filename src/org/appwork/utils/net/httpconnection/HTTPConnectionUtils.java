@@ -121,53 +121,58 @@ public class HTTPConnectionUtils {
     }
 
     public static ByteBuffer readheader(final InputStream in, final boolean readSingleLine) throws IOException {
-        ByteBuffer bigbuffer = ByteBuffer.wrap(new byte[4096]);
-        final byte[] minibuffer = new byte[1];
-        int position;
-        while (in.read(minibuffer) >= 0) {
-            if (bigbuffer.remaining() < 1) {
-                final ByteBuffer newbuffer = ByteBuffer.wrap(new byte[bigbuffer.capacity() * 2]);
-                bigbuffer.flip();
-                newbuffer.put(bigbuffer);
-                bigbuffer = newbuffer;
+        return HTTPConnectionUtils.readheader(in, readSingleLine, new byte[4096]);
+    }
+
+    /**
+     * same as {@link #readheader(InputStream, boolean)} but reads into the array of the given heap buffer instead of allocating a new one.
+     * if the header does not fit, the returned buffer is backed by a larger array and should be passed in for the next call
+     *
+     * @param in
+     * @param readSingleLine
+     * @param buffer
+     * @return
+     * @throws IOException
+     */
+    public static ByteBuffer readheader(final InputStream in, final boolean readSingleLine, final ByteBuffer buffer) throws IOException {
+        if (buffer != null && buffer.hasArray()) {
+            return HTTPConnectionUtils.readheader(in, readSingleLine, buffer.array());
+        }
+        return HTTPConnectionUtils.readheader(in, readSingleLine, new byte[4096]);
+    }
+
+    private static ByteBuffer readheader(final InputStream in, final boolean readSingleLine, byte[] buffer) throws IOException {
+        int position = 0;
+        int read;
+        while ((read = in.read()) >= 0) {
+            if (position == buffer.length) {
+                final byte[] newbuffer = new byte[buffer.length * 2];
+                System.arraycopy(buffer, 0, newbuffer, 0, position);
+                buffer = newbuffer;
+            }
+            buffer[position++] = (byte) read;
+            if (read != HTTPConnectionUtils.N) {
+                continue;
             }
-            bigbuffer.put(minibuffer);
             if (readSingleLine) {
-                if (bigbuffer.position() >= 1) {
+                /*
+                 * \n only line termination, for fucking buggy non rfc servers, or \r\n, correct line termination
+                 */
+                break;
+            } else {
+                if (position >= 2 && buffer[position - 2] == HTTPConnectionUtils.N) {
                     /*
-                     * \n only line termination, for fucking buggy non rfc servers
+                     * \n\n for header<->content divider, or fucking buggy non rfc servers
                      */
-                    position = bigbuffer.position();
-                    if (bigbuffer.get(position - 1) == HTTPConnectionUtils.N) {
-                        break;
-                    }
-                    if (bigbuffer.position() >= 2) {
-                        /* \r\n, correct line termination */
-                        if (bigbuffer.get(position - 2) == HTTPConnectionUtils.R && bigbuffer.get(position - 1) == HTTPConnectionUtils.N) {
-                            break;
-                        }
-                    }
+                    break;
                 }
-            } else {
-                if (bigbuffer.position() >= 2) {
-                    position = bigbuffer.position();
-                    if (bigbuffer.get(position - 2) == HTTPConnectionUtils.N && bigbuffer.get(position - 1) == HTTPConnectionUtils.N) {
-                        /*
-                         * \n\n for header<->content divider, or fucking buggy non rfc servers
-                         */
-                        break;
-                    }
-                    if (bigbuffer.position() >= 4) {
-                        /* \r\n\r\n for header<->content divider */
-                        if (bigbuffer.get(position - 4) == HTTPConnectionUtils.R && bigbuffer.get(position - 3) == HTTPConnectionUtils.N && bigbuffer.get(position - 2) == HTTPConnectionUtils.R && bigbuffer.get(position - 1) == HTTPConnectionUtils.N) {
-                            break;
-                        }
-                    }
+                if (position >= 4 && buffer[position - 4] == HTTPConnectionUtils.R && buffer[position - 3] == HTTPConnectionUtils.N && buffer[position - 2] == HTTPConnectionUtils.R) {
+                    /* \r\n\r\n for header<->content divider */
+                    break;
                 }
             }
         }
-        bigbuffer.flip();
-        return bigbuffer;
+        return ByteBuffer.wrap(buffer, 0, position);
     }
 
     public static InetAddress[] resolvHostIP(String host) throws IOException {
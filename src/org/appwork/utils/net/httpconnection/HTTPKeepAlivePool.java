@@ -0,0 +1,393 @@
+/**
+ *
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ *
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header.
+ *
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ *
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.utils.net.httpconnection;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.appwork.scheduler.DelayedRunnable;
+import org.appwork.utils.StringUtils;
+
+/**
+ * pool of idle keep-alive sockets. Sockets are grouped by {@link Route}, every route has its own lock so checkouts for different routes
+ * do not block each other.
+ *
+ * @author daniel
+ *
+ */
+public class HTTPKeepAlivePool {
+
+    /**
+     * key of a pool, plain http connections are shared by all hosts of the same domain as long as the remote ip matches, ssl connections
+     * are bound to the host because of SNI
+     */
+    public static class Route {
+        private final String      host;
+        private final int         port;
+        private final boolean     ssl;
+        private final HTTPProxy   proxy;
+        private final InetAddress localIP;
+        private final int         hashCode;
+
+        public Route(final String host, final int port, final boolean ssl, final HTTPProxy proxy, final InetAddress localIP) {
+            this.host = host == null ? null : host.toLowerCase(Locale.ENGLISH);
+            this.port = port;
+            this.ssl = ssl;
+            this.proxy = proxy;
+            this.localIP = localIP;
+            int hashCode = this.host == null ? 0 : this.host.hashCode();
+            hashCode = 31 * hashCode + port;
+            hashCode = 31 * hashCode + (ssl ? 1 : 0);
+            hashCode = 31 * hashCode + (proxy == null || proxy.getType() == null ? 0 : proxy.getType().hashCode());
+            hashCode = 31 * hashCode + (localIP == null ? 0 : localIP.hashCode());
+            this.hashCode = hashCode;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hashCode;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Route)) {
+                return false;
+            }
+            final Route other = (Route) obj;
+            return this.port == other.port && this.ssl == other.ssl && StringUtils.equals(this.host, other.host) && (this.proxy == null ? other.proxy == null : this.proxy.equals(other.proxy)) && (this.localIP == null ? other.localIP == null : this.localIP.equals(other.localIP));
+        }
+
+        @Override
+        public String toString() {
+            return (this.ssl ? "https://" : "http://") + this.host + ":" + this.port + "|Proxy:" + this.proxy + "|LocalIP:" + this.localIP;
+        }
+    }
+
+    private static class RoutePool {
+        /* newest socket is last */
+        private final ArrayDeque<HTTPKeepAliveSocket> idle    = new ArrayDeque<HTTPKeepAliveSocket>();
+        /* set when the empty pool got removed from pools, must not be used anymore */
+        private boolean                               removed = false;
+    }
+
+    private final ConcurrentHashMap<Route, RoutePool>              pools          = new ConcurrentHashMap<Route, RoutePool>();
+    /* number of sockets that are checked out of the pool, the lease state itself is tracked by HTTPKeepAliveSocket */
+    private final AtomicInteger                                    leasedCount    = new AtomicInteger(0);
+    private final AtomicInteger                                    idleCount      = new AtomicInteger(0);
+    private final AtomicLong                                       hits           = new AtomicLong(0);
+    private final AtomicLong                                       misses         = new AtomicLong(0);
+    private final AtomicLong                                       evictions      = new AtomicLong(0);
+    private volatile int                                           maxTotal       = 64;
+    private volatile long                                          staleCheckIdle = 2000;
+    private final DelayedRunnable                                  cleanupTimer   = new DelayedRunnable(10000, 30000) {
+                                                                                      @Override
+                                                                                      public void delayedrun() {
+                                                                                          HTTPKeepAlivePool.this.evictIdle();
+                                                                                      }
+                                                                                  };
+
+    public int getMaxTotal() {
+        return this.maxTotal;
+    }
+
+    /**
+     * @param maxTotal
+     *            max number of idle sockets of all routes
+     */
+    public void setMaxTotal(final int maxTotal) {
+        this.maxTotal = Math.max(0, maxTotal);
+    }
+
+    public long getStaleCheckIdle() {
+        return this.staleCheckIdle;
+    }
+
+    /**
+     * @param staleCheckIdle
+     *            sockets that were idle for longer than this (ms) get checked for a closed connection before checkout, <0 disables the
+     *            check
+     */
+    public void setStaleCheckIdle(final long staleCheckIdle) {
+        this.staleCheckIdle = staleCheckIdle;
+    }
+
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    public long getEvictions() {
+        return this.evictions.get();
+    }
+
+    public int getIdleCount() {
+        return this.idleCount.get();
+    }
+
+    public int getLeasedCount() {
+        return this.leasedCount.get();
+    }
+
+    /**
+     * @param socket
+     * @return true if the socket was checked out of this pool and is in use
+     */
+    public boolean isLeased(final HTTPKeepAliveSocket socket) {
+        return socket != null && socket.isLeased();
+    }
+
+    /**
+     * forget a leased socket, eg because it failed
+     *
+     * @param socket
+     * @return true if the socket was leased
+     */
+    public boolean release(final HTTPKeepAliveSocket socket) {
+        if (socket != null && socket.setLeased(false)) {
+            this.leasedCount.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param route
+     * @param matcher
+     *            optional, additional check of the socket, eg remote ip
+     * @return idle socket of given route or null
+     */
+    public HTTPKeepAliveSocket checkout(final Route route, final Matcher matcher) {
+        final RoutePool pool = this.pools.get(route);
+        if (pool != null) {
+            while (true) {
+                HTTPKeepAliveSocket candidate = null;
+                synchronized (pool) {
+                    final Iterator<HTTPKeepAliveSocket> it = pool.idle.descendingIterator();
+                    while (it.hasNext()) {
+                        final HTTPKeepAliveSocket next = it.next();
+                        if (this.isExpired(next)) {
+                            it.remove();
+                            this.idleCount.decrementAndGet();
+                            this.evict(next);
+                        } else if (matcher == null || matcher.matches(next)) {
+                            it.remove();
+                            this.idleCount.decrementAndGet();
+                            candidate = next;
+                            break;
+                        }
+                    }
+                }
+                if (candidate == null) {
+                    break;
+                }
+                /* stale check outside the route lock */
+                if (this.isStale(candidate)) {
+                    this.evict(candidate);
+                    continue;
+                }
+                if (candidate.setLeased(true)) {
+                    this.leasedCount.incrementAndGet();
+                }
+                this.hits.incrementAndGet();
+                return candidate;
+            }
+        }
+        this.misses.incrementAndGet();
+        return null;
+    }
+
+    public static interface Matcher {
+        public boolean matches(HTTPKeepAliveSocket socket);
+    }
+
+    /**
+     * puts an idle socket into the pool
+     *
+     * @param route
+     * @param socket
+     * @param maxPerRoute
+     */
+    public void checkin(final Route route, final HTTPKeepAliveSocket socket, final long maxPerRoute) {
+        this.release(socket);
+        while (true) {
+            RoutePool pool = this.pools.get(route);
+            if (pool == null) {
+                final RoutePool newPool = new RoutePool();
+                pool = this.pools.putIfAbsent(route, newPool);
+                if (pool == null) {
+                    pool = newPool;
+                }
+            }
+            synchronized (pool) {
+                if (pool.removed) {
+                    /* pool got removed by evictIdle meanwhile */
+                    continue;
+                }
+                socket.keepAlive();
+                pool.idle.addLast(socket);
+                this.idleCount.incrementAndGet();
+                while (pool.idle.size() > maxPerRoute) {
+                    this.idleCount.decrementAndGet();
+                    this.evict(pool.idle.pollFirst());
+                }
+                break;
+            }
+        }
+        if (this.idleCount.get() > this.maxTotal) {
+            this.evictIdle();
+        }
+        this.cleanupTimer.resetAndStart();
+    }
+
+    /**
+     * closes and removes all expired sockets, if the pool is still larger than maxTotal the oldest sockets get evicted too
+     */
+    public void evictIdle() {
+        try {
+            HTTPKeepAliveSocket oldest = null;
+            RoutePool oldestPool = null;
+            do {
+                oldest = null;
+                oldestPool = null;
+                final Iterator<Map.Entry<Route, RoutePool>> routeIterator = this.pools.entrySet().iterator();
+                while (routeIterator.hasNext()) {
+                    final Map.Entry<Route, RoutePool> next = routeIterator.next();
+                    final RoutePool pool = next.getValue();
+                    synchronized (pool) {
+                        final Iterator<HTTPKeepAliveSocket> it = pool.idle.iterator();
+                        while (it.hasNext()) {
+                            final HTTPKeepAliveSocket socket = it.next();
+                            if (this.isExpired(socket)) {
+                                it.remove();
+                                this.idleCount.decrementAndGet();
+                                this.evict(socket);
+                            }
+                        }
+                        if (pool.idle.size() == 0) {
+                            pool.removed = true;
+                            this.pools.remove(next.getKey(), pool);
+                        } else if (oldest == null || pool.idle.peekFirst().getKeepAliveTimestamp() < oldest.getKeepAliveTimestamp()) {
+                            oldest = pool.idle.peekFirst();
+                            oldestPool = pool;
+                        }
+                    }
+                }
+                if (oldest != null && this.idleCount.get() > this.maxTotal) {
+                    synchronized (oldestPool) {
+                        if (oldestPool.idle.remove(oldest)) {
+                            this.idleCount.decrementAndGet();
+                            this.evict(oldest);
+                        }
+                    }
+                } else {
+                    oldest = null;
+                }
+            } while (oldest != null);
+        } finally {
+            if (this.pools.size() > 0) {
+                this.cleanupTimer.resetAndStart();
+            }
+        }
+    }
+
+    private boolean isExpired(final HTTPKeepAliveSocket socket) {
+        return socket.getSocketStream().getSocket().isClosed() || socket.getKeepAliveTimestamp() <= System.currentTimeMillis();
+    }
+
+    /**
+     * checks if the server closed the idle connection by doing a 1ms read
+     */
+    protected boolean isStale(final HTTPKeepAliveSocket keepAliveSocket) {
+        final long lStaleCheckIdle = this.staleCheckIdle;
+        if (lStaleCheckIdle < 0 || System.currentTimeMillis() - keepAliveSocket.getIdleTimestamp() < lStaleCheckIdle) {
+            return false;
+        }
+        final SocketStreamInterface socketStream = keepAliveSocket.getSocketStream();
+        final Socket socket = socketStream.getSocket();
+        if (socket.isClosed() || socket.isInputShutdown() || socket.isOutputShutdown()) {
+            return true;
+        }
+        try {
+            final int timeout = socket.getSoTimeout();
+            try {
+                final InputStream is = socketStream.getInputStream();
+                if (is.available() > 0) {
+                    /* unexpected data */
+                    return true;
+                }
+                socket.setSoTimeout(1);
+                /* -1 = closed by server, any data = unexpected */
+                is.read();
+                return true;
+            } catch (final SocketTimeoutException e) {
+                return false;
+            } finally {
+                socket.setSoTimeout(timeout);
+            }
+        } catch (final IOException e) {
+            return true;
+        }
+    }
+
+    private void evict(final HTTPKeepAliveSocket socket) {
+        if (socket != null) {
+            this.evictions.incrementAndGet();
+            try {
+                socket.getSocketStream().close();
+            } catch (final Throwable ignore) {
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "HTTPKeepAlivePool|Routes:" + this.pools.size() + "|Idle:" + this.getIdleCount() + "|Leased:" + this.getLeasedCount() + "|Hits:" + this.getHits() + "|Misses:" + this.getMisses() + "|Evictions:" + this.getEvictions();
+    }
+}
@@ -34,6 +34,7 @@
 package org.appwork.utils.net.httpconnection;
 
 import java.net.InetAddress;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.appwork.utils.StringUtils;
 
@@ -46,6 +47,8 @@ public class HTTPKeepAliveSocket {
     private final SocketStreamInterface socket;
     private final InetAddress           localIP;
     private final String                host;
+    /* set while the socket is checked out of the HTTPKeepAlivePool */
+    private final AtomicBoolean         leased = new AtomicBoolean(false);
 
     public InetAddress getLocalIP() {
         return this.localIP;
@@ -111,9 +114,25 @@ public class HTTPKeepAliveSocket {
     private final long    keepAliveTimeout;
     private final long    maxRequests;
     private volatile long keepAliveTimestamp = -1;
+    private volatile long idleTimestamp      = -1;
     private volatile long requests           = 0;
     private final boolean ssl;
 
+    /**
+     * @return true if the socket is checked out of the {@link HTTPKeepAlivePool} and in use
+     */
+    public boolean isLeased() {
+        return this.leased.get();
+    }
+
+    /**
+     * @param leased
+     * @return true if the lease state changed
+     */
+    protected boolean setLeased(final boolean leased) {
+        return this.leased.compareAndSet(!leased, leased);
+    }
+
     public boolean isSsl() {
         return this.ssl;
     }
@@ -122,8 +141,17 @@ public class HTTPKeepAliveSocket {
         return this.keepAliveTimestamp;
     }
 
+    /**
+     * @return timestamp since when the socket is idle
+     */
+    public long getIdleTimestamp() {
+        return this.idleTimestamp;
+    }
+
     public void keepAlive() {
-        this.keepAliveTimestamp = System.currentTimeMillis() + this.getKeepAliveTimeout();
+        final long now = System.currentTimeMillis();
+        this.idleTimestamp = now;
+        this.keepAliveTimestamp = now + this.getKeepAliveTimeout();
     }
 
     public HTTPKeepAliveSocket(final String host, final boolean ssl, final SocketStreamInterface socket, final long keepAliveTimeout, final long maxRequests, final InetAddress localIP, final InetAddress[] remoteIPs) {
@@ -120,40 +120,59 @@ public class HttpConnection implements Runnable {
     public static List<KeyValuePair> parseParameterList(final String requestedParameters) throws IOException {
         final List<KeyValuePair> requestedURLParameters = new LinkedList<KeyValuePair>();
         if (!StringUtils.isEmpty(requestedParameters)) {
-            /* build requestedParamters */
-            final String[] parameters = requestedParameters.split("\\&(?!#)", -1);
-            for (final String parameter : parameters) {
+            /* build requestedParamters, split at & but not at &# */
+            final int length = requestedParameters.length();
+            int start = 0;
+            int end = -1;
+            while (start <= length) {
+                end = requestedParameters.indexOf('&', end + 1);
+                if (end >= 0 && end + 1 < length && requestedParameters.charAt(end + 1) == '#') {
+                    continue;
+                }
+                if (end < 0) {
+                    end = length;
+                }
+                final String parameter = requestedParameters.substring(start, end);
+                start = end + 1;
                 /* we only want the first = be parsed */
-                final String params[] = parameter.split("=", 2);
-                if (params.length == 1) {
+                final int index = parameter.indexOf('=');
+                if (index < 0) {
                     /* no value */
-                    requestedURLParameters.add(new KeyValuePair(null, URLDecoder.decode(params[0], "UTF-8")));
+                    requestedURLParameters.add(new KeyValuePair(null, HttpConnection.decode(parameter)));
                 } else {
                     /* key = value */
-                    if ("_".equals(params[0])) {
+                    final String key = parameter.substring(0, index);
+                    if ("_".equals(key)) {
                         /* we remove random timestamp from jquery here */
-                        // System.out.println("remove timestamp param from jquery: "
-                        // + params[1]);
                         continue;
                     }
-                    requestedURLParameters.add(new KeyValuePair(URLDecoder.decode(params[0], "UTF-8"), URLDecoder.decode(params[1], "UTF-8")));
+                    requestedURLParameters.add(new KeyValuePair(HttpConnection.decode(key), HttpConnection.decode(parameter.substring(index + 1))));
                 }
             }
         }
         return requestedURLParameters;
     }
 
-    protected final HttpServer   server;
-    protected final Socket       clientSocket;
-    protected boolean            responseHeadersSent = false;
-    protected HttpResponse       response            = null;
-    protected final InputStream  is;
-    protected final OutputStream os;
-    protected HttpRequest        request;
-    private static final Pattern METHOD              = Pattern.compile("(GET|POST|HEAD|OPTIONS|CONNECT)");
-    private static final Pattern REQUESTLINE         = Pattern.compile("\\s+(.+)\\s+HTTP/");
-    private static final Pattern REQUESTURL          = Pattern.compile("^(/.*?)($|\\?)");
-    private static final Pattern REQUESTPARAM        = Pattern.compile("^/.*?\\?(.+)");
+    private static String decode(final String value) throws IOException {
+        if (value.indexOf('%') < 0 && value.indexOf('+') < 0) {
+            /* nothing to decode */
+            return value;
+        }
+        return URLDecoder.decode(value, "UTF-8");
+    }
+
+    protected final HttpServer                server;
+    protected final Socket                    clientSocket;
+    protected boolean                         responseHeadersSent = false;
+    protected HttpResponse                    response            = null;
+    protected final InputStream               is;
+    protected final OutputStream              os;
+    protected HttpRequest                     request;
+    /* reused for all requests of this connection */
+    private ByteBuffer                        headerBuffer        = null;
+    private static final Pattern              METHOD              = Pattern.compile("(GET|POST|HEAD|OPTIONS|CONNECT)");
+    /* request methods detected by METHOD */
+    private static final HttpConnectionType[] METHODS             = new HttpConnectionType[] { HttpConnectionType.GET, HttpConnectionType.POST, HttpConnectionType.HEAD, HttpConnectionType.OPTIONS, HttpConnectionType.CONNECT };
 
     protected HttpConnection(final HttpServer server, final Socket clientSocket, final InputStream is, final OutputStream os) throws IOException {
         this.server = server;
@@ -226,8 +245,8 @@ public class HttpConnection implements Runnable {
         }
         // TOTO: requestLine may be "" in some cases (chrome pre connection...?)
         final HttpConnectionType connectionType = this.parseConnectionType(requestLine);
-        final String requestedURL = new Regex(requestLine, HttpConnection.REQUESTLINE).getMatch(0);
-        final String requestedPath = new Regex(requestedURL, HttpConnection.REQUESTURL).getMatch(0);
+        final String requestedURL = this.parseRequestedURL(requestLine);
+        final String requestedPath = this.parseRequestedPath(requestedURL);
         final List<KeyValuePair> requestedURLParameters = this.parseRequestURLParams(requestedURL);
         /* read request Headers */
         final HeaderCollection requestHeaders = this.parseRequestHeaders();
@@ -389,6 +408,12 @@ public class HttpConnection implements Runnable {
     }
 
     protected HttpConnectionType parseConnectionType(final String requestLine) throws IOException {
+        for (final HttpConnectionType type : HttpConnection.METHODS) {
+            final int length = type.length();
+            if (requestLine.length() > length && requestLine.startsWith(type.name()) && Character.isWhitespace(requestLine.charAt(length))) {
+                return type;
+            }
+        }
         final String method = new Regex(requestLine, HttpConnection.METHOD).getMatch(0);
         // TOTO: requestLine may be "" in some cases (chrome pre connection...?)
         try {
@@ -400,36 +425,71 @@ public class HttpConnection implements Runnable {
 
     protected HeaderCollection parseRequestHeaders() throws IOException {
         final ByteBuffer headers = this.readRequestHeaders();
-        final String[] headerStrings;
+        final byte[] bytes;
+        final int offset;
+        final int limit;
         if (headers.hasArray()) {
-            headerStrings = new String(headers.array(), headers.arrayOffset(), headers.limit(), "ISO-8859-1").split("(\r\n)|(\n)");
+            bytes = headers.array();
+            offset = headers.arrayOffset() + headers.position();
+            limit = headers.arrayOffset() + headers.limit();
         } else {
-            final byte[] bytesHeaders = new byte[headers.limit()];
-            headers.get(bytesHeaders);
-            headerStrings = new String(bytesHeaders, "ISO-8859-1").split("(\r\n)|(\n)");
+            bytes = new byte[headers.remaining()];
+            headers.get(bytes);
+            offset = 0;
+            limit = bytes.length;
         }
-        /* build requestHeaders HashMap */
+        /* build requestHeaders HashMap, work directly on the bytes instead of splitting a String */
         final HeaderCollection requestHeaders = new HeaderCollection();
-        for (final String line : headerStrings) {
-            String key = null;
-            String value = null;
-            int index = 0;
-            if ((index = line.indexOf(": ")) > 0) {
-                key = line.substring(0, index);
-                value = line.substring(index + 2);
-            } else if ((index = line.indexOf(":")) > 0) {
-                /* buggy clients that don't have :space ARG */
-                key = line.substring(0, index);
-                value = line.substring(index + 1);
-            } else {
-                key = null;
-                value = line;
+        int lineStart = offset;
+        while (lineStart < limit) {
+            int lineEnd = lineStart;
+            while (lineEnd < limit && bytes[lineEnd] != HTTPConnectionUtils.N) {
+                lineEnd++;
             }
-            requestHeaders.add(new HTTPHeader(key, value));
+            final int next = lineEnd + 1;
+            if (lineEnd > lineStart && bytes[lineEnd - 1] == HTTPConnectionUtils.R) {
+                lineEnd--;
+            }
+            if (lineEnd > lineStart) {
+                requestHeaders.add(this.parseRequestHeader(bytes, lineStart, lineEnd));
+            }
+            lineStart = next;
         }
         return requestHeaders;
     }
 
+    /**
+     * parses a single header line bytes[start,end) without line termination
+     */
+    protected HTTPHeader parseRequestHeader(final byte[] bytes, final int start, final int end) {
+        int colon = -1;
+        for (int index = start + 1; index < end; index++) {
+            if (bytes[index] == ':') {
+                if (colon < 0) {
+                    colon = index;
+                }
+                if (index + 1 < end && bytes[index + 1] == ' ') {
+                    return new HTTPHeader(HttpConnection.toString(bytes, start, index), HttpConnection.toString(bytes, index + 2, end));
+                }
+            }
+        }
+        if (colon > 0) {
+            /* buggy clients that don't have :space ARG */
+            return new HTTPHeader(HttpConnection.toString(bytes, start, colon), HttpConnection.toString(bytes, colon + 1, end));
+        } else {
+            return new HTTPHeader(null, HttpConnection.toString(bytes, start, end));
+        }
+    }
+
+    /**
+     * ISO-8859-1 decoding of bytes[start,end)
+     */
+    @SuppressWarnings("deprecation")
+    private static String toString(final byte[] bytes, final int start, final int end) {
+        // every byte is one char, no charset lookup or decoder required
+        return new String(bytes, 0, start, end - start);
+    }
+
     protected String parseRequestLine() throws IOException {
         final ByteBuffer header = this.readRequestLine();
         if (header.hasArray()) {
@@ -442,7 +502,46 @@ public class HttpConnection implements Runnable {
     }
 
     protected List<KeyValuePair> parseRequestURLParams(final String requestURL) throws IOException {
-        return HttpConnection.parseParameterList(new Regex(requestURL, HttpConnection.REQUESTPARAM).getMatch(0));
+        if (requestURL != null && requestURL.startsWith("/")) {
+            final int index = requestURL.indexOf('?');
+            if (index > 0 && index + 1 < requestURL.length()) {
+                return HttpConnection.parseParameterList(requestURL.substring(index + 1));
+            }
+        }
+        return HttpConnection.parseParameterList(null);
+    }
+
+    /**
+     * @return the url between method and protocol version of the request line
+     */
+    protected String parseRequestedURL(final String requestLine) {
+        int start = 0;
+        final int length = requestLine.length();
+        while (start < length && !Character.isWhitespace(requestLine.charAt(start))) {
+            start++;
+        }
+        while (start < length && Character.isWhitespace(requestLine.charAt(start))) {
+            start++;
+        }
+        final int end = requestLine.lastIndexOf("HTTP/") - 1;
+        if (start == 0 || end <= start || !Character.isWhitespace(requestLine.charAt(end))) {
+            return null;
+        }
+        return requestLine.substring(start, end);
+    }
+
+    /**
+     * @return the path (url without query) of the requested url
+     */
+    protected String parseRequestedPath(final String requestedURL) {
+        if (requestedURL == null || !requestedURL.startsWith("/")) {
+            return null;
+        }
+        final int index = requestedURL.indexOf('?');
+        if (index < 0) {
+            return requestedURL;
+        }
+        return requestedURL.substring(0, index);
     }
 
     protected String preProcessRequestLine(final String requestLine) throws IOException {
@@ -450,11 +549,13 @@ public class HttpConnection implements Runnable {
     }
 
     protected ByteBuffer readRequestHeaders() throws IOException {
-        return HTTPConnectionUtils.readheader(this.getInputStream(), false);
+        this.headerBuffer = HTTPConnectionUtils.readheader(this.getInputStream(), false, this.headerBuffer);
+        return this.headerBuffer;
     }
 
     protected ByteBuffer readRequestLine() throws IOException {
-        return HTTPConnectionUtils.readheader(this.getInputStream(), true);
+        this.headerBuffer = HTTPConnectionUtils.readheader(this.getInputStream(), true, this.headerBuffer);
+        return this.headerBuffer;
     }
 
     protected boolean isProxyRequest(HttpRequest request) {
@@ -475,6 +576,8 @@ public class HttpConnection implements Runnable {
 
     @Override
     public void run() {
+        /* bind here instead of in the executor, so every HttpServerExecutorFactory supports HttpConnectionThread.getCurrentHttpConnection */
+        HttpConnectionThread.setCurrentHttpConnection(this);
         boolean closeConnection = true;
         try {
             if (this.request == null) {
@@ -524,13 +627,27 @@ public class HttpConnection implements Runnable {
                 nothing.printStackTrace();
             }
         } finally {
-            if (closeConnection) {
-                this.closeConnection();
-                this.close();
+            try {
+                if (closeConnection && !this.keepAlive()) {
+                    this.closeConnection();
+                    this.close();
+                }
+            } finally {
+                HttpConnectionThread.setCurrentHttpConnection(null);
             }
         }
     }
 
+    /**
+     * called after the request has been handled. Connections that support persistent connections hand themselves back for the next
+     * request here
+     *
+     * @return true if the connection stays open and must not be closed
+     */
+    protected boolean keepAlive() {
+        return false;
+    }
+
     /**
      * this function sends the response headers
      *
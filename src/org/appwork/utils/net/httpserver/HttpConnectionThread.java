@@ -41,8 +41,39 @@ import java.util.concurrent.atomic.AtomicInteger;
  */
 public class HttpConnectionThread extends Thread {
 
-    private static AtomicInteger HTTPCONNECTIONTHREADS = new AtomicInteger(0);
-    private HttpConnection       currentConnection     = null;
+    private static AtomicInteger                     HTTPCONNECTIONTHREADS = new AtomicInteger(0);
+    private static final ThreadLocal<HttpConnection> CURRENT_CONNECTION    = new ThreadLocal<HttpConnection>();
+    private volatile HttpConnection                  currentConnection     = null;
+
+    /**
+     * returns the {@link HttpConnection} executed by the current thread. Works for {@link HttpConnectionThread}s as well as for threads
+     * of a custom {@link HttpServerExecutorFactory} (eg virtual threads), as the binding is done by {@link HttpConnection#run()}
+     *
+     * @return
+     */
+    public static HttpConnection getCurrentHttpConnection() {
+        final Thread thread = Thread.currentThread();
+        if (thread instanceof HttpConnectionThread) {
+            return ((HttpConnectionThread) thread).getCurrentConnection();
+        }
+        return HttpConnectionThread.CURRENT_CONNECTION.get();
+    }
+
+    /**
+     * binds the connection to the current thread, null removes the binding
+     *
+     * @param connection
+     */
+    protected static void setCurrentHttpConnection(final HttpConnection connection) {
+        final Thread thread = Thread.currentThread();
+        if (thread instanceof HttpConnectionThread) {
+            ((HttpConnectionThread) thread).setCurrentConnection(connection);
+        } else if (connection == null) {
+            HttpConnectionThread.CURRENT_CONNECTION.remove();
+        } else {
+            HttpConnectionThread.CURRENT_CONNECTION.set(connection);
+        }
+    }
 
     public HttpConnectionThread(final HttpServer server, final Runnable r) {
         super(r);
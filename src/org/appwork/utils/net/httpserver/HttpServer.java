@@ -42,8 +42,10 @@ import java.net.SocketAddress;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
+import java.nio.channels.ServerSocketChannel;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadFactory;
@@ -60,11 +62,15 @@ import org.appwork.utils.net.httpserver.handler.HttpRequestHandler;
 public class HttpServer implements Runnable {
 
     private final int                                      wishPort;
-    private final AtomicReference<ServerSocket>            controlSocket   = new AtomicReference<ServerSocket>(null);
-    private volatile Thread                                serverThread    = null;
-    private boolean                                        localhostOnly   = false;
-    private boolean                                        debug           = false;
-    private final CopyOnWriteArrayList<HttpRequestHandler> requestHandlers = new CopyOnWriteArrayList<HttpRequestHandler>();
+    private final AtomicReference<ServerSocket>            controlSocket    = new AtomicReference<ServerSocket>(null);
+    private volatile Thread                                serverThread     = null;
+    private boolean                                        localhostOnly    = false;
+    private boolean                                        debug            = false;
+    private final CopyOnWriteArrayList<HttpRequestHandler> requestHandlers  = new CopyOnWriteArrayList<HttpRequestHandler>();
+    private volatile boolean                               nioMode          = false;
+    private volatile long                                  keepAliveTimeout = 15 * 1000l;
+    private volatile HttpServerSelector                    selector         = null;
+    private volatile HttpServerExecutorFactory             executorFactory  = null;
 
     public HttpServer(final int port) {
         this.wishPort = port;
@@ -74,6 +80,18 @@ public class HttpServer implements Runnable {
         return new HttpConnection(this, clientSocket);
     }
 
+    /**
+     * creates the connection for a complete request that has been received by the selector in nio mode
+     *
+     * @param selector
+     * @param client
+     * @return
+     * @throws IOException
+     */
+    protected Runnable createNioConnectionHandler(final HttpServerSelector selector, final HttpServerSelector.Client client) throws IOException {
+        return new NioHttpConnection(this, selector, client);
+    }
+
     public List<HttpRequestHandler> getHandler() {
         return this.requestHandlers;
     }
@@ -126,6 +144,54 @@ public class HttpServer implements Runnable {
         return this.localhostOnly;
     }
 
+    /**
+     * @return true if the server uses a non blocking selector core with keep-alive support instead of one blocking thread per socket
+     */
+    public boolean isNioMode() {
+        return this.nioMode;
+    }
+
+    /**
+     * enables/disables the non blocking selector core. The selector thread parses request line and headers of all sockets and only
+     * dispatches fully received requests to the connection threads. Persistent connections (HTTP/1.1 keep-alive) and pipelining are
+     * supported in this mode. Takes effect on next {@link #start()}
+     *
+     * @param nioMode
+     */
+    public void setNioMode(final boolean nioMode) {
+        this.nioMode = nioMode;
+    }
+
+    /**
+     * @return time in ms an idle keep-alive connection stays open in nio mode
+     */
+    public long getKeepAliveTimeout() {
+        return this.keepAliveTimeout;
+    }
+
+    /**
+     * @param keepAliveTimeout
+     *            time in ms an idle keep-alive connection stays open in nio mode. <=0 disables keep-alive
+     */
+    public void setKeepAliveTimeout(final long keepAliveTimeout) {
+        this.keepAliveTimeout = keepAliveTimeout;
+    }
+
+    public HttpServerExecutorFactory getExecutorFactory() {
+        return this.executorFactory;
+    }
+
+    /**
+     * sets the strategy that executes the {@link HttpConnection}s, null restores the default pool of {@link HttpConnectionThread}s. See
+     * {@link ThreadPerConnectionExecutor#factory(boolean)} for a thread(virtual thread) per connection mode. Takes effect on next
+     * {@link #start()}
+     *
+     * @param executorFactory
+     */
+    public void setExecutorFactory(final HttpServerExecutorFactory executorFactory) {
+        this.executorFactory = executorFactory;
+    }
+
     public boolean isRunning() {
         return controlSocket.get() != null && this.serverThread != null;
     }
@@ -141,52 +207,93 @@ public class HttpServer implements Runnable {
         return new HttpHandlerInfo(this, handler);
     }
 
-    public void run() {
-        final ServerSocket socket = this.controlSocket.get();
-        try {
-            socket.setSoTimeout(5 * 60 * 1000);
-        } catch (final SocketException e1) {
-            e1.printStackTrace();
+    /**
+     * creates the executor that runs the {@link HttpConnection}s, either by {@link #getExecutorFactory()} or the default pool
+     *
+     * @return
+     */
+    protected ExecutorService createThreadPool() {
+        final HttpServerExecutorFactory lExecutorFactory = this.executorFactory;
+        if (lExecutorFactory != null) {
+            final ExecutorService executor = lExecutorFactory.createExecutor(this);
+            if (executor != null) {
+                return executor;
+            }
         }
-        ThreadPoolExecutor threadPool = null;
-        try {
-            threadPool = new ThreadPoolExecutor(0, 20, 10000l, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(100), new ThreadFactory() {
+        final ThreadPoolExecutor threadPool = new ThreadPoolExecutor(0, 20, 10000l, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(100), new ThreadFactory() {
 
-                public Thread newThread(final Runnable r) {
-                    return new HttpConnectionThread(HttpServer.this, r);
-                }
+            public Thread newThread(final Runnable r) {
+                return new HttpConnectionThread(HttpServer.this, r);
+            }
 
-            }, new ThreadPoolExecutor.AbortPolicy()) {
+        }, new ThreadPoolExecutor.AbortPolicy()) {
 
-                final ThreadPoolExecutor threadPool;
-                {
-                    threadPool = this;
-                }
+            final ThreadPoolExecutor threadPool;
+            {
+                threadPool = this;
+            }
 
-                @Override
-                protected void beforeExecute(final Thread t, final Runnable r) {
-                    /*
-                     * WORKAROUND for stupid SUN /ORACLE way of "how a threadpool should work" !
-                     */
-                    final int active = threadPool.getPoolSize();
-                    final int max = threadPool.getMaximumPoolSize();
-                    if (active < max) {
-                        final int working = threadPool.getActiveCount();
-                        if (working == active) {
-                            /*
-                             * we can increase max pool size so new threads get started
-                             */
-                            threadPool.setCorePoolSize(Math.min(max, active + 1));
-                        }
+            @Override
+            protected void beforeExecute(final Thread t, final Runnable r) {
+                /*
+                 * WORKAROUND for stupid SUN /ORACLE way of "how a threadpool should work" !
+                 */
+                final int active = threadPool.getPoolSize();
+                final int max = threadPool.getMaximumPoolSize();
+                if (active < max) {
+                    final int working = threadPool.getActiveCount();
+                    if (working == active) {
+                        /*
+                         * we can increase max pool size so new threads get started
+                         */
+                        threadPool.setCorePoolSize(Math.min(max, active + 1));
                     }
-                    if (t instanceof HttpConnectionThread && r instanceof HttpConnection) {
-                        ((HttpConnectionThread) t).setCurrentConnection((HttpConnection) r);
+                }
+                if (t instanceof HttpConnectionThread && r instanceof HttpConnection) {
+                    ((HttpConnectionThread) t).setCurrentConnection((HttpConnection) r);
+                }
+                super.beforeExecute(t, r);
+            }
+
+        };
+        threadPool.allowCoreThreadTimeOut(true);
+        return threadPool;
+    }
+
+    /**
+     * closes all HttpConnections that are still waiting in the pool
+     *
+     * @param threadPool
+     */
+    protected void shutdownThreadPool(final ExecutorService threadPool) {
+        final List<Runnable> waiting = threadPool.shutdownNow();
+        if (waiting != null) {
+            /* close all waiting HttpConnections */
+            for (final Runnable runnable : waiting) {
+                try {
+                    if (runnable instanceof HttpConnection) {
+                        ((HttpConnection) runnable).closeConnection();
                     }
-                    super.beforeExecute(t, r);
+                } catch (final Throwable e) {
                 }
+            }
+        }
+    }
 
-            };
-            threadPool.allowCoreThreadTimeOut(true);
+    public void run() {
+        final ServerSocket socket = this.controlSocket.get();
+        if (socket.getChannel() != null) {
+            this.runSelector(socket);
+            return;
+        }
+        try {
+            socket.setSoTimeout(5 * 60 * 1000);
+        } catch (final SocketException e1) {
+            e1.printStackTrace();
+        }
+        ExecutorService threadPool = null;
+        try {
+            threadPool = this.createThreadPool();
             while (controlSocket.get() == socket) {
                 try {
                     final Socket clientSocket = socket.accept();
@@ -220,18 +327,34 @@ public class HttpServer implements Runnable {
             } catch (final Throwable e) {
             }
             if (threadPool != null) {
-                final List<Runnable> waiting = threadPool.shutdownNow();
-                if (waiting != null) {
-                    /* close all waiting HttpConnections */
-                    for (final Runnable runnable : waiting) {
-                        try {
-                            if (runnable instanceof HttpConnection) {
-                                ((HttpConnection) runnable).closeConnection();
-                            }
-                        } catch (final Throwable e) {
-                        }
-                    }
-                }
+                this.shutdownThreadPool(threadPool);
+            }
+        }
+    }
+
+    private void runSelector(final ServerSocket socket) {
+        ExecutorService threadPool = null;
+        HttpServerSelector selector = null;
+        try {
+            threadPool = this.createThreadPool();
+            selector = new HttpServerSelector(this, socket.getChannel(), threadPool);
+            this.selector = selector;
+            if (controlSocket.get() == socket) {
+                selector.run();
+            }
+        } catch (final IOException e) {
+            e.printStackTrace();
+        } finally {
+            this.controlSocket.compareAndSet(socket, null);
+            try {
+                socket.close();
+            } catch (final Throwable e) {
+            }
+            if (selector != null) {
+                selector.close();
+            }
+            if (threadPool != null) {
+                this.shutdownThreadPool(threadPool);
             }
         }
     }
@@ -266,6 +389,14 @@ public class HttpServer implements Runnable {
             }
         } catch (final Throwable e) {
         }
+        this.wakeupSelector();
+    }
+
+    private void wakeupSelector() {
+        final HttpServerSelector lSelector = this.selector;
+        if (lSelector != null) {
+            lSelector.wakeup();
+        }
     }
 
     private int lastPort = -1;
@@ -278,7 +409,16 @@ public class HttpServer implements Runnable {
         } else {
             port = getWishedPort();
         }
-        if (this.isLocalhostOnly()) {
+        if (this.isNioMode()) {
+            controlSocket = ServerSocketChannel.open().socket();
+            controlSocket.setReuseAddress(true);
+            if (this.isLocalhostOnly()) {
+                /* we only want localhost bound here */
+                controlSocket.bind(new InetSocketAddress(this.getLocalHost(), port));
+            } else {
+                controlSocket.bind(new InetSocketAddress(port));
+            }
+        } else if (this.isLocalhostOnly()) {
             /* we only want localhost bound here */
             final SocketAddress socketAddress = new InetSocketAddress(this.getLocalHost(), port);
             controlSocket = new ServerSocket();
@@ -310,6 +450,7 @@ public class HttpServer implements Runnable {
             }
         } catch (final Throwable e) {
         }
+        this.wakeupSelector();
         lastPort = -1;
     }
 
@@ -0,0 +1,503 @@
+/**
+ *
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ *
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header.
+ *
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ *
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.utils.net.httpserver;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Non blocking core of the {@link HttpServer} in nio mode. One selector thread accepts all sockets, receives request line and headers
+ * (and small bodies) incrementally and dispatches complete requests as {@link NioHttpConnection} to the executor. Once a request has been
+ * answered, keep-alive connections are handed back via {@link #resume(Client)} and the next (possibly already pipelined) request is
+ * parsed.
+ *
+ * @author daniel
+ *
+ */
+public class HttpServerSelector implements Runnable {
+    /* max size of request line and headers */
+    public static final int                     MAX_HEADER_SIZE   = 64 * 1024;
+    /* bodies up to this size are received by the selector, larger or chunked ones are streamed by the connection thread */
+    public static final int                     MAX_BUFFERED_BODY = 1024 * 1024;
+    /* read timeout for partially received requests and blocking stream operations */
+    public static final long                    READ_TIMEOUT      = 60 * 1000l;
+
+    private final HttpServer                    server;
+    private final ServerSocketChannel           serverChannel;
+    private final Executor                      executor;
+    private final Selector                      selector;
+    private final ConcurrentLinkedQueue<Client> resumed           = new ConcurrentLinkedQueue<Client>();
+    /* complete requests the executor rejected, dispatched in order once it has capacity again. Only used by the selector thread */
+    private final ArrayDeque<Runnable>          pending           = new ArrayDeque<Runnable>();
+    private final SelectionKey                  acceptKey;
+    private long                                lastIdleCheck     = 0;
+
+    public HttpServerSelector(final HttpServer server, final ServerSocketChannel serverChannel, final Executor executor) throws IOException {
+        this.server = server;
+        this.serverChannel = serverChannel;
+        this.executor = executor;
+        this.selector = Selector.open();
+        try {
+            serverChannel.configureBlocking(false);
+            this.acceptKey = serverChannel.register(this.selector, SelectionKey.OP_ACCEPT);
+        } catch (final IOException e) {
+            this.selector.close();
+            throw e;
+        }
+    }
+
+    public HttpServer getServer() {
+        return this.server;
+    }
+
+    public void run() {
+        try {
+            while (this.serverChannel.isOpen()) {
+                /* while saturated, poll for free executor capacity */
+                this.selector.select(this.pending.isEmpty() ? 1000 : 10);
+                this.processPending();
+                this.processResumed();
+                final Iterator<SelectionKey> it = this.selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    final SelectionKey key = it.next();
+                    it.remove();
+                    try {
+                        if (!key.isValid()) {
+                            continue;
+                        } else if (key.isAcceptable()) {
+                            this.accept();
+                        } else if (key.isReadable()) {
+                            this.read((Client) key.attachment());
+                        }
+                    } catch (final CancelledKeyException e) {
+                        if (key.attachment() instanceof Client) {
+                            ((Client) key.attachment()).close();
+                        }
+                    }
+                }
+                this.closeIdleConnections();
+            }
+        } catch (final ClosedSelectorException e) {
+            /* closed */
+        } catch (final IOException e) {
+            if (this.serverChannel.isOpen()) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    public void wakeup() {
+        try {
+            this.selector.wakeup();
+        } catch (final Throwable ignore) {
+        }
+    }
+
+    /**
+     * closes the selector and all its connections
+     */
+    public void close() {
+        try {
+            for (final SelectionKey key : this.selector.keys()) {
+                if (key.attachment() instanceof Client) {
+                    ((Client) key.attachment()).close();
+                }
+            }
+        } catch (final Throwable ignore) {
+        }
+        try {
+            this.selector.close();
+        } catch (final Throwable ignore) {
+        }
+    }
+
+    /**
+     * hands a keep-alive connection back to the selector after its request has been answered
+     *
+     * @param client
+     */
+    public void resume(final Client client) {
+        this.resumed.add(client);
+        this.selector.wakeup();
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = this.serverChannel.accept()) != null) {
+            try {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                final Client client = new Client(channel);
+                client.key = channel.register(this.selector, SelectionKey.OP_READ, client);
+            } catch (final IOException e) {
+                try {
+                    channel.close();
+                } catch (final Throwable ignore) {
+                }
+            }
+        }
+    }
+
+    private void read(final Client client) {
+        try {
+            if (client.read() < 0) {
+                client.close();
+            } else if (client.isRequestComplete()) {
+                this.dispatch(client);
+            }
+        } catch (final IOException e) {
+            client.close();
+        }
+    }
+
+    private void dispatch(final Client client) throws IOException {
+        client.key.interestOps(0);
+        client.busy = true;
+        final Runnable handler = this.server.createNioConnectionHandler(this, client);
+        if (!this.pending.isEmpty() || !this.execute(handler)) {
+            /*
+             * executor is saturated. keep the request and stop accepting new connections until it has capacity again, they wait in the
+             * accept backlog like in blocking mode
+             */
+            this.pending.add(handler);
+            this.acceptKey.interestOps(0);
+        }
+    }
+
+    private boolean execute(final Runnable handler) {
+        try {
+            this.executor.execute(handler);
+            return true;
+        } catch (final RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    private void processPending() {
+        if (this.pending.isEmpty()) {
+            return;
+        }
+        Runnable handler;
+        while ((handler = this.pending.peek()) != null) {
+            if (!this.execute(handler)) {
+                return;
+            }
+            this.pending.poll();
+        }
+        try {
+            this.acceptKey.interestOps(SelectionKey.OP_ACCEPT);
+        } catch (final CancelledKeyException e) {
+            /* closed */
+        }
+    }
+
+    private void processResumed() {
+        Client client;
+        while ((client = this.resumed.poll()) != null) {
+            client.busy = false;
+            client.lastActivity = System.currentTimeMillis();
+            try {
+                if (!client.channel.isOpen()) {
+                    continue;
+                } else if (client.isRequestComplete()) {
+                    /* pipelined request */
+                    this.dispatch(client);
+                } else {
+                    client.key.interestOps(SelectionKey.OP_READ);
+                }
+            } catch (final IOException e) {
+                client.close();
+            } catch (final CancelledKeyException e) {
+                client.close();
+            }
+        }
+    }
+
+    private void closeIdleConnections() {
+        final long now = System.currentTimeMillis();
+        if (now - this.lastIdleCheck < 1000) {
+            return;
+        }
+        this.lastIdleCheck = now;
+        final long keepAliveTimeout = Math.max(0, this.server.getKeepAliveTimeout());
+        for (final SelectionKey key : this.selector.keys()) {
+            if (key.attachment() instanceof Client) {
+                final Client client = (Client) key.attachment();
+                if (!client.busy) {
+                    /* idle keep-alive connections vs. clients that stopped sending in the middle of a request */
+                    final long timeout = client.buffer.position() == 0 ? keepAliveTimeout : HttpServerSelector.READ_TIMEOUT;
+                    if (now - client.lastActivity > timeout) {
+                        client.close();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * state of one client socket. Buffers received bytes until a request is complete
+     */
+    public static class Client {
+        protected final SocketChannel channel;
+        protected SelectionKey        key;
+        /* received bytes, always in write mode */
+        private ByteBuffer            buffer             = ByteBuffer.allocate(4096);
+        private int                   scanned            = 0;
+        private int                   headerEnd          = -1;
+        private int                   contentLength      = 0;
+        private boolean               streamBody         = false;
+        private boolean               keepAliveRequested = false;
+        private boolean               bodyStreamed       = false;
+        private boolean               requestKeepAlive   = false;
+        private volatile Selector     waitSelector       = null;
+        private SelectionKey          waitKey            = null;
+        private volatile long         lastActivity       = System.currentTimeMillis();
+        private volatile boolean      busy               = false;
+
+        protected Client(final SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        public SocketChannel getChannel() {
+            return this.channel;
+        }
+
+        /**
+         * @return true if the client of the current request accepts a persistent connection
+         */
+        public boolean isKeepAliveRequested() {
+            return this.requestKeepAlive;
+        }
+
+        /**
+         * @return true if the body of the current request is read from the socket by the connection thread. These connections cannot be
+         *         reused
+         */
+        public boolean isBodyStreamed() {
+            return this.bodyStreamed;
+        }
+
+        private int read() throws IOException {
+            if (!this.buffer.hasRemaining()) {
+                final ByteBuffer newBuffer = ByteBuffer.allocate(this.buffer.capacity() * 2);
+                this.buffer.flip();
+                newBuffer.put(this.buffer);
+                this.buffer = newBuffer;
+            }
+            final int read = this.channel.read(this.buffer);
+            if (read > 0) {
+                this.lastActivity = System.currentTimeMillis();
+            }
+            return read;
+        }
+
+        private boolean isRequestComplete() throws IOException {
+            final byte[] b = this.buffer.array();
+            int length = this.buffer.position();
+            if (this.headerEnd < 0) {
+                /* skip empty lines in front of the request line */
+                int start = 0;
+                while (start < length && (b[start] == '\r' || b[start] == '\n')) {
+                    start++;
+                }
+                if (start > 0) {
+                    this.consume(start);
+                    length = this.buffer.position();
+                    this.scanned = 0;
+                }
+                for (int i = Math.max(this.scanned, 1); i < length; i++) {
+                    if (b[i] == '\n' && (b[i - 1] == '\n' || i >= 3 && b[i - 1] == '\r' && b[i - 2] == '\n' && b[i - 3] == '\r')) {
+                        this.headerEnd = i + 1;
+                        break;
+                    }
+                }
+                if (this.headerEnd < 0) {
+                    this.scanned = length;
+                    if (length > HttpServerSelector.MAX_HEADER_SIZE) {
+                        throw new IOException("Request header too large");
+                    }
+                    return false;
+                }
+                this.parseHead(b, this.headerEnd);
+            }
+            return this.streamBody || length >= this.headerEnd + this.contentLength;
+        }
+
+        private void parseHead(final byte[] b, final int end) throws IOException {
+            final String head = new String(b, 0, end, "ISO-8859-1");
+            boolean chunked = false;
+            boolean connect = false;
+            long contentLength = 0;
+            int lineStart = 0;
+            boolean requestLine = true;
+            while (lineStart < end) {
+                int lineEnd = head.indexOf('\n', lineStart);
+                if (lineEnd < 0) {
+                    lineEnd = end;
+                }
+                final String line = head.substring(lineStart, lineEnd).trim();
+                lineStart = lineEnd + 1;
+                if (line.length() == 0) {
+                    continue;
+                } else if (requestLine) {
+                    requestLine = false;
+                    this.keepAliveRequested = line.endsWith("HTTP/1.1");
+                    connect = line.startsWith("CONNECT ");
+                    continue;
+                }
+                final int index = line.indexOf(':');
+                if (index <= 0) {
+                    continue;
+                }
+                final String key = line.substring(0, index).trim();
+                final String value = line.substring(index + 1).trim();
+                if ("Content-Length".equalsIgnoreCase(key)) {
+                    try {
+                        contentLength = Long.parseLong(value);
+                    } catch (final NumberFormatException e) {
+                        throw new IOException("Invalid Content-Length " + value);
+                    }
+                } else if ("Transfer-Encoding".equalsIgnoreCase(key)) {
+                    chunked = !"identity".equalsIgnoreCase(value);
+                } else if ("Connection".equalsIgnoreCase(key)) {
+                    final String connection = value.toLowerCase(Locale.ENGLISH);
+                    if (connection.contains("close")) {
+                        this.keepAliveRequested = false;
+                    } else if (connection.contains("keep-alive")) {
+                        this.keepAliveRequested = true;
+                    }
+                }
+            }
+            if (chunked || connect || contentLength > HttpServerSelector.MAX_BUFFERED_BODY) {
+                this.streamBody = true;
+                this.keepAliveRequested = false;
+                this.contentLength = 0;
+            } else {
+                this.streamBody = false;
+                this.contentLength = (int) Math.max(0, contentLength);
+            }
+        }
+
+        /**
+         * removes the complete request from the buffer
+         *
+         * @return InputStream for the request. Streamed bodies continue reading from the socket
+         */
+        protected InputStream takeRequest() throws IOException {
+            if (this.headerEnd < 0) {
+                throw new IllegalStateException("Request is not complete");
+            }
+            this.requestKeepAlive = this.keepAliveRequested;
+            this.bodyStreamed = this.streamBody;
+            final int requestLength = this.streamBody ? this.buffer.position() : this.headerEnd + this.contentLength;
+            final byte[] request = new byte[requestLength];
+            System.arraycopy(this.buffer.array(), 0, request, 0, requestLength);
+            this.consume(requestLength);
+            this.headerEnd = -1;
+            this.scanned = 0;
+            this.contentLength = 0;
+            this.streamBody = false;
+            if (this.bodyStreamed) {
+                return new SequenceInputStream(new ByteArrayInputStream(request), new NioHttpConnection.ChannelInputStream(this));
+            }
+            return new ByteArrayInputStream(request);
+        }
+
+        private void consume(final int length) {
+            this.buffer.flip();
+            this.buffer.position(length);
+            this.buffer.compact();
+        }
+
+        /**
+         * blocks the calling (connection) thread until the channel is ready for the given operation
+         *
+         * @param ops
+         * @throws IOException
+         */
+        protected synchronized void waitFor(final int ops) throws IOException {
+            try {
+                if (this.waitSelector == null) {
+                    this.waitSelector = Selector.open();
+                    this.waitKey = this.channel.register(this.waitSelector, ops);
+                } else {
+                    this.waitKey.interestOps(ops);
+                }
+                if (this.waitSelector.select(HttpServerSelector.READ_TIMEOUT) == 0) {
+                    throw new SocketTimeoutException("Timeout waiting for " + (ops == SelectionKey.OP_READ ? "read" : "write"));
+                }
+                this.waitSelector.selectedKeys().clear();
+            } catch (final ClosedSelectorException e) {
+                throw new IOException("Connection closed");
+            } catch (final CancelledKeyException e) {
+                throw new IOException("Connection closed");
+            }
+        }
+
+        public void close() {
+            try {
+                this.channel.close();
+            } catch (final Throwable ignore) {
+            }
+            final Selector waitSelector = this.waitSelector;
+            if (waitSelector != null) {
+                try {
+                    waitSelector.close();
+                } catch (final Throwable ignore) {
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "NioClient: " + this.channel.socket();
+        }
+    }
+}
@@ -0,0 +1,313 @@
+/**
+ *
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ *
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header.
+ *
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ *
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.utils.net.httpserver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+
+import org.appwork.net.protocol.http.HTTPConstants;
+import org.appwork.net.protocol.http.HTTPConstants.ResponseCode;
+import org.appwork.utils.net.HTTPHeader;
+import org.appwork.utils.net.httpserver.requests.HeadRequest;
+import org.appwork.utils.net.httpserver.requests.HttpRequest;
+import org.appwork.utils.net.httpserver.responses.HttpResponse;
+
+/**
+ * {@link HttpConnection} for one request received by the {@link HttpServerSelector}. If client and response allow it, the socket is
+ * handed back to the selector after the response instead of being closed (keep-alive).
+ *
+ * @author daniel
+ *
+ */
+public class NioHttpConnection extends HttpConnection {
+
+    /**
+     * reads from the non blocking channel, blocks the calling thread until data is available
+     */
+    protected static class ChannelInputStream extends InputStream {
+        private final HttpServerSelector.Client client;
+
+        protected ChannelInputStream(final HttpServerSelector.Client client) {
+            this.client = client;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] b = new byte[1];
+            final int read = this.read(b, 0, 1);
+            if (read <= 0) {
+                return -1;
+            }
+            return b[0] & 0xff;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            final ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+            int read;
+            while ((read = this.client.getChannel().read(buffer)) == 0) {
+                this.client.waitFor(SelectionKey.OP_READ);
+            }
+            return read;
+        }
+    }
+
+    /**
+     * buffered writes to the non blocking channel. Counts the body bytes to find out if the response has been sent completely
+     */
+    protected static class ChannelOutputStream extends OutputStream {
+        private static final byte[]             LAST_CHUNK = new byte[] { '0', '\r', '\n', '\r', '\n' };
+        private final HttpServerSelector.Client client;
+        private final ByteBuffer                buffer     = ByteBuffer.allocate(8192);
+        private final byte[]                    tail       = new byte[ChannelOutputStream.LAST_CHUNK.length];
+        private long                            bodyBytes  = 0;
+        private volatile boolean                keepOpen   = false;
+
+        protected ChannelOutputStream(final HttpServerSelector.Client client) {
+            this.client = client;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            if (!this.buffer.hasRemaining()) {
+                this.flushBuffer();
+            }
+            this.buffer.put((byte) b);
+            System.arraycopy(this.tail, 1, this.tail, 0, this.tail.length - 1);
+            this.tail[this.tail.length - 1] = (byte) b;
+            this.bodyBytes++;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            if (len > this.buffer.remaining()) {
+                this.flushBuffer();
+            }
+            if (len > this.buffer.remaining()) {
+                this.writeFully(ByteBuffer.wrap(b, off, len));
+            } else {
+                this.buffer.put(b, off, len);
+            }
+            if (len >= this.tail.length) {
+                System.arraycopy(b, off + len - this.tail.length, this.tail, 0, this.tail.length);
+            } else {
+                System.arraycopy(this.tail, len, this.tail, 0, this.tail.length - len);
+                System.arraycopy(b, off, this.tail, this.tail.length - len, len);
+            }
+            this.bodyBytes += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            this.flushBuffer();
+        }
+
+        /**
+         * flushes, but keeps the socket open if the response is sent on a keep-alive connection
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                this.flushBuffer();
+            } finally {
+                if (!this.keepOpen) {
+                    this.client.close();
+                }
+            }
+        }
+
+        private void flushBuffer() throws IOException {
+            if (this.buffer.position() > 0) {
+                this.buffer.flip();
+                try {
+                    this.writeFully(this.buffer);
+                } finally {
+                    this.buffer.clear();
+                }
+            }
+        }
+
+        private void writeFully(final ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                if (this.client.getChannel().write(buffer) == 0) {
+                    this.client.waitFor(SelectionKey.OP_WRITE);
+                }
+            }
+        }
+
+        /**
+         * starts counting body bytes, called after the response headers have been written
+         */
+        protected void startBody() {
+            this.bodyBytes = 0;
+            for (int i = 0; i < this.tail.length; i++) {
+                this.tail[i] = 0;
+            }
+        }
+
+        protected long getBodyBytes() {
+            return this.bodyBytes;
+        }
+
+        protected boolean endsWithLastChunk() {
+            for (int i = 0; i < this.tail.length; i++) {
+                if (this.tail[i] != ChannelOutputStream.LAST_CHUNK[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        protected void setKeepOpen(final boolean keepOpen) {
+            this.keepOpen = keepOpen;
+        }
+    }
+
+    protected final HttpServerSelector        selector;
+    protected final HttpServerSelector.Client client;
+    protected final ChannelOutputStream       channelOutputStream;
+    /* replaced by keep-alive in sendResponseHeaders, unless the handler sets its own Connection header */
+    private final HTTPHeader                  connectionClose     = new HTTPHeader(HTTPConstants.HEADER_REQUEST_CONNECTION, "close");
+    private volatile boolean                  keepAliveResponse   = false;
+    private volatile boolean                  failed              = false;
+    private long                              expectedBodyLength  = -1;
+    private boolean                           expectedChunkedBody = false;
+
+    public NioHttpConnection(final HttpServer server, final HttpServerSelector selector, final HttpServerSelector.Client client) throws IOException {
+        super(server, client.getChannel().socket(), client.takeRequest(), new ChannelOutputStream(client));
+        this.selector = selector;
+        this.client = client;
+        this.channelOutputStream = (ChannelOutputStream) this.os;
+    }
+
+    @Override
+    protected HttpResponse buildResponse() throws IOException {
+        final HttpResponse ret = super.buildResponse();
+        ret.getResponseHeaders().add(this.connectionClose);
+        return ret;
+    }
+
+    @Override
+    public void closeConnection() {
+        try {
+            this.channelOutputStream.flush();
+        } catch (final Throwable ignore) {
+        }
+        super.closeConnection();
+        this.client.close();
+    }
+
+    @Override
+    public boolean onException(final Throwable e, final HttpRequest request, final HttpResponse response) throws IOException {
+        this.failed = true;
+        return super.onException(e, request, response);
+    }
+
+    @Override
+    protected void sendResponseHeaders() throws IOException {
+        if (this.response != null && !this.isResponseHeadersSent() && this.isKeepAlivePossible(this.request, this.response)) {
+            this.response.getResponseHeaders().add(new HTTPHeader(HTTPConstants.HEADER_REQUEST_CONNECTION, "keep-alive"));
+            this.keepAliveResponse = true;
+            this.channelOutputStream.setKeepOpen(true);
+        }
+        super.sendResponseHeaders();
+        this.channelOutputStream.startBody();
+    }
+
+    /**
+     * keep-alive requires that the client wants it and that the end of the response body can be detected without closing the socket
+     */
+    protected boolean isKeepAlivePossible(final HttpRequest request, final HttpResponse response) {
+        if (!this.client.isKeepAliveRequested() || this.client.isBodyStreamed() || this.server.getKeepAliveTimeout() <= 0 || !this.server.isRunning()) {
+            return false;
+        }
+        if (response.getResponseHeaders().get(HTTPConstants.HEADER_REQUEST_CONNECTION) != this.connectionClose) {
+            /* handler wants to control the connection */
+            return false;
+        }
+        if (request instanceof HeadRequest || response.getResponseCode() == ResponseCode.SUCCESS_NO_CONTENT) {
+            this.expectedBodyLength = 0;
+            return true;
+        }
+        final String transferEncoding = response.getResponseHeaders().getValue(HTTPConstants.HEADER_RESPONSE_TRANSFER_ENCODING);
+        if (transferEncoding != null) {
+            this.expectedChunkedBody = "chunked".equalsIgnoreCase(transferEncoding.trim());
+            return this.expectedChunkedBody;
+        }
+        final String contentLength = response.getResponseHeaders().getValue(HTTPConstants.HEADER_RESPONSE_CONTENT_LENGTH);
+        if (contentLength != null) {
+            try {
+                this.expectedBodyLength = Long.parseLong(contentLength.trim());
+                return this.expectedBodyLength >= 0;
+            } catch (final NumberFormatException e) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    protected boolean keepAlive() {
+        if (!this.keepAliveResponse || this.failed || !this.isResponseHeadersSent() || !this.client.getChannel().isOpen()) {
+            return false;
+        }
+        try {
+            this.channelOutputStream.flush();
+        } catch (final IOException e) {
+            return false;
+        }
+        final boolean complete;
+        if (this.expectedChunkedBody) {
+            complete = this.channelOutputStream.endsWithLastChunk();
+        } else {
+            complete = this.channelOutputStream.getBodyBytes() == this.expectedBodyLength;
+        }
+        if (!complete) {
+            return false;
+        }
+        this.selector.resume(this.client);
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "NioHttpConnection: " + this.client;
+    }
+}
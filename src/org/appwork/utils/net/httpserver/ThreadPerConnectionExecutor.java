@@ -0,0 +1,215 @@
+/**
+ *
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ *
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header.
+ *
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ *
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.utils.net.httpserver;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * executor that runs every {@link HttpConnection} in its own thread without any pooling or queue limit. If virtual threads are requested
+ * and the runtime supports them (Thread.ofVirtual), each connection gets a virtual thread, else a daemon {@link HttpConnectionThread}.
+ *
+ * Virtual threads cannot be {@link HttpConnectionThread}s, use {@link HttpConnectionThread#getCurrentHttpConnection()} to find the
+ * connection of the current thread.
+ *
+ * @author daniel
+ *
+ */
+public class ThreadPerConnectionExecutor extends AbstractExecutorService {
+
+    private static final Object VIRTUAL_BUILDER;
+    private static final Method VIRTUAL_UNSTARTED;
+    static {
+        Object builder = null;
+        Method unstarted = null;
+        try {
+            builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            unstarted = Class.forName("java.lang.Thread$Builder").getMethod("unstarted", Runnable.class);
+        } catch (final Throwable e) {
+            /* runtime without virtual threads */
+            builder = null;
+            unstarted = null;
+        }
+        VIRTUAL_BUILDER = builder;
+        VIRTUAL_UNSTARTED = unstarted;
+    }
+
+    /**
+     * @return true if the runtime supports virtual threads
+     */
+    public static boolean isVirtualThreadSupported() {
+        return ThreadPerConnectionExecutor.VIRTUAL_UNSTARTED != null;
+    }
+
+    /**
+     * @param virtual
+     *            use virtual threads if supported by the runtime
+     * @return factory for {@link HttpServer#setExecutorFactory(HttpServerExecutorFactory)}
+     */
+    public static HttpServerExecutorFactory factory(final boolean virtual) {
+        return new HttpServerExecutorFactory() {
+
+            @Override
+            public ThreadPerConnectionExecutor createExecutor(final HttpServer server) {
+                return new ThreadPerConnectionExecutor(server, virtual);
+            }
+        };
+    }
+
+    private final HttpServer     server;
+    private final boolean        virtual;
+    private final Set<Runnable>  running  = Collections.newSetFromMap(new ConcurrentHashMap<Runnable, Boolean>());
+    private final AtomicInteger  active   = new AtomicInteger(0);
+    private final Object         lock     = new Object();
+    private volatile boolean     shutdown = false;
+
+    public ThreadPerConnectionExecutor(final HttpServer server, final boolean virtual) {
+        this.server = server;
+        this.virtual = virtual && ThreadPerConnectionExecutor.isVirtualThreadSupported();
+    }
+
+    /**
+     * @return true if this executor starts virtual threads
+     */
+    public boolean isVirtual() {
+        return this.virtual;
+    }
+
+    /**
+     * @return number of currently running connections
+     */
+    public int getActiveCount() {
+        return this.active.get();
+    }
+
+    public void execute(final Runnable command) {
+        if (command == null) {
+            throw new NullPointerException();
+        }
+        if (this.shutdown) {
+            throw new RejectedExecutionException("executor is shutdown");
+        }
+        final Runnable task = new Runnable() {
+
+            public void run() {
+                try {
+                    command.run();
+                } finally {
+                    ThreadPerConnectionExecutor.this.running.remove(command);
+                    if (ThreadPerConnectionExecutor.this.active.decrementAndGet() == 0) {
+                        synchronized (ThreadPerConnectionExecutor.this.lock) {
+                            ThreadPerConnectionExecutor.this.lock.notifyAll();
+                        }
+                    }
+                }
+            }
+        };
+        final Thread thread = this.newThread(task);
+        this.active.incrementAndGet();
+        this.running.add(command);
+        try {
+            thread.start();
+        } catch (final Throwable e) {
+            this.running.remove(command);
+            this.active.decrementAndGet();
+            throw new RejectedExecutionException(e);
+        }
+    }
+
+    protected Thread newThread(final Runnable task) {
+        if (this.virtual) {
+            try {
+                return (Thread) ThreadPerConnectionExecutor.VIRTUAL_UNSTARTED.invoke(ThreadPerConnectionExecutor.VIRTUAL_BUILDER, task);
+            } catch (final Throwable e) {
+                throw new RejectedExecutionException(e);
+            }
+        }
+        return new HttpConnectionThread(this.server, task);
+    }
+
+    public void shutdown() {
+        this.shutdown = true;
+        synchronized (this.lock) {
+            this.lock.notifyAll();
+        }
+    }
+
+    /**
+     * closes all running connections, there is no queue so the returned list is always empty
+     */
+    public List<Runnable> shutdownNow() {
+        this.shutdown();
+        for (final Runnable runnable : this.running) {
+            if (runnable instanceof HttpConnection) {
+                try {
+                    ((HttpConnection) runnable).closeConnection();
+                    ((HttpConnection) runnable).close();
+                } catch (final Throwable e) {
+                }
+            }
+        }
+        return new ArrayList<Runnable>(0);
+    }
+
+    public boolean isShutdown() {
+        return this.shutdown;
+    }
+
+    public boolean isTerminated() {
+        return this.shutdown && this.active.get() == 0;
+    }
+
+    public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+        final long waitUntil = System.currentTimeMillis() + unit.toMillis(timeout);
+        synchronized (this.lock) {
+            while (!this.isTerminated()) {
+                final long wait = waitUntil - System.currentTimeMillis();
+                if (wait <= 0) {
+                    return false;
+                }
+                this.lock.wait(wait);
+            }
+        }
+        return true;
+    }
+
+}
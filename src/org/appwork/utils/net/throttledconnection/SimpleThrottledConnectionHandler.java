@@ -64,11 +64,41 @@ public class SimpleThrottledConnectionHandler implements ThrottledConnectionHand
     protected SpeedMeterInterface            speedMeter   = new AverageSpeedMeter(10);
     protected volatile long                  traffic      = 0;
 
+    protected final TokenBucket              bucket;
+
     private final Object                     watchDogLOCK = new Object();
     private final String                     name;
 
     public SimpleThrottledConnectionHandler(final String name) {
+        this(name, null);
+    }
+
+    /**
+     * @param name
+     * @param parent
+     *            optional parent bucket, eg a global limit shared by several handlers
+     */
+    public SimpleThrottledConnectionHandler(final String name, final TokenBucket parent) {
         this.name = name;
+        this.bucket = new TokenBucket(parent);
+    }
+
+    /**
+     * bucket that enforces the limit of this handler, {@link ThrottledInputStream}s and {@link ThrottledOutputStream}s use it as parent
+     * of their own bucket and get throttled on each read/write
+     *
+     * @return
+     */
+    public TokenBucket getTokenBucket() {
+        return this.bucket;
+    }
+
+    /**
+     * @param con
+     * @return true if the connection is throttled by the {@link TokenBucket} of this handler
+     */
+    protected boolean isScheduled(final ThrottledConnection con) {
+        return con instanceof ThrottledInputStream || con instanceof ThrottledOutputStream;
     }
 
     @Override
@@ -80,11 +110,13 @@ public class SimpleThrottledConnectionHandler implements ThrottledConnectionHand
             this.connections = newConnections;
         }
         con.setHandler(this);
-        /*
-         * we set very low limit here because we want the real speed to get
-         * assigned on next speed-assign-loop
-         */
-        con.setLimit(10);
+        if (!this.isScheduled(con)) {
+            /*
+             * we set very low limit here because we want the real speed to get
+             * assigned on next speed-assign-loop
+             */
+            con.setLimit(10);
+        }
         this.startWatchDog();
     }
 
@@ -126,6 +158,7 @@ public class SimpleThrottledConnectionHandler implements ThrottledConnectionHand
     @Override
     public void setLimit(final int limit) {
         this.limit = Math.max(0, limit);
+        this.bucket.setRate(this.limit);
 
     }
 
@@ -189,6 +222,10 @@ public class SimpleThrottledConnectionHandler implements ThrottledConnectionHand
                             limitLeft -= helper.newLimit;
                         }
                         for (final ThrottledConnection con : lConnections) {
+                            if (SimpleThrottledConnectionHandler.this.isScheduled(con)) {
+                                /* throttled by our TokenBucket on each read/write */
+                                continue;
+                            }
                             final SpeedAssignHelp helper = speedAssignHelpMap.get(con);
                             con.setLimit(helper.newLimit);
                         }
@@ -70,14 +70,9 @@ public class ThrottledInputStream extends InputStream implements ThrottledConnec
     protected volatile long            transferedCounter  = 0;
     protected volatile long            transferedCounter2 = 0;
     private volatile int               limitCurrent       = 0;
-    private int                        limitCounter       = 0;
+    private final TokenBucket          bucket             = new TokenBucket();
 
     private int                        lastRead2;
-    private long                       slotTimeLeft       = 0;
-
-    private long                       lastTimeReset      = 0;
-    private final long                 onems              = 1000000l;
-    private final long                 onesec             = 1000000000l;
 
     /**
      * constructor for not managed ThrottledInputStream
@@ -138,24 +133,29 @@ public class ThrottledInputStream extends InputStream implements ThrottledConnec
      */
     @Override
     public int read() throws IOException {
-        this.lastRead2 = this.in.read();
+        int reserved = 0;
+        if (!this.bucket.isUnlimited()) {
+            /* a Limit is set */
+            reserved = this.acquire(1);
+        }
+        try {
+            this.lastRead2 = this.in.read();
+        } catch (final IOException e) {
+            this.bucket.release(reserved);
+            throw e;
+        }
         if (this.lastRead2 == -1) {
-            /* end of line */
+            /* end of line, give back the reservation */
+            this.bucket.release(reserved);
             return -1;
         }
         this.transferedCounter++;
-        if (this.limitCurrent != 0) {
-            /* a Limit is set */
-            this.limitCounter--;
-            /* a Limit is set */
-            this.readWait(1);
-        }
         return this.lastRead2;
     }
 
     @Override
     public int read(final byte b[], final int off, final int len) throws IOException {
-        if (this.limitCurrent == 0) {
+        if (len == 0 || this.bucket.isUnlimited()) {
             this.lastRead2 = this.in.read(b, off, len);
             if (this.lastRead2 == -1) {
                 /* end of line */
@@ -163,50 +163,24 @@ public class ThrottledInputStream extends InputStream implements ThrottledConnec
             }
             this.transferedCounter += this.lastRead2;
         } else {
-            this.readWait(len);
-            this.lastRead2 = this.in.read(b, off, Math.min(this.limitCounter, len));
+            final int reserved = this.acquire(len);
+            try {
+                this.lastRead2 = this.in.read(b, off, reserved);
+            } catch (final IOException e) {
+                this.bucket.release(reserved);
+                throw e;
+            }
             if (this.lastRead2 == -1) {
                 /* end of line */
+                this.bucket.release(reserved);
                 return -1;
             }
+            this.bucket.release(reserved - this.lastRead2);
             this.transferedCounter += this.lastRead2;
-            this.limitCounter -= this.lastRead2;
         }
         return this.lastRead2;
     }
 
-    private final void readWait(final int len) throws IOException {
-        /* a Limit is set */
-        final long current = System.nanoTime();
-        this.slotTimeLeft = Math.max(0, current - this.lastTimeReset);
-        if (this.limitCounter <= 0 && this.slotTimeLeft < this.onesec) {
-            /* Limit reached and slotTime not over yet */
-            synchronized (this) {
-                try {
-                    long wait = this.onesec - this.slotTimeLeft;
-                    this.lastTimeReset = current + wait;
-                    final long ns = wait % this.onems;
-                    wait = wait / this.onems;
-                    this.wait(wait, (int) ns);
-                } catch (final InterruptedException e) {
-                    throw new IOException("throttle interrupted", e);
-                }
-            }
-            /* refill Limit */
-            this.limitCounter = this.limitCurrent;
-            if (this.limitCounter <= 0) {
-                this.limitCounter = len;
-            }
-        } else if (this.slotTimeLeft >= this.onesec) {
-            /* slotTime is over, refill Limit too */
-            this.limitCounter = this.limitCurrent;
-            this.lastTimeReset = current;
-            if (this.limitCounter <= 0) {
-                this.limitCounter = len;
-            }
-        }
-    }
-
     @Override
     public synchronized void reset() throws IOException {
         this.in.reset();
@@ -222,11 +196,48 @@ public class ThrottledInputStream extends InputStream implements ThrottledConnec
             this.handler.removeThrottledConnection(this);
         }
         this.handler = manager;
+        if (manager instanceof SimpleThrottledConnectionHandler) {
+            this.bucket.setParent(((SimpleThrottledConnectionHandler) manager).getTokenBucket());
+        } else {
+            this.bucket.setParent(null);
+        }
         if (this.handler != null) {
             this.handler.addThrottledConnection(this);
         }
     }
 
+    /**
+     * @return the bucket of this connection, its parent is the bucket of the {@link SimpleThrottledConnectionHandler}
+     */
+    public TokenBucket getTokenBucket() {
+        return this.bucket;
+    }
+
+    /**
+     * reserves up to wanted bytes and waits until they may be transfered
+     *
+     * @param wanted
+     * @return number of bytes that may be transfered now
+     * @throws IOException
+     */
+    private int acquire(final int wanted) throws IOException {
+        final int quantum = this.bucket.getQuantum(wanted);
+        long wait = this.bucket.reserve(quantum);
+        if (wait > 0) {
+            synchronized (this) {
+                try {
+                    final long ns = wait % 1000000l;
+                    wait = wait / 1000000l;
+                    this.wait(wait, (int) ns);
+                } catch (final InterruptedException e) {
+                    this.bucket.release(quantum);
+                    throw new IOException("throttle interrupted", e);
+                }
+            }
+        }
+        return quantum;
+    }
+
     public void setInputStream(final InputStream is) {
         if (is == null) {
             throw new IllegalArgumentException("InputStream is null");
@@ -246,8 +257,8 @@ public class ThrottledInputStream extends InputStream implements ThrottledConnec
         if (kpsLimit == this.limitCurrent) {
             return;
         }
-        /* TODO: maybe allow little jitter here */
         this.limitCurrent = Math.max(0, kpsLimit);
+        this.bucket.setRate(this.limitCurrent);
     }
 
     @Override
@@ -71,16 +71,7 @@ public class ThrottledOutputStream extends OutputStream implements ThrottledConn
     protected volatile long            transferedCounter  = 0;
     protected volatile long            transferedCounter2 = 0;
     private volatile int               limitCurrent       = 0;
-
-    private int                        limitCounter       = 0;
-    private int                        offset;
-    private int                        todo;
-    private int                        rest;
-    private long                       slotTimeLeft       = 0;
-
-    private long                       lastTimeReset      = 0;
-    private final long                 onems              = 1000000l;
-    private final long                 onesec             = 1000000000l;
+    private final TokenBucket          bucket             = new TokenBucket();
 
     /**
      * constructor for not managed ThrottledOutputStream
@@ -136,11 +127,48 @@ public class ThrottledOutputStream extends OutputStream implements ThrottledConn
             this.handler.removeThrottledConnection(this);
         }
         this.handler = manager;
+        if (manager instanceof SimpleThrottledConnectionHandler) {
+            this.bucket.setParent(((SimpleThrottledConnectionHandler) manager).getTokenBucket());
+        } else {
+            this.bucket.setParent(null);
+        }
         if (this.handler != null) {
             this.handler.addThrottledConnection(this);
         }
     }
 
+    /**
+     * @return the bucket of this connection, its parent is the bucket of the {@link SimpleThrottledConnectionHandler}
+     */
+    public TokenBucket getTokenBucket() {
+        return this.bucket;
+    }
+
+    /**
+     * reserves up to wanted bytes and waits until they may be transfered
+     *
+     * @param wanted
+     * @return number of bytes that may be transfered now
+     * @throws IOException
+     */
+    private int acquire(final int wanted) throws IOException {
+        final int quantum = this.bucket.getQuantum(wanted);
+        long wait = this.bucket.reserve(quantum);
+        if (wait > 0) {
+            synchronized (this) {
+                try {
+                    final long ns = wait % 1000000l;
+                    wait = wait / 1000000l;
+                    this.wait(wait, (int) ns);
+                } catch (final InterruptedException e) {
+                    this.bucket.release(quantum);
+                    throw new IOException("throttle interrupted", e);
+                }
+            }
+        }
+        return quantum;
+    }
+
     /**
      * sets limit 0: no limit >0: use limit
      * 
@@ -148,8 +176,8 @@ public class ThrottledOutputStream extends OutputStream implements ThrottledConn
      */
     public void setLimit(final int kpsLimit) {
         if (kpsLimit == this.limitCurrent) { return; }
-        /* TODO: maybe allow little jitter here */
         this.limitCurrent = Math.max(0, kpsLimit);
+        this.bucket.setRate(this.limitCurrent);
     }
 
     public void setOutputStream(final OutputStream os) {
@@ -165,23 +193,21 @@ public class ThrottledOutputStream extends OutputStream implements ThrottledConn
 
     @Override
     public void write(final byte b[], final int off, final int len) throws IOException {
-        if (this.limitCurrent == 0) {
+        if (this.bucket.isUnlimited()) {
             /* no limit is set */
             this.out.write(b, off, len);
             this.transferedCounter += len;
         } else {
             /* a limit is set */
-            this.offset = off;
-            this.rest = len;
-            while (this.rest > 0) {
+            int offset = off;
+            int rest = len;
+            while (rest > 0) {
                 /* loop until all data is written */
-                this.writeWait(this.rest);
-                this.todo = Math.min(this.limitCounter, this.rest);
-                this.out.write(b, this.offset, this.todo);
-                this.offset += this.todo;
-                this.rest -= this.todo;
-                this.transferedCounter += this.todo;
-                this.limitCounter -= this.todo;
+                final int todo = this.acquire(rest);
+                this.out.write(b, offset, todo);
+                offset += todo;
+                rest -= todo;
+                this.transferedCounter += todo;
             }
         }
     }
@@ -191,45 +217,12 @@ public class ThrottledOutputStream extends OutputStream implements ThrottledConn
      */
     @Override
     public void write(final int b) throws IOException {
-        this.out.write(b);
-        this.transferedCounter++;
-        if (this.limitCurrent != 0) {
+        if (!this.bucket.isUnlimited()) {
             /* a Limit is set */
-            this.limitCounter--;
-            this.writeWait(1);
-        }
-    }
-
-    private final void writeWait(final int len) throws IOException {
-        /* a Limit is set */
-        final long current = System.nanoTime();
-        this.slotTimeLeft = Math.max(0, current - this.lastTimeReset);
-        if (this.limitCounter <= 0 && this.slotTimeLeft < this.onesec) {
-            /* Limit reached and slotTime not over yet */
-            synchronized (this) {
-                try {
-                    long wait = this.onesec - this.slotTimeLeft;
-                    this.lastTimeReset = current + wait;
-                    final long ns = wait % this.onems;
-                    wait = wait / this.onems;
-                    this.wait(wait, (int) ns);
-                } catch (final InterruptedException e) {
-                    throw new IOException("throttle interrupted", e);
-                }
-            }
-            /* refill Limit */
-            this.limitCounter = this.limitCurrent;
-            if (this.limitCounter <= 0) {
-                this.limitCounter = len;
-            }
-        } else if (this.slotTimeLeft >= this.onesec) {
-            /* slotTime is over, refill Limit too */
-            this.limitCounter = this.limitCurrent;
-            this.lastTimeReset = current;
-            if (this.limitCounter <= 0) {
-                this.limitCounter = len;
-            }
+            this.acquire(1);
         }
+        this.out.write(b);
+        this.transferedCounter++;
     }
 
 }
@@ -0,0 +1,202 @@
+/**
+ *
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ *
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header.
+ *
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ *
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.utils.net.throttledconnection;
+
+/**
+ * hierarchical token bucket (global -> handler -> connection). Every bucket enforces its own rate, a transfer has to reserve its bytes
+ * in the bucket of the connection and in all parent buckets and waits for the slowest of them.
+ *
+ * The buckets are implemented as virtual scheduling (GCRA): each bucket keeps the theoretical arrival time of the next byte, so there is
+ * no refill thread and limit changes take effect with the next reservation. Unused burst credit is limited to {@link #BURST_NANOS}.
+ * Reservations are limited to {@link #QUANTUM_NANOS} worth of bytes multiplied with the weight of the connection, so concurrent
+ * connections get bandwidth shares relative to their weights.
+ *
+ * @author daniel
+ *
+ */
+public class TokenBucket {
+
+    public static final long     QUANTUM_NANOS          = 5 * 1000000l;
+    public static final long     BURST_NANOS            = 50 * 1000000l;
+
+    private volatile TokenBucket parent;
+    private volatile long        rate                   = 0;
+    private volatile int         weight                 = 1;
+    private long                 theoreticalArrivalTime = System.nanoTime();
+
+    public TokenBucket() {
+        this(null);
+    }
+
+    public TokenBucket(final TokenBucket parent) {
+        this.setParent(parent);
+    }
+
+    public TokenBucket getParent() {
+        return this.parent;
+    }
+
+    public void setParent(final TokenBucket parent) {
+        TokenBucket check = parent;
+        while (check != null) {
+            if (check == this) {
+                throw new IllegalArgumentException("TokenBucket loop!");
+            }
+            check = check.getParent();
+        }
+        this.parent = parent;
+    }
+
+    /**
+     * @return bytes/s, 0 = no limit
+     */
+    public long getRate() {
+        return this.rate;
+    }
+
+    /**
+     * @param rate
+     *            bytes/s, 0 = no limit
+     */
+    public void setRate(final long rate) {
+        this.rate = Math.max(0, rate);
+    }
+
+    public int getWeight() {
+        return this.weight;
+    }
+
+    /**
+     * @param weight
+     *            priority weight, reservations are weight times larger than the ones of a weight 1 bucket
+     */
+    public void setWeight(final int weight) {
+        this.weight = Math.max(1, weight);
+    }
+
+    /**
+     * @return true if neither this bucket nor any parent has a limit
+     */
+    public boolean isUnlimited() {
+        TokenBucket bucket = this;
+        while (bucket != null) {
+            if (bucket.rate > 0) {
+                return false;
+            }
+            bucket = bucket.parent;
+        }
+        return true;
+    }
+
+    /**
+     * @param wanted
+     * @return number of bytes a single reservation of this bucket may contain
+     */
+    public int getQuantum(final int wanted) {
+        /*
+         * the quantum is sized by the shared parent buckets, a small own limit must not shrink the reservations at the parents else this
+         * bucket would fall behind its siblings
+         */
+        long quantum = Long.MAX_VALUE;
+        TokenBucket bucket = this.parent;
+        while (bucket != null) {
+            final long lRate = bucket.rate;
+            if (lRate > 0) {
+                quantum = Math.min(quantum, Math.max(1, lRate * TokenBucket.QUANTUM_NANOS / 1000000000l));
+            }
+            bucket = bucket.parent;
+        }
+        if (quantum == Long.MAX_VALUE && this.rate > 0) {
+            quantum = Math.max(1, this.rate * TokenBucket.QUANTUM_NANOS / 1000000000l);
+        }
+        if (quantum == Long.MAX_VALUE) {
+            return wanted;
+        }
+        return (int) Math.max(1, Math.min(wanted, quantum * this.weight));
+    }
+
+    /**
+     * reserves bytes in this bucket and all parents
+     *
+     * @param bytes
+     * @return nanoseconds the caller has to wait before it may transfer the bytes
+     */
+    public long reserve(final int bytes) {
+        final long now = System.nanoTime();
+        long wait = 0;
+        TokenBucket bucket = this;
+        while (bucket != null) {
+            wait = Math.max(wait, bucket.reserve(bytes, now));
+            bucket = bucket.parent;
+        }
+        return wait;
+    }
+
+    /**
+     * gives back reserved but not transferred bytes to this bucket and all parents
+     *
+     * @param bytes
+     */
+    public void release(final int bytes) {
+        if (bytes <= 0) {
+            return;
+        }
+        TokenBucket bucket = this;
+        while (bucket != null) {
+            bucket.release(bytes, System.nanoTime());
+            bucket = bucket.parent;
+        }
+    }
+
+    private synchronized long reserve(final long bytes, final long now) {
+        final long lRate = this.rate;
+        if (lRate <= 0) {
+            return 0;
+        }
+        if (this.theoreticalArrivalTime < now - TokenBucket.BURST_NANOS) {
+            /* idle, allow max burst */
+            this.theoreticalArrivalTime = now - TokenBucket.BURST_NANOS;
+        }
+        final long wait = Math.max(0, this.theoreticalArrivalTime - now);
+        this.theoreticalArrivalTime += bytes * 1000000000l / lRate;
+        return wait;
+    }
+
+    private synchronized void release(final long bytes, final long now) {
+        final long lRate = this.rate;
+        if (lRate > 0) {
+            this.theoreticalArrivalTime = Math.max(now - TokenBucket.BURST_NANOS, this.theoreticalArrivalTime - bytes * 1000000000l / lRate);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/**
+ *
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ *
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header.
+ *
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ *
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.utils.net.usenet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * unsynchronized buffered InputStream with fast CRLF line reading and unread support. pipelined responses follow each other directly, so
+ * bytes read ahead (e.g. by {@link YEncInputStream}) must be given back instead of being lost
+ *
+ * @author daniel
+ *
+ */
+class LineBufferedInputStream extends InputStream {
+
+    private final InputStream in;
+    private byte[]            buf;
+    private int               pos   = 0;
+    private int               limit = 0;
+
+    LineBufferedInputStream(final InputStream in, final int size) {
+        this.in = in;
+        this.buf = new byte[size];
+    }
+
+    @Override
+    public int available() throws IOException {
+        return this.limit - this.pos + this.in.available();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.in.close();
+    }
+
+    private boolean fill() throws IOException {
+        this.pos = 0;
+        this.limit = 0;
+        final int read = this.in.read(this.buf, 0, this.buf.length);
+        if (read <= 0) {
+            return false;
+        }
+        this.limit = read;
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (this.pos == this.limit && !this.fill()) {
+            return -1;
+        }
+        return this.buf[this.pos++] & 0xff;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        final int buffered = this.limit - this.pos;
+        if (buffered > 0) {
+            final int ret = Math.min(buffered, len);
+            System.arraycopy(this.buf, this.pos, b, off, ret);
+            this.pos += ret;
+            return ret;
+        }
+        /* nothing buffered, read directly */
+        return this.in.read(b, off, len);
+    }
+
+    /**
+     * same rules as {@link SimpleUseNet#readLine(InputStream, OutputStream)}, but scans the buffer instead of reading byte by byte
+     *
+     * @return line length without CRLF or -1 on EOF
+     */
+    int readLine(final OutputStream buffer) throws IOException {
+        int length = 0;
+        boolean CR = false;
+        while (true) {
+            if (this.pos == this.limit && !this.fill()) {
+                return length > 0 ? length : -1;
+            }
+            if (CR) {
+                if (this.buf[this.pos] == 10) {
+                    this.pos++;
+                    return length;
+                } else if (this.buf[this.pos] == 13) {
+                    throw new IOException("CRCR!?");
+                } else {
+                    throw new IOException("CRXX!?");
+                }
+            }
+            final int start = this.pos;
+            int index = start;
+            while (index < this.limit) {
+                final byte c = this.buf[index];
+                if (c == 13 || c == 10) {
+                    break;
+                }
+                index++;
+            }
+            if (index > start) {
+                buffer.write(this.buf, start, index - start);
+                length += index - start;
+            }
+            this.pos = index;
+            if (index < this.limit) {
+                if (this.buf[index] == 10) {
+                    throw new IOException("LF!?");
+                }
+                CR = true;
+                this.pos++;
+            }
+        }
+    }
+
+    /**
+     * pushes b back, it will be read again before any new data
+     */
+    void unread(final byte[] b, final int off, final int len) {
+        if (len <= 0) {
+            return;
+        }
+        if (this.pos >= len) {
+            this.pos -= len;
+        } else {
+            final int buffered = this.limit - this.pos;
+            final byte[] newBuf = new byte[Math.max(this.buf.length, len + buffered)];
+            System.arraycopy(this.buf, this.pos, newBuf, len, buffered);
+            this.buf = newBuf;
+            this.pos = 0;
+            this.limit = len + buffered;
+        }
+        System.arraycopy(b, off, this.buf, this.pos, len);
+    }
+}
@@ -33,14 +33,20 @@
  * ==================================================================================================================================================== */
 package org.appwork.utils.net.usenet;
 
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketAddress;
+import java.net.SocketException;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
 
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
@@ -125,6 +131,23 @@ public abstract class SimpleUseNet {
 
     }
 
+    /**
+     * receives the message bodies of {@link SimpleUseNet#requestMessageBodies(List, int, MessageBodyHandler)} in request order
+     */
+    public static interface MessageBodyHandler {
+        /**
+         * body does not have to be read completely, the rest gets skipped afterwards
+         */
+        public void onMessageBody(String messageID, InputStream body) throws IOException;
+
+        public void onMessageBodyNotFound(String messageID) throws IOException;
+
+        /**
+         * body could not be decoded or onMessageBody failed, the message is not requested again
+         */
+        public void onMessageBodyError(String messageID, IOException e) throws IOException;
+    }
+
     public Socket getSocket() {
         return socket;
     }
@@ -200,8 +223,8 @@ public abstract class SimpleUseNet {
                     }
                 }
             }
-            outputStream = socket.getOutputStream();
-            inputStream = socket.getInputStream();
+            outputStream = new BufferedOutputStream(socket.getOutputStream(), 8192);
+            inputStream = new LineBufferedInputStream(socket.getInputStream(), 65536);
             final CommandResponse response = readCommandResponse(null);
             switch (response.getResponseCode()) {
             case 200:
@@ -280,6 +303,14 @@ public abstract class SimpleUseNet {
     }
 
     protected int readLine(final InputStream inputStream, final OutputStream buffer) throws IOException {
+        if (inputStream instanceof LineBufferedInputStream) {
+            try {
+                return ((LineBufferedInputStream) inputStream).readLine(buffer);
+            } catch (final IOException e) {
+                silentDisconnect(e);
+                throw e;
+            }
+        }
         try {
             int c = 0;
             int length = 0;
@@ -376,6 +407,103 @@ public abstract class SimpleUseNet {
         default:
             throw new UnknownResponseException(response);
         }
+        return readMessageBody();
+    }
+
+    /**
+     * pipelined BODY requests: up to depth requests are sent ahead, so the round trip is only paid once instead of once per message
+     *
+     * @param messageIDs
+     * @param depth
+     *            max number of requests in flight
+     * @param handler
+     * @throws IOException
+     */
+    public void requestMessageBodies(final List<String> messageIDs, final int depth, final MessageBodyHandler handler) throws IOException {
+        requestMessageBodiesFromQueue(new LinkedList<String>(messageIDs), depth, handler);
+    }
+
+    /**
+     * takes messageIDs from queue until it is empty, see {@link #requestMessageBodies(List, int, MessageBodyHandler)}. Bodies that
+     * cannot be decoded are passed to {@link MessageBodyHandler#onMessageBodyError(String, IOException)}, the connection continues if it
+     * is still in sync. On error, the body being read (if the connection broke) and all requests whose response was not read yet are
+     * added to queue again, so another connection can continue with them
+     *
+     * @param queue
+     *            must be threadsafe if shared between connections
+     */
+    public synchronized void requestMessageBodiesFromQueue(final Queue<String> queue, final int depth, final MessageBodyHandler handler) throws IOException {
+        final LinkedList<String> inFlight = new LinkedList<String>();
+        final byte[] skipBuffer = new byte[8192];
+        boolean done = false;
+        try {
+            while (true) {
+                if (inFlight.size() < Math.max(1, depth)) {
+                    boolean sent = false;
+                    while (inFlight.size() < Math.max(1, depth)) {
+                        final String messageID = queue.poll();
+                        if (messageID == null) {
+                            break;
+                        }
+                        inFlight.add(messageID);
+                        writeCommand(COMMAND.BODY.getCommand() + " " + wrapMessageID(messageID));
+                        sent = true;
+                    }
+                    if (sent) {
+                        flushCommands();
+                    }
+                }
+                if (inFlight.size() == 0) {
+                    break;
+                }
+                final String messageID = inFlight.getFirst();
+                final CommandResponse response = readCommandResponse(COMMAND.BODY);
+                switch (response.getResponseCode()) {
+                case 222:
+                    /* response is being read, it is either handled, reported or requeued below */
+                    inFlight.removeFirst();
+                    InputStream body = null;
+                    try {
+                        body = readMessageBody();
+                        handler.onMessageBody(messageID, body);
+                        while (body.read(skipBuffer) != -1) {
+                        }
+                    } catch (final IOException e) {
+                        if (isConnectionError(e)) {
+                            /* connection broke within the body, another connection can fetch it again */
+                            queue.add(messageID);
+                            throw e;
+                        }
+                        handler.onMessageBodyError(messageID, e);
+                        if (!(e instanceof UnknownBodyFormatException) && !isBodyEndRead(body)) {
+                            /* rest of the body is still pending, connection is out of sync */
+                            throw e;
+                        }
+                    }
+                    break;
+                case 430:
+                    inFlight.removeFirst();
+                    handler.onMessageBodyNotFound(messageID);
+                    break;
+                case 400:
+                    throw new UnrecognizedCommandException(COMMAND.BODY, messageID);
+                case 480:
+                    throw new AuthRequiredException();
+                default:
+                    throw new UnknownResponseException(response);
+                }
+            }
+            done = true;
+        } finally {
+            if (!done) {
+                /* remaining responses are lost, connection is out of sync */
+                queue.addAll(inFlight);
+                silentDisconnect(null);
+            }
+        }
+    }
+
+    private InputStream readMessageBody() throws IOException {
         final ByteArrayOutputStream buffer = new ByteArrayOutputStream() {
             @Override
             public synchronized byte[] toByteArray() {
@@ -396,14 +524,43 @@ public abstract class SimpleUseNet {
                     logger.info("uuEncode Body detected");
                     return new UUInputStream(this, buffer);
                 }
+                if (".".equals(line)) {
+                    /* end of body */
+                    break;
+                }
             } else if (lineLength == -1) {
-                break;
+                throw new EOFException();
             }
         }
-        throw new IOException("Unknown Body Format");
+        throw new UnknownBodyFormatException();
+    }
+
+    /**
+     * @return true if the body was read up to its terminating "."
+     */
+    private boolean isBodyEndRead(final InputStream body) {
+        if (body instanceof YEncInputStream) {
+            return ((YEncInputStream) body).isBodyEndRead();
+        } else if (body instanceof UUInputStream) {
+            return ((UUInputStream) body).isBodyEndRead();
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * @return true if e was caused by the connection and not by the message itself
+     */
+    private boolean isConnectionError(final IOException e) {
+        return e instanceof EOFException || e instanceof SocketException || e instanceof InterruptedIOException;
     }
 
     private synchronized void sendCommand(String request) throws IOException {
+        writeCommand(request);
+        flushCommands();
+    }
+
+    private synchronized void writeCommand(String request) throws IOException {
         if (!isConnected()) {
             throw new IOException("not connected");
         }
@@ -411,6 +568,14 @@ public abstract class SimpleUseNet {
             logger.info("Send Command:" + request);
             outputStream.write(request.getBytes("ISO-8859-1"));
             outputStream.write(CRLF);
+        } catch (IOException e) {
+            silentDisconnect(e);
+            throw e;
+        }
+    }
+
+    private synchronized void flushCommands() throws IOException {
+        try {
             outputStream.flush();
         } catch (IOException e) {
             silentDisconnect(e);
@@ -0,0 +1,194 @@
+/**
+ *
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ *
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header.
+ *
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ *
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.utils.net.usenet;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.appwork.utils.NullsafeAtomicReference;
+import org.appwork.utils.net.usenet.SimpleUseNet.MessageBodyHandler;
+
+/**
+ * spreads pipelined BODY requests over several authenticated connections to the same server. All connections take their messageIDs from
+ * one shared queue, so faster connections do more work and requests of a broken connection are taken over by the others or by the
+ * reconnected connection itself.
+ *
+ * @author daniel
+ *
+ */
+public abstract class SimpleUseNetGroup {
+
+    /* a connection gives up after this many failures in a row */
+    private static final int MAX_FAILURES = 3;
+
+    private final SocketAddress  socketAddress;
+    private final boolean        ssl;
+    private final String         username;
+    private final String         password;
+    private final int            depth;
+    private final SimpleUseNet[] connections;
+
+    /**
+     * @param connections
+     *            number of connections
+     * @param depth
+     *            number of pipelined requests per connection
+     */
+    public SimpleUseNetGroup(final SocketAddress socketAddress, final boolean ssl, final String username, final String password, final int connections, final int depth) {
+        this.socketAddress = socketAddress;
+        this.ssl = ssl;
+        this.username = username;
+        this.password = password;
+        this.depth = depth;
+        this.connections = new SimpleUseNet[Math.max(1, connections)];
+    }
+
+    /**
+     * @return new, not yet connected SimpleUseNet instance
+     */
+    protected abstract SimpleUseNet createConnection();
+
+    private SimpleUseNet getConnection(final int index) throws IOException {
+        synchronized (this) {
+            final SimpleUseNet connection = this.connections[index];
+            if (connection != null && connection.isConnected()) {
+                return connection;
+            }
+        }
+        /* connect outside the lock, so all connections get established in parallel */
+        final SimpleUseNet connection = this.createConnection();
+        connection.connect(this.socketAddress, this.ssl, this.username, this.password);
+        synchronized (this) {
+            this.connections[index] = connection;
+        }
+        return connection;
+    }
+
+    /**
+     * requests all messageIDs over all connections. handler gets called from several threads in parallel, per connection in request order.
+     * A failed connection gets reconnected and continues with the shared queue, all connections keep running until the queue is empty
+     * and no connection has requests in flight anymore, so requeued messageIDs of a failed connection are always taken over.
+     *
+     * @param messageIDs
+     * @param handler
+     * @throws MessageBodiesNotHandledException
+     *             if all connections failed before every messageID got handled
+     * @throws IOException
+     */
+    public void requestMessageBodies(final List<String> messageIDs, final MessageBodyHandler handler) throws IOException {
+        final ConcurrentLinkedQueue<String> queue = new ConcurrentLinkedQueue<String>(messageIDs);
+        final NullsafeAtomicReference<Throwable> error = new NullsafeAtomicReference<Throwable>(null);
+        /* number of connections that are working on the queue and might requeue messageIDs */
+        final AtomicInteger busy = new AtomicInteger(0);
+        final AtomicBoolean aborted = new AtomicBoolean(false);
+        final Object lock = new Object();
+        final Thread[] workers = new Thread[this.connections.length];
+        for (int index = 0; index < workers.length; index++) {
+            final int connectionIndex = index;
+            workers[index] = new Thread("SimpleUseNetGroup:" + index) {
+                @Override
+                public void run() {
+                    int failures = 0;
+                    while (!aborted.get() && failures < SimpleUseNetGroup.MAX_FAILURES) {
+                        synchronized (lock) {
+                            while (queue.isEmpty() && busy.get() > 0 && !aborted.get()) {
+                                try {
+                                    lock.wait();
+                                } catch (final InterruptedException e) {
+                                    return;
+                                }
+                            }
+                            if (queue.isEmpty() || aborted.get()) {
+                                return;
+                            }
+                            busy.incrementAndGet();
+                        }
+                        try {
+                            SimpleUseNetGroup.this.getConnection(connectionIndex).requestMessageBodiesFromQueue(queue, SimpleUseNetGroup.this.depth, handler);
+                            failures = 0;
+                        } catch (final Throwable e) {
+                            failures++;
+                            error.compareAndSet(null, e);
+                        } finally {
+                            synchronized (lock) {
+                                busy.decrementAndGet();
+                                lock.notifyAll();
+                            }
+                        }
+                    }
+                }
+            };
+            workers[index].setDaemon(true);
+            workers[index].start();
+        }
+        try {
+            for (final Thread worker : workers) {
+                worker.join();
+            }
+        } catch (final InterruptedException e) {
+            aborted.set(true);
+            synchronized (lock) {
+                lock.notifyAll();
+            }
+            for (final SimpleUseNet connection : this.connections) {
+                if (connection != null) {
+                    connection.disconnect();
+                }
+            }
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+        if (!queue.isEmpty()) {
+            throw new MessageBodiesNotHandledException(new ArrayList<String>(queue), error.get());
+        }
+    }
+
+    public synchronized void quit() {
+        for (int index = 0; index < this.connections.length; index++) {
+            final SimpleUseNet connection = this.connections[index];
+            this.connections[index] = null;
+            if (connection != null && connection.isConnected()) {
+                try {
+                    connection.quit();
+                } catch (final IOException ignore) {
+                }
+            }
+        }
+    }
+}
@@ -65,6 +65,7 @@ public class UUInputStream extends InputStream {
     private int     lineSize     = 0;
     private byte    lineBuffer[] = null;
     private boolean eof          = false;
+    private boolean bodyEndRead  = false;
 
     private int     dataIndex    = 0;
     private int     dataLength   = -1;
@@ -183,6 +184,7 @@ public class UUInputStream extends InputStream {
                 if (!".".equals(line)) {
                     throw new IOException("missing body termination(end): " + line);
                 }
+                bodyEndRead = true;
                 break;
             } else if (size == -1) {
                 throw new EOFException();
@@ -190,6 +192,13 @@ public class UUInputStream extends InputStream {
         }
     }
 
+    /**
+     * @return true if the body was read up to its terminating ".", the connection is ready for the next response then
+     */
+    public boolean isBodyEndRead() {
+        return bodyEndRead;
+    }
+
     @Override
     public void close() throws IOException {
     }
@@ -38,6 +38,7 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PushbackInputStream;
+import java.util.zip.CRC32;
 
 public class YEncInputStream extends InputStream {
     /**
@@ -52,6 +53,7 @@ public class YEncInputStream extends InputStream {
     private final long                  partBegin;
     private long                        decodedBytes = 0;
     private boolean                     eof          = false;
+    private boolean                     bodyEndRead  = false;
 
     /**
      * returns the starting points, in bytes, of the block in the original file
@@ -180,216 +182,153 @@ public class YEncInputStream extends InputStream {
     private final byte[] decodedBuffer;
     private int          decodedIndex  = 0;
     private int          decodedLength = 0;
+    private final CRC32  crc32         = new CRC32();
 
-    private synchronized final int readNextDecodedByte() throws IOException {
-        if (decodedIndex < decodedLength) {
-            final int ret = decodedBuffer[decodedIndex++] & 0xff;
-            return ret;
-        }
-        return -1;
-    }
-
-    private synchronized final int readNextDecodedBytes(final byte[] b, final int off, final int len) throws IOException {
-        if (len > 0) {
-            if (decodedIndex < decodedLength) {
-                final int ret = Math.min(len, decodedLength - decodedIndex);
-                System.arraycopy(decodedBuffer, decodedIndex, b, off, ret);
-                decodedIndex += ret;
-                return ret;
-            }
-            return -1;
-        } else {
-            return 0;
-        }
+    /**
+     * returns the CRC32 of all bytes decoded so far, once EOF is reached this is the checksum of the complete part
+     *
+     * @return
+     */
+    public long getDecodedCRC32() {
+        return crc32.getValue();
     }
 
-    private final byte[] encodedBuffer;
-    private int          encodedLength     = 0;
-    private boolean      skipYEndDetection = false;
-    private int          lineIndex         = 0;
+    private static final byte[] YEND              = new byte[] { 61, 121, 101, 110, 100 }; // =yend
+    private final byte[]        encodedBuffer;
+    private int                 encodedLength     = 0;
+    private boolean             skipYEndDetection = false;
 
-    private synchronized final int fillDecodedBuffer() throws IOException {
-        if (decodedIndex < decodedLength) {
-            return decodedLength - decodedIndex;
-        } else {
-            decodedIndex = 0;
-            decodedLength = 0;
-            if (eof) {
-                return -1;
-            } else {
-                final int yEncRead = getInputStream().read(encodedBuffer, encodedLength, encodedBuffer.length - encodedLength);
-                if (yEncRead == -1) {
-                    eof = true;
-                    return -1;
-                } else if (yEncRead == 0) {
-                    return 0;
-                } else {
-                    encodedLength += yEncRead;
-                }
-                int encodedIndex = 0;
-                int lastDecodeIndex = -1;
-                if (!skipYEndDetection && lineIndex > 0) {
-                    encodedIndex = lineIndex;
-                }
-                boolean yEncMarker = false;
-                for (; encodedIndex < encodedLength; encodedIndex++) {
-                    final int encoded = encodedBuffer[encodedIndex] & 0xff;
-                    if (encoded == 10 || encoded == 13) { // LF or CR
-                        yEncMarker = false;
-                        lineIndex = 0;
-                        skipYEndDetection = false;
-                        lastDecodeIndex = encodedIndex;
-                    } else {
-                        if (!skipYEndDetection) {
-                            switch (lineIndex) {
-                            case 0:// = ?
-                                if (encoded == 61) {// =
-                                    lineIndex++;
-                                    continue;
-                                } else {
-                                    skipYEndDetection = true;
-                                    lastDecodeIndex = encodedIndex;
-                                    if (encoded == 46) {// .
-                                        // NNTP-protocol requires to double a dot in the first colum when a line is sent - and to detect a
-                                        // double dot (and remove one of them) when receiving a line.
-                                        continue;
-                                    } else {
-                                        final byte decoded = (byte) (((byte) (encoded - 42)) & 0xff);
-                                        decodedBuffer[decodedLength++] = decoded;
-                                        continue;
-                                    }
-                                }
-                            case 1: // =y ?
-                                if (encoded == 121) {// y
-                                    lineIndex++;
-                                    continue;
-                                } else {
-                                    skipYEndDetection = true;
-                                    final byte decoded = (byte) (((byte) (encoded - 106)) & 0xff);
-                                    decodedBuffer[decodedLength++] = decoded;
-                                    lastDecodeIndex = encodedIndex;
-                                    continue;
-                                }
-                            case 2: // =ye?
-                                if (encoded == 101) {// e
-                                    lineIndex++;
-                                    continue;
-                                } else {
-                                    skipYEndDetection = true;
-                                    yEncMarker = true;
-                                    encodedIndex -= 2;
-                                    continue;
-                                }
-                            case 3:// =yen?
-                                if (encoded == 110) {// n
-                                    lineIndex++;
-                                    continue;
-                                } else {
-                                    skipYEndDetection = true;
-                                    yEncMarker = true;
-                                    encodedIndex -= 3;
-                                    continue;
+    /**
+     * decodes the next chunk of encoded data into decodedBuffer. =yend detection and dot-unstuffing are only done at line start, the rest of
+     * a line is decoded by a tight loop that only has to check for escape and line ending bytes.
+     *
+     * this stream is meant for a single consumer, none of the read methods are synchronized
+     *
+     * @return number of decoded bytes or -1 on EOF
+     * @throws IOException
+     */
+    private final int fillDecodedBuffer() throws IOException {
+        decodedIndex = 0;
+        decodedLength = 0;
+        final byte[] encoded = encodedBuffer;
+        final byte[] decoded = decodedBuffer;
+        while (!eof) {
+            final int yEncRead = getInputStream().read(encoded, encodedLength, encoded.length - encodedLength);
+            if (yEncRead == -1) {
+                /* connection closed before =yend, the body is incomplete */
+                eof = true;
+                throw new EOFException();
+            }
+            final int length = encodedLength + yEncRead;
+            int index = 0;
+            int written = 0;
+            decode: while (index < length) {
+                if (!skipYEndDetection) {
+                    final byte first = encoded[index];
+                    if (first == 10 || first == 13) {// LF or CR
+                        index++;
+                        continue;
+                    } else if (first == 46) {// .
+                        // NNTP-protocol requires to double a dot in the first colum when a line is sent - and to detect a
+                        // double dot (and remove one of them) when receiving a line.
+                        skipYEndDetection = true;
+                        index++;
+                        continue;
+                    } else if (first == 61) {// =
+                        final int left = length - index;
+                        if (left < 2) {
+                            break decode;
+                        }
+                        if (encoded[index + 1] == 121) {// =y
+                            int match = 2;
+                            while (match < YEND.length && match < left && encoded[index + match] == YEND[match]) {
+                                match++;
+                            }
+                            if (match == YEND.length) {
+                                eof = true;
+                                encodedLength = 0;
+                                if (written > 0) {
+                                    decodedLength = written;
+                                    decodedBytes += written;
+                                    crc32.update(decoded, 0, written);
                                 }
-                            case 4:// =yend?
-                                if (encoded == 100) {// d
-                                    eof = true;
-                                    decodedBytes += decodedLength;
-                                    final int trailerLeft = encodedLength - encodedIndex;
-                                    if (trailerLeft > 0) {
-                                        final PushbackInputStream inputStream = new PushbackInputStream(getInputStream(), trailerLeft);
-                                        inputStream.unread(encodedBuffer, encodedIndex, trailerLeft);
-                                        parseTrailer(inputStream);
-                                    } else {
-                                        parseTrailer(getInputStream());
-                                    }
-                                    return decodedLength;
+                                // the trailer continues with the 'd' of =yend
+                                final int trailerIndex = index + YEND.length - 1;
+                                final int trailerLeft = length - trailerIndex;
+                                if (getInputStream() instanceof LineBufferedInputStream) {
+                                    /* give back what we read ahead, it may contain the next pipelined response */
+                                    ((LineBufferedInputStream) getInputStream()).unread(encoded, trailerIndex, trailerLeft);
+                                    parseTrailer(getInputStream());
                                 } else {
-                                    skipYEndDetection = true;
-                                    yEncMarker = true;
-                                    encodedIndex -= 4;
-                                    continue;
+                                    final PushbackInputStream inputStream = new PushbackInputStream(getInputStream(), trailerLeft);
+                                    inputStream.unread(encoded, trailerIndex, trailerLeft);
+                                    parseTrailer(inputStream);
                                 }
-                            default:
-                                skipYEndDetection = true;
-                                break;
-                            }
-                        }
-                        if (yEncMarker == false) {
-                            if (encoded == 61) { // =
-                                yEncMarker = true;
-                            } else {
-                                final byte decoded = (byte) (((byte) (encoded - 42)) & 0xff);
-                                decodedBuffer[decodedLength++] = decoded;
-                                lastDecodeIndex = encodedIndex;
+                                return written > 0 ? written : -1;
+                            } else if (match == left) {
+                                // partial =yend at end of buffer, wait for more data
+                                break decode;
                             }
-                        } else {
-                            final byte decoded = (byte) (((byte) (encoded - 106)) & 0xff);
-                            decodedBuffer[decodedLength++] = decoded;
-                            yEncMarker = false;
-                            lastDecodeIndex = encodedIndex;
                         }
                     }
+                    skipYEndDetection = true;
                 }
-                final int nextEncodedIndex = lastDecodeIndex + 1;
-                if (nextEncodedIndex < encodedLength) {
-                    final int encodedLeft = encodedLength - nextEncodedIndex;
-                    if (encodedLeft > 0) {
-                        System.arraycopy(encodedBuffer, nextEncodedIndex, encodedBuffer, 0, encodedLeft);
+                while (index < length) {
+                    final byte next = encoded[index];
+                    if (next == 61) {// =
+                        if (index + 1 == length) {
+                            // escaped byte not yet received
+                            break decode;
+                        }
+                        final byte escaped = encoded[index + 1];
+                        if (escaped == 10 || escaped == 13) {
+                            index++;
+                        } else {
+                            decoded[written++] = (byte) (escaped - 106);
+                            index += 2;
+                        }
+                    } else if (next == 10 || next == 13) {// LF or CR
+                        skipYEndDetection = false;
+                        index++;
+                        continue decode;
+                    } else {
+                        decoded[written++] = (byte) (next - 42);
+                        index++;
                     }
-                    encodedLength = encodedLeft;
-                } else {
-                    encodedLength = 0;
                 }
-                decodedBytes += decodedLength;
-                return decodedLength;
+            }
+            final int encodedLeft = length - index;
+            if (encodedLeft > 0) {
+                System.arraycopy(encoded, index, encoded, 0, encodedLeft);
+            }
+            encodedLength = encodedLeft;
+            if (written > 0) {
+                decodedLength = written;
+                decodedBytes += written;
+                crc32.update(decoded, 0, written);
+                return written;
             }
         }
+        return -1;
     }
 
     @Override
-    public synchronized int read() throws IOException {
-        int ret = readNextDecodedByte();
-        if (ret == -1) {
-            while (true) {
-                final int available = fillDecodedBuffer();
-                if (available > 0) {
-                    break;
-                } else if (available == -1) {
-                    return -1;
-                } else {
-                    try {
-                        Thread.sleep(1);
-                    } catch (final InterruptedException e) {
-                        throw new IOException(e);
-                    }
-                }
-            }
-            ret = readNextDecodedByte();
+    public int read() throws IOException {
+        if (decodedIndex < decodedLength || fillDecodedBuffer() > 0) {
+            return decodedBuffer[decodedIndex++] & 0xff;
         }
-        return ret;
+        return -1;
     }
 
     @Override
-    public synchronized int read(final byte[] b, final int off, final int len) throws IOException {
+    public int read(final byte[] b, final int off, final int len) throws IOException {
         if (len > 0) {
-            int ret = readNextDecodedBytes(b, off, len);
-            if (ret == -1) {
-                while (true) {
-                    final int available = fillDecodedBuffer();
-                    if (available > 0) {
-                        break;
-                    } else if (available == -1) {
-                        return -1;
-                    } else {
-                        try {
-                            Thread.sleep(1);
-                        } catch (final InterruptedException e) {
-                            throw new IOException(e);
-                        }
-                    }
-                }
-                ret = readNextDecodedBytes(b, off, len);
+            if (decodedIndex >= decodedLength && fillDecodedBuffer() == -1) {
+                return -1;
             }
+            final int ret = Math.min(len, decodedLength - decodedIndex);
+            System.arraycopy(decodedBuffer, decodedIndex, b, off, ret);
+            decodedIndex += ret;
             return ret;
         } else {
             return 0;
@@ -424,13 +363,37 @@ public class YEncInputStream extends InputStream {
                 }
             }
             pcrc32Value = getValue(trailer, "pcrc32");
-            crc32Value = getValue(trailer, " crc32");// space is important to differ between pcrc32 and crc32
         } else {
             if (size != getSize()) {
                 throw new IOException("size-error");
             }
         }
+        crc32Value = getValue(trailer, " crc32");// space is important to differ between pcrc32 and crc32
+        final String expectedCRC32 = isMultiPart() ? pcrc32Value : crc32Value;
+        /* consume the body terminator first, so the connection stays usable even if the crc32 check fails */
         readBodyEnd(inputStream);
+        if (expectedCRC32 != null) {
+            verifyCRC32(expectedCRC32);
+        }
+    }
+
+    /**
+     * compares the checksum from the yEnc trailer with the one calculated while decoding
+     *
+     * @param expected
+     * @throws IOException
+     */
+    private void verifyCRC32(final String expected) throws IOException {
+        final long expectedValue;
+        try {
+            expectedValue = Long.parseLong(expected.trim(), 16);
+        } catch (final NumberFormatException e) {
+            /* not a valid checksum, nothing we could verify against */
+            return;
+        }
+        if (expectedValue != getDecodedCRC32()) {
+            throw new IOException("crc32-error:" + expected + "!=" + Long.toHexString(getDecodedCRC32()));
+        }
     }
 
     /**
@@ -448,6 +411,7 @@ public class YEncInputStream extends InputStream {
                 if (!".".equals(line)) {
                     throw new IOException("missing body termination(end): " + line);
                 }
+                bodyEndRead = true;
                 break;
             } else if (size == -1) {
                 throw new EOFException();
@@ -455,6 +419,13 @@ public class YEncInputStream extends InputStream {
         }
     }
 
+    /**
+     * @return true if the body was read up to its terminating ".", the connection is ready for the next response then
+     */
+    public boolean isBodyEndRead() {
+        return bodyEndRead;
+    }
+
     @Override
     public void close() throws IOException {
     }
@@ -508,7 +479,7 @@ public class YEncInputStream extends InputStream {
             /* special handling for name(last key/value to allow spaces) */
             end = line.length();
         } else {
-            final int index = line.indexOf(" ", start);
+            final int index = line.indexOf(" ", start + search.length());
             if (index == -1) {
                 end = line.length();
             } else {
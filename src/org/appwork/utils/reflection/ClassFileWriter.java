@@ -0,0 +1,389 @@
+/**
+ *
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ *
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header.
+ *
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ *
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.utils.reflection;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.WeakHashMap;
+
+/**
+ * minimal class file writer for runtime generated classes. Class files are written for Java 6 (version 50).
+ *
+ * @author daniel
+ *
+ */
+public class ClassFileWriter {
+    private static class GeneratedClassLoader extends ClassLoader {
+        private GeneratedClassLoader(final ClassLoader parent) {
+            super(parent);
+        }
+
+        private Class<?> define(final String name, final byte[] b) {
+            return this.defineClass(name, b, 0, b.length);
+        }
+    }
+
+    /* one GeneratedClassLoader per parent, weak so neither the parent nor the generated classes are kept alive by this map */
+    private static final WeakHashMap<ClassLoader, WeakReference<GeneratedClassLoader>> LOADERS = new WeakHashMap<ClassLoader, WeakReference<GeneratedClassLoader>>();
+
+    /**
+     * defines the class in the shared GeneratedClassLoader of the given parent
+     *
+     * @param parent
+     * @param name
+     *            must be unique for the parent
+     * @param b
+     * @return
+     */
+    public static Class<?> define(final ClassLoader parent, final String name, final byte[] b) {
+        GeneratedClassLoader loader;
+        synchronized (ClassFileWriter.LOADERS) {
+            final WeakReference<GeneratedClassLoader> reference = ClassFileWriter.LOADERS.get(parent);
+            loader = reference == null ? null : reference.get();
+            if (loader == null) {
+                loader = new GeneratedClassLoader(parent);
+                ClassFileWriter.LOADERS.put(parent, new WeakReference<GeneratedClassLoader>(loader));
+            }
+        }
+        return loader.define(name, b);
+    }
+
+    /**
+     * writes a public final class
+     *
+     * @param pool
+     * @param thisClass
+     *            internal name
+     * @param superClass
+     *            internal name
+     * @param interfaces
+     *            internal names
+     * @param fieldCount
+     * @param fields
+     * @param methodCount
+     * @param methods
+     * @return
+     * @throws IOException
+     */
+    public static byte[] toClassFile(final ConstantPool pool, final String thisClass, final String superClass, final String[] interfaces, final int fieldCount, final byte[] fields, final int methodCount, final byte[] methods) throws IOException {
+        final int thisClassIndex = pool.clazz(thisClass);
+        final int superClassIndex = pool.clazz(superClass);
+        final int[] interfaceIndices = new int[interfaces.length];
+        for (int index = 0; index < interfaces.length; index++) {
+            interfaceIndices[index] = pool.clazz(interfaces[index]);
+        }
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bos);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(50);
+        pool.write(out);
+        // public final super
+        out.writeShort(0x0001 | 0x0010 | 0x0020);
+        out.writeShort(thisClassIndex);
+        out.writeShort(superClassIndex);
+        out.writeShort(interfaceIndices.length);
+        for (final int interfaceIndex : interfaceIndices) {
+            out.writeShort(interfaceIndex);
+        }
+        out.writeShort(fieldCount);
+        out.write(fields);
+        out.writeShort(methodCount);
+        out.write(methods);
+        out.writeShort(0);
+        out.flush();
+        return bos.toByteArray();
+    }
+
+    /**
+     * @param type
+     * @return true if generated code in another package and ClassLoader may reference the type
+     */
+    public static boolean isAccessible(Class<?> type) {
+        while (type.isArray()) {
+            type = type.getComponentType();
+        }
+        return type.isPrimitive() || Modifier.isPublic(type.getModifiers());
+    }
+
+    /**
+     * writes a public method with the given code and without exception table or StackMapTable, so the code must not contain branches
+     */
+    public static void writeMethod(final DataOutputStream methods, final ConstantPool pool, final String name, final String descriptor, final Code code, final int maxStack, final int maxLocals) throws IOException {
+        final byte[] bytes = code.toByteArray();
+        methods.writeShort(0x0001);
+        methods.writeShort(pool.utf8(name));
+        methods.writeShort(pool.utf8(descriptor));
+        methods.writeShort(1);
+        methods.writeShort(pool.utf8("Code"));
+        methods.writeInt(2 + 2 + 4 + bytes.length + 2 + 2);
+        methods.writeShort(maxStack);
+        methods.writeShort(maxLocals);
+        methods.writeInt(bytes.length);
+        methods.write(bytes);
+        methods.writeShort(0);
+        methods.writeShort(0);
+    }
+
+    /**
+     * method body, opcodes are written as plain bytes
+     */
+    public static class Code extends ByteArrayOutputStream {
+        public Code op(final int opcode) {
+            this.write(opcode);
+            return this;
+        }
+
+        public Code u2(final int value) {
+            this.write(value >>> 8 & 0xff);
+            this.write(value & 0xff);
+            return this;
+        }
+
+        public Code pushInt(final ConstantPool pool, final int value) throws IOException {
+            if (value >= -1 && value <= 5) {
+                // iconst_m1 ... iconst_5
+                return this.op(0x03 + value);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                return this.op(0x10).op(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                return this.op(0x11).u2(value);
+            } else {
+                return this.op(0x13).u2(pool.integer(value));
+            }
+        }
+    }
+
+    /**
+     * constant pool of the class file, equal entries are only written once
+     */
+    public static class ConstantPool {
+        private final HashMap<String, Integer> entries = new HashMap<String, Integer>();
+        private final ByteArrayOutputStream    bytes   = new ByteArrayOutputStream();
+        private final DataOutputStream         out     = new DataOutputStream(this.bytes);
+        private int                            count   = 1;
+
+        public int utf8(final String value) throws IOException {
+            final String key = "U" + value;
+            Integer ret = this.entries.get(key);
+            if (ret == null) {
+                this.out.writeByte(1);
+                this.out.writeUTF(value);
+                ret = this.add(key);
+            }
+            return ret.intValue();
+        }
+
+        public int integer(final int value) throws IOException {
+            final String key = "I" + value;
+            Integer ret = this.entries.get(key);
+            if (ret == null) {
+                this.out.writeByte(3);
+                this.out.writeInt(value);
+                ret = this.add(key);
+            }
+            return ret.intValue();
+        }
+
+        public int clazz(final String internalName) throws IOException {
+            final String key = "C" + internalName;
+            Integer ret = this.entries.get(key);
+            if (ret == null) {
+                final int name = this.utf8(internalName);
+                this.out.writeByte(7);
+                this.out.writeShort(name);
+                ret = this.add(key);
+            }
+            return ret.intValue();
+        }
+
+        private int nameAndType(final String name, final String descriptor) throws IOException {
+            final String key = "N" + name + " " + descriptor;
+            Integer ret = this.entries.get(key);
+            if (ret == null) {
+                final int nameIndex = this.utf8(name);
+                final int descriptorIndex = this.utf8(descriptor);
+                this.out.writeByte(12);
+                this.out.writeShort(nameIndex);
+                this.out.writeShort(descriptorIndex);
+                ret = this.add(key);
+            }
+            return ret.intValue();
+        }
+
+        public int field(final String owner, final String name, final String descriptor) throws IOException {
+            return this.member(9, owner, name, descriptor);
+        }
+
+        public int method(final String owner, final String name, final String descriptor) throws IOException {
+            return this.member(10, owner, name, descriptor);
+        }
+
+        public int interfaceMethod(final String owner, final String name, final String descriptor) throws IOException {
+            return this.member(11, owner, name, descriptor);
+        }
+
+        private int member(final int tag, final String owner, final String name, final String descriptor) throws IOException {
+            final String key = tag + owner + " " + name + " " + descriptor;
+            Integer ret = this.entries.get(key);
+            if (ret == null) {
+                final int ownerIndex = this.clazz(owner);
+                final int nameAndTypeIndex = this.nameAndType(name, descriptor);
+                this.out.writeByte(tag);
+                this.out.writeShort(ownerIndex);
+                this.out.writeShort(nameAndTypeIndex);
+                ret = this.add(key);
+            }
+            return ret.intValue();
+        }
+
+        private Integer add(final String key) {
+            final Integer ret = Integer.valueOf(this.count++);
+            this.entries.put(key, ret);
+            return ret;
+        }
+
+        public void write(final DataOutputStream os) throws IOException {
+            os.writeShort(this.count);
+            this.out.flush();
+            this.bytes.writeTo(os);
+        }
+    }
+
+    public static String getInternalName(final Class<?> clazz) {
+        if (clazz.isArray()) {
+            return getDescriptor(clazz);
+        }
+        return clazz.getName().replace('.', '/');
+    }
+
+    public static String getDescriptor(final Class<?> clazz) {
+        if (clazz.isArray()) {
+            return clazz.getName().replace('.', '/');
+        } else if (clazz == int.class) {
+            return "I";
+        } else if (clazz == long.class) {
+            return "J";
+        } else if (clazz == boolean.class) {
+            return "Z";
+        } else if (clazz == byte.class) {
+            return "B";
+        } else if (clazz == short.class) {
+            return "S";
+        } else if (clazz == char.class) {
+            return "C";
+        } else if (clazz == float.class) {
+            return "F";
+        } else if (clazz == double.class) {
+            return "D";
+        } else if (clazz == void.class) {
+            return "V";
+        }
+        return "L" + getInternalName(clazz) + ";";
+    }
+
+    public static String getMethodDescriptor(final Method method) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append('(');
+        for (final Class<?> parameterType : method.getParameterTypes()) {
+            sb.append(getDescriptor(parameterType));
+        }
+        sb.append(')');
+        sb.append(getDescriptor(method.getReturnType()));
+        return sb.toString();
+    }
+
+    public static Class<?> getWrapper(final Class<?> primitive) {
+        if (primitive == int.class) {
+            return Integer.class;
+        } else if (primitive == long.class) {
+            return Long.class;
+        } else if (primitive == boolean.class) {
+            return Boolean.class;
+        } else if (primitive == byte.class) {
+            return Byte.class;
+        } else if (primitive == short.class) {
+            return Short.class;
+        } else if (primitive == char.class) {
+            return Character.class;
+        } else if (primitive == float.class) {
+            return Float.class;
+        } else if (primitive == double.class) {
+            return Double.class;
+        }
+        throw new IllegalArgumentException("Unsupported type: " + primitive);
+    }
+
+    public static int getSize(final Class<?> type) {
+        return type == long.class || type == double.class ? 2 : 1;
+    }
+
+    public static int getLoadOpcode(final Class<?> type) {
+        if (type == long.class) {
+            // lload_1
+            return 0x1f;
+        } else if (type == float.class) {
+            // fload_1
+            return 0x23;
+        } else if (type == double.class) {
+            // dload_1
+            return 0x27;
+        } else if (type.isPrimitive()) {
+            // iload_1
+            return 0x1b;
+        } else {
+            // aload_1
+            return 0x2b;
+        }
+    }
+
+    public static int getReturnOpcode(final Class<?> type) {
+        if (type == long.class) {
+            return 0xad;
+        } else if (type == float.class) {
+            return 0xae;
+        } else if (type == double.class) {
+            return 0xaf;
+        } else if (type.isPrimitive()) {
+            return 0xac;
+        } else {
+            return 0xb0;
+        }
+    }
+}
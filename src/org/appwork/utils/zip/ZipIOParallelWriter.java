@@ -0,0 +1,696 @@
+/**
+ *
+ * ====================================================================================================================================================
+ *         "AppWork Utilities" License
+ *         The "AppWork Utilities" will be called [The Product] from now on.
+ * ====================================================================================================================================================
+ *         Copyright (c) 2009-2015, AppWork GmbH <e-mail@appwork.org>
+ *         Schwabacher Straße 117
+ *         90763 Fürth
+ *         Germany
+ * === Preamble ===
+ *     This license establishes the terms under which the [The Product] Source Code & Binary files may be used, copied, modified, distributed, and/or redistributed.
+ *     The intent is that the AppWork GmbH is able to provide their utilities library for free to non-commercial projects whereas commercial usage is only permitted after obtaining a commercial license.
+ *     These terms apply to all files that have the [The Product] License header (IN the file), a <filename>.license or <filename>.info (like mylib.jar.info) file that contains a reference to this license.
+ *
+ * === 3rd Party Licences ===
+ *     Some parts of the [The Product] use or reference 3rd party libraries and classes. These parts may have different licensing conditions. Please check the *.license and *.info files of included libraries
+ *     to ensure that they are compatible to your use-case. Further more, some *.java have their own license. In this case, they have their license terms in the java file header.
+ *
+ * === Definition: Commercial Usage ===
+ *     If anybody or any organization is generating income (directly or indirectly) by using [The Product] or if there's any commercial interest or aspect in what you are doing, we consider this as a commercial usage.
+ *     If your use-case is neither strictly private nor strictly educational, it is commercial. If you are unsure whether your use-case is commercial or not, consider it as commercial or contact us.
+ * === Dual Licensing ===
+ * === Commercial Usage ===
+ *     If you want to use [The Product] in a commercial way (see definition above), you have to obtain a paid license from AppWork GmbH.
+ *     Contact AppWork for further details: <e-mail@appwork.org>
+ * === Non-Commercial Usage ===
+ *     If there is no commercial usage (see definition above), you may use [The Product] under the terms of the
+ *     "GNU Affero General Public License" (http://www.gnu.org/licenses/agpl-3.0.en.html).
+ *
+ *     If the AGPL does not fit your needs, please contact us. We'll find a solution.
+ * ====================================================================================================================================================
+ * ==================================================================================================================================================== */
+package org.appwork.utils.zip;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import org.appwork.utils.Hash;
+
+/**
+ * ZipFile writer that reads, hashes and compresses entries on worker threads and writes them in the order they were added.
+ *
+ * Entries up to {@link #BUFFERED_ENTRY_SIZE} are prepared completely on the workers. Larger entries are streamed by the adding thread
+ * (deflated entries then use a data descriptor), while the workers keep preparing the following entries. Zip64 records are written
+ * like java.util.zip.ZipOutputStream does, only for entries and archives that exceed the 32bit limits.
+ *
+ * The records are written here and not by a ZipOutputStream like in {@link ZipIOWriter}, because ZipOutputStream cannot take data that
+ * was already deflated by the workers.
+ *
+ * @author daniel
+ *
+ */
+public class ZipIOParallelWriter {
+
+    private static class Entry {
+        private final String name;
+        private final byte[] nameBytes;
+        private File         file           = null;
+        private byte[]       data           = null;
+        private int          dataLength     = 0;
+        private boolean      deflated       = false;
+        private boolean      descriptor     = false;
+        private long         crc            = 0;
+        private long         size           = 0;
+        private long         compressedSize = 0;
+        private long         offset         = 0;
+
+        private Entry(final String name) {
+            this.name = name;
+            try {
+                this.nameBytes = name.getBytes("UTF-8");
+            } catch (final UnsupportedEncodingException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    public static final int                 BUFFERED_ENTRY_SIZE = 8 * 1024 * 1024;
+
+    private static final long               ZIP32_LIMIT         = 0xFFFFFFFFl;
+    private static final int                ZIP16_LIMIT         = 0xFFFF;
+
+    private OutputStream                    fileStream          = null;
+    private OutputStream                    out                 = null;
+    private File                            zipFile             = null;
+    private long                            written             = 0;
+    private final int                       dosTime;
+    private final ThreadPoolExecutor        pool;
+    private final int                       window;
+    private final LinkedList<Future<Entry>> pending             = new LinkedList<Future<Entry>>();
+    private final ArrayList<Entry>          entries             = new ArrayList<Entry>();
+    private final byte[]                    buf                 = new byte[65536];
+    private final byte[]                    header              = new byte[128];
+
+    /**
+     * constructor for ZipIOParallelWriter
+     *
+     * @param zipFile
+     *            zipFile we want create
+     * @param overwrite
+     *            overwrite existing ziFiles?
+     * @param threads
+     *            number of worker threads, <=0 uses one per available processor
+     * @throws FileNotFoundException
+     * @throws ZipIOException
+     */
+    public ZipIOParallelWriter(final File zipFile, final boolean overwrite, final int threads) throws FileNotFoundException, ZipIOException {
+        if (zipFile == null || zipFile.isDirectory()) {
+            throw new ZipIOException("invalid zipFile");
+        }
+        if (zipFile.exists() && !overwrite) {
+            throw new ZipIOException("zipFile already exists");
+        }
+        this.zipFile = zipFile;
+        this.fileStream = new FileOutputStream(zipFile);
+        this.out = new BufferedOutputStream(this.fileStream, 65536);
+        this.dosTime = ZipIOParallelWriter.toDosTime(System.currentTimeMillis());
+        this.pool = this.createPool(threads);
+        this.window = this.pool.getMaximumPoolSize() * 2;
+    }
+
+    public ZipIOParallelWriter(final OutputStream stream, final int threads) {
+        this.fileStream = stream;
+        this.out = new BufferedOutputStream(stream, 65536);
+        this.dosTime = ZipIOParallelWriter.toDosTime(System.currentTimeMillis());
+        this.pool = this.createPool(threads);
+        this.window = this.pool.getMaximumPoolSize() * 2;
+    }
+
+    private static int toDosTime(final long time) {
+        final Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(time);
+        final int year = cal.get(Calendar.YEAR);
+        if (year < 1980) {
+            return 1 << 21 | 1 << 16;
+        }
+        return year - 1980 << 25 | cal.get(Calendar.MONTH) + 1 << 21 | cal.get(Calendar.DAY_OF_MONTH) << 16 | cal.get(Calendar.HOUR_OF_DAY) << 11 | cal.get(Calendar.MINUTE) << 5 | cal.get(Calendar.SECOND) >> 1;
+    }
+
+    private ThreadPoolExecutor createPool(int threads) {
+        if (threads <= 0) {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+        final String name = "ZipIOParallelWriter:" + (this.zipFile != null ? this.zipFile.getName() : "stream") + ":";
+        final AtomicInteger counter = new AtomicInteger(0);
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, name + counter.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * add given File (File or Directory) to this ZipFile
+     *
+     * @param add
+     *            File to add
+     * @param compress
+     *            compress or store
+     * @param path
+     *            customized path
+     * @throws ZipIOException
+     * @throws IOException
+     */
+    public synchronized void add(final File add, final boolean compress, final String path) throws ZipIOException, IOException {
+        if (add == null || !add.exists()) {
+            throw new ZipIOException("add " + add + " invalid");
+        }
+        if (add.isFile()) {
+            this.addFile(add, compress, ZipIOParallelWriter.child(path, add.getName()));
+        } else if (add.isDirectory()) {
+            this.addDirectoryInternal(add, compress, path);
+        } else {
+            throw new ZipIOException("add " + add.getAbsolutePath() + " invalid");
+        }
+    }
+
+    private static String child(final String path, final String name) {
+        return (path != null && path.trim().length() > 0 ? path + "/" : "") + name;
+    }
+
+    /**
+     * add given byte array to this ZipFile. data must not be modified afterwards as it is compressed asynchronously
+     */
+    public synchronized void addByteArry(final byte[] data, final boolean compress, final String path, final String name) throws IOException, ZipIOException {
+        if (data == null) {
+            throw new ZipIOException("data array is invalid");
+        }
+        final Entry entry = new Entry(ZipIOParallelWriter.child(path, name));
+        this.submit(new Callable<Entry>() {
+
+            @Override
+            public Entry call() throws Exception {
+                ZipIOParallelWriter.this.prepare(entry, data, data.length, compress);
+                return entry;
+            }
+        });
+    }
+
+    /**
+     * add given Directory to this ZipFile
+     *
+     * @param addDirectory
+     *            Directory to add
+     * @param compress
+     *            compress or store
+     * @param path
+     *            customized path
+     * @throws ZipIOException
+     * @throws IOException
+     */
+    public synchronized void addDirectory(final File addDirectory, final boolean compress, final String path) throws ZipIOException, IOException {
+        this.addDirectoryInternal(addDirectory, compress, path);
+    }
+
+    private void addDirectoryInternal(final File addDirectory, final boolean compress, final String path) throws ZipIOException, IOException {
+        if (addDirectory == null) {
+            throw new ZipIOException("addDirectory invalid: null");
+        }
+        if (!addDirectory.exists() && this.throwExceptionOnFileGone(addDirectory)) {
+            throw new ZipIOException("addDirectory " + addDirectory.getAbsolutePath() + " invalid: does not exist");
+        }
+        final File[] list = addDirectory.listFiles();
+        if (list != null) {
+            final String subPath = ZipIOParallelWriter.child(path, addDirectory.getName());
+            for (final File add : list) {
+                if (add.isFile()) {
+                    this.addFile(add, compress, ZipIOParallelWriter.child(subPath, add.getName()));
+                } else if (add.isDirectory()) {
+                    this.addDirectoryInternal(add, compress, subPath);
+                } else if (!add.exists() && this.throwExceptionOnFileGone(add)) {
+                    throw new ZipIOException("addDirectory: " + add.getAbsolutePath() + "(File:" + add.isFile() + "|Directory:" + add.isDirectory() + ")");
+                }
+            }
+        }
+    }
+
+    /**
+     * Add file
+     *
+     * @param addFile
+     * @param compress
+     * @param fullPath
+     *            full path incl. filename
+     * @throws ZipIOException
+     * @throws IOException
+     */
+    public synchronized void addFile(final File addFile, final boolean compress, final String fullPath) throws ZipIOException, IOException {
+        if (addFile == null) {
+            throw new ZipIOException("addFile invalid:null");
+        }
+        final Entry entry = new Entry(fullPath);
+        entry.file = addFile;
+        this.submit(new Callable<Entry>() {
+
+            @Override
+            public Entry call() throws Exception {
+                try {
+                    ZipIOParallelWriter.this.prepare(entry, compress);
+                } catch (final FileNotFoundException e) {
+                    if (addFile.exists() == false && ZipIOParallelWriter.this.throwExceptionOnFileGone(addFile) == false) {
+                        return null;
+                    }
+                    throw e;
+                }
+                return entry;
+            }
+        });
+    }
+
+    /**
+     * add given File to this ZipFile
+     *
+     * @param addFile
+     *            File to add
+     * @param compress
+     *            compress or store
+     * @param path
+     *            customized path without filename!
+     * @throws ZipIOException
+     * @throws IOException
+     */
+    public synchronized void addFileToPath(final File addFile, final boolean compress, final String path) throws ZipIOException, IOException {
+        if (addFile == null) {
+            throw new ZipIOException("addFile invalid:null");
+        }
+        this.addFile(addFile, compress, ZipIOParallelWriter.child(path, addFile.getName()));
+    }
+
+    public synchronized void addFolder(String fullPath) throws IOException {
+        if (!fullPath.endsWith("/")) {
+            fullPath = fullPath + "/";
+        }
+        final Entry entry = new Entry(fullPath);
+        entry.data = new byte[0];
+        this.submit(new Callable<Entry>() {
+
+            @Override
+            public Entry call() throws Exception {
+                return entry;
+            }
+        });
+    }
+
+    /**
+     * reads and compresses the given file on a worker thread. big files are only prepared (crc for stored ones) and get streamed in
+     * {@link #writeEntry(Entry)}
+     */
+    private void prepare(final Entry entry, final boolean compress) throws IOException {
+        final long length = entry.file.length();
+        if (length > ZipIOParallelWriter.BUFFERED_ENTRY_SIZE) {
+            if (compress) {
+                entry.deflated = true;
+                entry.descriptor = true;
+            } else {
+                entry.crc = Hash.getCRC32(entry.file);
+                entry.size = length;
+                entry.compressedSize = length;
+            }
+            return;
+        }
+        final FileInputStream fin = new FileInputStream(entry.file);
+        try {
+            byte[] data = new byte[(int) length];
+            int done = 0;
+            while (true) {
+                if (done == data.length) {
+                    final int next = fin.read();
+                    if (next == -1) {
+                        break;
+                    }
+                    /* file grew since length() */
+                    data = Arrays.copyOf(data, Math.max(1024, data.length * 2));
+                    data[done++] = (byte) next;
+                    continue;
+                }
+                final int read = fin.read(data, done, data.length - done);
+                if (read == -1) {
+                    break;
+                }
+                done += read;
+            }
+            entry.file = null;
+            this.prepare(entry, data, done, compress);
+        } finally {
+            fin.close();
+        }
+    }
+
+    private void prepare(final Entry entry, final byte[] data, final int length, final boolean compress) {
+        final CRC32 crc = new CRC32();
+        crc.update(data, 0, length);
+        entry.crc = crc.getValue();
+        entry.size = length;
+        if (compress) {
+            final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            try {
+                deflater.setInput(data, 0, length);
+                deflater.finish();
+                byte[] out = new byte[Math.max(64, length + (length >> 4) + 64)];
+                int outLength = 0;
+                while (!deflater.finished()) {
+                    if (outLength == out.length) {
+                        out = Arrays.copyOf(out, out.length * 2);
+                    }
+                    outLength += deflater.deflate(out, outLength, out.length - outLength);
+                }
+                entry.deflated = true;
+                entry.data = out;
+                entry.dataLength = outLength;
+                entry.compressedSize = outLength;
+            } finally {
+                deflater.end();
+            }
+        } else {
+            entry.data = data;
+            entry.dataLength = length;
+            entry.compressedSize = length;
+        }
+    }
+
+    private void submit(final Callable<Entry> task) throws IOException {
+        if (this.fileStream == null) {
+            throw new IOException("ZipIOParallelWriter is closed");
+        }
+        this.pending.add(this.pool.submit(task));
+        while (this.pending.size() > this.window) {
+            this.writeNext();
+        }
+    }
+
+    /**
+     * waits for the oldest pending entry and writes it
+     */
+    private void writeNext() throws IOException {
+        final Future<Entry> next = this.pending.removeFirst();
+        final Entry entry;
+        try {
+            entry = next.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted");
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+        if (entry != null) {
+            this.writeEntry(entry);
+        }
+    }
+
+    private void writeEntry(final Entry entry) throws IOException {
+        entry.offset = this.written;
+        this.writeHeader(entry, false);
+        if (entry.data != null) {
+            this.write(entry.data, 0, entry.dataLength);
+            this.notify(entry.name, entry.size, entry.compressedSize);
+        } else {
+            final InputStream fin = new FileInputStream(entry.file);
+            try {
+                if (entry.deflated) {
+                    this.writeDeflated(entry, fin);
+                } else {
+                    /* the header already contains size and crc of the worker, the file must not have changed since then */
+                    final CRC32 crc = new CRC32();
+                    long total = 0;
+                    int len;
+                    while ((len = fin.read(this.buf)) > 0) {
+                        crc.update(this.buf, 0, len);
+                        this.write(this.buf, 0, len);
+                        total += len;
+                    }
+                    if (total != entry.size || crc.getValue() != entry.crc) {
+                        throw new ZipIOException("file changed while adding " + entry.file.getAbsolutePath());
+                    }
+                }
+            } finally {
+                fin.close();
+            }
+            this.notify(entry.name, entry.size, entry.compressedSize);
+        }
+        /* release the payload, only the central directory information is kept */
+        entry.data = null;
+        entry.file = null;
+        this.entries.add(entry);
+    }
+
+    private void writeDeflated(final Entry entry, final InputStream fin) throws IOException {
+        final CRC32 crc = new CRC32();
+        final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        final byte[] out = new byte[this.buf.length];
+        try {
+            long size = 0;
+            long compressedSize = 0;
+            int len;
+            while ((len = fin.read(this.buf)) > 0) {
+                crc.update(this.buf, 0, len);
+                size += len;
+                deflater.setInput(this.buf, 0, len);
+                while (!deflater.needsInput()) {
+                    final int deflated = deflater.deflate(out, 0, out.length);
+                    this.write(out, 0, deflated);
+                    compressedSize += deflated;
+                }
+            }
+            deflater.finish();
+            while (!deflater.finished()) {
+                final int deflated = deflater.deflate(out, 0, out.length);
+                this.write(out, 0, deflated);
+                compressedSize += deflated;
+            }
+            entry.crc = crc.getValue();
+            entry.size = size;
+            entry.compressedSize = compressedSize;
+        } finally {
+            deflater.end();
+        }
+        /* data descriptor, 64bit sizes if they do not fit */
+        int pos = 0;
+        pos = this.putInt(pos, 0x08074b50);
+        pos = this.putInt(pos, (int) entry.crc);
+        if (entry.size >= ZipIOParallelWriter.ZIP32_LIMIT || entry.compressedSize >= ZipIOParallelWriter.ZIP32_LIMIT) {
+            pos = this.putLong(pos, entry.compressedSize);
+            pos = this.putLong(pos, entry.size);
+        } else {
+            pos = this.putInt(pos, (int) entry.compressedSize);
+            pos = this.putInt(pos, (int) entry.size);
+        }
+        this.write(this.header, 0, pos);
+    }
+
+    protected void notify(final String name, final long size, final long compressedSize) {
+    }
+
+    protected boolean throwExceptionOnFileGone(final File file) {
+        return true;
+    }
+
+    private int putShort(final int pos, final int value) {
+        this.header[pos] = (byte) value;
+        this.header[pos + 1] = (byte) (value >>> 8);
+        return pos + 2;
+    }
+
+    private int putInt(final int pos, final int value) {
+        this.header[pos] = (byte) value;
+        this.header[pos + 1] = (byte) (value >>> 8);
+        this.header[pos + 2] = (byte) (value >>> 16);
+        this.header[pos + 3] = (byte) (value >>> 24);
+        return pos + 4;
+    }
+
+    private int putLong(final int pos, final long value) {
+        this.putInt(pos, (int) value);
+        return this.putInt(pos + 4, (int) (value >>> 32));
+    }
+
+    /**
+     * writes the local file header or the central directory header of the given entry. Values that do not fit into 32bit are written as
+     * 0xFFFFFFFF and moved into a Zip64 extra field
+     */
+    private void writeHeader(final Entry entry, final boolean central) throws IOException {
+        /* bit 3: sizes follow in data descriptor, bit 11: utf-8 names */
+        final int flags = (entry.descriptor ? 1 << 3 : 0) | 1 << 11;
+        final boolean sizeKnown = central || !entry.descriptor;
+        final boolean zip64Size = sizeKnown && entry.size >= ZipIOParallelWriter.ZIP32_LIMIT;
+        final boolean zip64CompressedSize = sizeKnown && entry.compressedSize >= ZipIOParallelWriter.ZIP32_LIMIT;
+        final boolean zip64Offset = central && entry.offset >= ZipIOParallelWriter.ZIP32_LIMIT;
+        /* the local header must contain both sizes in its Zip64 extra field */
+        final boolean zip64Sizes = !central && (zip64Size || zip64CompressedSize);
+        final int extraLength;
+        if (central) {
+            extraLength = (zip64Size ? 8 : 0) + (zip64CompressedSize ? 8 : 0) + (zip64Offset ? 8 : 0);
+        } else {
+            extraLength = zip64Sizes ? 16 : 0;
+        }
+        final int version = extraLength > 0 ? 45 : entry.deflated ? 20 : 10;
+        int pos = 0;
+        if (central) {
+            pos = this.putInt(pos, 0x02014b50);
+            pos = this.putShort(pos, version < 20 ? 20 : version);
+        } else {
+            pos = this.putInt(pos, 0x04034b50);
+        }
+        pos = this.putShort(pos, version);
+        pos = this.putShort(pos, flags);
+        pos = this.putShort(pos, entry.deflated ? 8 : 0);
+        pos = this.putInt(pos, this.dosTime);
+        if (!sizeKnown) {
+            pos = this.putInt(pos, 0);
+            pos = this.putInt(pos, 0);
+            pos = this.putInt(pos, 0);
+        } else {
+            pos = this.putInt(pos, (int) entry.crc);
+            pos = this.putInt(pos, zip64CompressedSize || zip64Sizes ? (int) ZipIOParallelWriter.ZIP32_LIMIT : (int) entry.compressedSize);
+            pos = this.putInt(pos, zip64Size || zip64Sizes ? (int) ZipIOParallelWriter.ZIP32_LIMIT : (int) entry.size);
+        }
+        pos = this.putShort(pos, entry.nameBytes.length);
+        pos = this.putShort(pos, extraLength > 0 ? 4 + extraLength : 0);
+        if (central) {
+            /* comment length, disk number, internal and external attributes */
+            pos = this.putShort(pos, 0);
+            pos = this.putShort(pos, 0);
+            pos = this.putShort(pos, 0);
+            pos = this.putInt(pos, 0);
+            pos = this.putInt(pos, zip64Offset ? (int) ZipIOParallelWriter.ZIP32_LIMIT : (int) entry.offset);
+        }
+        this.write(this.header, 0, pos);
+        this.write(entry.nameBytes, 0, entry.nameBytes.length);
+        if (extraLength > 0) {
+            pos = 0;
+            pos = this.putShort(pos, 0x0001);
+            pos = this.putShort(pos, extraLength);
+            if (zip64Size || zip64Sizes) {
+                pos = this.putLong(pos, entry.size);
+            }
+            if (zip64CompressedSize || zip64Sizes) {
+                pos = this.putLong(pos, entry.compressedSize);
+            }
+            if (zip64Offset) {
+                pos = this.putLong(pos, entry.offset);
+            }
+            this.write(this.header, 0, pos);
+        }
+    }
+
+    private void write(final byte[] b, final int off, final int len) throws IOException {
+        this.out.write(b, off, len);
+        this.written += len;
+    }
+
+    /**
+     * writes all pending entries and the central directory and closes the ZipFile
+     *
+     * @throws IOException
+     */
+    public synchronized void close() throws IOException {
+        if (this.fileStream == null) {
+            return;
+        }
+        try {
+            while (this.pending.size() > 0) {
+                this.writeNext();
+            }
+            final long centralOffset = this.written;
+            for (final Entry entry : this.entries) {
+                this.writeHeader(entry, true);
+            }
+            final long centralSize = this.written - centralOffset;
+            final int count = this.entries.size();
+            int pos = 0;
+            if (count >= ZipIOParallelWriter.ZIP16_LIMIT || centralOffset >= ZipIOParallelWriter.ZIP32_LIMIT || centralSize >= ZipIOParallelWriter.ZIP32_LIMIT) {
+                final long zip64EndOffset = this.written;
+                /* Zip64 end of central directory record */
+                pos = this.putInt(pos, 0x06064b50);
+                pos = this.putLong(pos, 44);
+                pos = this.putShort(pos, 45);
+                pos = this.putShort(pos, 45);
+                pos = this.putInt(pos, 0);
+                pos = this.putInt(pos, 0);
+                pos = this.putLong(pos, count);
+                pos = this.putLong(pos, count);
+                pos = this.putLong(pos, centralSize);
+                pos = this.putLong(pos, centralOffset);
+                /* Zip64 end of central directory locator */
+                pos = this.putInt(pos, 0x07064b50);
+                pos = this.putInt(pos, 0);
+                pos = this.putLong(pos, zip64EndOffset);
+                pos = this.putInt(pos, 1);
+                this.write(this.header, 0, pos);
+                pos = 0;
+            }
+            pos = this.putInt(pos, 0x06054b50);
+            pos = this.putShort(pos, 0);
+            pos = this.putShort(pos, 0);
+            pos = this.putShort(pos, Math.min(count, ZipIOParallelWriter.ZIP16_LIMIT));
+            pos = this.putShort(pos, Math.min(count, ZipIOParallelWriter.ZIP16_LIMIT));
+            pos = this.putInt(pos, (int) Math.min(centralSize, ZipIOParallelWriter.ZIP32_LIMIT));
+            pos = this.putInt(pos, (int) Math.min(centralOffset, ZipIOParallelWriter.ZIP32_LIMIT));
+            pos = this.putShort(pos, 0);
+            this.write(this.header, 0, pos);
+            this.out.flush();
+            if (this.fileStream instanceof FileOutputStream) {
+                ((FileOutputStream) this.fileStream).getChannel().force(true);
+            }
+        } finally {
+            for (final Future<Entry> future : this.pending) {
+                future.cancel(true);
+            }
+            this.pending.clear();
+            this.pool.shutdownNow();
+            try {
+                this.out.close();
+            } catch (final Throwable e) {
+            }
+            this.out = null;
+            this.fileStream = null;
+        }
+    }
+
+}
@@ -35,12 +35,13 @@ package org.appwork.utils.zip;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.CRC32;
 import java.util.zip.CheckedInputStream;
 import java.util.zip.ZipEntry;
@@ -49,6 +50,7 @@ import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 
 import org.appwork.utils.Files;
+import org.appwork.utils.NullsafeAtomicReference;
 
 
 /**
@@ -116,6 +118,19 @@ public class ZipIOReader {
      */
     public synchronized java.util.List<File> extract(final ZipEntry entry, final File output) throws ZipIOException, IOException {
         final java.util.List<File> ret = new ArrayList<File>();
+        if (this.prepareOutput(output, ret)) {
+            this.extract(entry, null, output);
+            ret.add(output);
+        }
+        return ret;
+    }
+
+    /**
+     * checks/prepares output for extraction, created folders are added to ret
+     *
+     * @return true if the entry should be extracted to output
+     */
+    private boolean prepareOutput(final File output, final java.util.List<File> ret) throws IOException {
         if (output.exists() && output.isDirectory()) {
             if (this.isOverwrite()) {
                 Files.deleteRecursiv(output);
@@ -129,7 +144,7 @@ public class ZipIOReader {
             }
             if (output.exists() && output.isDirectory()) {
                       org.appwork.utils.logging2.extmanager.LoggerFactory.getDefaultLogger().finer("Skipped extraction: directory exists: " + output);
-                return ret;
+                return false;
 
             }
         }
@@ -148,7 +163,7 @@ public class ZipIOReader {
             }
             if (output.exists()) {
                       org.appwork.utils.logging2.extmanager.LoggerFactory.getDefaultLogger().finer("Skipped extraction: file exists: " + output);
-                return ret;
+                return false;
             }
         }
         if (!output.getParentFile().exists()) {
@@ -168,20 +183,51 @@ public class ZipIOReader {
             }
             if (!output.getParentFile().exists()) {
                       org.appwork.utils.logging2.extmanager.LoggerFactory.getDefaultLogger().finer("Skipped extraction: cannot create dir: " + output);
-                return ret;
+                return false;
             }
         }
-        FileOutputStream os = null;
+        return true;
+    }
+
+    /**
+     * extracts entry to output, the file is preallocated to the uncompressed size of the entry
+     *
+     * @param source
+     *            ZipFile to read from, null to use {@link #getInputStream(ZipEntry)}
+     */
+    private void extract(final ZipEntry entry, final ZipFile source, final File output) throws ZipIOException, IOException {
+        final RandomAccessFile raf = new RandomAccessFile(output, "rw");
+        final OutputStream os;
         try {
-            os = new FileOutputStream(output);
-            this.extract(entry, os);
-        } finally {
-            if (os != null) {
-                os.close();
+            if (entry.getSize() > 0) {
+                raf.setLength(entry.getSize());
             }
+            os = new OutputStream() {
+                @Override
+                public void write(final int b) throws IOException {
+                    raf.write(b);
+                }
+
+                @Override
+                public void write(final byte[] b, final int off, final int len) throws IOException {
+                    raf.write(b, off, len);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    try {
+                        /* cut preallocated space if the entry was shorter than announced */
+                        raf.setLength(raf.getFilePointer());
+                    } finally {
+                        raf.close();
+                    }
+                }
+            };
+        } catch (final IOException e) {
+            raf.close();
+            throw e;
         }
-        ret.add(output);
-        return ret;
+        this.extract(entry, source, os);
     }
 
     /**
@@ -191,6 +237,10 @@ public class ZipIOReader {
      * @throws IOException
      */
     public void extract(final ZipEntry entry, final OutputStream stream) throws ZipIOException, IOException {
+        this.extract(entry, null, stream);
+    }
+
+    private void extract(final ZipEntry entry, final ZipFile source, final OutputStream stream) throws ZipIOException, IOException {
         if (entry.isDirectory()) {
             if (this.isBreakOnError()) {
                 throw new ZipIOException("Cannot extract a directory", entry);
@@ -200,7 +250,7 @@ public class ZipIOReader {
         }
         CheckedInputStream in = null;
         try {
-            final InputStream is = this.getInputStream(entry);
+            final InputStream is = source != null ? source.getInputStream(entry) : this.getInputStream(entry);
             in = new CheckedInputStream(is, new CRC32());
             final byte[] buffer = new byte[32767];
             int len = 0;
@@ -232,10 +282,26 @@ public class ZipIOReader {
 
     }
 
+    /**
+     * progress callback, called from the extraction threads in parallel mode, see {@link #extractTo(File, int)}
+     */
     protected void notify(final ZipEntry entry, final long bytesWrite, final long bytesProcessed) {
     }
 
-    public synchronized java.util.List<File> extractTo(final File outputDirectory) throws ZipIOException, IOException {
+    /**
+     * progress callback, called once per file entry after it has been extracted (or skipped). called from the extraction threads in
+     * parallel mode, see {@link #extractTo(File, int)}
+     *
+     * @param entry
+     * @param done
+     *            number of finished file entries
+     * @param total
+     *            number of file entries
+     */
+    protected void notifyExtracted(final ZipEntry entry, final int done, final int total) {
+    }
+
+    private void prepareOutputDirectory(final File outputDirectory) throws IOException {
         if (outputDirectory.exists() && outputDirectory.isFile()) {
 
             if (this.isBreakOnError()) {
@@ -251,31 +317,154 @@ public class ZipIOReader {
                       org.appwork.utils.logging2.extmanager.LoggerFactory.getDefaultLogger().severe("could not create outputDirectory " + outputDirectory);
             }
         }
+    }
+
+    /**
+     * creates the folder for a directory entry, created folders are added to ret
+     */
+    private void extractDirectory(final File out, final java.util.List<File> ret) throws IOException {
+        if (!out.exists()) {
+            if (this.isAutoCreateSubDirs()) {
+                if (!out.mkdir()) {
+                    if (this.isBreakOnError()) {
+                        throw new IOException("could not create outputDirectory " + out);
+                    } else {
+                              org.appwork.utils.logging2.extmanager.LoggerFactory.getDefaultLogger().severe("could not create outputDirectory " + out);
+                    }
+
+                }
+                ret.add(out);
+            } else {
+                      org.appwork.utils.logging2.extmanager.LoggerFactory.getDefaultLogger().finer("SKipped creatzion of: " + out);
+            }
+        }
+    }
 
+    public synchronized java.util.List<File> extractTo(final File outputDirectory) throws ZipIOException, IOException {
+        this.prepareOutputDirectory(outputDirectory);
         final java.util.List<File> ret = new ArrayList<File>();
+        final ZipEntry[] entries = this.getZipFiles();
+        final int total = this.countFiles(entries);
+        int done = 0;
+        for (final ZipEntry entry : entries) {
+            final File out = new File(outputDirectory, entry.getName());
+            if (entry.isDirectory()) {
+                this.extractDirectory(out, ret);
+            } else {
+                ret.addAll(this.extract(entry, out));
+                this.notifyExtracted(entry, ++done, total);
+            }
+        }
+        return ret;
+    }
+
+    private int countFiles(final ZipEntry[] entries) {
+        int ret = 0;
+        for (final ZipEntry entry : entries) {
+            if (!entry.isDirectory()) {
+                ret++;
+            }
+        }
+        return ret;
+    }
 
-        for (final ZipEntry entry : this.getZipFiles()) {
+    /**
+     * same as {@link #extractTo(File)}, but file entries are decompressed by up to threads worker threads, each one with its own read
+     * handle on the zip file. Directories and overwrite checks are handled up front in entry order, so the returned list is the same as
+     * for {@link #extractTo(File)}. Falls back to {@link #extractTo(File)} for byte[] based zips or threads<=1
+     *
+     * @param outputDirectory
+     * @param threads
+     *            number of worker threads, e.g. Runtime.getRuntime().availableProcessors()
+     * @return
+     * @throws ZipIOException
+     * @throws IOException
+     */
+    public synchronized java.util.List<File> extractTo(final File outputDirectory, final int threads) throws ZipIOException, IOException {
+        if (threads <= 1 || this.zip == null) {
+            return this.extractTo(outputDirectory);
+        }
+        this.prepareOutputDirectory(outputDirectory);
+        final ZipEntry[] entries = this.getZipFiles();
+        final int total = this.countFiles(entries);
+        /* created files/folders per entry, merged in entry order at the end */
+        final java.util.List<java.util.List<File>> results = new ArrayList<java.util.List<File>>(entries.length);
+        final java.util.List<Integer> pending = new ArrayList<Integer>();
+        int skipped = 0;
+        for (int index = 0; index < entries.length; index++) {
+            final ZipEntry entry = entries[index];
             final File out = new File(outputDirectory, entry.getName());
+            final java.util.List<File> ret = new ArrayList<File>();
+            results.add(ret);
             if (entry.isDirectory()) {
-                if (!out.exists()) {
-                    if (this.isAutoCreateSubDirs()) {
-                        if (!out.mkdir()) {
-                            if (this.isBreakOnError()) {
-                                throw new IOException("could not create outputDirectory " + out);
-                            } else {
-                                      org.appwork.utils.logging2.extmanager.LoggerFactory.getDefaultLogger().severe("could not create outputDirectory " + out);
+                this.extractDirectory(out, ret);
+            } else if (this.prepareOutput(out, ret)) {
+                pending.add(index);
+            } else {
+                this.notifyExtracted(entry, ++skipped, total);
+            }
+        }
+        final AtomicInteger next = new AtomicInteger(0);
+        final AtomicInteger done = new AtomicInteger(skipped);
+        final NullsafeAtomicReference<Throwable> error = new NullsafeAtomicReference<Throwable>(null);
+        final Thread[] workers = new Thread[Math.min(threads, pending.size())];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Thread("ZipIOReader:" + this.zipFile.getName() + ":" + i) {
+                @Override
+                public void run() {
+                    ZipFile source = null;
+                    try {
+                        source = new ZipFile(ZipIOReader.this.zipFile);
+                        int job;
+                        while (error.get() == null && (job = next.getAndIncrement()) < pending.size()) {
+                            final int index = pending.get(job);
+                            final ZipEntry entry = entries[index];
+                            final File out = new File(outputDirectory, entry.getName());
+                            ZipIOReader.this.extract(entry, source, out);
+                            results.get(index).add(out);
+                            ZipIOReader.this.notifyExtracted(entry, done.incrementAndGet(), total);
+                        }
+                    } catch (final Throwable e) {
+                        error.compareAndSet(null, e);
+                    } finally {
+                        try {
+                            if (source != null) {
+                                source.close();
                             }
-
+                        } catch (final Throwable e) {
                         }
-                        ret.add(out);
-                    } else {
-                              org.appwork.utils.logging2.extmanager.LoggerFactory.getDefaultLogger().finer("SKipped creatzion of: " + out);
                     }
                 }
-
-            } else {
-                ret.addAll(this.extract(entry, out));
+            };
+            workers[i].start();
+        }
+        try {
+            for (final Thread worker : workers) {
+                worker.join();
+            }
+        } catch (final InterruptedException e) {
+            error.compareAndSet(null, e);
+            for (final Thread worker : workers) {
+                try {
+                    worker.join();
+                } catch (final InterruptedException ignore) {
+                }
             }
+            Thread.currentThread().interrupt();
+        }
+        final Throwable e = error.get();
+        if (e instanceof IOException) {
+            throw (IOException) e;
+        } else if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        } else if (e instanceof Error) {
+            throw (Error) e;
+        } else if (e != null) {
+            throw new ZipIOException(e);
+        }
+        final java.util.List<File> ret = new ArrayList<File>();
+        for (final java.util.List<File> files : results) {
+            ret.addAll(files);
         }
         return ret;
     }